@@ -0,0 +1,274 @@
+package org.adangel.resticbrowser;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.security.GeneralSecurityException;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Deque;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.Executor;
+import java.util.concurrent.Flow;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.adangel.resticbrowser.models.BlobId;
+import org.adangel.resticbrowser.models.Tree;
+
+/**
+ * Non-blocking access to a {@link Repository}. Every read runs on the given executor, by default on a new virtual
+ * thread, so that callers can have the reads and decryption of many trees and blobs in flight at once.
+ *
+ * <p>The returned futures complete exceptionally with an {@link IOException} if the read fails, crypto exceptions are
+ * wrapped into an {@code IOException}. A blob that is not in the index fails with an {@link IllegalStateException},
+ * as with the blocking methods.
+ */
+public class AsyncRepository {
+    /** Content blobs of a node which are read ahead of the demand of the subscriber. */
+    static final int PREFETCH_BLOBS = 4;
+
+    private final Repository repository;
+    private final Executor executor;
+
+    @FunctionalInterface
+    private interface Read<T> {
+        T read() throws IOException, GeneralSecurityException;
+    }
+
+    /** A part of a content blob, as seen by a range read of a node. */
+    private record Slice(BlobId id, int from, int length) {}
+
+    public AsyncRepository(Repository repository) {
+        this(repository, virtualThreads());
+    }
+
+    public AsyncRepository(Repository repository, Executor executor) {
+        this.repository = Objects.requireNonNull(repository);
+        this.executor = Objects.requireNonNull(executor);
+    }
+
+    private static Executor virtualThreads() {
+        ThreadFactory factory = Thread.ofVirtual().name("restic-async-", 0).factory();
+        return task -> factory.newThread(task).start();
+    }
+
+    public Repository getRepository() {
+        return repository;
+    }
+
+    public CompletableFuture<Tree> readTreeAsync(BlobId treeId) {
+        return supply(() -> repository.readTree(treeId));
+    }
+
+    /**
+     * See {@link Repository#readTrees(Collection)}.
+     */
+    public CompletableFuture<Map<BlobId, Tree>> readTreesAsync(Collection<BlobId> treeIds) {
+        List<BlobId> ids = List.copyOf(treeIds);
+        return supply(() -> repository.readTrees(ids));
+    }
+
+    /**
+     * @return the plaintext of the blob
+     */
+    public CompletableFuture<byte[]> readBlobAsync(BlobId blobId) {
+        return supply(() -> repository.readContent(blobId));
+    }
+
+    /**
+     * See {@link Repository#readBlobs(Collection)}.
+     */
+    public CompletableFuture<Map<BlobId, byte[]>> readBlobsAsync(Collection<BlobId> blobIds) {
+        List<BlobId> ids = List.copyOf(blobIds);
+        return supply(() -> repository.readBlobs(ids));
+    }
+
+    /**
+     * The whole content of a file, see {@link #readNodeAsync(Tree.Node, long, long)}.
+     */
+    public Flow.Publisher<ByteBuffer> readNodeAsync(Tree.Node node) {
+        return readNodeAsync(node, 0, Long.MAX_VALUE);
+    }
+
+    /**
+     * The content of a file from {@code offset}, at most {@code length} bytes. Each buffer is (a part of) one content
+     * blob. Up to {@value #PREFETCH_BLOBS} blobs are read ahead of the demand, the buffers are published in file order.
+     * Each subscriber reads the content again.
+     */
+    public Flow.Publisher<ByteBuffer> readNodeAsync(Tree.Node node, long offset, long length) {
+        if (offset < 0 || length < 0) {
+            throw new IllegalArgumentException("Invalid range: offset " + offset + ", length " + length);
+        }
+        return subscriber -> {
+            Objects.requireNonNull(subscriber);
+            List<Slice> slices;
+            try {
+                slices = slices(node, offset, length);
+            } catch (RuntimeException e) {
+                subscriber.onSubscribe(new Flow.Subscription() {
+                    @Override
+                    public void request(long n) {}
+
+                    @Override
+                    public void cancel() {}
+                });
+                subscriber.onError(e);
+                return;
+            }
+            NodeSubscription subscription = new NodeSubscription(subscriber, slices);
+            subscriber.onSubscribe(subscription);
+            subscription.drain();
+        };
+    }
+
+    private List<Slice> slices(Tree.Node node, long offset, long length) {
+        List<Slice> slices = new ArrayList<>();
+        long end = length > Long.MAX_VALUE - offset ? Long.MAX_VALUE : offset + length;
+        long blobStart = 0;
+        for (int i = 0; i < node.contentCount() && blobStart < end; i++) {
+            BlobId id = node.contentId(i);
+            int blobLength = repository.findBlob(id).plaintextLength();
+            long blobEnd = blobStart + blobLength;
+            if (blobEnd > offset) {
+                int from = (int) Math.max(0, offset - blobStart);
+                int to = (int) (Math.min(end, blobEnd) - blobStart);
+                if (to > from) {
+                    slices.add(new Slice(id, from, to - from));
+                }
+            }
+            blobStart = blobEnd;
+        }
+        return slices;
+    }
+
+    private <T> CompletableFuture<T> supply(Read<T> read) {
+        return CompletableFuture.supplyAsync(() -> {
+            try {
+                return read.read();
+            } catch (IOException e) {
+                throw new CompletionException(e);
+            } catch (GeneralSecurityException e) {
+                throw new CompletionException(new IOException(e));
+            }
+        }, executor);
+    }
+
+    /**
+     * Signals to the subscriber are serialized by {@link #drain()}: only the thread which increments {@link #wip}
+     * from zero emits, other threads just mark that another pass is needed.
+     */
+    private final class NodeSubscription implements Flow.Subscription {
+        private final Flow.Subscriber<? super ByteBuffer> subscriber;
+        private final List<Slice> slices;
+        private final AtomicLong demand = new AtomicLong();
+        private final AtomicInteger wip = new AtomicInteger();
+        private volatile boolean cancelled;
+        private volatile IllegalArgumentException invalidRequest;
+
+        // only accessed in drain
+        private final Deque<CompletableFuture<ByteBuffer>> inFlight = new ArrayDeque<>();
+        private CompletableFuture<ByteBuffer> awaited;
+        private int nextSlice;
+        private boolean done;
+
+        NodeSubscription(Flow.Subscriber<? super ByteBuffer> subscriber, List<Slice> slices) {
+            this.subscriber = subscriber;
+            this.slices = slices;
+        }
+
+        @Override
+        public void request(long n) {
+            if (n <= 0) {
+                invalidRequest = new IllegalArgumentException("Requested " + n + " buffers, must be positive");
+            } else {
+                demand.getAndAccumulate(n, (current, added) -> current + added < 0 ? Long.MAX_VALUE : current + added);
+            }
+            drain();
+        }
+
+        @Override
+        public void cancel() {
+            cancelled = true;
+            drain();
+        }
+
+        void drain() {
+            if (wip.getAndIncrement() != 0) {
+                return;
+            }
+            int missed = 1;
+            do {
+                emit();
+                missed = wip.addAndGet(-missed);
+            } while (missed != 0);
+        }
+
+        private void emit() {
+            if (done) {
+                return;
+            }
+            if (cancelled) {
+                stop();
+                return;
+            }
+            if (invalidRequest != null) {
+                stop();
+                subscriber.onError(invalidRequest);
+                return;
+            }
+            fill();
+            while (!inFlight.isEmpty()) {
+                CompletableFuture<ByteBuffer> head = inFlight.peek();
+                if (!head.isDone()) {
+                    if (awaited != head) {
+                        awaited = head;
+                        head.whenComplete((buffer, e) -> drain());
+                    }
+                    return;
+                }
+                ByteBuffer buffer;
+                try {
+                    buffer = head.join();
+                } catch (CompletionException e) {
+                    stop();
+                    subscriber.onError(e.getCause());
+                    return;
+                }
+                if (demand.get() == 0) {
+                    return;
+                }
+                inFlight.poll();
+                if (demand.get() != Long.MAX_VALUE) {
+                    demand.decrementAndGet();
+                }
+                subscriber.onNext(buffer);
+                if (cancelled || invalidRequest != null) {
+                    // handled by the next pass
+                    return;
+                }
+                fill();
+            }
+            done = true;
+            subscriber.onComplete();
+        }
+
+        private void fill() {
+            while (inFlight.size() < PREFETCH_BLOBS && nextSlice < slices.size()) {
+                Slice slice = slices.get(nextSlice++);
+                inFlight.add(supply(() -> ByteBuffer.wrap(repository.readContent(slice.id()), slice.from(), slice.length()).slice()));
+            }
+        }
+
+        private void stop() {
+            done = true;
+            inFlight.forEach(future -> future.cancel(false));
+            inFlight.clear();
+        }
+    }
+}
@@ -0,0 +1,81 @@
+package org.adangel.resticbrowser;
+
+import java.io.IOException;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+import org.adangel.resticbrowser.models.BlobId;
+
+import com.github.luben.zstd.Zstd;
+
+/**
+ * Second tier of the tree cache: the decrypted JSON of trees, zstd compressed, up to a maximum number of compressed
+ * bytes. Tree JSON compresses well, so many more directories stay in memory than as decoded {@link
+ * org.adangel.resticbrowser.models.Tree}s. Trees are compressed into this cache when they are evicted from the first
+ * tier, and decoded again from here instead of being read from the pack and decrypted again. Thread-safe, the least
+ * recently used trees are evicted first.
+ */
+final class CompressedTreeCache {
+    /** Fast level, tree JSON is small and it is compressed while the first tier is locked. */
+    private static final int LEVEL = 1;
+
+    private final long maxSize;
+    private final Map<BlobId, byte[]> entries = new LinkedHashMap<>(16, 0.75f, true);
+    private long size;
+
+    CompressedTreeCache(long maxSize) {
+        this.maxSize = maxSize;
+    }
+
+    /**
+     * @return the JSON of the tree, or {@code null} if it is not cached
+     */
+    byte[] get(BlobId treeId) throws IOException {
+        byte[] compressed;
+        synchronized (this) {
+            compressed = entries.get(treeId);
+        }
+        if (compressed == null) {
+            return null;
+        }
+        return ZstdDecompressor.decompress(compressed, 0, compressed.length);
+    }
+
+    void put(BlobId treeId, byte[] json) {
+        if (maxSize == 0) {
+            return;
+        }
+        synchronized (this) {
+            // trees are immutable, a tree which is still cached doesn't need to be compressed again
+            if (entries.get(treeId) != null) {
+                return;
+            }
+        }
+        byte[] compressed = Zstd.compress(json, LEVEL);
+        if (compressed.length > maxSize) {
+            return;
+        }
+        synchronized (this) {
+            byte[] previous = entries.put(treeId, compressed);
+            if (previous != null) {
+                size -= previous.length;
+            }
+            size += compressed.length;
+            Iterator<byte[]> eldest = entries.values().iterator();
+            while (size > maxSize) {
+                size -= eldest.next().length;
+                eldest.remove();
+            }
+        }
+    }
+
+    synchronized int trees() {
+        return entries.size();
+    }
+
+    /** @return the compressed size of all cached trees */
+    synchronized long size() {
+        return size;
+    }
+}
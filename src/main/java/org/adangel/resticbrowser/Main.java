@@ -15,18 +15,32 @@ import javax.crypto.BadPaddingException;
 import javax.crypto.IllegalBlockSizeException;
 import javax.crypto.NoSuchPaddingException;
 
+import org.adangel.resticbrowser.backend.Backend;
+import org.adangel.resticbrowser.backend.CachingBackend;
+import org.adangel.resticbrowser.backend.LocalBackend;
+import org.adangel.resticbrowser.check.CheckResult;
+import org.adangel.resticbrowser.check.Checker;
 import org.adangel.resticbrowser.models.Snapshot;
+import org.adangel.resticbrowser.models.SnapshotWithId;
+import org.adangel.resticbrowser.restore.RestoreProgress;
+import org.adangel.resticbrowser.restore.Restorer;
 
 public class Main {
     public static void main(String[] args) throws IOException, NoSuchAlgorithmException, NoSuchPaddingException, InvalidAlgorithmParameterException, InvalidKeyException, IllegalBlockSizeException, BadPaddingException {
-        if (args.length != 1) {
-            System.err.println("Expected one argument - repository path");
+        boolean restore = args.length == 4 && args[1].equals("restore");
+        boolean check = args.length >= 2 && args[1].equals("check")
+                && (args.length == 2 || args.length == 3 && args[2].equals("--read-data"));
+        if (args.length != 1 && !restore && !check) {
+            System.err.println("Usage: Main <repository path>");
+            System.err.println("       Main <repository path> restore <snapshot id>[:<path>] <target directory>");
+            System.err.println("       Main <repository path> check [--read-data]");
+            System.err.println("The repository path can also be a rest-server URL: rest:http://host:8000/repo/");
             System.exit(1);
         }
 
-        Path repoPath = Paths.get(args[0]);
-        if (!Files.exists(repoPath)) {
-            System.err.println("Repo path '" + repoPath + "' doesn't exist!");
+        String location = args[0];
+        if (!location.startsWith(Backend.REST_PREFIX) && !Files.exists(Paths.get(location))) {
+            System.err.println("Repo path '" + location + "' doesn't exist!");
             System.exit(1);
         }
 
@@ -36,9 +50,22 @@ public class Main {
             System.exit(1);
         }
 
-        Repository repository = new Repository(repoPath, password);
+        Backend backend = Backend.open(location);
+        if (!(backend instanceof LocalBackend)) {
+            backend = CachingBackend.wrap(backend, System.getenv());
+        }
+        Repository repository = new Repository(backend, password, RepositoryOptions.fromEnv(System.getenv()));
+
+        if (restore) {
+            restore(repository, args[2], Path.of(args[3]));
+            return;
+        }
+        if (check) {
+            check(repository, args.length == 3);
+            return;
+        }
 
-        System.out.println("Repository @ " + repository.getPath());
+        System.out.println("Repository @ " + repository.getBackend().location());
         System.out.println("id = " + repository.getId());
         System.out.println("snapshots:");
         System.out.println("ID\tTime\tHost\tTags\tPaths");
@@ -55,4 +82,46 @@ public class Main {
             System.out.printf("%s\t%s\t%s\t%s\t%s%n", id, time, host, tags, paths);
         });
     }
+
+    private static void restore(Repository repository, String snapshotAndPath, Path target) throws IOException {
+        String snapshotId = snapshotAndPath;
+        String path = "/";
+        int separator = snapshotAndPath.indexOf(':');
+        if (separator != -1) {
+            snapshotId = snapshotAndPath.substring(0, separator);
+            path = snapshotAndPath.substring(separator + 1);
+        }
+        String snapshotPrefix = snapshotId;
+        List<SnapshotWithId> snapshots = repository.listSnapshots().stream().filter(s -> s.id().startsWith(snapshotPrefix)).toList();
+        if (snapshots.size() != 1) {
+            System.err.println("Snapshot '" + snapshotId + "' " + (snapshots.isEmpty() ? "not found" : "is ambiguous"));
+            System.exit(1);
+        }
+
+        System.out.println("Restoring " + snapshots.getFirst().id() + ":" + path + " to " + target);
+        Restorer restorer = new Restorer(repository, Runtime.getRuntime().availableProcessors(), progress ->
+                System.out.printf("\r%5.1f%%  %d / %d bytes  %d / %d blobs  %.1f MiB/s", progress.percent(),
+                        progress.restoredBytes(), progress.totalBytes(), progress.restoredBlobs(), progress.totalBlobs(),
+                        progress.throughput() / 1024 / 1024));
+        RestoreProgress result = restorer.restore(snapshots.getFirst().id(), path, target);
+        System.out.println();
+        System.out.printf("Restored %d files (%d bytes) in %s%n", result.totalFiles(), result.restoredBytes(), result.elapsed());
+    }
+
+    private static void check(Repository repository, boolean readData) throws IOException {
+        System.out.println("Checking " + repository.getBackend().location() + (readData ? " (reading all data)" : ""));
+        Checker checker = new Checker(repository, Runtime.getRuntime().availableProcessors(), readData, progress ->
+                System.out.printf("\r%-5s %5.1f%%  %d / %d  %.1f MiB/s", progress.phase(), progress.percent(),
+                        progress.done(), progress.total(), progress.throughput() / 1024 / 1024));
+        CheckResult result = checker.check();
+        System.out.println();
+        result.warnings().forEach(warning -> System.out.println("warning: " + warning));
+        result.errors().forEach(error -> System.out.println("error: " + error));
+        System.out.printf("Checked %d snapshots, %d trees and %d packs (%d bytes) in %s: %s%n", result.snapshots(),
+                result.trees(), result.packs(), result.bytesRead(), result.elapsed(),
+                result.ok() ? "no errors" : result.errors().size() + " errors");
+        if (!result.ok()) {
+            System.exit(1);
+        }
+    }
 }
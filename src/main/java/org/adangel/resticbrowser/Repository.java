@@ -1,37 +1,71 @@
 package org.adangel.resticbrowser;
 
-import java.io.ByteArrayInputStream;
 import java.io.FilterInputStream;
 import java.io.IOException;
 import java.io.InputStream;
-import java.io.RandomAccessFile;
 import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
 import java.nio.charset.StandardCharsets;
 import java.nio.file.Files;
 import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.security.GeneralSecurityException;
 import java.security.InvalidAlgorithmParameterException;
 import java.security.InvalidKeyException;
+import java.security.MessageDigest;
 import java.security.NoSuchAlgorithmException;
 import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.EnumMap;
 import java.util.HashMap;
 import java.util.HashSet;
+import java.util.Iterator;
 import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
 import java.util.List;
+import java.util.Locale;
 import java.util.Map;
 import java.util.Set;
+import java.util.TreeMap;
+import java.util.concurrent.CompletionService;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorCompletionService;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.atomic.AtomicBoolean;
 import java.util.logging.Level;
 import java.util.logging.Logger;
 import java.util.stream.Collectors;
-import java.util.stream.Stream;
 import javax.crypto.BadPaddingException;
 import javax.crypto.Cipher;
 import javax.crypto.IllegalBlockSizeException;
 import javax.crypto.NoSuchPaddingException;
-import javax.crypto.ShortBufferException;
 import javax.crypto.spec.IvParameterSpec;
 import javax.crypto.spec.SecretKeySpec;
 
+import org.adangel.resticbrowser.backend.Backend;
+import org.adangel.resticbrowser.backend.CachingBackend;
+import org.adangel.resticbrowser.backend.FileType;
+import org.adangel.resticbrowser.backend.LocalBackend;
+import org.adangel.resticbrowser.crypto.CryptoContext;
+import org.adangel.resticbrowser.crypto.CryptoContextPool;
+import org.adangel.resticbrowser.jfr.BlobDecompressEvent;
+import org.adangel.resticbrowser.jfr.BlobDecryptEvent;
+import org.adangel.resticbrowser.jfr.IndexLoadEvent;
+import org.adangel.resticbrowser.jfr.PackReadEvent;
+import org.adangel.resticbrowser.jfr.SnapshotListEvent;
+import org.adangel.resticbrowser.jfr.TreeLoadEvent;
+import org.adangel.resticbrowser.metrics.Counter;
+import org.adangel.resticbrowser.metrics.Gauge;
+import org.adangel.resticbrowser.metrics.Histogram;
+import org.adangel.resticbrowser.metrics.Metrics;
+import org.adangel.resticbrowser.models.BlobId;
 import org.adangel.resticbrowser.models.Config;
 import org.adangel.resticbrowser.models.Index;
 import org.adangel.resticbrowser.models.Key;
@@ -55,116 +89,274 @@ public class Repository {
 
     private static final ObjectMapper MAPPER = new ObjectMapper().findAndRegisterModules();
 
-    private final Path path;
+    private static final Metrics METRICS = Metrics.global();
+    private static final Counter INDEX_LOOKUPS = METRICS.counter("restic_index_lookups_total", "Blob lookups in the index");
+    private static final Counter TREE_CACHE_HITS = METRICS.counter("restic_tree_cache_hits_total", "Trees served from the tree cache");
+    private static final Counter TREE_CACHE_MISSES = METRICS.counter("restic_tree_cache_misses_total", "Trees read from the repository");
+    private static final Counter COMPRESSED_TREE_CACHE_HITS = METRICS.counter("restic_tree_cache_compressed_hits_total", "Trees decoded from the compressed tree cache");
+    private static final Counter BLOB_READS = METRICS.counter("restic_blob_reads_total", "Blobs read from pack files");
+    private static final Histogram BLOB_READ_LATENCY = METRICS.histogram("restic_blob_read_seconds", "Latency of reading and decrypting a single blob");
+    private static final Histogram PACK_READ_LATENCY = METRICS.histogram("restic_pack_read_seconds", "Latency of reading a (coalesced) range of a pack file, or of a batch of ranges which are read together");
+    private static final Counter BYTES_READ = METRICS.counter("restic_pack_read_bytes_total", "Bytes read from pack files");
+    private static final Counter BYTES_DECRYPTED = METRICS.counter("restic_decrypted_bytes_total", "Bytes decrypted");
+    private static final Counter BYTES_DECOMPRESSED = METRICS.counter("restic_decompressed_bytes_total", "Bytes after decompression");
+    private static final Counter PACK_HEADERS_READ = METRICS.counter("restic_pack_headers_read_total", "Pack headers read to rebuild the index");
+    private static final Counter MAC_FAILURES = METRICS.counter("restic_mac_failures_total", "Blobs and files whose MAC didn't match");
+    private static final Map<RepositoryOptions.Verification, Counter> VERIFIED_BLOBS = new EnumMap<>(RepositoryOptions.Verification.class);
+    private static final Map<RepositoryOptions.Verification, Counter> UNVERIFIED_BLOBS = new EnumMap<>(RepositoryOptions.Verification.class);
+    static {
+        for (RepositoryOptions.Verification mode : RepositoryOptions.Verification.values()) {
+            String label = mode.name().toLowerCase(Locale.ROOT).replace('_', '-');
+            VERIFIED_BLOBS.put(mode, METRICS.counter("restic_blobs_verified_total", "Blob reads whose MAC was verified", "mode", label));
+            UNVERIFIED_BLOBS.put(mode, METRICS.counter("restic_blobs_unverified_total", "Blob reads whose MAC wasn't verified", "mode", label));
+        }
+    }
+    private static final Counter TREE_IDS_VERIFIED = METRICS.counter("restic_tree_ids_verified_total", "Trees whose SHA-256 was checked against their ID");
+
+    private final Backend backend;
     private SecretKeySpec masterKeySpec;
-    private CipherParameters macParams;
+    private CryptoContextPool cryptoContexts;
+
+    private final RepositoryOptions options;
+    // with FIRST_READ: the blobs which have been verified already
+    private final Set<BlobId> verifiedBlobs = ConcurrentHashMap.newKeySet();
 
     public Repository(Path path, String password) throws IOException {
-        this.path = path;
+        this(path, password, RepositoryOptions.defaults());
+    }
+
+    public Repository(Path path, String password, RepositoryOptions options) throws IOException {
+        this(new LocalBackend(path), password, options);
+    }
+
+    public Repository(Backend backend, String password, RepositoryOptions options) throws IOException {
+        this.backend = backend;
+        this.options = options;
+        this.compressedTreeCache = new CompressedTreeCache(options.treeCacheSize());
         initMasterKey(password);
         loadIndexFiles();
     }
 
-    private void initMasterKey(String password) throws IOException {
-        LOGGER.fine("Searching for matching keys in " + path);
-        try (Stream<Path> keyFileStream = Files.list(path.resolve("keys"))) {
-            boolean foundMasterKey = keyFileStream.anyMatch(keyFile -> {
-                try {
-                    LOGGER.fine("Trying " + keyFile + " ...");
-                    Key key = MAPPER.readValue(Files.readString(keyFile), Key.class);
-
-                    byte[] bytes = SCrypt.generate(password.getBytes(StandardCharsets.UTF_8), Base64.decode(key.salt()),
-                            key.N(), key.r(), key.p(), 64);
-
-                    // AES-256
-                    byte[] aes256Key = new byte[32];
-                    System.arraycopy(bytes, 0, aes256Key, 0, 32);
-
-                    // Poly1305-AES
-                    byte[] authenticationKey = new byte[32];
-                    System.arraycopy(bytes, 32, authenticationKey, 0, 32);
-
-                    /*
-                     * In the first 16 bytes of each encrypted file the initialisation vector (IV) is stored. It is followed by
-                     * the encrypted data and completed by the 16 byte MAC. The format is: IV || CIPHERTEXT || MAC
-                     */
-                    byte[] data = Base64.decode(key.data());
-
-                    IvParameterSpec iv = new IvParameterSpec(data, 0, 16);
-                    SecretKeySpec secretKeySpec = new SecretKeySpec(aes256Key, "AES");
-                    Cipher cipher = Cipher.getInstance("AES/CTR/NoPadding");
-                    cipher.init(Cipher.DECRYPT_MODE, secretKeySpec, iv);
-                    byte[] masterkeyBytes = cipher.doFinal(data, 16, data.length - 16 - 16);
-                    Masterkey masterkey = MAPPER.readValue(masterkeyBytes, Masterkey.class);
-
-                    Poly1305 mac = new Poly1305(AESEngine.newInstance());
-                    byte[] authenticationKeySwapped = new byte[32];
-                    System.arraycopy(authenticationKey, 16, authenticationKeySwapped, 0, 16); // r portion first for bouncycastle
-                    System.arraycopy(authenticationKey, 0, authenticationKeySwapped, 16, 16); // key last for bouncycastle
-                    CipherParameters polyparams = new KeyParameter(authenticationKeySwapped, 0, 32);
-                    CipherParameters ivparam = new ParametersWithIV(polyparams, data, 0, 16);
-                    mac.init(ivparam);
-                    mac.update(data, 16, data.length - 16 - 16);
-                    byte[] calculatedMac = new byte[mac.getMacSize()];
-                    mac.doFinal(calculatedMac, 0);
-
-                    byte[] originalMac = new byte[16];
-                    System.arraycopy(data, data.length - 16, originalMac, 0, 16);
-
-                    if (!Arrays.equals(originalMac, calculatedMac)) {
-                        LOGGER.severe("MAC doesn't match");
-                        return false;
+    /**
+     * Registers gauges for the size of the index and the tree cache of this repository, e.g. when it is served by a
+     * file system. They keep the repository reachable, so they must be removed with {@link Metrics#remove(Gauge)}
+     * when it isn't used anymore.
+     *
+     * @return the registered gauges
+     */
+    public List<Gauge> registerGauges(Metrics metrics) {
+        return List.of(
+                metrics.gauge("restic_index_blobs", "Blobs in the index of the served repository", () -> indexCache.size()),
+                metrics.gauge("restic_tree_cache_size", "Trees in the tree cache of the served repository", () -> {
+                    synchronized (treeCache) {
+                        return treeCache.size();
                     }
+                }),
+                metrics.gauge("restic_tree_cache_compressed_bytes", "Bytes in the compressed tree cache of the served repository",
+                        compressedTreeCache::size));
+    }
 
-                    masterKeySpec = new SecretKeySpec(Base64.decode(masterkey.encrypt()), "AES");
+    /** scrypt needs N * r * 128 bytes (32 MiB with restic's defaults) per derivation, so only a few run at once. */
+    private static final int MAX_UNLOCK_THREADS = 4;
 
-                    byte[] mac_r = Base64.decode(masterkey.mac().r());
-                    if (mac_r.length != 16) {
-                        throw new IllegalStateException("mac_r is not 16 bytes");
-                    }
-                    byte[] mac_k = Base64.decode(masterkey.mac().k());
-                    if (mac_k.length != 16) {
-                        throw new IllegalStateException("mac_k is not 16 bytes");
-                    }
-                    byte[] authenticationKeyCombined = new byte[32];
-                    System.arraycopy(mac_r, 0, authenticationKeyCombined, 0, 16);
-                    System.arraycopy(mac_k, 0, authenticationKeyCombined, 16, 16);
-                    macParams = new KeyParameter(authenticationKeyCombined);
+    private record MasterKeys(byte[] encryptionKey, byte[] macKey) {}
 
-                    LOGGER.info("Found master key in " + keyFile + ", password was valid");
+    private void initMasterKey(String password) throws IOException {
+        LOGGER.fine(() -> "Searching for matching keys in " + backend.location());
+        List<String> keyFiles = new ArrayList<>(backend.list(FileType.KEY));
+
+        MasterKeys masterKeys = null;
+        if (options.keyHint() != null) {
+            String hintedKeyFile = keyFiles.stream()
+                    .filter(keyFile -> keyFile.startsWith(options.keyHint()))
+                    .findFirst().orElse(null);
+            if (hintedKeyFile != null) {
+                keyFiles.remove(hintedKeyFile);
+                masterKeys = tryKeyFile(hintedKeyFile, password);
+            } else {
+                LOGGER.warning("No key file matches the key hint " + options.keyHint());
+            }
+        }
+        if (masterKeys == null) {
+            masterKeys = tryKeyFiles(keyFiles, password);
+        }
+        if (masterKeys == null) {
+            throw new IllegalArgumentException("Wrong password");
+        }
+        masterKeySpec = new SecretKeySpec(masterKeys.encryptionKey(), "AES");
+        cryptoContexts = new CryptoContextPool(options.cryptoBackend(), masterKeys.encryptionKey(), masterKeys.macKey());
+    }
 
-                    return true;
-                } catch (Exception e) {
-                    LOGGER.log(Level.SEVERE, "Error reading master key from " + keyFile, e);
+    /**
+     * Tries the key files in parallel. As soon as one key file fits, the remaining ones are not tried anymore.
+     * Derivations which are already running can't be interrupted, they finish in the background.
+     */
+    private MasterKeys tryKeyFiles(List<String> keyFiles, String password) throws IOException {
+        if (keyFiles.size() <= 1) {
+            return keyFiles.isEmpty() ? null : tryKeyFile(keyFiles.getFirst(), password);
+        }
+        int threads = Math.min(keyFiles.size(), Math.min(MAX_UNLOCK_THREADS, Runtime.getRuntime().availableProcessors()));
+        AtomicBoolean found = new AtomicBoolean();
+        ExecutorService executor = Executors.newFixedThreadPool(threads, runnable -> {
+            Thread thread = new Thread(runnable, "restic-unlock");
+            thread.setDaemon(true);
+            return thread;
+        });
+        try {
+            CompletionService<MasterKeys> completionService = new ExecutorCompletionService<>(executor);
+            for (String keyFile : keyFiles) {
+                completionService.submit(() -> found.get() ? null : tryKeyFile(keyFile, password));
+            }
+            for (int i = 0; i < keyFiles.size(); i++) {
+                MasterKeys masterKeys = completionService.take().get();
+                if (masterKeys != null) {
+                    found.set(true);
+                    return masterKeys;
                 }
-                return false;
-            });
-            if (!foundMasterKey) {
-                throw new IllegalArgumentException("Wrong password");
             }
+            return null;
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IOException("Unlocking the repository has been interrupted", e);
+        } catch (ExecutionException e) {
+            throw new IOException(e.getCause());
+        } finally {
+            executor.shutdownNow();
         }
     }
 
-    private record IndexEntry(String packId, String type, int offset, int length, int uncompressed_length) {}
-    private Map<String, IndexEntry> indexCache;
-    private void loadIndexFiles() throws IOException {
+    /**
+     * @return the master keys, if the password fits to this key file, {@code null} otherwise
+     */
+    private MasterKeys tryKeyFile(String keyFile, String password) {
+        try {
+            LOGGER.fine("Trying " + keyFile + " ...");
+            Key key = MAPPER.readValue(backend.read(FileType.KEY, keyFile), Key.class);
+
+            byte[] bytes = SCrypt.generate(password.getBytes(StandardCharsets.UTF_8), Base64.decode(key.salt()),
+                    key.N(), key.r(), key.p(), 64);
+
+            // AES-256
+            byte[] aes256Key = new byte[32];
+            System.arraycopy(bytes, 0, aes256Key, 0, 32);
+
+            // Poly1305-AES
+            byte[] authenticationKey = new byte[32];
+            System.arraycopy(bytes, 32, authenticationKey, 0, 32);
+
+            /*
+             * In the first 16 bytes of each encrypted file the initialisation vector (IV) is stored. It is followed by
+             * the encrypted data and completed by the 16 byte MAC. The format is: IV || CIPHERTEXT || MAC
+             */
+            byte[] data = Base64.decode(key.data());
+
+            IvParameterSpec iv = new IvParameterSpec(data, 0, 16);
+            SecretKeySpec secretKeySpec = new SecretKeySpec(aes256Key, "AES");
+            Cipher cipher = Cipher.getInstance("AES/CTR/NoPadding");
+            cipher.init(Cipher.DECRYPT_MODE, secretKeySpec, iv);
+            byte[] masterkeyBytes = cipher.doFinal(data, 16, data.length - 16 - 16);
+            Masterkey masterkey = MAPPER.readValue(masterkeyBytes, Masterkey.class);
+
+            Poly1305 mac = new Poly1305(AESEngine.newInstance());
+            byte[] authenticationKeySwapped = new byte[32];
+            System.arraycopy(authenticationKey, 16, authenticationKeySwapped, 0, 16); // r portion first for bouncycastle
+            System.arraycopy(authenticationKey, 0, authenticationKeySwapped, 16, 16); // key last for bouncycastle
+            CipherParameters polyparams = new KeyParameter(authenticationKeySwapped, 0, 32);
+            CipherParameters ivparam = new ParametersWithIV(polyparams, data, 0, 16);
+            mac.init(ivparam);
+            mac.update(data, 16, data.length - 16 - 16);
+            byte[] calculatedMac = new byte[mac.getMacSize()];
+            mac.doFinal(calculatedMac, 0);
+
+            byte[] originalMac = new byte[16];
+            System.arraycopy(data, data.length - 16, originalMac, 0, 16);
+
+            if (!Arrays.equals(originalMac, calculatedMac)) {
+                LOGGER.fine("MAC doesn't match, password doesn't fit to " + keyFile);
+                return null;
+            }
+
+            byte[] mac_r = Base64.decode(masterkey.mac().r());
+            if (mac_r.length != 16) {
+                throw new IllegalStateException("mac_r is not 16 bytes");
+            }
+            byte[] mac_k = Base64.decode(masterkey.mac().k());
+            if (mac_k.length != 16) {
+                throw new IllegalStateException("mac_k is not 16 bytes");
+            }
+            byte[] authenticationKeyCombined = new byte[32];
+            System.arraycopy(mac_r, 0, authenticationKeyCombined, 0, 16);
+            System.arraycopy(mac_k, 0, authenticationKeyCombined, 16, 16);
+
+            LOGGER.info("Found master key in " + keyFile + ", password was valid");
+
+            return new MasterKeys(Base64.decode(masterkey.encrypt()), authenticationKeyCombined);
+        } catch (Exception e) {
+            LOGGER.log(Level.SEVERE, "Error reading master key from " + keyFile, e);
+        }
+        return null;
+    }
+
+    public record IndexEntry(String packId, String type, int offset, int length, int uncompressed_length) {
+        public boolean isCompressed() {
+            return uncompressed_length != 0;
+        }
+
+        /**
+         * @return the size of the blob after decryption and decompression
+         */
+        public int plaintextLength() {
+            return isCompressed() ? uncompressed_length : length - /* IV */ 16 - /* MAC */ 16;
+        }
+    }
+    private volatile Map<BlobId, IndexEntry> indexCache;
+
+    /**
+     * (Re)loads all index files. Called by the constructor, can be called again to pick up index files that have been
+     * added since. Depending on {@link RepositoryOptions#indexMode()}, the index is completed or rebuilt from the pack
+     * headers.
+     */
+    public void loadIndexFiles() throws IOException {
+        Map<BlobId, IndexEntry> newIndexCache = options.indexMode() == RepositoryOptions.IndexMode.REBUILD
+                ? new HashMap<>()
+                : readIndexFiles();
+        if (options.indexMode() != RepositoryOptions.IndexMode.INDEX_FILES) {
+            completeIndexFromPacks(newIndexCache);
+        }
+        // replaced at once, readers see either the old or the new index
+        indexCache = newIndexCache;
+
+        if (backend instanceof CachingBackend cachingBackend) {
+            Set<String> treePacks = new HashSet<>();
+            for (IndexEntry entry : newIndexCache.values()) {
+                if ("tree".equals(entry.type())) {
+                    treePacks.add(entry.packId());
+                }
+            }
+            cachingBackend.setCachedPacks(treePacks);
+        }
+
+        LOGGER.info("IndexCache contains %d blobs".formatted(indexCache.size()));
+    }
+
+    private Map<BlobId, IndexEntry> readIndexFiles() throws IOException {
         LOGGER.info("Loading indexes...");
-        Map<String, Map<String, IndexEntry>> temporaryIndex = new HashMap<>();
+        Map<String, Map<BlobId, IndexEntry>> temporaryIndex = new HashMap<>();
         Set<String> supersedes = new HashSet<>();
 
-        List<Path> indexFiles;
-        try (Stream<Path> indexStream = Files.list(path.resolve("index"))) {
-            indexFiles = indexStream.toList();
-        }
+        List<String> indexFiles = backend.list(FileType.INDEX);
 
         long fileNumber = 0;
-        for (Path indexFile : indexFiles) {
+        for (String indexName : indexFiles) {
             fileNumber++;
-            String indexName = indexFile.getFileName().toString();
-            Map<String, IndexEntry> currentCache = new HashMap<>();
+            Map<BlobId, IndexEntry> currentCache = new HashMap<>();
+            IndexLoadEvent event = new IndexLoadEvent();
+            event.begin();
             try {
-                Index index = readFile(path.relativize(indexFile), Index.class);
-                LOGGER.fine(String.format(" index %s loaded (%d of %d)", indexName, fileNumber, indexFiles.size()));
+                byte[] indexData = backend.read(FileType.INDEX, indexName);
+                Index index = parseFile(indexData, Index.class);
+                long currentFileNumber = fileNumber;
+                LOGGER.fine(() -> String.format(" index %s loaded (%d of %d)", indexName, currentFileNumber, indexFiles.size()));
 
                 if (index.supersedes() != null && !index.supersedes().isEmpty()) {
                     LOGGER.fine("Found superseded indexes...");
@@ -180,6 +372,13 @@ public class Repository {
                         }
                     }
                 }
+                if (event.shouldCommit()) {
+                    event.indexFile = indexName;
+                    event.bytes = indexData.length;
+                    event.packs = index.packs().size();
+                    event.blobs = currentCache.size();
+                    event.commit();
+                }
             } catch (Exception e) {
                 throw new RuntimeException(e);
             }
@@ -192,20 +391,192 @@ public class Repository {
             temporaryIndex.remove(superseded);
         }
         LOGGER.info("temporary index: size=%d (after removed old indexes)".formatted(temporaryIndex.size()));
-        indexCache = new HashMap<>();
-        for (Map<String, IndexEntry> entry : temporaryIndex.values()) {
-            indexCache.putAll(entry);
+        Map<BlobId, IndexEntry> newIndexCache = new HashMap<>();
+        for (Map<BlobId, IndexEntry> entry : temporaryIndex.values()) {
+            newIndexCache.putAll(entry);
         }
+        return newIndexCache;
+    }
 
-        LOGGER.info("IndexCache contains %d blobs".formatted(indexCache.size()));
+    /** Packs whose headers are read at the same time. */
+    private static final int PACK_SCAN_CONCURRENCY = 8;
+    /** Bytes read from the end of a pack at first, enough for the header of most packs. */
+    private static final int PACK_TAIL_LENGTH = 16 * 1024;
+    private static final int PACK_HEADER_ENTRY_LENGTH = 1 + 4 + 32;
+    private static final int PACK_HEADER_COMPRESSED_ENTRY_LENGTH = PACK_HEADER_ENTRY_LENGTH + 4;
+
+    /**
+     * Drops the entries of packs which don't exist anymore and adds the blobs of all packs which are not in the index,
+     * either from {@link RepositoryOptions#rebuiltIndex()} or by reading the pack headers.
+     */
+    private void completeIndexFromPacks(Map<BlobId, IndexEntry> index) throws IOException {
+        Set<String> packs = new HashSet<>(backend.list(FileType.PACK));
+        int indexedBlobs = index.size();
+        index.values().removeIf(entry -> !packs.contains(entry.packId()));
+        if (index.size() < indexedBlobs) {
+            LOGGER.warning("Dropped %d index entries of missing packs".formatted(indexedBlobs - index.size()));
+        }
+
+        Map<BlobId, IndexEntry> rebuilt = readRebuiltIndex(packs);
+        rebuilt.forEach(index::putIfAbsent);
+
+        Set<String> indexedPacks = new HashSet<>();
+        index.values().forEach(entry -> indexedPacks.add(entry.packId()));
+        List<String> unindexedPacks = packs.stream().filter(packId -> !indexedPacks.contains(packId)).sorted().toList();
+        if (unindexedPacks.isEmpty()) {
+            return;
+        }
+        LOGGER.info("Reading the headers of %d packs which are not in the index...".formatted(unindexedPacks.size()));
+        Map<BlobId, IndexEntry> scanned = scanPackHeaders(unindexedPacks);
+        LOGGER.info("Found %d blobs in the pack headers".formatted(scanned.size()));
+        scanned.forEach(index::putIfAbsent);
+
+        if (options.rebuiltIndex() != null && !scanned.isEmpty()) {
+            rebuilt.putAll(scanned);
+            writeRebuiltIndex(rebuilt);
+        }
     }
 
-    private IndexEntry findBlob(String sha256) {
-        if (!indexCache.containsKey(sha256)) {
-            throw new IllegalStateException("Blob with id " + sha256 + " not found in index");
+    private Map<BlobId, IndexEntry> scanPackHeaders(List<String> packIds) throws IOException {
+        Map<BlobId, IndexEntry> entries = new ConcurrentHashMap<>();
+        int threads = Math.min(packIds.size(), PACK_SCAN_CONCURRENCY);
+        ExecutorService executor = Executors.newFixedThreadPool(threads, runnable -> {
+            Thread thread = new Thread(runnable, "restic-pack-scan");
+            thread.setDaemon(true);
+            return thread;
+        });
+        try {
+            List<Future<?>> futures = new ArrayList<>(packIds.size());
+            for (String packId : packIds) {
+                futures.add(executor.submit(() -> {
+                    try {
+                        readPackHeader(packId).forEach(entries::putIfAbsent);
+                        PACK_HEADERS_READ.increment();
+                    } catch (Exception e) {
+                        // a damaged pack shouldn't prevent browsing the rest of the repository
+                        LOGGER.log(Level.WARNING, "Couldn't read the header of pack " + packId, e);
+                    }
+                }));
+            }
+            for (Future<?> future : futures) {
+                future.get();
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IOException("Reading the pack headers has been interrupted", e);
+        } catch (ExecutionException e) {
+            throw new IOException(e.getCause());
+        } finally {
+            executor.shutdownNow();
+        }
+        return entries;
+    }
+
+    /**
+     * Reads the blobs of a pack from its header. The pack format is: encrypted blobs || encrypted header || header
+     * length (uint32 LE). A header entry is: type (1 byte) || encrypted length (uint32 LE) || [uncompressed length
+     * (uint32 LE), for compressed blobs] || blob ID (32 bytes).
+     */
+    private Map<BlobId, IndexEntry> readPackHeader(String packId) throws IOException, GeneralSecurityException {
+        long size = backend.size(FileType.PACK, packId);
+        int tailLength = (int) Math.min(size, PACK_TAIL_LENGTH);
+        byte[] tail = backend.readRange(FileType.PACK, packId, size - tailLength, tailLength);
+        int headerLength = ByteBuffer.wrap(tail, tailLength - 4, 4).order(ByteOrder.LITTLE_ENDIAN).getInt();
+        if (headerLength < CryptoContext.IV_LENGTH + CryptoContext.MAC_LENGTH || headerLength > size - 4) {
+            throw new IOException("Invalid header length %d in pack %s".formatted(headerLength, packId));
+        }
+        byte[] header;
+        if (headerLength + 4 <= tailLength) {
+            header = decryptBytes(tail, tailLength - 4 - headerLength, headerLength, true);
+        } else {
+            byte[] encryptedHeader = backend.readRange(FileType.PACK, packId, size - 4 - headerLength, headerLength);
+            header = decryptBytes(encryptedHeader, 0, headerLength, true);
         }
+
+        Map<BlobId, IndexEntry> entries = new LinkedHashMap<>();
+        ByteBuffer buffer = ByteBuffer.wrap(header).order(ByteOrder.LITTLE_ENDIAN);
+        int offset = 0;
+        while (buffer.hasRemaining()) {
+            int type = buffer.get() & 0xff;
+            if (type > 3) {
+                throw new IOException("Unknown blob type %d in pack %s".formatted(type, packId));
+            }
+            boolean compressed = type >= 2;
+            if (buffer.remaining() < (compressed ? PACK_HEADER_COMPRESSED_ENTRY_LENGTH : PACK_HEADER_ENTRY_LENGTH) - 1) {
+                throw new IOException("Truncated header in pack " + packId);
+            }
+            int length = buffer.getInt();
+            int uncompressedLength = compressed ? buffer.getInt() : 0;
+            BlobId id = BlobId.of(header, buffer.position());
+            buffer.position(buffer.position() + BlobId.LENGTH);
+            entries.put(id,
+                    new IndexEntry(packId, (type & 1) == 1 ? "tree" : "data", offset, length, uncompressedLength));
+            offset += length;
+        }
+        return entries;
+    }
+
+    private Map<BlobId, IndexEntry> readRebuiltIndex(Set<String> packs) throws IOException {
+        Map<BlobId, IndexEntry> entries = new HashMap<>();
+        Path file = options.rebuiltIndex();
+        if (file == null || !Files.exists(file)) {
+            return entries;
+        }
+        Index index = MAPPER.readValue(file.toFile(), Index.class);
+        for (Index.Pack pack : index.packs()) {
+            if (packs.contains(pack.id())) {
+                for (Index.Pack.Blob blob : pack.blobs()) {
+                    entries.put(blob.id(), new IndexEntry(pack.id(), blob.type(), blob.offset(), blob.length(), blob.uncompressed_length()));
+                }
+            }
+        }
+        LOGGER.info("Read %d blobs from the rebuilt index %s".formatted(entries.size(), file));
+        return entries;
+    }
+
+    /**
+     * Stores the blobs found in the pack headers in the same (but unencrypted) format as the index files.
+     */
+    private void writeRebuiltIndex(Map<BlobId, IndexEntry> entries) throws IOException {
+        Map<String, List<Index.Pack.Blob>> blobsByPack = new TreeMap<>();
+        entries.forEach((id, entry) -> blobsByPack.computeIfAbsent(entry.packId(), k -> new ArrayList<>())
+                .add(new Index.Pack.Blob(id, entry.type(), entry.offset(), entry.length(), entry.uncompressed_length())));
+        List<Index.Pack> packs = new ArrayList<>();
+        blobsByPack.forEach((packId, blobs) -> {
+            blobs.sort(Comparator.comparingInt(Index.Pack.Blob::offset));
+            packs.add(new Index.Pack(packId, blobs));
+        });
+
+        Path file = options.rebuiltIndex().toAbsolutePath();
+        Files.createDirectories(file.getParent());
+        Path temp = Files.createTempFile(file.getParent(), file.getFileName().toString(), ".tmp");
+        try {
+            MAPPER.writeValue(temp.toFile(), new Index(List.of(), packs));
+            Files.move(temp, file, StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+        } finally {
+            Files.deleteIfExists(temp);
+        }
+        LOGGER.info("Stored %d blobs in %s".formatted(entries.size(), file));
+    }
+
+    /**
+     * @return all blobs of the index by ID, the map must not be modified
+     */
+    public Map<BlobId, IndexEntry> getIndex() {
+        return Collections.unmodifiableMap(indexCache);
+    }
+
+    public IndexEntry findBlob(String sha256) {
+        return findBlob(BlobId.parse(sha256));
+    }
+
+    public IndexEntry findBlob(BlobId sha256) {
+        INDEX_LOOKUPS.increment();
         IndexEntry indexEntry = indexCache.get(sha256);
-        LOGGER.fine("Found blob: " + indexEntry);
+        if (indexEntry == null) {
+            throw new IllegalStateException("Blob with id " + sha256 + " not found in index");
+        }
+        LOGGER.fine(() -> "Found blob: " + indexEntry);
         return indexEntry;
     }
 
@@ -213,44 +584,125 @@ public class Repository {
         return masterKeySpec != null;
     }
 
-    private byte[] decryptBytes(byte[] encryptedData, boolean uncompress) throws IOException, NoSuchPaddingException, NoSuchAlgorithmException, InvalidAlgorithmParameterException, InvalidKeyException, IllegalBlockSizeException, BadPaddingException {
-        IvParameterSpec iv = new IvParameterSpec(encryptedData, 0, 16);
-        Cipher cipher = Cipher.getInstance("AES/CTR/NoPadding");
-        cipher.init(Cipher.DECRYPT_MODE, masterKeySpec, iv);
-        byte[] decrypted = cipher.doFinal(encryptedData, 16, encryptedData.length - 16 - 16);
+    public RepositoryOptions getOptions() {
+        return options;
+    }
+
+    /**
+     * @return the bytes of compressed tree JSON in the second tier of the tree cache
+     */
+    public long getCompressedTreeCacheSize() {
+        return compressedTreeCache.size();
+    }
 
-        if (uncompress) {
-            ZstdCompressorInputStream decompressedStream = new ZstdCompressorInputStream(new ByteArrayInputStream(decrypted));
-            decrypted = decompressedStream.readAllBytes();
+    /**
+     * Decides according to the verification policy whether the MAC of the blob is checked on this read.
+     */
+    private boolean shouldVerify(BlobId blobId) {
+        boolean verify = switch (options.verification()) {
+            case ALWAYS -> true;
+            case FIRST_READ -> !verifiedBlobs.contains(blobId);
+            case SAMPLED -> ThreadLocalRandom.current().nextDouble() < options.sampleRate();
+        };
+        if (!verify) {
+            UNVERIFIED_BLOBS.get(options.verification()).increment();
         }
+        return verify;
+    }
 
-        Poly1305 mac = new Poly1305(AESEngine.newInstance());
-        CipherParameters macParams = new ParametersWithIV(this.macParams, iv.getIV());
-        mac.init(macParams);
-        mac.update(encryptedData, 16, encryptedData.length - 32);
-        byte[] calculatedMac = new byte[mac.getMacSize()];
-        mac.doFinal(calculatedMac, 0);
+    private void blobVerified(BlobId blobId) {
+        VERIFIED_BLOBS.get(options.verification()).increment();
+        if (options.verification() == RepositoryOptions.Verification.FIRST_READ) {
+            verifiedBlobs.add(blobId);
+        }
+    }
 
-        byte[] originalMac = new byte[16];
-        System.arraycopy(encryptedData, encryptedData.length - 16, originalMac, 0, 16);
+    private byte[] decryptBytes(byte[] encryptedData) throws IOException, NoSuchPaddingException, NoSuchAlgorithmException, InvalidAlgorithmParameterException, InvalidKeyException, IllegalBlockSizeException, BadPaddingException {
+        return decryptBytes(encryptedData, 0, encryptedData.length, true);
+    }
 
-        if (!Arrays.equals(originalMac, calculatedMac)) {
-            LOGGER.severe("MAC doesn't match");
-            throw new RuntimeException("MAC Doesn't match");
+    private byte[] decryptBlob(BlobId blobId, byte[] encryptedData, int offset, IndexEntry indexEntry) throws IOException, NoSuchPaddingException, NoSuchAlgorithmException, InvalidAlgorithmParameterException, InvalidKeyException, IllegalBlockSizeException, BadPaddingException {
+        return decryptBlob(blobId, encryptedData, offset, indexEntry, shouldVerify(blobId));
+    }
+
+    /**
+     * Decrypts (and decompresses) a blob from data which has been read already, e.g. a whole pack file. The MAC is
+     * always verified.
+     *
+     * @param offset where the blob starts in {@code encryptedData}
+     */
+    public byte[] decryptVerifiedBlob(BlobId blobId, byte[] encryptedData, int offset, IndexEntry indexEntry) throws IOException {
+        try {
+            return decryptBlob(blobId, encryptedData, offset, indexEntry, true);
+        } catch (GeneralSecurityException e) {
+            throw new IOException("Couldn't decrypt blob " + blobId, e);
+        }
+    }
+
+    private byte[] decryptBlob(BlobId blobId, byte[] encryptedData, int offset, IndexEntry indexEntry, boolean verify) throws IOException, NoSuchPaddingException, NoSuchAlgorithmException, InvalidAlgorithmParameterException, InvalidKeyException, IllegalBlockSizeException, BadPaddingException {
+        BlobDecryptEvent decryptEvent = new BlobDecryptEvent();
+        decryptEvent.begin();
+        byte[] plaintext = decryptBytes(encryptedData, offset, indexEntry.length(), verify);
+        if (decryptEvent.shouldCommit()) {
+            decryptEvent.blobId = blobId.toString();
+            decryptEvent.packId = indexEntry.packId();
+            decryptEvent.bytes = indexEntry.length();
+            decryptEvent.verified = verify;
+            decryptEvent.commit();
+        }
+        if (verify) {
+            blobVerified(blobId);
         }
 
+        // the MAC has been checked before anything is decompressed
+        if (indexEntry.isCompressed()) {
+            BlobDecompressEvent decompressEvent = new BlobDecompressEvent();
+            decompressEvent.begin();
+            int compressedLength = plaintext.length;
+            plaintext = ZstdDecompressor.decompress(plaintext, 0, plaintext.length, indexEntry.uncompressed_length());
+            BYTES_DECOMPRESSED.add(plaintext.length);
+            if (decompressEvent.shouldCommit()) {
+                decompressEvent.blobId = blobId.toString();
+                decompressEvent.compressedBytes = compressedLength;
+                decompressEvent.uncompressedBytes = plaintext.length;
+                decompressEvent.commit();
+            }
+        }
+        return plaintext;
+    }
+
+    /**
+     * @param verify whether the MAC is checked
+     */
+    private byte[] decryptBytes(byte[] encryptedData, int offset, int length, boolean verify) throws IOException, NoSuchPaddingException, NoSuchAlgorithmException, InvalidAlgorithmParameterException, InvalidKeyException, IllegalBlockSizeException, BadPaddingException {
+        byte[] decrypted = new byte[length - CryptoContext.IV_LENGTH - CryptoContext.MAC_LENGTH];
+        CryptoContext crypto = cryptoContexts.acquire();
+        try {
+            if (!crypto.decrypt(ByteBuffer.wrap(encryptedData, offset, length), ByteBuffer.wrap(decrypted), verify)) {
+                MAC_FAILURES.increment();
+                LOGGER.severe("MAC doesn't match");
+                throw new RuntimeException("MAC Doesn't match");
+            }
+        } finally {
+            cryptoContexts.release(crypto);
+        }
+
+        BYTES_DECRYPTED.add(decrypted.length);
         return decrypted;
     }
 
-    public <T> T readFile(Path file, Class<T> clazz) throws IOException, NoSuchPaddingException, NoSuchAlgorithmException, InvalidAlgorithmParameterException, InvalidKeyException, IllegalBlockSizeException, BadPaddingException {
-        byte[] encryptedData = Files.readAllBytes(path.resolve(file));
-        byte[] decrypted = decryptBytes(encryptedData, false);
+    public <T> T readFile(FileType type, String name, Class<T> clazz) throws IOException, NoSuchPaddingException, NoSuchAlgorithmException, InvalidAlgorithmParameterException, InvalidKeyException, IllegalBlockSizeException, BadPaddingException {
+        return parseFile(backend.read(type, name), clazz);
+    }
+
+    private <T> T parseFile(byte[] encryptedData, Class<T> clazz) throws IOException, NoSuchPaddingException, NoSuchAlgorithmException, InvalidAlgorithmParameterException, InvalidKeyException, IllegalBlockSizeException, BadPaddingException {
+        byte[] decrypted = decryptBytes(encryptedData);
         T json;
         if (decrypted[0] == '{' || decrypted[0] == '[') {
             json = MAPPER.readValue(decrypted, clazz);
         } else {
-            ZstdCompressorInputStream decompressedStream = new ZstdCompressorInputStream(new ByteArrayInputStream(decrypted, 1, decrypted.length - 1));
-            byte[] decompressed = decompressedStream.readAllBytes();
+            // first byte is the version of the format
+            byte[] decompressed = ZstdDecompressor.decompress(decrypted, 1, decrypted.length - 1);
             json = MAPPER.readValue(decompressed, clazz);
         }
 
@@ -259,48 +711,228 @@ public class Repository {
 
     public String getId() {
         try {
-            Config config = readFile(Path.of("config"), Config.class);
+            Config config = readFile(FileType.CONFIG, "config", Config.class);
             return config.id();
         } catch (Exception e) {
             throw new RuntimeException(e);
         }
     }
 
+    public Backend getBackend() {
+        return backend;
+    }
+
+    /**
+     * @throws UnsupportedOperationException if the repository is not in a local directory
+     */
     public Path getPath() {
-        return path;
+        if (backend instanceof LocalBackend localBackend) {
+            return localBackend.root();
+        }
+        throw new UnsupportedOperationException("Not a local repository: " + backend.location());
     }
 
     public List<SnapshotWithId> listSnapshots() throws IOException {
-        try (Stream<Path> snapshotStream = Files.list(path.resolve("snapshots"))) {
-            return snapshotStream.map(file -> {
-                try {
-                    Snapshot snapshot = readFile(path.relativize(file), Snapshot.class);
-                    return new SnapshotWithId(file.getFileName().toString(), snapshot);
-                } catch (Exception e) {
-                    throw new RuntimeException(e);
-                }
-            }).collect(Collectors.toList());
+        SnapshotListEvent event = new SnapshotListEvent();
+        event.begin();
+        List<SnapshotWithId> snapshots;
+        snapshots = backend.list(FileType.SNAPSHOT).stream().map(id -> {
+            try {
+                Snapshot snapshot = readFile(FileType.SNAPSHOT, id, Snapshot.class);
+                return new SnapshotWithId(id, snapshot);
+            } catch (Exception e) {
+                throw new RuntimeException(e);
+            }
+        }).collect(Collectors.toList());
+        if (event.shouldCommit()) {
+            event.snapshots = snapshots.size();
+            event.commit();
         }
+        return snapshots;
     }
 
-    private Map<String, Tree> treeCache = new LinkedHashMap<>() {
+    /** A decoded tree with its JSON, which is compressed into the second tier when the tree is evicted. */
+    private record CachedTree(Tree tree, byte[] json) {}
+
+    // accessed concurrently e.g. by the web server, so every access must be synchronized on the cache
+    private final Map<BlobId, CachedTree> treeCache = new LinkedHashMap<>() {
         @Override
-        protected boolean removeEldestEntry(Map.Entry<String, Tree> eldest) {
-            return size() > 50;
+        protected boolean removeEldestEntry(Map.Entry<BlobId, CachedTree> eldest) {
+            if (size() <= 50) {
+                return false;
+            }
+            compressedTreeCache.put(eldest.getKey(), eldest.getValue().json());
+            return true;
         }
     };
+    private final CompressedTreeCache compressedTreeCache;
+
     public Tree readTree(String tree) throws IOException, InvalidAlgorithmParameterException, NoSuchPaddingException, IllegalBlockSizeException, NoSuchAlgorithmException, BadPaddingException, InvalidKeyException {
-        if (treeCache.containsKey(tree)) {
-            return treeCache.get(tree);
+        return readTree(BlobId.parse(tree));
+    }
+
+    public Tree readTree(BlobId tree) throws IOException, InvalidAlgorithmParameterException, NoSuchPaddingException, IllegalBlockSizeException, NoSuchAlgorithmException, BadPaddingException, InvalidKeyException {
+        TreeLoadEvent event = new TreeLoadEvent();
+        event.begin();
+        synchronized (treeCache) {
+            CachedTree cachedTree = treeCache.get(tree);
+            if (cachedTree != null) {
+                TREE_CACHE_HITS.increment();
+                commitTreeLoad(event, tree, true, cachedTree.tree());
+                return cachedTree.tree();
+            }
         }
-        LOGGER.fine("Loading tree " + tree);
-        Tree loadedTree = MAPPER.readValue(readContentAsStream(tree), Tree.class);
-        treeCache.put(tree, loadedTree);
+        Tree loadedTree = readCompressedTree(tree);
+        if (loadedTree != null) {
+            commitTreeLoad(event, tree, true, loadedTree);
+            return loadedTree;
+        }
+        TREE_CACHE_MISSES.increment();
+        LOGGER.fine(() -> "Loading tree " + tree);
+        byte[] plaintext = readContent(tree);
+        loadedTree = parseTree(tree, plaintext);
+        synchronized (treeCache) {
+            treeCache.put(tree, new CachedTree(loadedTree, plaintext));
+        }
+        commitTreeLoad(event, tree, false, loadedTree);
         return loadedTree;
     }
 
+    /**
+     * Decodes a tree from the compressed tree cache and puts it into the tree cache. It stays in the compressed tree
+     * cache, so it isn't compressed again when it is evicted. Its ID was already verified when it was read from the
+     * repository.
+     *
+     * @return the tree, or {@code null} if it is not in the compressed tree cache
+     */
+    private Tree readCompressedTree(BlobId treeId) throws IOException {
+        byte[] json = compressedTreeCache.get(treeId);
+        if (json == null) {
+            return null;
+        }
+        COMPRESSED_TREE_CACHE_HITS.increment();
+        Tree tree = MAPPER.readValue(json, Tree.class);
+        synchronized (treeCache) {
+            treeCache.put(treeId, new CachedTree(tree, json));
+        }
+        return tree;
+    }
+
+    private static void commitTreeLoad(TreeLoadEvent event, BlobId treeId, boolean cacheHit, Tree tree) {
+        if (event.shouldCommit()) {
+            event.treeId = treeId.toString();
+            event.cacheHit = cacheHit;
+            event.nodes = tree.nodes().size();
+            event.commit();
+        }
+    }
+
+    /**
+     * Reads several trees at once, e.g. all subtrees of a directory. Trees that are not cached yet are read with
+     * {@link #readBlobs(Collection, BlobConsumer)}.
+     *
+     * @return the trees in the order of {@code treeIds}
+     */
+    public Map<BlobId, Tree> readTrees(Collection<BlobId> treeIds) throws IOException {
+        Map<BlobId, Tree> trees = new HashMap<>();
+        List<BlobId> missing = new ArrayList<>();
+        synchronized (treeCache) {
+            for (BlobId treeId : treeIds) {
+                TreeLoadEvent event = new TreeLoadEvent();
+                event.begin();
+                CachedTree cachedTree = treeCache.get(treeId);
+                if (cachedTree != null) {
+                    trees.put(treeId, cachedTree.tree());
+                    commitTreeLoad(event, treeId, true, cachedTree.tree());
+                } else {
+                    missing.add(treeId);
+                }
+            }
+        }
+        TREE_CACHE_HITS.add(trees.size());
+        for (Iterator<BlobId> it = missing.iterator(); it.hasNext(); ) {
+            BlobId treeId = it.next();
+            TreeLoadEvent event = new TreeLoadEvent();
+            event.begin();
+            Tree tree = readCompressedTree(treeId);
+            if (tree != null) {
+                trees.put(treeId, tree);
+                commitTreeLoad(event, treeId, true, tree);
+                it.remove();
+            }
+        }
+        TREE_CACHE_MISSES.add(missing.size());
+        readBlobs(missing, (id, plaintext) -> {
+            // the read and decryption of the blob are separate events
+            TreeLoadEvent event = new TreeLoadEvent();
+            event.begin();
+            Tree loadedTree = parseTree(id, plaintext);
+            commitTreeLoad(event, id, false, loadedTree);
+            trees.put(id, loadedTree);
+            synchronized (treeCache) {
+                treeCache.put(id, new CachedTree(loadedTree, plaintext));
+            }
+        });
+        Map<BlobId, Tree> ordered = new LinkedHashMap<>();
+        for (BlobId treeId : treeIds) {
+            ordered.put(treeId, trees.get(treeId));
+        }
+        return ordered;
+    }
+
+    /**
+     * Reads trees into the compressed tree cache only, e.g. to warm up the cache in the background. Unlike
+     * {@link #readTrees(Collection)}, the trees don't go into the first tier, where they would displace the trees
+     * of the directories which are actually browsed.
+     *
+     * @return the trees, cached or read
+     */
+    public Map<BlobId, Tree> warmTrees(Collection<BlobId> treeIds) throws IOException {
+        Map<BlobId, Tree> trees = new HashMap<>();
+        List<BlobId> missing = new ArrayList<>();
+        for (BlobId treeId : new LinkedHashSet<>(treeIds)) {
+            Tree tree;
+            synchronized (treeCache) {
+                CachedTree cachedTree = treeCache.get(treeId);
+                tree = cachedTree != null ? cachedTree.tree() : null;
+            }
+            if (tree == null) {
+                byte[] json = compressedTreeCache.get(treeId);
+                if (json != null) {
+                    tree = MAPPER.readValue(json, Tree.class);
+                }
+            }
+            if (tree != null) {
+                trees.put(treeId, tree);
+            } else {
+                missing.add(treeId);
+            }
+        }
+        readBlobs(missing, (id, plaintext) -> {
+            trees.put(id, parseTree(id, plaintext));
+            compressedTreeCache.put(id, plaintext);
+        });
+        return trees;
+    }
+
+    private Tree parseTree(BlobId treeId, byte[] plaintext) throws IOException {
+        if (options.verifyTreeIds()) {
+            byte[] hash;
+            try {
+                hash = MessageDigest.getInstance("SHA-256").digest(plaintext);
+            } catch (NoSuchAlgorithmException e) {
+                throw new IllegalStateException(e);
+            }
+            if (!BlobId.of(hash, 0).equals(treeId)) {
+                throw new IOException("Tree " + treeId + " doesn't match its ID");
+            }
+            TREE_IDS_VERIFIED.increment();
+        }
+        return MAPPER.readValue(plaintext, Tree.class);
+    }
+
     public List<String> listFiles(String snapshotId) throws InvalidAlgorithmParameterException, NoSuchPaddingException, IllegalBlockSizeException, IOException, NoSuchAlgorithmException, BadPaddingException, InvalidKeyException {
-        Snapshot snapshot = readFile(Path.of("snapshots", snapshotId), Snapshot.class);
+        Snapshot snapshot = readFile(FileType.SNAPSHOT, snapshotId, Snapshot.class);
         List<String> files = new ArrayList<>();
 
         Tree tree = readTree(snapshot.tree());
@@ -314,17 +946,23 @@ public class Repository {
             Path subPath = current.resolve(node.name());
             files.add(subPath.toString());
             if (node.type() == Tree.NodeType.DIR) {
-                Tree next = readTree(node.subtree());
+                Tree next = readTree(node.subtreeId());
                 listFilesInTree(next, files, subPath);
             }
         }
     }
 
     public List<Tree.Node> listFiles(String snapshotId, String path) throws InvalidAlgorithmParameterException, NoSuchPaddingException, IllegalBlockSizeException, IOException, NoSuchAlgorithmException, BadPaddingException, InvalidKeyException {
+        return listFiles(readFile(FileType.SNAPSHOT, snapshotId, Snapshot.class), path);
+    }
+
+    /**
+     * Like {@link #listFiles(String, String)}, for a snapshot which has been read already.
+     */
+    public List<Tree.Node> listFiles(Snapshot snapshot, String path) throws InvalidAlgorithmParameterException, NoSuchPaddingException, IllegalBlockSizeException, IOException, NoSuchAlgorithmException, BadPaddingException, InvalidKeyException {
         if (path.charAt(0) != '/') {
             throw new IllegalArgumentException("path must be absolute");
         }
-        Snapshot snapshot = readFile(Path.of("snapshots", snapshotId), Snapshot.class);
         Tree tree = readTree(snapshot.tree());
         String[] segments = path.substring(1).split("/");
         for (int i = 0; i < segments.length; i++) {
@@ -334,80 +972,236 @@ public class Repository {
                 if (dir.type() != Tree.NodeType.DIR) {
                     throw new IllegalArgumentException(name + " is not a directory");
                 }
-                tree = readTree(dir.subtree());
+                tree = readTree(dir.subtreeId());
             }
         }
         return tree.nodes();
     }
 
     public byte[] readContent(String sha256) throws IOException, InvalidAlgorithmParameterException, NoSuchPaddingException, IllegalBlockSizeException, NoSuchAlgorithmException, BadPaddingException, InvalidKeyException {
-        LOGGER.fine("Reading content of blob " + sha256);
+        return readContent(BlobId.parse(sha256));
+    }
+
+    public byte[] readContent(BlobId sha256) throws IOException, InvalidAlgorithmParameterException, NoSuchPaddingException, IllegalBlockSizeException, NoSuchAlgorithmException, BadPaddingException, InvalidKeyException {
+        LOGGER.fine(() -> "Reading content of blob " + sha256);
+        long start = System.nanoTime();
         IndexEntry indexEntry = findBlob(sha256);
 
-        Path packFile = path.resolve("data").resolve(indexEntry.packId().substring(0, 2)).resolve(indexEntry.packId());
-        try (RandomAccessFile raf = new RandomAccessFile(packFile.toFile(), "r")) {
-            raf.seek(indexEntry.offset());
-            byte[] encryptedBlob = new byte[indexEntry.length()];
-            int readBytes = raf.read(encryptedBlob);
-            if (readBytes != indexEntry.length()) {
-                throw new IllegalStateException("Couldn't enough data");
+        PackReadEvent event = new PackReadEvent();
+        event.begin();
+        byte[] encryptedBlob = backend.readRange(FileType.PACK, indexEntry.packId(), indexEntry.offset(), indexEntry.length());
+        BLOB_READS.increment();
+        BYTES_READ.add(encryptedBlob.length);
+        commitPackRead(event, indexEntry.packId(), indexEntry.offset(), encryptedBlob.length);
+
+        byte[] plaintext = decryptBlob(sha256, encryptedBlob, 0, indexEntry);
+        BLOB_READ_LATENCY.recordSince(start);
+        return plaintext;
+    }
+
+    /** Blobs of the same pack that are at most this many bytes apart are read with a single read. */
+    private static final int MAX_READ_GAP = 64 * 1024;
+    /** Upper limit for a single read when blobs are coalesced. */
+    private static final int MAX_READ_SIZE = 16 * 1024 * 1024;
+
+    @FunctionalInterface
+    public interface BlobConsumer {
+        void accept(BlobId id, byte[] plaintext) throws IOException;
+    }
+
+    /**
+     * Reads several blobs at once. See {@link #readBlobs(Collection, BlobConsumer)}.
+     *
+     * @return the plaintext of the blobs, in the order of {@code ids}
+     */
+    public Map<BlobId, byte[]> readBlobs(Collection<BlobId> ids) throws IOException {
+        Map<BlobId, byte[]> blobs = new HashMap<>();
+        readBlobs(ids, blobs::put);
+        Map<BlobId, byte[]> ordered = new LinkedHashMap<>();
+        for (BlobId id : ids) {
+            ordered.put(id, blobs.get(id));
+        }
+        return ordered;
+    }
+
+    /**
+     * Reads several blobs at once. The blobs are sorted by pack file and offset, blobs that are next to each other
+     * (or nearly) are read with one read and then decrypted one by one. Each blob is passed to the consumer once,
+     * in pack order, even if it is requested multiple times.
+     */
+    public void readBlobs(Collection<BlobId> ids, BlobConsumer consumer) throws IOException {
+        record Request(BlobId id, IndexEntry indexEntry) {
+            int end() {
+                return indexEntry.offset() + indexEntry.length();
+            }
+        }
+        Map<String, List<Request>> byPack = new TreeMap<>();
+        for (BlobId id : new LinkedHashSet<>(ids)) {
+            IndexEntry indexEntry = findBlob(id);
+            byPack.computeIfAbsent(indexEntry.packId(), k -> new ArrayList<>()).add(new Request(id, indexEntry));
+        }
+
+        record Read(Backend.Range range, List<Request> requests) {}
+        List<Read> reads = new ArrayList<>();
+        for (Map.Entry<String, List<Request>> pack : byPack.entrySet()) {
+            List<Request> requests = pack.getValue();
+            requests.sort(Comparator.comparingInt(r -> r.indexEntry().offset()));
+            int first = 0;
+            while (first < requests.size()) {
+                int start = requests.get(first).indexEntry().offset();
+                int end = requests.get(first).end();
+                int last = first + 1;
+                while (last < requests.size()
+                        && requests.get(last).indexEntry().offset() - end <= MAX_READ_GAP
+                        && requests.get(last).end() - start <= MAX_READ_SIZE) {
+                    end = Math.max(end, requests.get(last).end());
+                    last++;
+                }
+                reads.add(new Read(new Backend.Range(pack.getKey(), start, end - start), requests.subList(first, last)));
+                first = last;
             }
+        }
 
-            return decryptBytes(encryptedBlob, indexEntry.uncompressed_length() != 0);
+        // the reads of a batch are issued together, so that a remote backend can run them concurrently
+        int first = 0;
+        while (first < reads.size()) {
+            int last = first + 1;
+            long batchSize = reads.get(first).range().length();
+            while (last < reads.size() && batchSize + reads.get(last).range().length() <= MAX_READ_SIZE) {
+                batchSize += reads.get(last).range().length();
+                last++;
+            }
+            List<Read> batch = reads.subList(first, last);
+            LOGGER.fine(() -> "Reading %d ranges of pack files".formatted(batch.size()));
+            List<byte[]> packData = readPackRanges(batch.stream().map(Read::range).toList());
+            for (int i = 0; i < batch.size(); i++) {
+                Read read = batch.get(i);
+                BLOB_READS.add(read.requests().size());
+                for (Request request : read.requests()) {
+                    try {
+                        consumer.accept(request.id(), decryptBlob(request.id(), packData.get(i),
+                                (int) (request.indexEntry().offset() - read.range().offset()), request.indexEntry()));
+                    } catch (GeneralSecurityException e) {
+                        throw new IOException("Couldn't decrypt blob " + request.id(), e);
+                    }
+                }
+            }
+            first = last;
         }
     }
 
-    public InputStream readContentAsStream(String sha256) throws IOException, NoSuchPaddingException, NoSuchAlgorithmException, InvalidAlgorithmParameterException, InvalidKeyException {
-        LOGGER.fine("Reading content as stream of blob " + sha256);
-        IndexEntry indexEntry = findBlob(sha256);
+    private List<byte[]> readPackRanges(List<Backend.Range> ranges) throws IOException {
+        if (ranges.size() == 1) {
+            Backend.Range range = ranges.getFirst();
+            return List.of(readPackRange(range.name(), range.offset(), range.length()));
+        }
+        long start = System.nanoTime();
+        List<PackReadEvent> events = new ArrayList<>(ranges.size());
+        for (int i = 0; i < ranges.size(); i++) {
+            PackReadEvent event = new PackReadEvent();
+            event.begin();
+            events.add(event);
+        }
+        List<byte[]> data = backend.readRanges(FileType.PACK, ranges);
+        // the ranges are read concurrently, only the batch as a whole has a meaningful latency
+        PACK_READ_LATENCY.recordSince(start);
+        for (int i = 0; i < ranges.size(); i++) {
+            Backend.Range range = ranges.get(i);
+            BYTES_READ.add(range.length());
+            commitPackRead(events.get(i), range.name(), range.offset(), range.length());
+        }
+        return data;
+    }
 
-        Path packFile = path.resolve("data").resolve(indexEntry.packId().substring(0, 2)).resolve(indexEntry.packId());
+    /**
+     * Reads a raw (encrypted) range of a pack file, e.g. to read several blobs with one read.
+     */
+    public byte[] readPackRange(String packId, long offset, int length) throws IOException {
+        long start = System.nanoTime();
+        PackReadEvent event = new PackReadEvent();
+        event.begin();
+        byte[] data = backend.readRange(FileType.PACK, packId, offset, length);
+        BYTES_READ.add(length);
+        PACK_READ_LATENCY.recordSince(start);
+        commitPackRead(event, packId, offset, length);
+        return data;
+    }
 
-        InputStream encryptedStream = new InputStream() {
-            private RandomAccessFile raf;
-            private long bytesRead = 0;
-            private final long length = indexEntry.length();
+    private static void commitPackRead(PackReadEvent event, String packId, long offset, long length) {
+        if (event.shouldCommit()) {
+            event.packId = packId;
+            event.offset = offset;
+            event.bytes = length;
+            event.commit();
+        }
+    }
 
-            {
-                raf = new RandomAccessFile(packFile.toFile(), "r");
-                raf.seek(indexEntry.offset());
-            }
+    public InputStream readContentAsStream(String sha256) throws IOException, NoSuchPaddingException, NoSuchAlgorithmException, InvalidAlgorithmParameterException, InvalidKeyException {
+        return readContentAsStream(BlobId.parse(sha256));
+    }
+
+    public InputStream readContentAsStream(BlobId sha256) throws IOException, NoSuchPaddingException, NoSuchAlgorithmException, InvalidAlgorithmParameterException, InvalidKeyException {
+        LOGGER.fine(() -> "Reading content as stream of blob " + sha256);
+        IndexEntry indexEntry = findBlob(sha256);
+        BLOB_READS.increment();
 
+        InputStream encryptedStream = new FilterInputStream(backend.openStream(FileType.PACK, indexEntry.packId(),
+                indexEntry.offset(), indexEntry.length())) {
             @Override
             public int read() throws IOException {
-                if (bytesRead >= length) {
-                    return -1;
+                int read = super.read();
+                if (read != -1) {
+                    BYTES_READ.increment();
                 }
-                bytesRead++;
-                return raf.read();
+                return read;
             }
 
             @Override
-            public void close() throws IOException {
-                raf.close();
+            public int read(byte[] b, int off, int len) throws IOException {
+                int read = super.read(b, off, len);
+                if (read > 0) {
+                    BYTES_READ.add(read);
+                }
+                return read;
             }
         };
 
+        boolean verify = shouldVerify(sha256);
+        BlobDecryptEvent event = new BlobDecryptEvent();
+        event.begin();
         InputStream decryptedStream = new FilterInputStream(encryptedStream) {
-            private Poly1305 mac;
-            private Cipher cipher;
+            private CryptoContext crypto;
+            private boolean finished;
             private ByteBuffer encryptedBuffer = ByteBuffer.allocate(512);
             private ByteBuffer decryptedBuffer;
             private long bytesRead = 0;
             private final long encryptedLength = indexEntry.length() - /* MAC */ 16;
 
             {
-                byte[] ivData = new byte[16];
-                in.read(ivData);
-                IvParameterSpec iv = new IvParameterSpec(ivData);
-                cipher = Cipher.getInstance("AES/CTR/NoPadding");
-                cipher.init(Cipher.DECRYPT_MODE, masterKeySpec, iv);
+                byte[] ivData = new byte[CryptoContext.IV_LENGTH];
+                in.readNBytes(ivData, 0, ivData.length);
+                crypto = cryptoContexts.acquire();
+                crypto.init(ivData, 0);
 
-                decryptedBuffer = ByteBuffer.allocate(cipher.getOutputSize(encryptedBuffer.limit()));
+                decryptedBuffer = ByteBuffer.allocate(encryptedBuffer.capacity());
                 decryptedBuffer.position(decryptedBuffer.limit()); // no data in the buffer yet
+            }
 
-                mac = new Poly1305(AESEngine.newInstance());
-                mac.init(new ParametersWithIV(macParams, iv.getIV()));
+            @Override
+            public void close() throws IOException {
+                super.close();
+                if (crypto != null) {
+                    cryptoContexts.release(crypto);
+                    crypto = null;
+                    if (event.shouldCommit()) {
+                        event.blobId = sha256.toString();
+                        event.packId = indexEntry.packId();
+                        event.bytes = bytesRead;
+                        event.verified = verify && finished;
+                        event.streamed = true;
+                        event.commit();
+                    }
+                }
             }
 
 
@@ -417,16 +1211,21 @@ public class Repository {
                     return (int) decryptedBuffer.get() & 0xff;
                 }
 
+                if (finished) {
+                    return -1;
+                }
                 if (bytesRead + 16 == encryptedLength) {
-                    byte[] originalMac = new byte[16];
-                    in.read(originalMac);
-
-                    byte[] calculatedMac = new byte[mac.getMacSize()];
-                    mac.doFinal(calculatedMac, 0);
-
-                    if (!Arrays.equals(originalMac, calculatedMac)) {
-                        LOGGER.severe("MAC doesn't match");
-                        throw new RuntimeException("MAC Doesn't match");
+                    finished = true;
+                    if (verify) {
+                        byte[] originalMac = new byte[CryptoContext.MAC_LENGTH];
+                        in.readNBytes(originalMac, 0, originalMac.length);
+
+                        if (!crypto.verifyMac(originalMac, 0)) {
+                            MAC_FAILURES.increment();
+                            LOGGER.severe("MAC doesn't match");
+                            throw new RuntimeException("MAC Doesn't match");
+                        }
+                        blobVerified(sha256);
                     }
 
                     return -1;
@@ -440,16 +1239,14 @@ public class Repository {
                 encryptedBuffer.rewind();
                 encryptedBuffer.limit(read);
 
-                mac.update(encryptedBuffer.array(), 0, read);
+                if (verify) {
+                    crypto.updateMac(encryptedBuffer.array(), 0, read);
+                }
 
+                crypto.decryptChunk(encryptedBuffer.array(), 0, read, decryptedBuffer.array(), 0);
+                BYTES_DECRYPTED.add(read);
                 decryptedBuffer.rewind();
-                try {
-                    int out = cipher.update(encryptedBuffer, decryptedBuffer);
-                    decryptedBuffer.rewind();
-                    decryptedBuffer.limit(out);
-                } catch (ShortBufferException e) {
-                    throw new RuntimeException(e);
-                }
+                decryptedBuffer.limit(read);
 
                 if (decryptedBuffer.hasRemaining()) {
                     return decryptedBuffer.get() & 0xff;
@@ -481,8 +1278,7 @@ public class Repository {
             }
         };
 
-        boolean isCompressed = indexEntry.uncompressed_length() != 0;
-        if (isCompressed) {
+        if (indexEntry.isCompressed()) {
             InputStream decompressedStream = new FilterInputStream(new ZstdCompressorInputStream(decryptedStream)) {
                 private long bytesRead = 0;
                 private final long length = indexEntry.uncompressed_length();
@@ -493,6 +1289,7 @@ public class Repository {
                         return -1;
                     }
                     bytesRead++;
+                    BYTES_DECOMPRESSED.increment();
                     return super.read();
                 }
 
@@ -504,14 +1301,11 @@ public class Repository {
                     if (len == 0) {
                         return 0;
                     }
-                    if (length - bytesRead > len) {
-                        int read = super.read(b, off, len);
+                    int read = super.read(b, off, (int) Math.min(len, length - bytesRead));
+                    if (read > 0) {
                         bytesRead += read;
-                        return read;
+                        BYTES_DECOMPRESSED.add(read);
                     }
-                    int available = (int) (length - bytesRead);
-                    int read = super.read(b, off, available);
-                    bytesRead += read;
                     return read;
                 }
             };
@@ -528,8 +1322,8 @@ public class Repository {
 
             {
                 try {
-                    LOGGER.info("Read Node: " + node.name() + " has " + node.content().size() + " content blobs");
-                    currentChunk = readContentAsStream(node.content().get(currentChunkIndex));
+                    LOGGER.fine(() -> "Read Node: " + node.name() + " has " + node.contentCount() + " content blobs");
+                    currentChunk = readContentAsStream(node.contentId(currentChunkIndex));
                 } catch (NoSuchPaddingException | NoSuchAlgorithmException | InvalidAlgorithmParameterException |
                          InvalidKeyException e) {
                     throw new IOException(e);
@@ -539,11 +1333,11 @@ public class Repository {
             @Override
             public int read() throws IOException {
                 int read = currentChunk.read();
-                if (read == -1 && currentChunkIndex + 1 < node.content().size()) {
+                if (read == -1 && currentChunkIndex + 1 < node.contentCount()) {
                     currentChunk.close();
                     currentChunkIndex++;
                     try {
-                        currentChunk = readContentAsStream(node.content().get(currentChunkIndex));
+                        currentChunk = readContentAsStream(node.contentId(currentChunkIndex));
                     } catch (NoSuchPaddingException | NoSuchAlgorithmException | InvalidAlgorithmParameterException |
                              InvalidKeyException e) {
                         throw new IOException(e);
@@ -553,6 +1347,26 @@ public class Repository {
                 return read;
             }
 
+            @Override
+            public int read(byte[] b, int off, int len) throws IOException {
+                if (len == 0) {
+                    return 0;
+                }
+                int read = currentChunk.read(b, off, len);
+                while (read == -1 && currentChunkIndex + 1 < node.contentCount()) {
+                    currentChunk.close();
+                    currentChunkIndex++;
+                    try {
+                        currentChunk = readContentAsStream(node.contentId(currentChunkIndex));
+                    } catch (NoSuchPaddingException | NoSuchAlgorithmException | InvalidAlgorithmParameterException |
+                             InvalidKeyException e) {
+                        throw new IOException(e);
+                    }
+                    read = currentChunk.read(b, off, len);
+                }
+                return read;
+            }
+
             @Override
             public void close() throws IOException {
                 currentChunk.close();
@@ -0,0 +1,135 @@
+package org.adangel.resticbrowser;
+
+import java.nio.file.Path;
+import java.util.Locale;
+import java.util.Map;
+
+import org.adangel.resticbrowser.crypto.CryptoBackend;
+
+/**
+ * Options for {@link Repository}. They can be given in the env map of
+ * {@link java.nio.file.FileSystems#newFileSystem(java.nio.file.Path, Map)}, with the same keys as environment
+ * variables, see {@link #fromEnv(Map)}.
+ *
+ * @param verification when the MAC of a blob is verified. Repository files (config, index, snapshots) are always
+ *                     verified.
+ * @param sampleRate fraction of blob reads that are verified with {@link Verification#SAMPLED}, between 0 and 1
+ * @param verifyTreeIds whether the SHA-256 hash of each tree read is compared with its ID
+ * @param cryptoBackend the implementation of AES-CTR and Poly1305-AES used to decrypt blobs
+ * @param keyHint ID (or a prefix of it) of the key file to try first when opening the repository, may be
+ *                {@code null}
+ * @param indexMode where the blob index comes from
+ * @param rebuiltIndex local file in which the blobs found by scanning pack headers are stored, so that these packs
+ *                     aren't scanned again on the next open. The file is not encrypted. May be {@code null}.
+ * @param treeCacheSize bytes of compressed tree JSON kept in memory in addition to the decoded trees, 0 disables it
+ */
+public record RepositoryOptions(Verification verification, double sampleRate, boolean verifyTreeIds,
+                                CryptoBackend cryptoBackend, String keyHint, IndexMode indexMode,
+                                Path rebuiltIndex, long treeCacheSize) {
+    public static final String VERIFY = "RESTIC_BROWSER_VERIFY";
+    public static final String VERIFY_SAMPLE_RATE = "RESTIC_BROWSER_VERIFY_SAMPLE_RATE";
+    public static final String VERIFY_TREE_IDS = "RESTIC_BROWSER_VERIFY_TREE_IDS";
+    public static final String CRYPTO_BACKEND = "RESTIC_BROWSER_CRYPTO_BACKEND";
+    /** Same as restic's {@code --key-hint}. */
+    public static final String KEY_HINT = "RESTIC_KEY_HINT";
+    public static final String INDEX_MODE = "RESTIC_BROWSER_INDEX";
+    public static final String REBUILT_INDEX = "RESTIC_BROWSER_REBUILT_INDEX";
+    public static final String TREE_CACHE_SIZE = "RESTIC_BROWSER_TREE_CACHE_SIZE";
+    public static final long DEFAULT_TREE_CACHE_SIZE = 64L * 1024 * 1024;
+
+    public enum Verification {
+        /** Every blob read is verified. */
+        ALWAYS,
+        /** A blob is verified the first time it is read, then its ID is remembered. */
+        FIRST_READ,
+        /** Only a random fraction of the blob reads is verified. */
+        SAMPLED;
+
+        public static Verification parse(String value) {
+            return valueOf(value.trim().toUpperCase(Locale.ROOT).replace('-', '_'));
+        }
+    }
+
+    public enum IndexMode {
+        /** Only the index files of the repository are read. */
+        INDEX_FILES,
+        /**
+         * The index files are read, then the headers of the packs which are not in any index are scanned. Index
+         * entries of packs that don't exist anymore are dropped.
+         */
+        REPAIR,
+        /** The index files are ignored, the index is rebuilt from the headers of all packs. */
+        REBUILD;
+
+        public static IndexMode parse(String value) {
+            return valueOf(value.trim().toUpperCase(Locale.ROOT).replace('-', '_'));
+        }
+    }
+
+    public RepositoryOptions {
+        if (verification == null) {
+            throw new IllegalArgumentException("verification must not be null");
+        }
+        if (sampleRate < 0.0 || sampleRate > 1.0) {
+            throw new IllegalArgumentException("sampleRate must be between 0 and 1, but was " + sampleRate);
+        }
+        if (cryptoBackend == null) {
+            throw new IllegalArgumentException("cryptoBackend must not be null");
+        }
+        if (indexMode == null) {
+            throw new IllegalArgumentException("indexMode must not be null");
+        }
+        if (treeCacheSize < 0) {
+            throw new IllegalArgumentException("treeCacheSize must not be negative, but was " + treeCacheSize);
+        }
+    }
+
+    public static RepositoryOptions defaults() {
+        return new RepositoryOptions(Verification.ALWAYS, 0.1, false, CryptoBackend.JCA, null, IndexMode.INDEX_FILES, null,
+                DEFAULT_TREE_CACHE_SIZE);
+    }
+
+    public RepositoryOptions withKeyHint(String keyHint) {
+        return new RepositoryOptions(verification, sampleRate, verifyTreeIds, cryptoBackend, keyHint, indexMode, rebuiltIndex,
+                treeCacheSize);
+    }
+
+    public RepositoryOptions withIndexMode(IndexMode indexMode, Path rebuiltIndex) {
+        return new RepositoryOptions(verification, sampleRate, verifyTreeIds, cryptoBackend, keyHint, indexMode, rebuiltIndex,
+                treeCacheSize);
+    }
+
+    public RepositoryOptions withTreeCacheSize(long treeCacheSize) {
+        return new RepositoryOptions(verification, sampleRate, verifyTreeIds, cryptoBackend, keyHint, indexMode, rebuiltIndex,
+                treeCacheSize);
+    }
+
+    /**
+     * Reads the options from e.g. {@link System#getenv()}: {@value #VERIFY} ({@code always}, {@code first-read},
+     * {@code sampled}), {@value #VERIFY_SAMPLE_RATE} (e.g. {@code 0.05}), {@value #VERIFY_TREE_IDS}
+     * ({@code true}/{@code false}), {@value #CRYPTO_BACKEND} ({@code jca}, {@code bouncycastle}),
+     * {@value #KEY_HINT} (a key ID), {@value #INDEX_MODE} ({@code index-files}, {@code repair}, {@code rebuild}),
+     * {@value #REBUILT_INDEX} (a file) and {@value #TREE_CACHE_SIZE} (e.g. {@code 64m}, {@code 0}).
+     * Missing keys keep their default.
+     */
+    public static RepositoryOptions fromEnv(Map<String, ?> env) {
+        RepositoryOptions defaults = defaults();
+        Object verification = env.get(VERIFY);
+        Object sampleRate = env.get(VERIFY_SAMPLE_RATE);
+        Object verifyTreeIds = env.get(VERIFY_TREE_IDS);
+        Object cryptoBackend = env.get(CRYPTO_BACKEND);
+        Object keyHint = env.get(KEY_HINT);
+        Object indexMode = env.get(INDEX_MODE);
+        Object rebuiltIndex = env.get(REBUILT_INDEX);
+        Object treeCacheSize = env.get(TREE_CACHE_SIZE);
+        return new RepositoryOptions(
+                verification != null ? Verification.parse(verification.toString()) : defaults.verification(),
+                sampleRate != null ? Double.parseDouble(sampleRate.toString()) : defaults.sampleRate(),
+                verifyTreeIds != null ? Boolean.parseBoolean(verifyTreeIds.toString()) : defaults.verifyTreeIds(),
+                cryptoBackend != null ? CryptoBackend.byName(cryptoBackend.toString()) : defaults.cryptoBackend(),
+                keyHint != null && !keyHint.toString().isBlank() ? keyHint.toString().trim() : defaults.keyHint(),
+                indexMode != null ? IndexMode.parse(indexMode.toString()) : defaults.indexMode(),
+                rebuiltIndex != null && !rebuiltIndex.toString().isBlank() ? Path.of(rebuiltIndex.toString()) : defaults.rebuiltIndex(),
+                treeCacheSize != null ? Sizes.parseSize(treeCacheSize.toString()) : defaults.treeCacheSize());
+    }
+}
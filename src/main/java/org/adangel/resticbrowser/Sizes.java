@@ -0,0 +1,25 @@
+package org.adangel.resticbrowser;
+
+import java.util.Locale;
+
+/**
+ * Sizes in configuration values, e.g. the cache sizes.
+ */
+public final class Sizes {
+    private Sizes() {}
+
+    /** Parses a size like {@code 1g}, {@code 512m}, {@code 100k} or a number of bytes. */
+    public static long parseSize(String size) {
+        String value = size.trim().toLowerCase(Locale.ROOT);
+        long factor = switch (value.isEmpty() ? ' ' : value.charAt(value.length() - 1)) {
+            case 'k' -> 1024L;
+            case 'm' -> 1024L * 1024;
+            case 'g' -> 1024L * 1024 * 1024;
+            default -> 1L;
+        };
+        if (factor != 1) {
+            value = value.substring(0, value.length() - 1);
+        }
+        return Long.parseLong(value.trim()) * factor;
+    }
+}
@@ -0,0 +1,251 @@
+package org.adangel.resticbrowser;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+import org.adangel.resticbrowser.metrics.Counter;
+import org.adangel.resticbrowser.metrics.Metrics;
+import org.adangel.resticbrowser.models.BlobId;
+import org.adangel.resticbrowser.models.SnapshotWithId;
+import org.adangel.resticbrowser.models.Tree;
+
+/**
+ * Loads the top levels of the trees of the most recent snapshots into the tree cache in the background, so that the
+ * first directory listings of a fresh mount or web server don't have to read and decrypt the trees one level at a
+ * time. The trees only go into the compressed tree cache (see {@link RepositoryOptions#treeCacheSize()}), the trees
+ * of the directories which are browsed meanwhile stay in the first tier. The crawler stops when the compressed tree
+ * cache holds {@link Options#budget()} bytes.
+ *
+ * <p>The trees are read level by level, in batches with {@link Repository#warmTrees(java.util.Collection)}, on
+ * daemon threads with the lowest priority. Errors are only logged, the trees are read again when they are accessed.
+ */
+public class TreeWarmUp implements AutoCloseable {
+    private static final Logger LOGGER = Logger.getLogger(TreeWarmUp.class.getName());
+
+    private static final Counter TREES_LOADED = Metrics.global().counter("restic_warm_up_trees_total",
+            "Trees loaded into the tree cache by the warm-up crawler");
+
+    /** Trees read with one {@link Repository#warmTrees(java.util.Collection)}. */
+    private static final int TREE_BATCH_SIZE = 64;
+
+    /**
+     * @param enabled whether the crawler runs at all
+     * @param snapshots how many of the most recent (matching) snapshots are crawled
+     * @param depth how many levels of trees are loaded, 1 loads only the root trees of the snapshots
+     * @param host only snapshots of this host are crawled, may be {@code null}
+     * @param path only snapshots which contain this path are crawled, may be {@code null}
+     * @param budget the crawler stops when the compressed tree cache holds this many bytes, {@code -1} means half of
+     *               {@link RepositoryOptions#treeCacheSize()}, at most 90% of it
+     * @param threads the number of threads reading trees
+     */
+    public record Options(boolean enabled, int snapshots, int depth, String host, String path, long budget, int threads) {
+        public static final String WARM_UP = "RESTIC_BROWSER_WARM_UP";
+        public static final String SNAPSHOTS = "RESTIC_BROWSER_WARM_UP_SNAPSHOTS";
+        public static final String DEPTH = "RESTIC_BROWSER_WARM_UP_DEPTH";
+        public static final String HOST = "RESTIC_BROWSER_WARM_UP_HOST";
+        public static final String PATH = "RESTIC_BROWSER_WARM_UP_PATH";
+        public static final String BUDGET = "RESTIC_BROWSER_WARM_UP_BUDGET";
+        public static final String THREADS = "RESTIC_BROWSER_WARM_UP_THREADS";
+
+        public Options {
+            if (snapshots < 1 || depth < 1 || threads < 1) {
+                throw new IllegalArgumentException("snapshots, depth and threads must be positive");
+            }
+            if (budget < -1) {
+                throw new IllegalArgumentException("budget must not be negative, but was " + budget);
+            }
+        }
+
+        public static Options defaults() {
+            return new Options(false, 3, 3, null, null, -1, 2);
+        }
+
+        public Options withEnabled(boolean enabled) {
+            return new Options(enabled, snapshots, depth, host, path, budget, threads);
+        }
+
+        /**
+         * Reads the options from e.g. {@link System#getenv()}: {@value #WARM_UP} ({@code true}/{@code false}),
+         * {@value #SNAPSHOTS}, {@value #DEPTH}, {@value #HOST}, {@value #PATH}, {@value #BUDGET} (e.g. {@code 32m})
+         * and {@value #THREADS}. Missing keys keep their default.
+         */
+        public static Options fromEnv(Map<String, ?> env) {
+            Options defaults = defaults();
+            Object enabled = env.get(WARM_UP);
+            Object snapshots = env.get(SNAPSHOTS);
+            Object depth = env.get(DEPTH);
+            Object host = env.get(HOST);
+            Object path = env.get(PATH);
+            Object budget = env.get(BUDGET);
+            Object threads = env.get(THREADS);
+            return new Options(
+                    enabled != null ? Boolean.parseBoolean(enabled.toString()) : defaults.enabled(),
+                    snapshots != null ? Integer.parseInt(snapshots.toString().trim()) : defaults.snapshots(),
+                    depth != null ? Integer.parseInt(depth.toString().trim()) : defaults.depth(),
+                    host != null && !host.toString().isBlank() ? host.toString().trim() : defaults.host(),
+                    path != null && !path.toString().isBlank() ? path.toString().trim() : defaults.path(),
+                    budget != null ? Sizes.parseSize(budget.toString()) : defaults.budget(),
+                    threads != null ? Integer.parseInt(threads.toString().trim()) : defaults.threads());
+        }
+    }
+
+    private final Repository repository;
+    private final Options options;
+    private final long budget;
+    private final AtomicLong loadedTrees = new AtomicLong();
+    private ExecutorService coordinator;
+    private ExecutorService workers;
+    private CompletableFuture<Long> result;
+    private volatile boolean closed;
+
+    public TreeWarmUp(Repository repository, Options options) {
+        this.repository = repository;
+        this.options = options;
+        long treeCacheSize = repository.getOptions().treeCacheSize();
+        // the cache evicts before it is completely full
+        this.budget = options.budget() == -1 ? treeCacheSize / 2 : Math.min(options.budget(), treeCacheSize / 10 * 9);
+    }
+
+    /**
+     * Starts the crawler, if it is enabled. Returns immediately.
+     *
+     * @return completes with the number of trees which have been loaded, when the crawler is done
+     */
+    public synchronized CompletableFuture<Long> start() {
+        if (result != null) {
+            return result;
+        }
+        if (!options.enabled() || closed) {
+            result = CompletableFuture.completedFuture(0L);
+            return result;
+        }
+        if (budget == 0) {
+            LOGGER.info("Tree warm-up is disabled, the budget is 0 (is the compressed tree cache disabled?)");
+            result = CompletableFuture.completedFuture(0L);
+            return result;
+        }
+        ThreadFactory threadFactory = Thread.ofPlatform().name("restic-warm-up-", 0).daemon()
+                .priority(Thread.MIN_PRIORITY).factory();
+        coordinator = Executors.newSingleThreadExecutor(threadFactory);
+        workers = Executors.newFixedThreadPool(options.threads(), threadFactory);
+        result = CompletableFuture.supplyAsync(this::crawl, coordinator);
+        return result;
+    }
+
+    /**
+     * @return the trees loaded so far
+     */
+    public long loadedTrees() {
+        return loadedTrees.get();
+    }
+
+    /**
+     * Stops the crawler, trees which are being read are still put into the cache.
+     */
+    @Override
+    public synchronized void close() {
+        closed = true;
+        if (coordinator != null) {
+            coordinator.shutdownNow();
+            workers.shutdownNow();
+        }
+    }
+
+    private long crawl() {
+        long start = System.nanoTime();
+        try {
+            List<SnapshotWithId> snapshots = selectSnapshots(repository.listSnapshots());
+            LOGGER.info(() -> "Warming up the tree cache with %d levels of %d snapshots".formatted(options.depth(), snapshots.size()));
+            Set<BlobId> visited = ConcurrentHashMap.newKeySet();
+            List<BlobId> level = new ArrayList<>();
+            for (SnapshotWithId snapshot : snapshots) {
+                String tree = snapshot.snapshot().tree();
+                if (tree != null && visited.add(BlobId.parse(tree))) {
+                    level.add(BlobId.parse(tree));
+                }
+            }
+
+            for (int depth = 1; depth <= options.depth() && !level.isEmpty() && !stopped(); depth++) {
+                boolean lastLevel = depth == options.depth();
+                Set<BlobId> nextLevel = ConcurrentHashMap.newKeySet();
+                List<Future<?>> futures = new ArrayList<>();
+                for (int i = 0; i < level.size(); i += TREE_BATCH_SIZE) {
+                    List<BlobId> batch = level.subList(i, Math.min(level.size(), i + TREE_BATCH_SIZE));
+                    futures.add(workers.submit(() -> loadBatch(batch, lastLevel ? null : visited, nextLevel)));
+                }
+                for (Future<?> future : futures) {
+                    future.get();
+                }
+                level = new ArrayList<>(nextLevel);
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        } catch (IOException | ExecutionException | RuntimeException e) {
+            if (!closed) {
+                LOGGER.log(Level.WARNING, "Tree warm-up failed", e);
+            }
+        } finally {
+            workers.shutdown();
+            coordinator.shutdown();
+        }
+        LOGGER.info(() -> "Tree warm-up loaded %d trees in %d ms, compressed tree cache: %d bytes".formatted(
+                loadedTrees.get(), (System.nanoTime() - start) / 1_000_000, repository.getCompressedTreeCacheSize()));
+        return loadedTrees.get();
+    }
+
+    private List<SnapshotWithId> selectSnapshots(List<SnapshotWithId> snapshots) {
+        return snapshots.stream()
+                .filter(s -> options.host() == null || options.host().equals(s.snapshot().hostname()))
+                .filter(s -> options.path() == null || s.snapshot().paths() != null && s.snapshot().paths().contains(options.path()))
+                .sorted(Comparator.comparing((SnapshotWithId s) -> s.snapshot().time(),
+                        Comparator.nullsLast(Comparator.naturalOrder())).reversed())
+                .limit(options.snapshots())
+                .toList();
+    }
+
+    /**
+     * @param visited {@code null} on the last level, then the subtrees are not collected
+     */
+    private void loadBatch(List<BlobId> treeIds, Set<BlobId> visited, Set<BlobId> nextLevel) {
+        if (stopped()) {
+            return;
+        }
+        Map<BlobId, Tree> trees;
+        try {
+            trees = repository.warmTrees(treeIds);
+        } catch (IOException | RuntimeException e) {
+            LOGGER.log(Level.FINE, e, () -> "Couldn't warm up " + treeIds.size() + " trees");
+            return;
+        }
+        loadedTrees.addAndGet(trees.size());
+        TREES_LOADED.add(trees.size());
+        if (visited == null) {
+            return;
+        }
+        for (Tree tree : trees.values()) {
+            for (Tree.Node node : tree.nodes()) {
+                if (node.type() == Tree.NodeType.DIR && node.subtreeId() != null && visited.add(node.subtreeId())) {
+                    nextLevel.add(node.subtreeId());
+                }
+            }
+        }
+    }
+
+    private boolean stopped() {
+        return closed || Thread.currentThread().isInterrupted() || repository.getCompressedTreeCacheSize() >= budget;
+    }
+}
@@ -4,36 +4,100 @@ import java.awt.*;
 import java.io.IOException;
 import java.net.InetSocketAddress;
 import java.net.URI;
-import java.nio.file.FileSystem;
 import java.nio.file.Path;
+import java.util.HashMap;
+import java.util.List;
 import java.util.Map;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
 
+import org.adangel.resticbrowser.filesystem.ResticFileSystem;
 import org.adangel.resticbrowser.filesystem.ResticFileSystemProvider;
+import org.adangel.resticbrowser.metrics.Metrics;
+import org.adangel.resticbrowser.web.ArchiveHandler;
+import org.adangel.resticbrowser.web.BandwidthLimitFilter;
+import org.adangel.resticbrowser.web.ConcurrentStreamsFilter;
+import org.adangel.resticbrowser.web.JsonApiHandler;
+import org.adangel.resticbrowser.web.MetricsHandler;
 
+import com.sun.net.httpserver.Filter;
 import com.sun.net.httpserver.HttpServer;
 import com.sun.net.httpserver.SimpleFileServer;
 
 public class WebServer {
-    private final int port;
+    /**
+     * @param maxConcurrentStreams how many requests are served at the same time, further requests wait
+     *                             up to {@code streamTimeoutMillis} for a free slot
+     * @param streamTimeoutMillis how long a request waits for a free slot before it is rejected with 503
+     * @param maxBytesPerSecondPerClient bandwidth limit per client address, {@code 0} means unlimited
+     * @param openBrowser whether to open the system browser after the server has been started
+     */
+    public record Options(int maxConcurrentStreams, long streamTimeoutMillis, long maxBytesPerSecondPerClient,
+                          boolean openBrowser) {
+        public static Options defaults() {
+            return new Options(64, 30_000, 0, true);
+        }
+    }
+
+    private static final int BACKLOG = 256;
+    private static final String ARCHIVE_CONTEXT = "/archive";
+    private static final String API_CONTEXT = "/api";
+    private static final String METRICS_CONTEXT = "/metrics";
+
     private final HttpServer server;
+    private final ExecutorService executor;
+    private final Options options;
+    private final ResticFileSystem fileSystem;
+    private final TreeWarmUp warmUp;
+
     public WebServer(int port, Path resticRepoPath, char[] password) throws IOException {
+        this(port, resticRepoPath, password, Options.defaults());
+    }
+
+    public WebServer(int port, Path resticRepoPath, char[] password, Options options) throws IOException {
         System.out.println("Starting server at port " + port + "...");
 
         ResticFileSystemProvider provider = new ResticFileSystemProvider();
-        FileSystem fileSystem = provider.newFileSystem(resticRepoPath, Map.of("RESTIC_PASSWORD", new String(password)));
+        // repository options can be given as environment variables, see RepositoryOptions
+        Map<String, Object> env = new HashMap<>(System.getenv());
+        env.put("RESTIC_PASSWORD", new String(password));
+        fileSystem = provider.newFileSystem(resticRepoPath, env);
         Path resticRootPath = fileSystem.getPath("/");
 
-        this.port = port;
-        server = SimpleFileServer.createFileServer(new InetSocketAddress(port), resticRootPath, SimpleFileServer.OutputLevel.INFO);
+        this.options = options;
+        this.warmUp = new TreeWarmUp(fileSystem.getRepository(), TreeWarmUp.Options.fromEnv(env));
+        // a slow download must not block other requests, so every exchange gets its own (virtual) thread
+        executor = Executors.newVirtualThreadPerTaskExecutor();
+        List<Filter> filters = List.of(
+                SimpleFileServer.createOutputFilter(System.out, SimpleFileServer.OutputLevel.INFO),
+                new ConcurrentStreamsFilter(options.maxConcurrentStreams(), options.streamTimeoutMillis()),
+                new BandwidthLimitFilter(options.maxBytesPerSecondPerClient()));
+        server = HttpServer.create(new InetSocketAddress(port), BACKLOG);
+        server.createContext("/", SimpleFileServer.createFileHandler(resticRootPath)).getFilters().addAll(filters);
+        server.createContext(ARCHIVE_CONTEXT, new ArchiveHandler(ARCHIVE_CONTEXT, resticRootPath, executor)).getFilters().addAll(filters);
+        server.createContext(API_CONTEXT, new JsonApiHandler(API_CONTEXT, fileSystem.getRepository())).getFilters().addAll(filters);
+        // not limited, so that metrics can be scraped while all streams are busy
+        server.createContext(METRICS_CONTEXT, new MetricsHandler(Metrics.global()));
+        server.setExecutor(executor);
+    }
+
+    public int getPort() {
+        return server.getAddress().getPort();
     }
 
     public void start() throws IOException {
         server.start();
-        Desktop.getDesktop().browse(URI.create("http://localhost:" + port));
+        warmUp.start();
+        if (options.openBrowser()) {
+            Desktop.getDesktop().browse(URI.create("http://localhost:" + getPort()));
+        }
     }
 
     public void stop() {
+        warmUp.close();
         server.stop(1);
+        executor.shutdownNow();
+        fileSystem.close();
     }
 
     public static void main(String[] args) throws IOException {
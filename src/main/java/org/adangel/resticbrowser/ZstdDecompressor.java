@@ -0,0 +1,88 @@
+package org.adangel.resticbrowser;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+
+import org.apache.commons.compress.compressors.zstandard.ZstdCompressorInputStream;
+
+import com.github.luben.zstd.Zstd;
+import com.github.luben.zstd.ZstdDecompressCtx;
+import com.github.luben.zstd.ZstdException;
+
+/**
+ * Decompresses zstd data in one call into a buffer of the right size.
+ *
+ * <p>Decompression contexts are expensive to create, so they are reused. They are kept in a small pool instead of
+ * a thread local, as the web server uses a new virtual thread for every request.
+ */
+public final class ZstdDecompressor {
+    private static final BlockingQueue<ZstdDecompressCtx> CONTEXTS = new ArrayBlockingQueue<>(Runtime.getRuntime().availableProcessors() * 2);
+
+    private ZstdDecompressor() {}
+
+    /**
+     * Decompresses data of which the size after decompression is known, e.g. from the index.
+     */
+    public static byte[] decompress(byte[] data, int offset, int length, int uncompressedLength) throws IOException {
+        byte[] result = new byte[uncompressedLength];
+        ZstdDecompressCtx context = acquire();
+        try {
+            int size = context.decompressByteArray(result, 0, result.length, data, offset, length);
+            if (size != uncompressedLength) {
+                throw new IOException("Expected %d bytes after decompression, but got %d".formatted(uncompressedLength, size));
+            }
+        } catch (ZstdException e) {
+            throw new IOException("Couldn't decompress data", e);
+        } finally {
+            release(context);
+        }
+        return result;
+    }
+
+    /**
+     * Decompresses data of unknown size. The size is taken from the frame header, if it is not there, a stream is used.
+     */
+    public static byte[] decompress(byte[] data, int offset, int length) throws IOException {
+        long contentSize = Zstd.getFrameContentSize(data, offset, length);
+        if (contentSize >= 0 && contentSize <= Integer.MAX_VALUE - 8) {
+            try {
+                return decompress(data, offset, length, (int) contentSize);
+            } catch (IOException e) {
+                // e.g. multiple frames, the first frame header only contains the size of the first frame
+            }
+        }
+        try (ZstdCompressorInputStream stream = new ZstdCompressorInputStream(new ByteArrayInputStream(data, offset, length))) {
+            return stream.readAllBytes();
+        }
+    }
+
+    /**
+     * Decompresses from a direct buffer into a direct buffer. The position of {@code target} is advanced by the number
+     * of decompressed bytes.
+     */
+    public static void decompress(ByteBuffer source, ByteBuffer target) throws IOException {
+        ZstdDecompressCtx context = acquire();
+        try {
+            context.decompress(target, source);
+        } catch (ZstdException e) {
+            throw new IOException("Couldn't decompress data", e);
+        } finally {
+            release(context);
+        }
+    }
+
+    private static ZstdDecompressCtx acquire() {
+        ZstdDecompressCtx context = CONTEXTS.poll();
+        return context != null ? context : new ZstdDecompressCtx();
+    }
+
+    private static void release(ZstdDecompressCtx context) {
+        context.reset();
+        if (!CONTEXTS.offer(context)) {
+            context.close();
+        }
+    }
+}
@@ -0,0 +1,88 @@
+package org.adangel.resticbrowser.backend;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.URI;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Storage of a restic repository. A backend only transports (encrypted) bytes, it doesn't know anything about
+ * the content of the files.
+ */
+public interface Backend extends Closeable {
+    /** Prefix of repository locations which are served by a restic rest-server, same as for restic. */
+    String REST_PREFIX = "rest:";
+
+    /**
+     * A range of a file.
+     */
+    record Range(String name, long offset, int length) {}
+
+    /**
+     * @return a human readable description of where the repository is, e.g. a path or URL (without password)
+     */
+    String location();
+
+    /**
+     * @return the names of all files of the given type, sorted
+     */
+    List<String> list(FileType type) throws IOException;
+
+    /**
+     * @return the size of the file in bytes
+     * @throws java.nio.file.NoSuchFileException if the file doesn't exist
+     */
+    default long size(FileType type, String name) throws IOException {
+        return read(type, name).length;
+    }
+
+    /**
+     * Reads a whole file.
+     *
+     * @throws java.nio.file.NoSuchFileException if the file doesn't exist
+     */
+    byte[] read(FileType type, String name) throws IOException;
+
+    /**
+     * Reads exactly {@code length} bytes of a file, starting at {@code offset}.
+     *
+     * @throws java.io.EOFException if the file is shorter
+     */
+    byte[] readRange(FileType type, String name, long offset, int length) throws IOException;
+
+    /**
+     * Reads several ranges. Backends with a high latency issue the reads concurrently.
+     *
+     * @return the data of the ranges, in the order of {@code ranges}
+     */
+    default List<byte[]> readRanges(FileType type, List<Range> ranges) throws IOException {
+        List<byte[]> result = new ArrayList<>(ranges.size());
+        for (Range range : ranges) {
+            result.add(readRange(type, range.name(), range.offset(), range.length()));
+        }
+        return result;
+    }
+
+    /**
+     * Opens a stream over {@code length} bytes of a file, starting at {@code offset}, e.g. to read large blobs
+     * without holding them in memory.
+     */
+    InputStream openStream(FileType type, String name, long offset, long length) throws IOException;
+
+    @Override
+    default void close() throws IOException {
+    }
+
+    /**
+     * @param location a local path or {@code rest:http(s)://[user:password@]host:port/path/}
+     */
+    static Backend open(String location) {
+        if (location.startsWith(REST_PREFIX)) {
+            return new RestBackend(URI.create(location.substring(REST_PREFIX.length())));
+        }
+        return new LocalBackend(Path.of(location));
+    }
+}
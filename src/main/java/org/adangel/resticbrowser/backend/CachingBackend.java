@@ -0,0 +1,388 @@
+package org.adangel.resticbrowser.backend;
+
+import java.io.ByteArrayInputStream;
+import java.io.EOFException;
+import java.io.FileNotFoundException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.nio.file.attribute.FileTime;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+import java.util.stream.Stream;
+
+import org.adangel.resticbrowser.Sizes;
+import org.adangel.resticbrowser.metrics.Counter;
+import org.adangel.resticbrowser.metrics.Metrics;
+
+/**
+ * A persistent cache in a local directory in front of a (remote) backend, similar to restic's cache. Index and
+ * snapshot files are cached as a whole. Packs which contain trees (see {@link #setCachedPacks(Set)}) are downloaded
+ * as a whole on the first read and ranges are then served from the cached pack; all other packs, and packs which
+ * are too big for the cache, are read from the delegate.
+ * <p>
+ * The files are stored with the same layout as a local repository. They are content-addressed and never change, so
+ * they are only removed when they are no longer listed by the delegate, or to stay within the size budget (least
+ * recently used first). Files are written to a temporary file and moved into place, a crash never leaves a partial
+ * file behind.
+ */
+public class CachingBackend implements Backend {
+    private static final Logger LOGGER = Logger.getLogger(CachingBackend.class.getName());
+
+    /** Base directory of the caches, same as for restic. */
+    public static final String CACHE_DIR = "RESTIC_CACHE_DIR";
+    /** Size budget of the cache per repository, in bytes, or with a suffix k, m, g. 0 disables the cache. */
+    public static final String CACHE_SIZE = "RESTIC_BROWSER_CACHE_SIZE";
+    public static final long DEFAULT_MAX_SIZE = 1024L * 1024 * 1024;
+
+    private static final String TEMP_SUFFIX = ".tmp";
+    /** The modification time of a cached file, which orders the files after a restart, is updated at most this often. */
+    private static final long TOUCH_INTERVAL_MILLIS = 60_000;
+
+    private static final Map<FileType, Counter> HITS = new LinkedHashMap<>();
+    private static final Map<FileType, Counter> MISSES = new LinkedHashMap<>();
+    static {
+        for (FileType type : List.of(FileType.INDEX, FileType.SNAPSHOT, FileType.PACK)) {
+            String label = type.name().toLowerCase(Locale.ROOT);
+            HITS.put(type, Metrics.global().counter("restic_cache_hits_total", "Files and ranges served from the local cache", "type", label));
+            MISSES.put(type, Metrics.global().counter("restic_cache_misses_total", "Files fetched into the local cache", "type", label));
+        }
+    }
+
+    private final Backend delegate;
+    private final LocalBackend cache;
+    private final long maxSize;
+    private volatile Set<String> cachedPacks = Set.of();
+    // packs which are never stored, because they are larger than a quarter of the budget
+    private final Set<String> oversizedPacks = ConcurrentHashMap.newKeySet();
+    // when the modification time of the cached files has been updated the last time
+    private final Map<Path, Long> touched = new ConcurrentHashMap<>();
+
+    // the cached files with their size, in the order of their last access
+    private final LinkedHashMap<Path, Long> entries = new LinkedHashMap<>(16, 0.75f, true);
+    private long size;
+
+    /**
+     * @param directory the cache directory of this repository, created if necessary
+     * @param maxSize the size budget in bytes
+     */
+    public CachingBackend(Backend delegate, Path directory, long maxSize) throws IOException {
+        this.delegate = delegate;
+        this.cache = new LocalBackend(directory);
+        this.maxSize = maxSize;
+        Files.createDirectories(directory);
+        scan(directory);
+    }
+
+    /**
+     * Wraps the backend with a cache in {@code $RESTIC_CACHE_DIR/restic-browser/<hash of the location>}, by default
+     * {@code ~/.cache}, unless the cache is disabled with {@value #CACHE_SIZE}{@code =0}.
+     */
+    public static Backend wrap(Backend backend, Map<String, ?> env) throws IOException {
+        Object size = env.get(CACHE_SIZE);
+        long maxSize = size != null ? Sizes.parseSize(size.toString()) : DEFAULT_MAX_SIZE;
+        if (maxSize == 0) {
+            return backend;
+        }
+        Object cacheDir = env.get(CACHE_DIR);
+        Path base = cacheDir != null
+                ? Path.of(cacheDir.toString())
+                : Path.of(System.getProperty("user.home"), ".cache");
+        String name = Integer.toHexString(backend.location().hashCode());
+        return new CachingBackend(backend, base.resolve("restic-browser").resolve(name), maxSize);
+    }
+
+    private void scan(Path directory) throws IOException {
+        record CachedFile(Path path, long size, FileTime lastModified) {}
+        List<CachedFile> files = new ArrayList<>();
+        try (Stream<Path> stream = Files.walk(directory)) {
+            for (Path file : (Iterable<Path>) stream::iterator) {
+                if (file.getFileName().toString().endsWith(TEMP_SUFFIX)) {
+                    // left over by a crash
+                    Files.deleteIfExists(file);
+                } else if (Files.isRegularFile(file)) {
+                    BasicFileAttributes attributes = Files.readAttributes(file, BasicFileAttributes.class);
+                    files.add(new CachedFile(file, attributes.size(), attributes.lastModifiedTime()));
+                }
+            }
+        }
+        files.sort(Comparator.comparing(CachedFile::lastModified));
+        synchronized (entries) {
+            for (CachedFile file : files) {
+                entries.put(file.path(), file.size());
+                size += file.size();
+            }
+        }
+        evict();
+    }
+
+    /**
+     * Sets the packs which should be cached, usually the packs with tree blobs. Cached packs which are not in the set
+     * anymore are removed.
+     */
+    public void setCachedPacks(Set<String> packIds) {
+        cachedPacks = Set.copyOf(packIds);
+        Path packDirectory = cache.root().resolve(FileType.PACK.directory());
+        List<Path> removed = new ArrayList<>();
+        synchronized (entries) {
+            for (Path file : entries.keySet()) {
+                if (file.startsWith(packDirectory) && !cachedPacks.contains(file.getFileName().toString())) {
+                    removed.add(file);
+                }
+            }
+        }
+        removed.forEach(this::remove);
+    }
+
+    public long size() {
+        synchronized (entries) {
+            return size;
+        }
+    }
+
+    private boolean isCached(FileType type, String name) {
+        return switch (type) {
+            case INDEX, SNAPSHOT -> true;
+            case PACK -> cachedPacks.contains(name);
+            default -> false;
+        };
+    }
+
+    @Override
+    public String location() {
+        return delegate.location();
+    }
+
+    /**
+     * Lists the files of the delegate. Cached files which are not listed anymore (e.g. after a prune) are removed.
+     */
+    @Override
+    public List<String> list(FileType type) throws IOException {
+        List<String> names = delegate.list(type);
+        if (type == FileType.INDEX || type == FileType.SNAPSHOT) {
+            Set<String> existing = new HashSet<>(names);
+            for (String cached : cache.list(type)) {
+                if (!existing.contains(cached)) {
+                    LOGGER.fine(() -> "Removing " + type + " " + cached + " from the cache, it doesn't exist anymore");
+                    remove(cache.resolve(type, cached));
+                }
+            }
+        }
+        return names;
+    }
+
+    @Override
+    public long size(FileType type, String name) throws IOException {
+        Path file = cache.resolve(type, name);
+        synchronized (entries) {
+            Long size = entries.get(file);
+            if (size != null) {
+                return size;
+            }
+        }
+        return delegate.size(type, name);
+    }
+
+    @Override
+    public byte[] read(FileType type, String name) throws IOException {
+        if (!isCached(type, name)) {
+            return delegate.read(type, name);
+        }
+        byte[] data = readCached(type, name);
+        if (data == null) {
+            MISSES.get(type).increment();
+            data = delegate.read(type, name);
+            store(type, name, data);
+        }
+        return data;
+    }
+
+    private byte[] readCached(FileType type, String name) throws IOException {
+        Path file = cache.resolve(type, name);
+        if (!isStored(file)) {
+            return null;
+        }
+        try {
+            byte[] data = Files.readAllBytes(file);
+            HITS.get(type).increment();
+            touch(file);
+            return data;
+        } catch (NoSuchFileException e) {
+            // removed by someone else
+            remove(file);
+            return null;
+        }
+    }
+
+    private boolean isStored(Path file) {
+        synchronized (entries) {
+            // also marks the file as recently used
+            return entries.get(file) != null;
+        }
+    }
+
+    /**
+     * Updates the modification time of a cached file, so that the files are evicted in the order of their last
+     * access after a restart, too. This costs a system call, so it is done at most every
+     * {@value #TOUCH_INTERVAL_MILLIS} ms per file.
+     */
+    private void touch(Path file) throws IOException {
+        long now = System.currentTimeMillis();
+        Long previous = touched.get(file);
+        if (previous == null || now - previous >= TOUCH_INTERVAL_MILLIS) {
+            touched.put(file, now);
+            Files.setLastModifiedTime(file, FileTime.fromMillis(now));
+        }
+    }
+
+    @Override
+    public byte[] readRange(FileType type, String name, long offset, int length) throws IOException {
+        if (!isCached(type, name) || oversizedPacks.contains(name)) {
+            return delegate.readRange(type, name, offset, length);
+        }
+        Path file = cache.resolve(type, name);
+        if (isStored(file)) {
+            try {
+                byte[] data = cache.readRange(type, name, offset, length);
+                HITS.get(type).increment();
+                touch(file);
+                return data;
+            } catch (FileNotFoundException | NoSuchFileException e) {
+                // removed by someone else
+                remove(file);
+            }
+        }
+        if (type == FileType.PACK && !fitsIntoCache(delegate.size(type, name))) {
+            LOGGER.fine(() -> "Pack " + name + " is too big for the cache, reading it from the backend");
+            oversizedPacks.add(name);
+            return delegate.readRange(type, name, offset, length);
+        }
+        byte[] data = read(type, name);
+        if (offset + length > data.length) {
+            throw new EOFException("Only %d bytes in %s %s".formatted(data.length, type, name));
+        }
+        return Arrays.copyOfRange(data, (int) offset, (int) offset + length);
+    }
+
+    @Override
+    public List<byte[]> readRanges(FileType type, List<Range> ranges) throws IOException {
+        // decided once, the cached packs might change while the ranges are read
+        boolean[] cached = new boolean[ranges.size()];
+        List<Range> uncached = new ArrayList<>();
+        for (int i = 0; i < ranges.size(); i++) {
+            cached[i] = isCached(type, ranges.get(i).name());
+            if (!cached[i]) {
+                uncached.add(ranges.get(i));
+            }
+        }
+        List<byte[]> fetched = uncached.isEmpty() ? List.of() : delegate.readRanges(type, uncached);
+        List<byte[]> result = new ArrayList<>(ranges.size());
+        int next = 0;
+        for (int i = 0; i < ranges.size(); i++) {
+            Range range = ranges.get(i);
+            if (cached[i]) {
+                result.add(readRange(type, range.name(), range.offset(), range.length()));
+            } else {
+                result.add(fetched.get(next++));
+            }
+        }
+        return result;
+    }
+
+    @Override
+    public InputStream openStream(FileType type, String name, long offset, long length) throws IOException {
+        if (!isCached(type, name)) {
+            return delegate.openStream(type, name, offset, length);
+        }
+        return new ByteArrayInputStream(readRange(type, name, offset, Math.toIntExact(length)));
+    }
+
+    private void store(FileType type, String name, byte[] data) {
+        if (!fitsIntoCache(data.length)) {
+            return;
+        }
+        Path file = cache.resolve(type, name);
+        try {
+            Files.createDirectories(file.getParent());
+            Path temp = Files.createTempFile(file.getParent(), name, TEMP_SUFFIX);
+            try {
+                Files.write(temp, data);
+                try {
+                    Files.move(temp, file, StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+                } catch (AtomicMoveNotSupportedException e) {
+                    Files.move(temp, file, StandardCopyOption.REPLACE_EXISTING);
+                }
+                touched.put(file, System.currentTimeMillis());
+            } finally {
+                Files.deleteIfExists(temp);
+            }
+        } catch (IOException e) {
+            // the cache is only an optimization
+            LOGGER.log(Level.WARNING, "Couldn't store " + file + " in the cache", e);
+            return;
+        }
+        synchronized (entries) {
+            Long previous = entries.put(file, (long) data.length);
+            size += data.length - (previous != null ? previous : 0);
+        }
+        evict();
+    }
+
+    private boolean fitsIntoCache(long fileSize) {
+        // a file larger than a quarter of the budget would evict too much
+        return fileSize <= maxSize / 4;
+    }
+
+    private void evict() {
+        List<Path> evicted = new ArrayList<>();
+        synchronized (entries) {
+            long remaining = size;
+            for (Map.Entry<Path, Long> entry : entries.entrySet()) {
+                if (remaining <= maxSize) {
+                    break;
+                }
+                evicted.add(entry.getKey());
+                remaining -= entry.getValue();
+            }
+        }
+        if (!evicted.isEmpty()) {
+            LOGGER.fine(() -> "Evicting %d files from the cache".formatted(evicted.size()));
+            evicted.forEach(this::remove);
+        }
+    }
+
+    private void remove(Path file) {
+        synchronized (entries) {
+            Long removed = entries.remove(file);
+            if (removed != null) {
+                size -= removed;
+            }
+        }
+        touched.remove(file);
+        try {
+            Files.deleteIfExists(file);
+        } catch (IOException e) {
+            LOGGER.log(Level.WARNING, "Couldn't remove " + file + " from the cache", e);
+        }
+    }
+
+    @Override
+    public void close() throws IOException {
+        delegate.close();
+    }
+}
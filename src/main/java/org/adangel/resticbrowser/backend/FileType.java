@@ -0,0 +1,26 @@
+package org.adangel.resticbrowser.backend;
+
+/**
+ * The kinds of files in a restic repository. The directory names are the same for the local layout and the
+ * REST API.
+ */
+public enum FileType {
+    /** The single {@code config} file, its name is ignored. */
+    CONFIG("config"),
+    KEY("keys"),
+    SNAPSHOT("snapshots"),
+    INDEX("index"),
+    /** Pack files, locally stored in sub directories named after the first two characters of the pack ID. */
+    PACK("data"),
+    LOCK("locks");
+
+    private final String directory;
+
+    FileType(String directory) {
+        this.directory = directory;
+    }
+
+    public String directory() {
+        return directory;
+    }
+}
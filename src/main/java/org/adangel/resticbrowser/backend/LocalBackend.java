@@ -0,0 +1,110 @@
+package org.adangel.resticbrowser.backend;
+
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.RandomAccessFile;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.List;
+import java.util.stream.Stream;
+
+/**
+ * A repository in a local directory (or a mounted network file system).
+ */
+public class LocalBackend implements Backend {
+    private final Path root;
+
+    public LocalBackend(Path root) {
+        this.root = root;
+    }
+
+    public Path root() {
+        return root;
+    }
+
+    @Override
+    public String location() {
+        return root.toString();
+    }
+
+    Path resolve(FileType type, String name) {
+        return switch (type) {
+            case CONFIG -> root.resolve(type.directory());
+            case PACK -> root.resolve(type.directory()).resolve(name.substring(0, 2)).resolve(name);
+            default -> root.resolve(type.directory()).resolve(name);
+        };
+    }
+
+    @Override
+    public List<String> list(FileType type) throws IOException {
+        Path directory = root.resolve(type.directory());
+        if (type == FileType.CONFIG || !Files.isDirectory(directory)) {
+            return List.of();
+        }
+        // pack files are one level deeper
+        int depth = type == FileType.PACK ? 2 : 1;
+        try (Stream<Path> files = Files.walk(directory, depth)) {
+            return files.filter(Files::isRegularFile).map(file -> file.getFileName().toString()).sorted().toList();
+        }
+    }
+
+    @Override
+    public long size(FileType type, String name) throws IOException {
+        return Files.size(resolve(type, name));
+    }
+
+    @Override
+    public byte[] read(FileType type, String name) throws IOException {
+        return Files.readAllBytes(resolve(type, name));
+    }
+
+    @Override
+    public byte[] readRange(FileType type, String name, long offset, int length) throws IOException {
+        try (RandomAccessFile raf = new RandomAccessFile(resolve(type, name).toFile(), "r")) {
+            raf.seek(offset);
+            byte[] data = new byte[length];
+            raf.readFully(data);
+            return data;
+        }
+    }
+
+    @Override
+    public InputStream openStream(FileType type, String name, long offset, long length) throws IOException {
+        RandomAccessFile raf = new RandomAccessFile(resolve(type, name).toFile(), "r");
+        raf.seek(offset);
+        return new InputStream() {
+            private long bytesRead = 0;
+
+            @Override
+            public int read() throws IOException {
+                if (bytesRead >= length) {
+                    return -1;
+                }
+                int b = raf.read();
+                if (b == -1) {
+                    throw new EOFException();
+                }
+                bytesRead++;
+                return b;
+            }
+
+            @Override
+            public int read(byte[] b, int off, int len) throws IOException {
+                if (bytesRead >= length) {
+                    return -1;
+                }
+                int read = raf.read(b, off, (int) Math.min(len, length - bytesRead));
+                if (read > 0) {
+                    bytesRead += read;
+                }
+                return read;
+            }
+
+            @Override
+            public void close() throws IOException {
+                raf.close();
+            }
+        };
+    }
+}
@@ -0,0 +1,275 @@
+package org.adangel.resticbrowser.backend;
+
+import java.io.EOFException;
+import java.io.FilterInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InterruptedIOException;
+import java.io.UncheckedIOException;
+import java.net.URI;
+import java.net.URISyntaxException;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.NoSuchFileException;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Base64;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Semaphore;
+import java.util.logging.Logger;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+
+/**
+ * A repository served by a restic <a href="https://github.com/restic/rest-server">rest-server</a>, see the
+ * <a href="https://restic.readthedocs.io/en/stable/100_references.html#rest-backend">REST backend API</a>.
+ * Only reading is supported.
+ * <p>
+ * Ranges are read with HTTP range requests. The {@link HttpClient} keeps the connections open and reuses them;
+ * with HTTP/2 (rest-server with TLS) all requests are multiplexed over a single connection. Instead of HTTP/1.1
+ * pipelining, which the JDK client doesn't support, {@link #readRanges(FileType, List)} keeps up to
+ * {@value #MAX_CONCURRENT_REQUESTS} requests in flight.
+ */
+public class RestBackend implements Backend {
+    private static final Logger LOGGER = Logger.getLogger(RestBackend.class.getName());
+    private static final ObjectMapper MAPPER = new ObjectMapper();
+
+    /** Version 2 of the API returns the file sizes in the listings. */
+    private static final String API_V2 = "application/vnd.x.restic.rest.v2";
+    static final int MAX_CONCURRENT_REQUESTS = 8;
+    private static final Duration TIMEOUT = Duration.ofSeconds(30);
+
+    private final URI base;
+    private final String authorization;
+    private final HttpClient client;
+    private final Semaphore requests = new Semaphore(MAX_CONCURRENT_REQUESTS);
+
+    /**
+     * @param uri the URL of the repository, user and password for basic authentication can be given as user info
+     */
+    public RestBackend(URI uri) {
+        String path = uri.getRawPath() == null || uri.getRawPath().isEmpty() ? "/" : uri.getRawPath();
+        if (!path.endsWith("/")) {
+            path += "/";
+        }
+        try {
+            this.base = new URI(uri.getScheme(), null, uri.getHost(), uri.getPort(), null, null, null).resolve(path);
+        } catch (URISyntaxException e) {
+            throw new IllegalArgumentException("Invalid repository URL " + uri, e);
+        }
+        if (uri.getUserInfo() != null) {
+            this.authorization = "Basic " + Base64.getEncoder().encodeToString(uri.getUserInfo().getBytes(StandardCharsets.UTF_8));
+        } else {
+            this.authorization = null;
+        }
+        this.client = HttpClient.newBuilder()
+                .connectTimeout(TIMEOUT)
+                .followRedirects(HttpClient.Redirect.NORMAL)
+                .build();
+    }
+
+    @Override
+    public String location() {
+        return REST_PREFIX + base;
+    }
+
+    URI uri(FileType type, String name) {
+        if (type == FileType.CONFIG) {
+            return base.resolve(type.directory());
+        }
+        return base.resolve(type.directory() + "/" + name);
+    }
+
+    private HttpRequest.Builder request(URI uri) {
+        HttpRequest.Builder builder = HttpRequest.newBuilder(uri).timeout(TIMEOUT);
+        if (authorization != null) {
+            builder.header("Authorization", authorization);
+        }
+        return builder;
+    }
+
+    private HttpRequest rangeRequest(URI uri, long offset, long length) {
+        return request(uri).header("Range", "bytes=%d-%d".formatted(offset, offset + length - 1)).build();
+    }
+
+    private <T> HttpResponse<T> send(HttpRequest request, HttpResponse.BodyHandler<T> bodyHandler) throws IOException {
+        LOGGER.fine(() -> request.method() + " " + request.uri() + request.headers().firstValue("Range").map(r -> " " + r).orElse(""));
+        try {
+            requests.acquire();
+            try {
+                return client.send(request, bodyHandler);
+            } finally {
+                requests.release();
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException("Request " + request.uri() + " has been interrupted");
+        }
+    }
+
+    private static void checkStatus(URI uri, int status) throws IOException {
+        if (status == 404) {
+            throw new NoSuchFileException(uri.toString());
+        }
+        if (status == 416) {
+            throw new EOFException("Range not satisfiable for " + uri);
+        }
+        if (status < 200 || status >= 300) {
+            throw new IOException("HTTP status " + status + " for " + uri);
+        }
+    }
+
+    @Override
+    public List<String> list(FileType type) throws IOException {
+        if (type == FileType.CONFIG) {
+            return List.of();
+        }
+        URI uri = base.resolve(type.directory() + "/");
+        HttpResponse<byte[]> response = send(request(uri).header("Accept", API_V2).build(), HttpResponse.BodyHandlers.ofByteArray());
+        checkStatus(uri, response.statusCode());
+        List<String> names = new ArrayList<>();
+        for (JsonNode entry : MAPPER.readTree(response.body())) {
+            // v1: only the names, v2: objects with name and size
+            names.add(entry.isTextual() ? entry.asText() : entry.get("name").asText());
+        }
+        names.sort(null);
+        return names;
+    }
+
+    @Override
+    public long size(FileType type, String name) throws IOException {
+        URI uri = uri(type, name);
+        HttpResponse<Void> response = send(request(uri).method("HEAD", HttpRequest.BodyPublishers.noBody()).build(),
+                HttpResponse.BodyHandlers.discarding());
+        checkStatus(uri, response.statusCode());
+        return response.headers().firstValueAsLong("Content-Length")
+                .orElseThrow(() -> new IOException("No Content-Length for " + uri));
+    }
+
+    @Override
+    public byte[] read(FileType type, String name) throws IOException {
+        URI uri = uri(type, name);
+        HttpResponse<byte[]> response = send(request(uri).build(), HttpResponse.BodyHandlers.ofByteArray());
+        checkStatus(uri, response.statusCode());
+        return response.body();
+    }
+
+    @Override
+    public byte[] readRange(FileType type, String name, long offset, int length) throws IOException {
+        URI uri = uri(type, name);
+        return rangeBody(uri, send(rangeRequest(uri, offset, length), HttpResponse.BodyHandlers.ofByteArray()), offset, length);
+    }
+
+    private static byte[] rangeBody(URI uri, HttpResponse<byte[]> response, long offset, int length) throws IOException {
+        checkStatus(uri, response.statusCode());
+        byte[] body = response.body();
+        if (response.statusCode() == 200) {
+            // the server ignored the range header and sent the whole file
+            if (body.length < offset + length) {
+                throw new EOFException("Only %d bytes in %s".formatted(body.length, uri));
+            }
+            return Arrays.copyOfRange(body, (int) offset, (int) offset + length);
+        }
+        if (body.length != length) {
+            throw new EOFException("Expected %d bytes, but got %d from %s".formatted(length, body.length, uri));
+        }
+        return body;
+    }
+
+    @Override
+    public List<byte[]> readRanges(FileType type, List<Range> ranges) throws IOException {
+        List<CompletableFuture<byte[]>> responses = new ArrayList<>(ranges.size());
+        try {
+            for (Range range : ranges) {
+                URI uri = uri(type, range.name());
+                HttpRequest request = rangeRequest(uri, range.offset(), range.length());
+                LOGGER.fine(() -> "GET " + uri + " " + request.headers().firstValue("Range").orElseThrow());
+                requests.acquire();
+                responses.add(client.sendAsync(request, HttpResponse.BodyHandlers.ofByteArray())
+                        .whenComplete((response, e) -> requests.release())
+                        .thenApply(response -> {
+                            try {
+                                return rangeBody(uri, response, range.offset(), range.length());
+                            } catch (IOException e) {
+                                throw new UncheckedIOException(e);
+                            }
+                        }));
+            }
+            List<byte[]> result = new ArrayList<>(ranges.size());
+            for (CompletableFuture<byte[]> response : responses) {
+                result.add(response.get());
+            }
+            return result;
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            responses.forEach(response -> response.cancel(true));
+            throw new InterruptedIOException("Reading ranges has been interrupted");
+        } catch (ExecutionException e) {
+            responses.forEach(response -> response.cancel(true));
+            Throwable cause = e.getCause();
+            if (cause instanceof UncheckedIOException unchecked) {
+                throw unchecked.getCause();
+            }
+            if (cause instanceof IOException ioException) {
+                throw ioException;
+            }
+            throw new IOException(cause);
+        }
+    }
+
+    @Override
+    public InputStream openStream(FileType type, String name, long offset, long length) throws IOException {
+        URI uri = uri(type, name);
+        HttpResponse<InputStream> response = send(rangeRequest(uri, offset, length), HttpResponse.BodyHandlers.ofInputStream());
+        InputStream body = response.body();
+        try {
+            checkStatus(uri, response.statusCode());
+            if (response.statusCode() == 200) {
+                body.skipNBytes(offset);
+            }
+        } catch (IOException e) {
+            body.close();
+            throw e;
+        }
+        return new FilterInputStream(body) {
+            private long remaining = length;
+
+            @Override
+            public int read() throws IOException {
+                if (remaining <= 0) {
+                    return -1;
+                }
+                int b = super.read();
+                if (b == -1) {
+                    throw new EOFException("Stream of " + uri + " ended early");
+                }
+                remaining--;
+                return b;
+            }
+
+            @Override
+            public int read(byte[] b, int off, int len) throws IOException {
+                if (remaining <= 0) {
+                    return -1;
+                }
+                int read = super.read(b, off, (int) Math.min(len, remaining));
+                if (read == -1) {
+                    throw new EOFException("Stream of " + uri + " ended early");
+                }
+                remaining -= read;
+                return read;
+            }
+        };
+    }
+
+    @Override
+    public void close() {
+        client.close();
+    }
+}
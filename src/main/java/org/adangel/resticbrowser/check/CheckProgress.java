@@ -0,0 +1,28 @@
+package org.adangel.resticbrowser.check;
+
+import java.time.Duration;
+
+/**
+ * @param total trees or packs to check in the current phase; grows while trees are discovered
+ * @param done trees or packs checked in the current phase
+ * @param bytesRead bytes of pack files read so far
+ */
+public record CheckProgress(Phase phase, long total, long done, long bytesRead, Duration elapsed) {
+    public enum Phase {
+        INDEX,
+        TREES,
+        DATA
+    }
+
+    public double percent() {
+        return total == 0 ? 100.0 : done * 100.0 / total;
+    }
+
+    /**
+     * @return bytes read per second
+     */
+    public double throughput() {
+        long millis = elapsed.toMillis();
+        return millis == 0 ? 0.0 : bytesRead * 1000.0 / millis;
+    }
+}
@@ -0,0 +1,17 @@
+package org.adangel.resticbrowser.check;
+
+import java.time.Duration;
+import java.util.List;
+
+/**
+ * @param errors problems which make (parts of) snapshots unrestorable
+ * @param warnings problems which don't affect the snapshots, e.g. unreferenced packs
+ * @param trees distinct trees read
+ * @param packs packs read with {@code readData}, 0 otherwise
+ */
+public record CheckResult(List<String> errors, List<String> warnings, int snapshots, long trees, long packs,
+                          long bytesRead, Duration elapsed) {
+    public boolean ok() {
+        return errors.isEmpty();
+    }
+}
@@ -0,0 +1,322 @@
+package org.adangel.resticbrowser.check;
+
+import java.io.IOException;
+import java.nio.file.NoSuchFileException;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.HexFormat;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Consumer;
+import java.util.logging.Logger;
+
+import org.adangel.resticbrowser.Repository;
+import org.adangel.resticbrowser.backend.FileType;
+import org.adangel.resticbrowser.models.BlobId;
+import org.adangel.resticbrowser.models.SnapshotWithId;
+import org.adangel.resticbrowser.models.Tree;
+
+/**
+ * Checks the integrity of a repository, similar to {@code restic check}.
+ *
+ * <p>First the index is checked: every pack in the index must exist and the blobs of a pack must not overlap. Then
+ * all trees reachable from the snapshots are read, level by level and in parallel; every tree and data blob they
+ * reference must be in the index. Trees which are shared by several snapshots or directories are read only once.
+ * With {@code readData}, every pack is finally read once as a whole: its SHA-256 must match its ID and the MAC and
+ * SHA-256 of every blob in it are verified.
+ */
+public class Checker {
+    private static final Logger LOGGER = Logger.getLogger(Checker.class.getName());
+
+    /** Trees read with one {@link Repository#readTrees(java.util.Collection)}. */
+    private static final int TREE_BATCH_SIZE = 64;
+
+    private final Repository repository;
+    private final int threads;
+    private final boolean readData;
+    private final Consumer<CheckProgress> progressListener;
+
+    private record Blob(BlobId id, Repository.IndexEntry entry) {}
+
+    /**
+     * State of a single {@link #check()}.
+     */
+    private static final class Run {
+        final long start = System.nanoTime();
+        final List<String> errors = Collections.synchronizedList(new ArrayList<>());
+        final List<String> warnings = Collections.synchronizedList(new ArrayList<>());
+        volatile CheckProgress.Phase phase = CheckProgress.Phase.INDEX;
+        final AtomicLong total = new AtomicLong();
+        final AtomicLong done = new AtomicLong();
+        final AtomicLong bytesRead = new AtomicLong();
+        final AtomicLong trees = new AtomicLong();
+        final Set<BlobId> referencedBlobs = ConcurrentHashMap.newKeySet();
+
+        void error(String message) {
+            LOGGER.fine(() -> "error: " + message);
+            errors.add(message);
+        }
+
+        void warning(String message) {
+            LOGGER.fine(() -> "warning: " + message);
+            warnings.add(message);
+        }
+
+        void startPhase(CheckProgress.Phase phase) {
+            this.phase = phase;
+            total.set(0);
+            done.set(0);
+        }
+
+        CheckProgress progress() {
+            return new CheckProgress(phase, total.get(), done.get(), bytesRead.get(), Duration.ofNanos(System.nanoTime() - start));
+        }
+    }
+
+    public Checker(Repository repository, int threads, boolean readData, Consumer<CheckProgress> progressListener) {
+        if (threads <= 0) {
+            throw new IllegalArgumentException("threads must be positive");
+        }
+        this.repository = repository;
+        this.threads = threads;
+        this.readData = readData;
+        this.progressListener = progressListener;
+    }
+
+    public CheckResult check() throws IOException {
+        Run run = new Run();
+        ScheduledExecutorService reporter = Executors.newSingleThreadScheduledExecutor();
+        ExecutorService workers = Executors.newFixedThreadPool(threads);
+        int snapshots;
+        Map<String, List<Blob>> blobsByPack;
+        try {
+            reporter.scheduleAtFixedRate(() -> progressListener.accept(run.progress()), 1, 1, TimeUnit.SECONDS);
+            blobsByPack = checkIndex(run);
+            snapshots = checkTrees(run, workers);
+            if (readData) {
+                checkData(run, blobsByPack, workers);
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IOException("Check has been interrupted", e);
+        } catch (ExecutionException e) {
+            if (e.getCause() instanceof IOException ioException) {
+                throw ioException;
+            }
+            throw new IOException(e.getCause());
+        } finally {
+            workers.shutdownNow();
+            reporter.shutdownNow();
+        }
+
+        long unreferenced = repository.getIndex().keySet().stream().filter(id -> !run.referencedBlobs.contains(id)).count();
+        if (unreferenced > 0) {
+            run.warning("%d blobs are not referenced by any snapshot".formatted(unreferenced));
+        }
+        progressListener.accept(run.progress());
+        return new CheckResult(List.copyOf(run.errors), List.copyOf(run.warnings), snapshots, run.trees.get(),
+                readData ? blobsByPack.size() : 0, run.bytesRead.get(), Duration.ofNanos(System.nanoTime() - run.start));
+    }
+
+    private Map<String, List<Blob>> checkIndex(Run run) throws IOException {
+        Map<String, List<Blob>> blobsByPack = new TreeMap<>();
+        repository.getIndex().forEach((id, entry) ->
+                blobsByPack.computeIfAbsent(entry.packId(), k -> new ArrayList<>()).add(new Blob(id, entry)));
+        Set<String> existingPacks = new HashSet<>(repository.getBackend().list(FileType.PACK));
+        run.total.set(blobsByPack.size());
+
+        for (Map.Entry<String, List<Blob>> pack : blobsByPack.entrySet()) {
+            String packId = pack.getKey();
+            List<Blob> blobs = pack.getValue();
+            if (!existingPacks.contains(packId)) {
+                run.error("pack %s is in the index, but doesn't exist (%d blobs)".formatted(packId, blobs.size()));
+            }
+            blobs.sort(Comparator.comparingInt(blob -> blob.entry().offset()));
+            int end = 0;
+            for (Blob blob : blobs) {
+                if (blob.entry().offset() < end) {
+                    run.error("blob %s overlaps with the previous blob in pack %s".formatted(blob.id(), packId));
+                }
+                end = Math.max(end, blob.entry().offset() + blob.entry().length());
+            }
+            run.done.incrementAndGet();
+        }
+        for (String packId : existingPacks) {
+            if (!blobsByPack.containsKey(packId)) {
+                run.warning("pack %s is not referenced by any index".formatted(packId));
+            }
+        }
+        return blobsByPack;
+    }
+
+    private int checkTrees(Run run, ExecutorService workers) throws InterruptedException, ExecutionException {
+        run.startPhase(CheckProgress.Phase.TREES);
+        List<SnapshotWithId> snapshots;
+        try {
+            snapshots = repository.listSnapshots();
+        } catch (IOException | RuntimeException e) {
+            run.error("snapshots can't be read: " + e.getMessage());
+            return 0;
+        }
+
+        Set<BlobId> visited = ConcurrentHashMap.newKeySet();
+        List<BlobId> level = new ArrayList<>();
+        for (SnapshotWithId snapshot : snapshots) {
+            String tree = snapshot.snapshot().tree();
+            if (tree == null) {
+                run.error("snapshot %s has no tree".formatted(snapshot.id()));
+            } else if (visited.add(BlobId.parse(tree))) {
+                level.add(BlobId.parse(tree));
+            }
+        }
+
+        while (!level.isEmpty()) {
+            run.total.addAndGet(level.size());
+            Set<BlobId> nextLevel = ConcurrentHashMap.newKeySet();
+            List<Future<?>> futures = new ArrayList<>();
+            for (int i = 0; i < level.size(); i += TREE_BATCH_SIZE) {
+                List<BlobId> batch = level.subList(i, Math.min(level.size(), i + TREE_BATCH_SIZE));
+                futures.add(workers.submit(() -> checkTreeBatch(run, batch, visited, nextLevel)));
+            }
+            for (Future<?> future : futures) {
+                future.get();
+            }
+            level = new ArrayList<>(nextLevel);
+        }
+        return snapshots.size();
+    }
+
+    private void checkTreeBatch(Run run, List<BlobId> treeIds, Set<BlobId> visited, Set<BlobId> nextLevel) {
+        Map<BlobId, Repository.IndexEntry> index = repository.getIndex();
+        List<BlobId> present = new ArrayList<>();
+        for (BlobId treeId : treeIds) {
+            run.referencedBlobs.add(treeId);
+            Repository.IndexEntry entry = index.get(treeId);
+            if (entry == null) {
+                run.error("tree %s is missing".formatted(treeId));
+            } else if (!"tree".equals(entry.type())) {
+                run.error("blob %s is referenced as tree, but is a %s blob".formatted(treeId, entry.type()));
+            } else {
+                present.add(treeId);
+            }
+        }
+
+        Map<BlobId, Tree> trees;
+        try {
+            trees = repository.readTrees(present);
+        } catch (IOException | RuntimeException e) {
+            // read them one by one, to find the broken ones
+            trees = new HashMap<>();
+            for (BlobId treeId : present) {
+                try {
+                    trees.put(treeId, repository.readTree(treeId));
+                } catch (Exception treeException) {
+                    run.error("tree %s can't be read: %s".formatted(treeId, treeException.getMessage()));
+                }
+            }
+        }
+
+        for (Map.Entry<BlobId, Tree> tree : trees.entrySet()) {
+            for (Tree.Node node : tree.getValue().nodes()) {
+                switch (node.type()) {
+                    case DIR -> {
+                        if (node.subtreeId() == null) {
+                            run.error("directory %s in tree %s has no subtree".formatted(node.name(), tree.getKey()));
+                        } else if (visited.add(node.subtreeId())) {
+                            nextLevel.add(node.subtreeId());
+                        }
+                    }
+                    case FILE -> {
+                        for (int i = 0; i < node.contentCount(); i++) {
+                            BlobId blobId = node.contentId(i);
+                            run.referencedBlobs.add(blobId);
+                            Repository.IndexEntry entry = index.get(blobId);
+                            if (entry == null) {
+                                run.error("file %s in tree %s: blob %s is missing".formatted(node.name(), tree.getKey(), blobId));
+                            } else if (!"data".equals(entry.type())) {
+                                run.error("file %s in tree %s: blob %s is a %s blob".formatted(node.name(), tree.getKey(), blobId, entry.type()));
+                            }
+                        }
+                    }
+                    default -> {
+                    }
+                }
+            }
+        }
+        run.trees.addAndGet(trees.size());
+        run.done.addAndGet(treeIds.size());
+    }
+
+    private void checkData(Run run, Map<String, List<Blob>> blobsByPack, ExecutorService workers) throws InterruptedException, ExecutionException {
+        run.startPhase(CheckProgress.Phase.DATA);
+        run.total.set(blobsByPack.size());
+        List<Future<?>> futures = new ArrayList<>();
+        for (Map.Entry<String, List<Blob>> pack : blobsByPack.entrySet()) {
+            futures.add(workers.submit(() -> checkPack(run, pack.getKey(), pack.getValue())));
+        }
+        for (Future<?> future : futures) {
+            future.get();
+        }
+    }
+
+    private void checkPack(Run run, String packId, List<Blob> blobs) {
+        try {
+            byte[] pack;
+            try {
+                pack = repository.getBackend().read(FileType.PACK, packId);
+            } catch (NoSuchFileException e) {
+                // already reported by the index check
+                return;
+            } catch (IOException e) {
+                run.error("pack %s can't be read: %s".formatted(packId, e.getMessage()));
+                return;
+            }
+            run.bytesRead.addAndGet(pack.length);
+            if (!HexFormat.of().formatHex(sha256(pack)).equals(packId)) {
+                run.error("pack %s: the SHA-256 of the content doesn't match the ID".formatted(packId));
+            }
+
+            for (Blob blob : blobs) {
+                Repository.IndexEntry entry = blob.entry();
+                if (entry.offset() + entry.length() > pack.length) {
+                    run.error("blob %s is outside of pack %s".formatted(blob.id(), packId));
+                    continue;
+                }
+                try {
+                    byte[] plaintext = repository.decryptVerifiedBlob(blob.id(), pack, entry.offset(), entry);
+                    if (!BlobId.of(sha256(plaintext), 0).equals(blob.id())) {
+                        run.error("blob %s in pack %s: the SHA-256 doesn't match the ID".formatted(blob.id(), packId));
+                    }
+                } catch (IOException | RuntimeException e) {
+                    run.error("blob %s in pack %s can't be decrypted: %s".formatted(blob.id(), packId, e.getMessage()));
+                }
+            }
+        } finally {
+            run.done.incrementAndGet();
+        }
+    }
+
+    private static byte[] sha256(byte[] data) {
+        try {
+            return MessageDigest.getInstance("SHA-256").digest(data);
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+}
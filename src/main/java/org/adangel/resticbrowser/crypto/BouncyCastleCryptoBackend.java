@@ -0,0 +1,61 @@
+package org.adangel.resticbrowser.crypto;
+
+import org.bouncycastle.crypto.engines.AESEngine;
+import org.bouncycastle.crypto.macs.Poly1305;
+import org.bouncycastle.crypto.modes.SICBlockCipher;
+import org.bouncycastle.crypto.params.KeyParameter;
+import org.bouncycastle.crypto.params.ParametersWithIV;
+
+/**
+ * Uses only the BouncyCastle lightweight API: {@link SICBlockCipher} (counter mode) over {@link AESEngine} and
+ * {@link Poly1305} with an {@link AESEngine}.
+ */
+final class BouncyCastleCryptoBackend implements CryptoBackend {
+    @Override
+    public String name() {
+        return "bouncycastle";
+    }
+
+    @Override
+    public Ctr newCipher(byte[] key) {
+        KeyParameter keyParameter = new KeyParameter(key);
+        SICBlockCipher cipher = (SICBlockCipher) SICBlockCipher.newInstance(AESEngine.newInstance());
+        return new Ctr() {
+            private boolean keyInitialized;
+
+            @Override
+            public void init(byte[] iv) {
+                // without key parameter only the counter is reset, the AES key schedule is kept
+                cipher.init(false, new ParametersWithIV(keyInitialized ? null : keyParameter, iv));
+                keyInitialized = true;
+            }
+
+            @Override
+            public void process(byte[] in, int inOffset, int length, byte[] out, int outOffset) {
+                cipher.processBytes(in, inOffset, length, out, outOffset);
+            }
+        };
+    }
+
+    @Override
+    public Mac newMac(byte[] key) {
+        KeyParameter keyParameter = new KeyParameter(key);
+        Poly1305 poly1305 = new Poly1305(AESEngine.newInstance());
+        return new Mac() {
+            @Override
+            public void init(byte[] nonce) {
+                poly1305.init(new ParametersWithIV(keyParameter, nonce));
+            }
+
+            @Override
+            public void update(byte[] in, int offset, int length) {
+                poly1305.update(in, offset, length);
+            }
+
+            @Override
+            public void doFinal(byte[] out, int offset) {
+                poly1305.doFinal(out, offset);
+            }
+        };
+    }
+}
@@ -0,0 +1,60 @@
+package org.adangel.resticbrowser.crypto;
+
+import java.security.InvalidAlgorithmParameterException;
+import java.security.InvalidKeyException;
+import java.security.NoSuchAlgorithmException;
+import java.util.Locale;
+
+import javax.crypto.NoSuchPaddingException;
+
+/**
+ * Implementation of the primitives restic uses to encrypt blobs: AES-256 in counter mode and Poly1305-AES.
+ *
+ * @see JcaCryptoBackend
+ * @see BouncyCastleCryptoBackend
+ */
+public interface CryptoBackend {
+    CryptoBackend JCA = new JcaCryptoBackend();
+    CryptoBackend BOUNCY_CASTLE = new BouncyCastleCryptoBackend();
+
+    /**
+     * @param name {@code jca} or {@code bouncycastle}
+     */
+    static CryptoBackend byName(String name) {
+        return switch (name.trim().toLowerCase(Locale.ROOT)) {
+            case "jca" -> JCA;
+            case "bouncycastle", "bc" -> BOUNCY_CASTLE;
+            default -> throw new IllegalArgumentException("Unknown crypto backend: " + name);
+        };
+    }
+
+    String name();
+
+    /**
+     * @param key the 32 bytes AES key
+     */
+    Ctr newCipher(byte[] key) throws NoSuchPaddingException, NoSuchAlgorithmException;
+
+    /**
+     * @param key the 32 bytes Poly1305-AES key, r (16 bytes) followed by k (16 bytes)
+     */
+    Mac newMac(byte[] key) throws NoSuchPaddingException, NoSuchAlgorithmException;
+
+    /** AES-CTR decryption of one blob. Not thread safe, can be reused after {@link #init(byte[])}. */
+    interface Ctr {
+        void init(byte[] iv) throws InvalidKeyException, InvalidAlgorithmParameterException;
+
+        /** In place decryption ({@code in == out}) is allowed. */
+        void process(byte[] in, int inOffset, int length, byte[] out, int outOffset);
+    }
+
+    /** Poly1305-AES of one blob. Not thread safe, can be reused after {@link #init(byte[])}. */
+    interface Mac {
+        void init(byte[] nonce) throws InvalidKeyException;
+
+        void update(byte[] in, int offset, int length);
+
+        /** Writes the 16 bytes MAC and resets the MAC. */
+        void doFinal(byte[] out, int offset);
+    }
+}
@@ -0,0 +1,136 @@
+package org.adangel.resticbrowser.crypto;
+
+import java.nio.ByteBuffer;
+import java.security.InvalidAlgorithmParameterException;
+import java.security.InvalidKeyException;
+import java.security.NoSuchAlgorithmException;
+
+import javax.crypto.NoSuchPaddingException;
+
+/**
+ * The cipher and MAC to decrypt and authenticate one blob (IV, ciphertext, MAC) with the master key, implemented
+ * by a {@link CryptoBackend}.
+ *
+ * <p>A context is not thread safe. Get one from a {@link CryptoContextPool}, use it for one or more blobs
+ * ({@link #decrypt(ByteBuffer, ByteBuffer)} or, when streaming, {@link #init(byte[], int)} and the MAC methods)
+ * and give it back when done.
+ */
+public final class CryptoContext {
+    public static final int IV_LENGTH = 16;
+    public static final int MAC_LENGTH = 16;
+    /** Small enough that a chunk is still in the CPU cache when the cipher runs over it after the MAC. */
+    private static final int CHUNK_SIZE = 8192;
+
+    private final CryptoBackend.Ctr cipher;
+    private final CryptoBackend.Mac mac;
+    private final byte[] iv = new byte[IV_LENGTH];
+    private final byte[] calculatedMac = new byte[MAC_LENGTH];
+    private final byte[] chunk = new byte[CHUNK_SIZE];
+
+    CryptoContext(CryptoBackend backend, byte[] encryptionKey, byte[] macKey) throws NoSuchPaddingException, NoSuchAlgorithmException {
+        this.cipher = backend.newCipher(encryptionKey);
+        this.mac = backend.newMac(macKey);
+    }
+
+    /**
+     * Initializes cipher and MAC for the next blob.
+     *
+     * @param data the encrypted blob
+     * @param offset the start of the blob, where the IV is
+     */
+    public void init(byte[] data, int offset) throws InvalidKeyException, InvalidAlgorithmParameterException {
+        System.arraycopy(data, offset, iv, 0, IV_LENGTH);
+        initWithIv();
+    }
+
+    private void initWithIv() throws InvalidKeyException, InvalidAlgorithmParameterException {
+        cipher.init(iv);
+        mac.init(iv);
+    }
+
+    /**
+     * Authenticates and decrypts a whole blob in one pass. The ciphertext is processed in chunks, each chunk is fed
+     * into the MAC and then decrypted. The caller must check the result before using (e.g. decompressing) the
+     * plaintext.
+     *
+     * @param blob IV, ciphertext and MAC between position and limit, heap or direct. The position is moved to the limit.
+     * @param plaintext receives {@code blob.remaining() - 32} bytes, heap or direct
+     * @return {@code false} if the MAC doesn't match
+     */
+    public boolean decrypt(ByteBuffer blob, ByteBuffer plaintext) throws InvalidKeyException, InvalidAlgorithmParameterException {
+        return decrypt(blob, plaintext, true);
+    }
+
+    /**
+     * Like {@link #decrypt(ByteBuffer, ByteBuffer)}, but the MAC is only calculated and compared if
+     * {@code authenticate} is set. Otherwise the result is always {@code true}.
+     */
+    public boolean decrypt(ByteBuffer blob, ByteBuffer plaintext, boolean authenticate) throws InvalidKeyException, InvalidAlgorithmParameterException {
+        int ciphertextLength = blob.remaining() - IV_LENGTH - MAC_LENGTH;
+        if (ciphertextLength < 0) {
+            throw new IllegalArgumentException("Blob is too short: " + blob.remaining() + " bytes");
+        }
+        if (plaintext.remaining() < ciphertextLength) {
+            throw new IllegalArgumentException("Not enough space for the plaintext: " + plaintext.remaining() + " < " + ciphertextLength);
+        }
+        blob.get(iv);
+        initWithIv();
+
+        boolean heapBuffers = blob.hasArray() && plaintext.hasArray();
+        int ciphertextEnd = blob.position() + ciphertextLength;
+        while (blob.position() < ciphertextEnd) {
+            int position = blob.position();
+            int length = Math.min(CHUNK_SIZE, ciphertextEnd - position);
+            if (heapBuffers) {
+                if (authenticate) {
+                    mac.update(blob.array(), blob.arrayOffset() + position, length);
+                }
+                cipher.process(blob.array(), blob.arrayOffset() + position, length,
+                        plaintext.array(), plaintext.arrayOffset() + plaintext.position());
+                plaintext.position(plaintext.position() + length);
+            } else {
+                blob.get(position, chunk, 0, length);
+                if (authenticate) {
+                    mac.update(chunk, 0, length);
+                }
+                cipher.process(chunk, 0, length, chunk, 0);
+                plaintext.put(chunk, 0, length);
+            }
+            blob.position(position + length);
+        }
+
+        if (!authenticate) {
+            blob.position(blob.position() + MAC_LENGTH);
+            return true;
+        }
+        mac.doFinal(calculatedMac, 0);
+        int difference = 0;
+        for (int i = 0; i < MAC_LENGTH; i++) {
+            difference |= calculatedMac[i] ^ blob.get();
+        }
+        return difference == 0;
+    }
+
+    /**
+     * Decrypts the next part of the ciphertext of the current blob, e.g. when streaming.
+     */
+    public void decryptChunk(byte[] ciphertext, int offset, int length, byte[] plaintext, int plaintextOffset) {
+        cipher.process(ciphertext, offset, length, plaintext, plaintextOffset);
+    }
+
+    public void updateMac(byte[] ciphertext, int offset, int length) {
+        mac.update(ciphertext, offset, length);
+    }
+
+    /**
+     * Finishes the MAC calculation and compares it with the MAC stored at {@code data[offset]}.
+     */
+    public boolean verifyMac(byte[] data, int offset) {
+        mac.doFinal(calculatedMac, 0);
+        int difference = 0;
+        for (int i = 0; i < MAC_LENGTH; i++) {
+            difference |= calculatedMac[i] ^ data[offset + i];
+        }
+        return difference == 0;
+    }
+}
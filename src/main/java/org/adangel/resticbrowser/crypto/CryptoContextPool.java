@@ -0,0 +1,50 @@
+package org.adangel.resticbrowser.crypto;
+
+import java.security.NoSuchAlgorithmException;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+
+import javax.crypto.NoSuchPaddingException;
+
+/**
+ * Reuses {@link CryptoContext}s, so that the provider lookup for the cipher and the allocation of the cipher and
+ * MAC objects is not done for every blob. A pool is used instead of thread locals, as many short-lived virtual
+ * threads are reading blobs.
+ */
+public final class CryptoContextPool {
+    private final CryptoBackend backend;
+    private final byte[] encryptionKey;
+    private final byte[] macKey;
+    private final BlockingQueue<CryptoContext> contexts;
+
+    /**
+     * @param encryptionKey the 32 bytes AES key
+     * @param macKey the 32 bytes Poly1305-AES key, r followed by k
+     */
+    public CryptoContextPool(CryptoBackend backend, byte[] encryptionKey, byte[] macKey) {
+        this(backend, encryptionKey, macKey, Runtime.getRuntime().availableProcessors() * 2);
+    }
+
+    public CryptoContextPool(CryptoBackend backend, byte[] encryptionKey, byte[] macKey, int maxIdle) {
+        this.backend = backend;
+        this.encryptionKey = encryptionKey.clone();
+        this.macKey = macKey.clone();
+        this.contexts = new ArrayBlockingQueue<>(maxIdle);
+    }
+
+    public CryptoBackend getBackend() {
+        return backend;
+    }
+
+    public CryptoContext acquire() throws NoSuchPaddingException, NoSuchAlgorithmException {
+        CryptoContext context = contexts.poll();
+        return context != null ? context : new CryptoContext(backend, encryptionKey, macKey);
+    }
+
+    /**
+     * Gives the context back. It must not be used by the caller anymore.
+     */
+    public void release(CryptoContext context) {
+        contexts.offer(context);
+    }
+}
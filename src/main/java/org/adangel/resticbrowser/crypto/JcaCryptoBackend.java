@@ -0,0 +1,86 @@
+package org.adangel.resticbrowser.crypto;
+
+import java.security.InvalidAlgorithmParameterException;
+import java.security.InvalidKeyException;
+import java.security.NoSuchAlgorithmException;
+import java.util.Arrays;
+
+import javax.crypto.BadPaddingException;
+import javax.crypto.Cipher;
+import javax.crypto.IllegalBlockSizeException;
+import javax.crypto.NoSuchPaddingException;
+import javax.crypto.ShortBufferException;
+import javax.crypto.spec.IvParameterSpec;
+import javax.crypto.spec.SecretKeySpec;
+
+import org.bouncycastle.crypto.macs.Poly1305;
+import org.bouncycastle.crypto.params.KeyParameter;
+
+/**
+ * Uses the JCA for all AES operations, which are backed by the AES-NI intrinsics of the JVM. The JDK has no
+ * standalone Poly1305, so the polynomial evaluation is done with the raw BouncyCastle {@link Poly1305}. Its key
+ * (r, AES<sub>k</sub>(nonce)) is computed with JCA AES/ECB.
+ */
+final class JcaCryptoBackend implements CryptoBackend {
+    @Override
+    public String name() {
+        return "jca";
+    }
+
+    @Override
+    public Ctr newCipher(byte[] key) throws NoSuchPaddingException, NoSuchAlgorithmException {
+        SecretKeySpec keySpec = new SecretKeySpec(key, "AES");
+        Cipher cipher = Cipher.getInstance("AES/CTR/NoPadding");
+        return new Ctr() {
+            @Override
+            public void init(byte[] iv) throws InvalidKeyException, InvalidAlgorithmParameterException {
+                cipher.init(Cipher.DECRYPT_MODE, keySpec, new IvParameterSpec(iv));
+            }
+
+            @Override
+            public void process(byte[] in, int inOffset, int length, byte[] out, int outOffset) {
+                try {
+                    cipher.update(in, inOffset, length, out, outOffset);
+                } catch (ShortBufferException e) {
+                    throw new IllegalArgumentException(e);
+                }
+            }
+        };
+    }
+
+    @Override
+    public Mac newMac(byte[] key) throws NoSuchPaddingException, NoSuchAlgorithmException {
+        SecretKeySpec k = new SecretKeySpec(key, 16, 16, "AES");
+        Cipher ecb = Cipher.getInstance("AES/ECB/NoPadding");
+        Poly1305 poly1305 = new Poly1305();
+        // r followed by s = AES_k(nonce)
+        byte[] polyKey = Arrays.copyOf(key, 32);
+        return new Mac() {
+            private boolean ecbInitialized;
+
+            @Override
+            public void init(byte[] nonce) throws InvalidKeyException {
+                if (!ecbInitialized) {
+                    ecb.init(Cipher.ENCRYPT_MODE, k);
+                    ecbInitialized = true;
+                }
+                try {
+                    ecb.doFinal(nonce, 0, 16, polyKey, 16);
+                } catch (ShortBufferException | IllegalBlockSizeException | BadPaddingException e) {
+                    throw new IllegalStateException(e);
+                }
+                poly1305.init(new KeyParameter(polyKey));
+            }
+
+            @Override
+            public void update(byte[] in, int offset, int length) {
+                poly1305.update(in, offset, length);
+            }
+
+            @Override
+            public void doFinal(byte[] out, int offset) {
+                poly1305.doFinal(out, offset);
+            }
+        };
+    }
+}
@@ -0,0 +1,298 @@
+package org.adangel.resticbrowser.filesystem;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.ClosedChannelException;
+import java.nio.channels.NonWritableChannelException;
+import java.nio.channels.SeekableByteChannel;
+import java.security.GeneralSecurityException;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.logging.Logger;
+
+import org.adangel.resticbrowser.AsyncRepository;
+import org.adangel.resticbrowser.Repository;
+import org.adangel.resticbrowser.metrics.Counter;
+import org.adangel.resticbrowser.metrics.Metrics;
+import org.adangel.resticbrowser.models.Tree;
+
+/**
+ * The content of a file, with positional reads. The channel tracks whether it is read sequentially: while each read
+ * continues where the previous one ended, the following content blobs are read and decrypted in the background. The
+ * read-ahead starts with one blob when the second blob is reached and doubles with each further blob, up to
+ * {@value #MAX_READ_AHEAD}. A read anywhere else, e.g. a file type probe or the index at the end of an archive, stops
+ * the read-ahead until the reads are sequential again.
+ *
+ * <p>The blobs which are read ahead are bounded in bytes by a budget shared by all channels of a file system (see
+ * {@link #READ_AHEAD_BUDGET}). When it is used up, the channel reads ahead fewer blobs, or none, until other channels
+ * have consumed or dropped theirs. A read which is already running can't be stopped, so a dropped blob keeps its
+ * share of the budget until its read has completed.
+ *
+ * <p>Reads and position changes are serialized, the channel can be shared by several threads. This uses a lock
+ * instead of {@code synchronized}, so that a virtual thread waiting for a blob which is read ahead doesn't pin its
+ * carrier thread.
+ */
+final class NodeChannel implements SeekableByteChannel {
+    private static final Logger LOGGER = Logger.getLogger(NodeChannel.class.getName());
+
+    private static final Counter PREFETCHED_BLOBS = Metrics.global().counter("restic_prefetch_blobs_total",
+            "Content blobs read ahead of sequential reads");
+    private static final Counter UNUSED_PREFETCHED_BLOBS = Metrics.global().counter("restic_prefetch_unused_total",
+            "Content blobs read ahead which were dropped, because the file was closed or not read sequentially");
+
+    /** Content blobs which are read ahead at most. */
+    static final int MAX_READ_AHEAD = 8;
+    /** Bytes of plaintext which are read ahead at most, by all channels which share the budget. */
+    static final int READ_AHEAD_BUDGET = 64 * 1024 * 1024;
+
+    private final Repository repository;
+    private final AsyncRepository asyncRepository;
+    private final Tree.Node node;
+    /** Permits are bytes of the blobs which are read ahead, shared with other channels. */
+    private final Semaphore readAheadBudget;
+    /** Offset of each content blob in the file, followed by the end of the last blob. */
+    private final long[] blobStarts;
+    private final Map<Integer, CompletableFuture<byte[]>> readAhead = new HashMap<>();
+    private final ReentrantLock lock = new ReentrantLock();
+
+    private long position;
+    private boolean open = true;
+    /** Where the next read starts if the file is read sequentially. */
+    private long sequentialPosition;
+    private int readAheadBlobs;
+    private int currentBlob = -1;
+    private byte[] currentContent;
+
+    NodeChannel(Repository repository, AsyncRepository asyncRepository, Semaphore readAheadBudget, Tree.Node node) {
+        this.repository = repository;
+        this.asyncRepository = asyncRepository;
+        this.readAheadBudget = readAheadBudget;
+        this.node = node;
+        this.blobStarts = new long[node.contentCount() + 1];
+        for (int i = 0; i < node.contentCount(); i++) {
+            blobStarts[i + 1] = blobStarts[i] + repository.findBlob(node.contentId(i)).plaintextLength();
+        }
+    }
+
+    @Override
+    public int read(ByteBuffer dst) throws IOException {
+        lock.lock();
+        try {
+            return readLocked(dst);
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    private int readLocked(ByteBuffer dst) throws IOException {
+        ensureOpen();
+        long end = blobStarts[node.contentCount()];
+        if (position >= end) {
+            return -1;
+        }
+        if (!dst.hasRemaining()) {
+            return 0;
+        }
+        boolean sequential = position == sequentialPosition;
+        if (!sequential && readAheadBlobs > 0) {
+            LOGGER.fine(() -> "Non-sequential read of " + node.name() + " at " + position + ", stopping read-ahead");
+            readAheadBlobs = 0;
+            dropReadAhead(-1);
+        }
+
+        int count = 0;
+        while (dst.hasRemaining() && position < end) {
+            int blob = blobIndex(position);
+            byte[] content = content(blob, sequential);
+            int from = (int) (position - blobStarts[blob]);
+            int length = Math.min(dst.remaining(), content.length - from);
+            dst.put(content, from, length);
+            position += length;
+            count += length;
+        }
+        sequentialPosition = position;
+        return count;
+    }
+
+    private int blobIndex(long position) {
+        int index = Arrays.binarySearch(blobStarts, 0, node.contentCount(), position);
+        if (index < 0) {
+            index = -index - 2;
+        }
+        // skip empty blobs
+        while (index + 1 < node.contentCount() && blobStarts[index + 1] <= position) {
+            index++;
+        }
+        return index;
+    }
+
+    private byte[] content(int blob, boolean sequential) throws IOException {
+        if (blob == currentBlob) {
+            return currentContent;
+        }
+        // a probe of the first bytes doesn't start the read-ahead, only reaching the next blob does
+        if (sequential && currentBlob >= 0 && blob == currentBlob + 1) {
+            readAheadBlobs = readAheadBlobs == 0 ? 1 : Math.min(MAX_READ_AHEAD, readAheadBlobs * 2);
+        }
+        dropReadAhead(blob);
+        CompletableFuture<byte[]> future = readAhead.remove(blob);
+        byte[] content;
+        if (future != null) {
+            releaseWhenDone(blob, future);
+            content = join(future);
+        } else {
+            content = readContent(blob);
+        }
+        currentBlob = blob;
+        currentContent = content;
+        for (int next = blob + 1; next <= blob + readAheadBlobs && next < node.contentCount(); next++) {
+            if (!readAhead.containsKey(next)) {
+                if (!readAheadBudget.tryAcquire(blobLength(next))) {
+                    LOGGER.fine(() -> "Read-ahead budget is used up, not reading ahead in " + node.name());
+                    break;
+                }
+                readAhead.put(next, asyncRepository.readBlobAsync(node.contentId(next)));
+                PREFETCHED_BLOBS.increment();
+            }
+        }
+        return content;
+    }
+
+    /**
+     * Drops the reads ahead of blobs before {@code blob}, or all of them with {@code -1}.
+     */
+    private void dropReadAhead(int blob) {
+        for (Iterator<Map.Entry<Integer, CompletableFuture<byte[]>>> it = readAhead.entrySet().iterator(); it.hasNext(); ) {
+            Map.Entry<Integer, CompletableFuture<byte[]>> entry = it.next();
+            if (blob == -1 || entry.getKey() < blob) {
+                releaseWhenDone(entry.getKey(), entry.getValue());
+                UNUSED_PREFETCHED_BLOBS.increment();
+                it.remove();
+            }
+        }
+    }
+
+    /**
+     * Returns the budget of a blob which is read ahead once its read has completed, immediately if it has already.
+     * The future isn't cancelled, this would complete it while the read still runs.
+     */
+    private void releaseWhenDone(int blob, CompletableFuture<byte[]> future) {
+        int length = blobLength(blob);
+        future.whenComplete((content, e) -> readAheadBudget.release(length));
+    }
+
+    private int blobLength(int blob) {
+        return (int) (blobStarts[blob + 1] - blobStarts[blob]);
+    }
+
+    private byte[] readContent(int blob) throws IOException {
+        try {
+            return repository.readContent(node.contentId(blob));
+        } catch (GeneralSecurityException e) {
+            throw new IOException(e);
+        }
+    }
+
+    private static byte[] join(CompletableFuture<byte[]> future) throws IOException {
+        try {
+            return future.get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IOException(e);
+        } catch (ExecutionException e) {
+            if (e.getCause() instanceof IOException ioException) {
+                throw ioException;
+            }
+            throw new IOException(e.getCause());
+        }
+    }
+
+    /**
+     * @return the number of content blobs which are currently read ahead of the reads
+     */
+    int readAheadBlobs() {
+        lock.lock();
+        try {
+            return readAheadBlobs;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    private void ensureOpen() throws ClosedChannelException {
+        if (!open) {
+            throw new ClosedChannelException();
+        }
+    }
+
+    @Override
+    public int write(ByteBuffer src) {
+        throw new NonWritableChannelException();
+    }
+
+    @Override
+    public long position() throws IOException {
+        lock.lock();
+        try {
+            ensureOpen();
+            return position;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    @Override
+    public SeekableByteChannel position(long newPosition) throws IOException {
+        if (newPosition < 0) {
+            throw new IllegalArgumentException("Negative position: " + newPosition);
+        }
+        lock.lock();
+        try {
+            ensureOpen();
+            position = newPosition;
+            return this;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    @Override
+    public long size() throws IOException {
+        return node.size();
+    }
+
+    @Override
+    public SeekableByteChannel truncate(long size) {
+        throw new NonWritableChannelException();
+    }
+
+    @Override
+    public boolean isOpen() {
+        lock.lock();
+        try {
+            return open;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    @Override
+    public void close() {
+        lock.lock();
+        try {
+            if (open) {
+                open = false;
+                dropReadAhead(-1);
+                currentContent = null;
+            }
+        } finally {
+            lock.unlock();
+        }
+    }
+}
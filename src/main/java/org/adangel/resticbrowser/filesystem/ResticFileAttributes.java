@@ -5,6 +5,7 @@ import java.nio.file.Files;
 import java.nio.file.Path;
 import java.nio.file.attribute.BasicFileAttributes;
 import java.nio.file.attribute.FileTime;
+import java.util.concurrent.TimeUnit;
 
 import org.adangel.resticbrowser.models.SnapshotWithId;
 import org.adangel.resticbrowser.models.Tree;
@@ -16,17 +17,17 @@ class ResticFileAttributes {
 
             @Override
             public FileTime lastModifiedTime() {
-                return FileTime.from(node.mtime().toInstant());
+                return fileTime(node.mtimeNanos());
             }
 
             @Override
             public FileTime lastAccessTime() {
-                return FileTime.from(node.atime().toInstant());
+                return fileTime(node.atimeNanos());
             }
 
             @Override
             public FileTime creationTime() {
-                return FileTime.from(node.ctime().toInstant());
+                return fileTime(node.ctimeNanos());
             }
 
             @Override
@@ -62,6 +63,10 @@ class ResticFileAttributes {
         return attributes;
     }
 
+    private static FileTime fileTime(long epochNanos) {
+        return epochNanos != Tree.Node.NO_TIME ? FileTime.from(epochNanos, TimeUnit.NANOSECONDS) : null;
+    }
+
     static <A extends BasicFileAttributes> A forRoot(Path repoPath) throws IOException {
         BasicFileAttributes repoAttributes = Files.readAttributes(repoPath, BasicFileAttributes.class);
         @SuppressWarnings("unchecked")
@@ -2,10 +2,8 @@ package org.adangel.resticbrowser.filesystem;
 
 import java.io.FileNotFoundException;
 import java.io.IOException;
-import java.io.InputStream;
 import java.net.URI;
 import java.net.URISyntaxException;
-import java.nio.ByteBuffer;
 import java.nio.channels.SeekableByteChannel;
 import java.nio.file.DirectoryStream;
 import java.nio.file.FileStore;
@@ -27,26 +25,45 @@ import java.util.Iterator;
 import java.util.List;
 import java.util.Map;
 import java.util.Set;
+import java.util.concurrent.Semaphore;
 import java.util.logging.Logger;
 
 import javax.crypto.BadPaddingException;
 import javax.crypto.IllegalBlockSizeException;
 import javax.crypto.NoSuchPaddingException;
 
+import org.adangel.resticbrowser.AsyncRepository;
 import org.adangel.resticbrowser.Repository;
+import org.adangel.resticbrowser.RepositoryOptions;
+import org.adangel.resticbrowser.metrics.Gauge;
+import org.adangel.resticbrowser.metrics.Histogram;
+import org.adangel.resticbrowser.metrics.Metrics;
 import org.adangel.resticbrowser.models.SnapshotWithId;
 import org.adangel.resticbrowser.models.Tree;
 
-class ResticFileSystem extends FileSystem {
+public class ResticFileSystem extends FileSystem {
     private static final Logger LOGGER = Logger.getLogger(ResticFileSystem.class.getName());
+    private static final String LATENCY_METRIC = "restic_fs_operation_seconds";
+    private static final String LATENCY_HELP = "Latency of the file system operations, including the path resolution";
+    private static final Histogram LIST_LATENCY = Metrics.global().histogram(LATENCY_METRIC, LATENCY_HELP, "op", "list");
+    private static final Histogram READ_ATTRIBUTES_LATENCY = Metrics.global().histogram(LATENCY_METRIC, LATENCY_HELP, "op", "readAttributes");
+    private static final Histogram OPEN_LATENCY = Metrics.global().histogram(LATENCY_METRIC, LATENCY_HELP, "op", "newByteChannel");
     private final ResticFileSystemProvider provider;
     private final Repository repository;
+    /** Reads the blobs ahead of sequential reads, see {@link NodeChannel}. */
+    private final AsyncRepository asyncRepository;
+    /** Bytes of blobs which are read ahead by all open files together. */
+    private final Semaphore readAheadBudget = new Semaphore(NodeChannel.READ_AHEAD_BUDGET);
     private final ResticPath rootPath;
+    /** The gauges of the repository, removed on {@link #close()}. */
+    private final List<Gauge> gauges;
 
     ResticFileSystem(ResticFileSystemProvider provider, Path resticPath, Map<String, ?> env) throws IOException {
         this.provider = provider;
-        this.repository = new Repository(resticPath, env.get("RESTIC_PASSWORD").toString());
+        this.repository = new Repository(resticPath, env.get("RESTIC_PASSWORD").toString(), RepositoryOptions.fromEnv(env));
+        this.asyncRepository = new AsyncRepository(repository);
         this.rootPath = new ResticPath(this, "/");
+        this.gauges = repository.registerGauges(Metrics.global());
     }
 
     @Override
@@ -55,8 +72,8 @@ class ResticFileSystem extends FileSystem {
     }
 
     @Override
-    public void close() throws IOException {
-
+    public void close() {
+        gauges.forEach(Metrics.global()::remove);
     }
 
     @Override
@@ -83,6 +100,10 @@ class ResticFileSystem extends FileSystem {
         return rootPath;
     }
 
+    public Repository getRepository() {
+        return repository;
+    }
+
     @Override
     public Iterable<FileStore> getFileStores() {
         throw new UnsupportedOperationException();
@@ -129,6 +150,15 @@ class ResticFileSystem extends FileSystem {
     }
 
     DirectoryStream<Path> list(String path) throws IOException {
+        long start = System.nanoTime();
+        try {
+            return listPaths(path);
+        } finally {
+            LIST_LATENCY.recordSince(start);
+        }
+    }
+
+    private DirectoryStream<Path> listPaths(String path) throws IOException {
         if (!path.startsWith("/")) {
             throw new IllegalArgumentException();
         }
@@ -230,6 +260,15 @@ class ResticFileSystem extends FileSystem {
     }
 
     <A extends BasicFileAttributes> A readAttributes(String path, LinkOption... options) throws IOException {
+        long start = System.nanoTime();
+        try {
+            return resolveAttributes(path, options);
+        } finally {
+            READ_ATTRIBUTES_LATENCY.recordSince(start);
+        }
+    }
+
+    private <A extends BasicFileAttributes> A resolveAttributes(String path, LinkOption... options) throws IOException {
         if (!path.startsWith("/")) {
             throw new IllegalArgumentException("path must be absolute: " + path);
         }
@@ -283,9 +322,9 @@ class ResticFileSystem extends FileSystem {
 
                 String linktarget = childNode.linktarget();
                 if (linktarget.charAt(0) == '/') {
-                    return readAttributes("/" + pathToSnapshotJoined + linktarget);
+                    return resolveAttributes("/" + pathToSnapshotJoined + linktarget);
                 }
-                return readAttributes("/" + pathToSnapshotJoined + "/" + parentSubPathJoined + "/" + linktarget);
+                return resolveAttributes("/" + pathToSnapshotJoined + "/" + parentSubPathJoined + "/" + linktarget);
             } else {
                 return ResticFileAttributes.fromNode(childNode);
             }
@@ -324,70 +363,20 @@ class ResticFileSystem extends FileSystem {
         }
     }
 
-    private SeekableByteChannel createFromNode(Tree.Node node) throws IOException {
-        return new SeekableByteChannel() {
-            private InputStream in = repository.readNode(node);
-
-            private ByteBuffer currentByteBuffer = null;
-            private long position = 0L;
-            private long size = node.size();
-            @Override
-            public int read(ByteBuffer dst) throws IOException {
-                int count = 0;
-                while (dst.hasRemaining()) {
-                    int read = in.read();
-                    if (read == -1) {
-                        if (count == 0) {
-                            return -1;
-                        } else {
-                            return count;
-                        }
-                    }
-                    count++;
-                    position++;
-                    dst.put((byte) read);
-                }
-                return count;
-            }
-
-            @Override
-            public int write(ByteBuffer src) throws IOException {
-                throw new UnsupportedOperationException();
-            }
-
-            @Override
-            public long position() throws IOException {
-                return position;
-            }
-
-            @Override
-            public SeekableByteChannel position(long newPosition) throws IOException {
-                throw new UnsupportedOperationException();
-            }
-
-            @Override
-            public long size() throws IOException {
-                return size;
-            }
-
-            @Override
-            public SeekableByteChannel truncate(long size) throws IOException {
-                throw new UnsupportedOperationException();
-            }
-
-            @Override
-            public boolean isOpen() {
-                return true;
-            }
-
-            @Override
-            public void close() throws IOException {
-                in.close();
-            }
-        };
+    private SeekableByteChannel createFromNode(Tree.Node node) {
+        return new NodeChannel(repository, asyncRepository, readAheadBudget, node);
     }
 
     SeekableByteChannel newByteChannel(String path, Set<? extends OpenOption> options, FileAttribute<?>... attrs) {
+        long start = System.nanoTime();
+        try {
+            return openChannel(path);
+        } finally {
+            OPEN_LATENCY.recordSince(start);
+        }
+    }
+
+    private SeekableByteChannel openChannel(String path) {
         if (!path.startsWith("/")) {
             throw new IllegalArgumentException();
         }
@@ -422,9 +411,9 @@ class ResticFileSystem extends FileSystem {
 
                 String linktarget = node.linktarget();
                 if (linktarget.charAt(0) == '/') {
-                    return newByteChannel("/" + pathToSnapshotJoined + linktarget, options, attrs);
+                    return openChannel("/" + pathToSnapshotJoined + linktarget);
                 }
-                return newByteChannel("/" + pathToSnapshotJoined + "/" + parentSubPathJoined + "/" + linktarget, options, attrs);
+                return openChannel("/" + pathToSnapshotJoined + "/" + parentSubPathJoined + "/" + linktarget);
             }
             return createFromNode(node);
         } catch (IOException e) {
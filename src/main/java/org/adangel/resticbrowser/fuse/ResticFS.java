@@ -1,25 +1,33 @@
 package org.adangel.resticbrowser.fuse;
 
 import java.io.IOException;
-import java.io.InputStream;
 import java.nio.ByteBuffer;
+import java.nio.channels.SeekableByteChannel;
 import java.nio.charset.StandardCharsets;
-import java.nio.file.FileSystem;
 import java.nio.file.Files;
 import java.nio.file.LinkOption;
 import java.nio.file.Path;
 import java.nio.file.Paths;
 import java.nio.file.attribute.BasicFileAttributes;
 import java.nio.file.attribute.FileTime;
+import java.util.HashMap;
+import java.util.Locale;
 import java.util.Map;
 import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.ThreadLocalRandom;
 import java.util.concurrent.TimeUnit;
+import java.util.function.IntSupplier;
 import java.util.logging.Level;
 import java.util.logging.Logger;
 import java.util.stream.Stream;
 
+import org.adangel.resticbrowser.TreeWarmUp;
+import org.adangel.resticbrowser.filesystem.ResticFileSystem;
 import org.adangel.resticbrowser.filesystem.ResticFileSystemProvider;
+import org.adangel.resticbrowser.jfr.FuseOperationEvent;
+import org.adangel.resticbrowser.metrics.Counter;
+import org.adangel.resticbrowser.metrics.Histogram;
+import org.adangel.resticbrowser.metrics.Metrics;
 
 import jnr.ffi.Platform;
 import jnr.ffi.Pointer;
@@ -31,36 +39,105 @@ import ru.serce.jnrfuse.struct.FuseFileInfo;
 
 public class ResticFS extends FuseStubFS {
     private static final Logger LOGGER = Logger.getLogger(ResticFS.class.getName());
-    private final FileSystem fileSystem;
+    private final ResticFileSystem fileSystem;
+    private final TreeWarmUp warmUp;
 
-    private static class OpenFileHandle {
-        final long handle;
-        final InputStream stream;
-        long offset;
+    /**
+     * @param channel reads at the offsets requested by FUSE; it detects sequential reads of the handle and reads
+     *                ahead then
+     */
+    private record OpenFileHandle(long handle, SeekableByteChannel channel) {}
+    private final Map<Long, OpenFileHandle> openfiles = new ConcurrentHashMap<>();
 
-        public OpenFileHandle(long handle, InputStream stream) {
-            this.handle = handle;
-            this.stream = stream;
-            this.offset = 0L;
-        }
+    private enum Operation {
+        READDIR, GETATTR, READLINK, OPEN, RELEASE, READ;
 
-        public synchronized long getOffset() {
-            return offset;
+        private final Histogram latency = Metrics.global().histogram("restic_fuse_operation_seconds",
+                "Latency of the FUSE operations", "op", name().toLowerCase(Locale.ROOT));
+        private final Counter errors = Metrics.global().counter("restic_fuse_errors_total",
+                "FUSE operations that returned an error code, including ENOENT", "op", name().toLowerCase(Locale.ROOT));
+
+        int record(long startNanos, int result) {
+            latency.recordSince(startNanos);
+            if (result < 0) {
+                errors.increment();
+            }
+            return result;
         }
+    }
 
-        public synchronized void incrementOffset(int bytesRead) {
-            offset += bytesRead;
+    private static int timed(Operation operation, String path, IntSupplier body) {
+        FuseOperationEvent event = new FuseOperationEvent();
+        event.begin();
+        long start = System.nanoTime();
+        int result = operation.record(start, body.getAsInt());
+        if (event.shouldCommit()) {
+            event.operation = operation.name().toLowerCase(Locale.ROOT);
+            event.path = path;
+            event.result = result;
+            event.commit();
         }
+        return result;
     }
-    private final Map<Long, OpenFileHandle> openfiles = new ConcurrentHashMap<>();
 
     public ResticFS(Path repositoryPath, String password) throws IOException {
         ResticFileSystemProvider provider = new ResticFileSystemProvider();
-        this.fileSystem = provider.newFileSystem(repositoryPath, Map.of("RESTIC_PASSWORD", password));
+        // repository options can be given as environment variables, see RepositoryOptions
+        Map<String, Object> env = new HashMap<>(System.getenv());
+        env.put("RESTIC_PASSWORD", password);
+        ResticFileSystem resticFileSystem = provider.newFileSystem(repositoryPath, env);
+        this.fileSystem = resticFileSystem;
+        this.warmUp = new TreeWarmUp(resticFileSystem.getRepository(), TreeWarmUp.Options.fromEnv(env));
+        Metrics.global().gauge("restic_fuse_open_files", "Files currently opened through FUSE", openfiles::size);
+    }
+
+    /**
+     * Called by FUSE once the file system is mounted.
+     */
+    @Override
+    public Pointer init(Pointer conn) {
+        warmUp.start();
+        return super.init(conn);
+    }
+
+    @Override
+    public void umount() {
+        warmUp.close();
+        fileSystem.close();
+        super.umount();
     }
 
     @Override
     public int readdir(String path, Pointer buf, FuseFillDir filter, long offset, FuseFileInfo fi) {
+        return timed(Operation.READDIR, path, () -> doReaddir(path, buf, filter));
+    }
+
+    @Override
+    public int getattr(String path, FileStat stat) {
+        return timed(Operation.GETATTR, path, () -> doGetattr(path, stat));
+    }
+
+    @Override
+    public int readlink(String path, Pointer buf, long size) {
+        return timed(Operation.READLINK, path, () -> doReadlink(path, buf, size));
+    }
+
+    @Override
+    public int open(String path, FuseFileInfo fi) {
+        return timed(Operation.OPEN, path, () -> doOpen(path, fi));
+    }
+
+    @Override
+    public int release(String path, FuseFileInfo fi) {
+        return timed(Operation.RELEASE, path, () -> doRelease(path, fi));
+    }
+
+    @Override
+    public int read(String path, Pointer buf, long size, long offset, FuseFileInfo fi) {
+        return timed(Operation.READ, path, () -> doRead(path, buf, size, offset, fi));
+    }
+
+    private int doReaddir(String path, Pointer buf, FuseFillDir filter) {
         filter.apply(buf, ".", null, 0);
         filter.apply(buf, "..", null, 0);
 
@@ -82,8 +159,7 @@ public class ResticFS extends FuseStubFS {
         return nanos - nanosStartSecond;
     }
 
-    @Override
-    public int getattr(String path, FileStat stat) {
+    private int doGetattr(String path, FileStat stat) {
         int res = 0;
         Path resticPath = fileSystem.getPath(path);
         try {
@@ -120,8 +196,7 @@ public class ResticFS extends FuseStubFS {
         return res;
     }
 
-    @Override
-    public int readlink(String path, Pointer buf, long size) {
+    private int doReadlink(String path, Pointer buf, long size) {
         int res = 0;
         Path resticPath = fileSystem.getPath(path);
         try {
@@ -136,8 +211,7 @@ public class ResticFS extends FuseStubFS {
         return res;
     }
 
-    @Override
-    public int open(String path, FuseFileInfo fi) {
+    private int doOpen(String path, FuseFileInfo fi) {
         Path resticPath = fileSystem.getPath(path);
         if (!Files.exists(resticPath)) {
             return -ErrorCodes.ENOENT();
@@ -145,10 +219,10 @@ public class ResticFS extends FuseStubFS {
 
         try {
             long handle = ThreadLocalRandom.current().nextLong();
-            InputStream channel = Files.newInputStream(resticPath);
+            SeekableByteChannel channel = Files.newByteChannel(resticPath);
             fi.fh.set(handle);
             openfiles.put(handle, new OpenFileHandle(handle, channel));
-            LOGGER.log(Level.INFO, "Opened file " + resticPath + " (handle=" + handle + ")");
+            LOGGER.fine(() -> "Opened file " + resticPath + " (handle=" + handle + ")");
             return 0;
         } catch (IOException e) {
             LOGGER.log(Level.SEVERE, "While opening file " + resticPath, e);
@@ -156,11 +230,10 @@ public class ResticFS extends FuseStubFS {
         }
     }
 
-    @Override
-    public int release(String path, FuseFileInfo fi) {
-        LOGGER.log(Level.INFO, "Closing file with handle " + fi.fh.get());
+    private int doRelease(String path, FuseFileInfo fi) {
+        LOGGER.fine(() -> "Closing file with handle " + fi.fh.get());
         OpenFileHandle openFileHandle = openfiles.remove(fi.fh.get());
-        InputStream channel = openFileHandle.stream;
+        SeekableByteChannel channel = openFileHandle.channel();
         if (channel != null) {
             try {
                 channel.close();
@@ -174,18 +247,13 @@ public class ResticFS extends FuseStubFS {
         return 0;
     }
 
-    @Override
-    public int read(String path, Pointer buf, long size, long offset, FuseFileInfo fi) {
-        LOGGER.log(Level.INFO, Thread.currentThread().getName() + "|Reading from file " + path + " (handle " + fi.fh.get() + ") offset=" + offset + " size=" + size);
+    private int doRead(String path, Pointer buf, long size, long offset, FuseFileInfo fi) {
+        LOGGER.fine(() -> Thread.currentThread().getName() + "|Reading from file " + path + " (handle " + fi.fh.get() + ") offset=" + offset + " size=" + size);
         Path resticPath = fileSystem.getPath(path);
         if (!Files.exists(resticPath)) {
             return -ErrorCodes.ENOENT();
         }
 
-        if (offset > Integer.MAX_VALUE) {
-            LOGGER.log(Level.SEVERE, "offset is too big");
-            return -ErrorCodes.ENOMEM();
-        }
         if (size > Integer.MAX_VALUE) {
             LOGGER.log(Level.SEVERE, "size is too big");
             return -ErrorCodes.ENOMEM();
@@ -198,33 +266,22 @@ public class ResticFS extends FuseStubFS {
                 return -ErrorCodes.EIO();
             }
 
+            // FUSE might read with multiple threads, the position and the read of a handle belong together
             synchronized (openFileHandle) {
-                InputStream channel = openFileHandle.stream;
-                long currentOffset = openFileHandle.getOffset();
-                if (currentOffset != offset) {
-                    // note 1: this might be hit multiple times during the read of a file - there are often multiple
-                    // read threads in parallel. But returning here EIO causes the reading code to retry, possibly with
-                    // a smaller buffer size (because it thinks we actually have IO problems).
-                    // This makes the reading of the file slower, but at least, we read it correctly (e.g. all bytes
-                    // in the correct order).
-                    // note 2: having this synchronization blocks helps to avoid this situation, if the file is read
-                    // from within the same java process (that means, the same process that handles the FUSE mount).
-                    // when the file is read from another process (possibly non-java), then this synchronization doesn't
-                    // help.
-                    LOGGER.log(Level.SEVERE, "file channel is at " + currentOffset + " which doesn't match requested offset " + offset);
-                    return -ErrorCodes.EIO();
-                }
-
+                SeekableByteChannel channel = openFileHandle.channel();
+                channel.position(offset);
                 ByteBuffer buffer = ByteBuffer.allocate((int) size);
-                LOGGER.log(Level.INFO, Thread.currentThread().getName() + "|Actual Reading from file " + path + " (handle " + fi.fh.get() + ") offset=" + offset + " size=" + size);
-                int bytesRead = channel.read(buffer.array());
+                LOGGER.fine(() -> Thread.currentThread().getName() + "|Actual Reading from file " + path + " (handle " + fi.fh.get() + ") offset=" + offset + " size=" + size);
+                while (buffer.hasRemaining() && channel.read(buffer) != -1) {
+                    // FUSE expects the full size, except at the end of the file
+                }
+                int bytesRead = buffer.position();
 
                 if (bytesRead > 0) {
-                    openFileHandle.incrementOffset(bytesRead);
                     buf.put(0, buffer.array(), 0, bytesRead);
                     return bytesRead;
                 } else {
-                    LOGGER.log(Level.INFO, "Reached end-of-file");
+                    LOGGER.fine("Reached end-of-file");
                     return 0; // EOF
                 }
             }
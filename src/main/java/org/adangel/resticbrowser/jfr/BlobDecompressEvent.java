@@ -0,0 +1,25 @@
+package org.adangel.resticbrowser.jfr;
+
+import jdk.jfr.Category;
+import jdk.jfr.DataAmount;
+import jdk.jfr.Description;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+
+@Name("org.adangel.resticbrowser.BlobDecompress")
+@Label("Blob Decompress")
+@Category({"restic-browser", "Repository"})
+@Description("Decompressing one decrypted blob")
+public final class BlobDecompressEvent extends Event {
+    @Label("Blob ID")
+    public String blobId;
+
+    @Label("Compressed Size")
+    @DataAmount
+    public long compressedBytes;
+
+    @Label("Uncompressed Size")
+    @DataAmount
+    public long uncompressedBytes;
+}
@@ -0,0 +1,30 @@
+package org.adangel.resticbrowser.jfr;
+
+import jdk.jfr.Category;
+import jdk.jfr.DataAmount;
+import jdk.jfr.Description;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+
+@Name("org.adangel.resticbrowser.BlobDecrypt")
+@Label("Blob Decrypt")
+@Category({"restic-browser", "Repository"})
+@Description("Decrypting (and verifying) one blob. For a streamed blob, the event lasts until the stream is closed.")
+public final class BlobDecryptEvent extends Event {
+    @Label("Blob ID")
+    public String blobId;
+
+    @Label("Pack ID")
+    public String packId;
+
+    @Label("Encrypted Size")
+    @DataAmount
+    public long bytes;
+
+    @Label("MAC Verified")
+    public boolean verified;
+
+    @Label("Streamed")
+    public boolean streamed;
+}
@@ -0,0 +1,23 @@
+package org.adangel.resticbrowser.jfr;
+
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+
+@Name("org.adangel.resticbrowser.FuseOperation")
+@Label("FUSE Operation")
+@Category({"restic-browser", "FUSE"})
+@Description("One call from the FUSE kernel module")
+public final class FuseOperationEvent extends Event {
+    @Label("Operation")
+    public String operation;
+
+    @Label("Path")
+    public String path;
+
+    @Label("Result")
+    @Description("Number of bytes for read, 0 for success or a negative error code")
+    public int result;
+}
@@ -0,0 +1,27 @@
+package org.adangel.resticbrowser.jfr;
+
+import jdk.jfr.Category;
+import jdk.jfr.DataAmount;
+import jdk.jfr.Description;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+
+@Name("org.adangel.resticbrowser.IndexLoad")
+@Label("Index Load")
+@Category({"restic-browser", "Repository"})
+@Description("Reading, decrypting and parsing one index file")
+public final class IndexLoadEvent extends Event {
+    @Label("Index File")
+    public String indexFile;
+
+    @Label("Size")
+    @DataAmount
+    public long bytes;
+
+    @Label("Packs")
+    public int packs;
+
+    @Label("Blobs")
+    public long blobs;
+}
@@ -0,0 +1,24 @@
+package org.adangel.resticbrowser.jfr;
+
+import jdk.jfr.Category;
+import jdk.jfr.DataAmount;
+import jdk.jfr.Description;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+
+@Name("org.adangel.resticbrowser.PackRead")
+@Label("Pack Read")
+@Category({"restic-browser", "Repository"})
+@Description("Reading a range of a pack file, which contains one or several (coalesced) blobs")
+public final class PackReadEvent extends Event {
+    @Label("Pack ID")
+    public String packId;
+
+    @Label("Offset")
+    public long offset;
+
+    @Label("Length")
+    @DataAmount
+    public long bytes;
+}
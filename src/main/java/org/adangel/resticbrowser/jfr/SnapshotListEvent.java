@@ -0,0 +1,16 @@
+package org.adangel.resticbrowser.jfr;
+
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+
+@Name("org.adangel.resticbrowser.SnapshotList")
+@Label("Snapshot List")
+@Category({"restic-browser", "Repository"})
+@Description("Reading and decrypting all snapshot files")
+public final class SnapshotListEvent extends Event {
+    @Label("Snapshots")
+    public int snapshots;
+}
@@ -0,0 +1,23 @@
+package org.adangel.resticbrowser.jfr;
+
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+
+@Name("org.adangel.resticbrowser.TreeLoad")
+@Label("Tree Load")
+@Category({"restic-browser", "Repository"})
+@Description("Getting a tree from the tree cache or reading it from the repository. For trees read together with "
+        + "others, the pack read is a separate Pack Read event.")
+public final class TreeLoadEvent extends Event {
+    @Label("Tree ID")
+    public String treeId;
+
+    @Label("Cache Hit")
+    public boolean cacheHit;
+
+    @Label("Nodes")
+    public int nodes;
+}
@@ -0,0 +1,17 @@
+package org.adangel.resticbrowser.metrics;
+
+import java.util.function.LongSupplier;
+
+/** A current value, e.g. the size of a cache. It is only computed when the metrics are read. */
+public final class Gauge extends Metric {
+    private final LongSupplier value;
+
+    Gauge(String name, String help, String labels, LongSupplier value) {
+        super(name, help, labels);
+        this.value = value;
+    }
+
+    public long get() {
+        return value.getAsLong();
+    }
+}
@@ -0,0 +1,43 @@
+package org.adangel.resticbrowser.metrics;
+
+/**
+ * A named value of the {@link Metrics} registry. Metrics with the same name but different labels form a family,
+ * e.g. the latency histograms of the FUSE operations.
+ */
+public abstract sealed class Metric permits Counter, Gauge, Histogram {
+    private final String name;
+    private final String help;
+    private final String labels;
+
+    Metric(String name, String help, String labels) {
+        this.name = name;
+        this.help = help;
+        this.labels = labels;
+    }
+
+    public String name() {
+        return name;
+    }
+
+    public String help() {
+        return help;
+    }
+
+    /**
+     * @return the labels in Prometheus syntax, e.g. {@code op="read"}, or an empty string
+     */
+    public String labels() {
+        return labels;
+    }
+
+    /**
+     * @return the name with the labels, e.g. {@code restic_fuse_operation_seconds{op="read"}}
+     */
+    public String key() {
+        return key(name, labels);
+    }
+
+    static String key(String name, String labels) {
+        return labels.isEmpty() ? name : name + "{" + labels + "}";
+    }
+}
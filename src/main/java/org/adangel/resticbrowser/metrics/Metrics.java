@@ -0,0 +1,152 @@
+package org.adangel.resticbrowser.metrics;
+
+import java.io.IOException;
+import java.io.Writer;
+import java.lang.management.ManagementFactory;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+import java.util.concurrent.ConcurrentSkipListMap;
+import java.util.function.LongSupplier;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+import javax.management.JMException;
+import javax.management.ObjectName;
+
+/**
+ * Registry of the metrics of restic-browser. There is one process wide registry, see {@link #global()}, which is
+ * available as the MBean {@value #OBJECT_NAME} and in the Prometheus text format, e.g. on {@code /metrics} of the
+ * web server.
+ * <p>
+ * Counters and histograms are created once (usually in a static field) and returned again for the same name and
+ * labels. A gauge replaces an existing gauge with the same name and labels, e.g. when a repository is opened again,
+ * and should be removed with {@link #remove(Gauge)} when the object it observes is closed.
+ */
+public final class Metrics {
+    private static final Logger LOGGER = Logger.getLogger(Metrics.class.getName());
+    public static final String OBJECT_NAME = "org.adangel.resticbrowser:type=Metrics";
+
+    private static final Metrics GLOBAL = new Metrics();
+    static {
+        try {
+            ManagementFactory.getPlatformMBeanServer().registerMBean(new MetricsMBean(GLOBAL), new ObjectName(OBJECT_NAME));
+        } catch (JMException e) {
+            LOGGER.log(Level.WARNING, "Couldn't register metrics MBean", e);
+        }
+    }
+
+    private final ConcurrentSkipListMap<String, Metric> metrics = new ConcurrentSkipListMap<>();
+
+    // package private for tests, everything else uses the global registry
+    Metrics() {
+    }
+
+    public static Metrics global() {
+        return GLOBAL;
+    }
+
+    /**
+     * @param labels label names and values, e.g. {@code "op", "read"}
+     */
+    public Counter counter(String name, String help, String... labels) {
+        String renderedLabels = labels(labels);
+        return get(new Counter(name, help, renderedLabels), Counter.class);
+    }
+
+    public Histogram histogram(String name, String help, String... labels) {
+        String renderedLabels = labels(labels);
+        return get(new Histogram(name, help, renderedLabels), Histogram.class);
+    }
+
+    public Gauge gauge(String name, String help, LongSupplier value, String... labels) {
+        Gauge gauge = new Gauge(name, help, labels(labels), value);
+        metrics.put(gauge.key(), gauge);
+        return gauge;
+    }
+
+    /**
+     * Removes the gauge, unless it has been replaced by another gauge with the same name and labels already.
+     */
+    public void remove(Gauge gauge) {
+        metrics.remove(gauge.key(), gauge);
+    }
+
+    private <T extends Metric> T get(T metric, Class<T> type) {
+        Metric existing = metrics.putIfAbsent(metric.key(), metric);
+        if (existing == null) {
+            return metric;
+        }
+        if (!type.isInstance(existing)) {
+            throw new IllegalArgumentException(metric.key() + " is already registered as " + existing.getClass().getSimpleName());
+        }
+        return type.cast(existing);
+    }
+
+    private static String labels(String... labels) {
+        if (labels.length % 2 != 0) {
+            throw new IllegalArgumentException("labels must be pairs of name and value");
+        }
+        StringBuilder rendered = new StringBuilder();
+        for (int i = 0; i < labels.length; i += 2) {
+            if (i > 0) {
+                rendered.append(',');
+            }
+            rendered.append(labels[i]).append("=\"")
+                    .append(labels[i + 1].replace("\\", "\\\\").replace("\"", "\\\"").replace("\n", "\\n"))
+                    .append('"');
+        }
+        return rendered.toString();
+    }
+
+    /**
+     * @return all metrics, sorted by name and labels
+     */
+    public List<Metric> metrics() {
+        return new ArrayList<>(metrics.values());
+    }
+
+    public Metric get(String key) {
+        return metrics.get(key);
+    }
+
+    /**
+     * Writes all metrics in the Prometheus text exposition format (version 0.0.4). Durations are in seconds.
+     */
+    public void writePrometheus(Writer out) throws IOException {
+        String family = null;
+        for (Metric metric : metrics.values()) {
+            if (!metric.name().equals(family)) {
+                family = metric.name();
+                out.write("# HELP " + family + " " + metric.help() + "\n");
+                out.write("# TYPE " + family + " " + switch (metric) {
+                    case Counter c -> "counter";
+                    case Gauge g -> "gauge";
+                    case Histogram h -> "histogram";
+                } + "\n");
+            }
+            switch (metric) {
+                case Counter counter -> out.write(metric.key() + " " + counter.get() + "\n");
+                case Gauge gauge -> out.write(metric.key() + " " + gauge.get() + "\n");
+                case Histogram histogram -> writeHistogram(out, histogram);
+            }
+        }
+    }
+
+    private static void writeHistogram(Writer out, Histogram histogram) throws IOException {
+        String labelPrefix = histogram.labels().isEmpty() ? "" : histogram.labels() + ",";
+        long[] buckets = histogram.buckets();
+        long cumulative = 0;
+        for (int i = 0; i < buckets.length; i++) {
+            cumulative += buckets[i];
+            String le = i < Histogram.BOUNDS.length ? seconds(Histogram.BOUNDS[i]) : "+Inf";
+            out.write(histogram.name() + "_bucket{" + labelPrefix + "le=\"" + le + "\"} " + cumulative + "\n");
+        }
+        out.write(Metric.key(histogram.name() + "_sum", histogram.labels()) + " " + seconds(histogram.sumNanos()) + "\n");
+        out.write(Metric.key(histogram.name() + "_count", histogram.labels()) + " " + histogram.count() + "\n");
+    }
+
+    private static String seconds(long nanos) {
+        return String.format(Locale.ROOT, "%.9f", nanos / 1e9).replaceAll("0+$", "").replaceAll("\\.$", ".0");
+    }
+}
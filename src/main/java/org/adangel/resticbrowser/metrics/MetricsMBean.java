@@ -0,0 +1,91 @@
+package org.adangel.resticbrowser.metrics;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import javax.management.Attribute;
+import javax.management.AttributeList;
+import javax.management.AttributeNotFoundException;
+import javax.management.DynamicMBean;
+import javax.management.MBeanAttributeInfo;
+import javax.management.MBeanInfo;
+
+/**
+ * Exposes the {@link Metrics} as read only attributes. Counters and gauges are one attribute each, histograms
+ * have the attributes {@code <key>_count} and {@code <key>_mean_micros}. The attributes are computed on each call,
+ * so metrics registered later show up, too.
+ */
+final class MetricsMBean implements DynamicMBean {
+    private static final String COUNT_SUFFIX = "_count";
+    private static final String MEAN_SUFFIX = "_mean_micros";
+
+    private final Metrics metrics;
+
+    MetricsMBean(Metrics metrics) {
+        this.metrics = metrics;
+    }
+
+    @Override
+    public Object getAttribute(String attribute) throws AttributeNotFoundException {
+        Metric metric = metrics.get(attribute);
+        if (metric instanceof Counter counter) {
+            return counter.get();
+        }
+        if (metric instanceof Gauge gauge) {
+            return gauge.get();
+        }
+        if (attribute.endsWith(COUNT_SUFFIX)
+                && metrics.get(attribute.substring(0, attribute.length() - COUNT_SUFFIX.length())) instanceof Histogram histogram) {
+            return histogram.count();
+        }
+        if (attribute.endsWith(MEAN_SUFFIX)
+                && metrics.get(attribute.substring(0, attribute.length() - MEAN_SUFFIX.length())) instanceof Histogram histogram) {
+            long count = histogram.count();
+            return count == 0 ? 0.0 : histogram.sumNanos() / 1000.0 / count;
+        }
+        throw new AttributeNotFoundException(attribute);
+    }
+
+    @Override
+    public void setAttribute(Attribute attribute) throws AttributeNotFoundException {
+        throw new AttributeNotFoundException("Metrics are read only: " + attribute.getName());
+    }
+
+    @Override
+    public AttributeList getAttributes(String[] attributes) {
+        AttributeList list = new AttributeList();
+        for (String attribute : attributes) {
+            try {
+                list.add(new Attribute(attribute, getAttribute(attribute)));
+            } catch (AttributeNotFoundException e) {
+                // not included, as the contract of DynamicMBean says
+            }
+        }
+        return list;
+    }
+
+    @Override
+    public AttributeList setAttributes(AttributeList attributes) {
+        return new AttributeList();
+    }
+
+    @Override
+    public Object invoke(String actionName, Object[] params, String[] signature) {
+        throw new UnsupportedOperationException(actionName);
+    }
+
+    @Override
+    public MBeanInfo getMBeanInfo() {
+        List<MBeanAttributeInfo> attributes = new ArrayList<>();
+        for (Metric metric : metrics.metrics()) {
+            if (metric instanceof Histogram) {
+                attributes.add(new MBeanAttributeInfo(metric.key() + COUNT_SUFFIX, "long", metric.help(), true, false, false));
+                attributes.add(new MBeanAttributeInfo(metric.key() + MEAN_SUFFIX, "double", metric.help(), true, false, false));
+            } else {
+                attributes.add(new MBeanAttributeInfo(metric.key(), "long", metric.help(), true, false, false));
+            }
+        }
+        return new MBeanInfo(getClass().getName(), "restic-browser metrics",
+                attributes.toArray(new MBeanAttributeInfo[0]), null, null, null);
+    }
+}
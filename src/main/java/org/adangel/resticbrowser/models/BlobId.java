@@ -0,0 +1,96 @@
+package org.adangel.resticbrowser.models;
+
+import java.util.HexFormat;
+
+import com.fasterxml.jackson.annotation.JsonCreator;
+import com.fasterxml.jackson.annotation.JsonValue;
+
+/**
+ * The ID of a blob or tree, the SHA-256 hash of its plaintext, as four longs. Takes 48 bytes on the heap instead of
+ * about 104 bytes for the 64 character hex string, and hashing and comparing need no string traversal. The hash code
+ * is computed once (it fits into the alignment padding). IDs are converted from hex at the JSON boundary, see
+ * {@link #parse(String)}.
+ */
+public final class BlobId implements Comparable<BlobId> {
+    public static final int LENGTH = 32;
+
+    private final long a;
+    private final long b;
+    private final long c;
+    private final long d;
+    private final int hash;
+
+    private BlobId(long a, long b, long c, long d) {
+        this.a = a;
+        this.b = b;
+        this.c = c;
+        this.d = d;
+        // the bytes of a SHA-256 hash are uniformly distributed already
+        this.hash = Long.hashCode(a);
+    }
+
+    /**
+     * @throws IllegalArgumentException if {@code hex} is not 64 hex digits
+     */
+    @JsonCreator(mode = JsonCreator.Mode.DELEGATING)
+    public static BlobId parse(String hex) {
+        if (hex.length() != LENGTH * 2) {
+            throw new IllegalArgumentException("Invalid ID: " + hex);
+        }
+        return new BlobId(HexFormat.fromHexDigitsToLong(hex, 0, 16), HexFormat.fromHexDigitsToLong(hex, 16, 32),
+                HexFormat.fromHexDigitsToLong(hex, 32, 48), HexFormat.fromHexDigitsToLong(hex, 48, 64));
+    }
+
+    /**
+     * @param bytes contains the 32 bytes of the ID at {@code offset}, e.g. a pack header
+     */
+    public static BlobId of(byte[] bytes, int offset) {
+        return new BlobId(getLong(bytes, offset), getLong(bytes, offset + 8), getLong(bytes, offset + 16),
+                getLong(bytes, offset + 24));
+    }
+
+    private static long getLong(byte[] bytes, int offset) {
+        long value = 0;
+        for (int i = offset; i < offset + 8; i++) {
+            value = value << 8 | bytes[i] & 0xff;
+        }
+        return value;
+    }
+
+    @Override
+    public boolean equals(Object o) {
+        return this == o || o instanceof BlobId other
+                && hash == other.hash && a == other.a && b == other.b && c == other.c && d == other.d;
+    }
+
+    @Override
+    public int hashCode() {
+        return hash;
+    }
+
+    /** Same order as the hex strings. */
+    @Override
+    public int compareTo(BlobId other) {
+        int result = Long.compareUnsigned(a, other.a);
+        if (result == 0) {
+            result = Long.compareUnsigned(b, other.b);
+        }
+        if (result == 0) {
+            result = Long.compareUnsigned(c, other.c);
+        }
+        if (result == 0) {
+            result = Long.compareUnsigned(d, other.d);
+        }
+        return result;
+    }
+
+    /**
+     * @return the 64 character hex string
+     */
+    @JsonValue
+    @Override
+    public String toString() {
+        HexFormat hex = HexFormat.of();
+        return hex.toHexDigits(a) + hex.toHexDigits(b) + hex.toHexDigits(c) + hex.toHexDigits(d);
+    }
+}
@@ -1,9 +1,17 @@
 package org.adangel.resticbrowser.models;
 
 import java.math.BigInteger;
+import java.time.DateTimeException;
+import java.time.Instant;
+import java.time.LocalDate;
 import java.time.OffsetDateTime;
+import java.time.ZoneOffset;
+import java.util.AbstractList;
+import java.util.HexFormat;
 import java.util.List;
+import java.util.RandomAccess;
 
+import com.fasterxml.jackson.annotation.JsonCreator;
 import com.fasterxml.jackson.annotation.JsonProperty;
 
 // https://github.com/restic/restic/blob/master/internal/restic/tree.go
@@ -17,22 +25,397 @@ public record Tree(List<Node> nodes) {
         SYMLINK
     }
 
+    /**
+     * A node of a tree, stored compactly since the trees are cached: user and group names are interned, the
+     * timestamps are kept as epoch nanos plus the offset in minutes, the inode as a long, the content blob IDs as
+     * packed 32 byte arrays and the subtree as {@link BlobId}. The {@link OffsetDateTime}s and hex IDs are only decoded
+     * when asked for.
+     * <p>
+     * Timestamps outside the range of epoch nanos (1677 to 2262) are clamped, e.g. Go's zero time.
+     */
     // https://github.com/restic/restic/blob/master/internal/restic/node.go
-    public record Node(String name,
-                NodeType type,
-                long mode,
-                OffsetDateTime mtime,
-                OffsetDateTime atime,
-                OffsetDateTime ctime,
-                int uid,
-                int gid,
-                String user,
-                String group,
-                BigInteger inode,
-                long device_id,
-                long size,
-                int links,
-                String linktarget,
-                List<String> content,
-                String subtree) {};
+    public static final class Node {
+        /** Epoch nanos of a timestamp which is not set. */
+        public static final long NO_TIME = Long.MIN_VALUE;
+        private static final int ID_LENGTH = BlobId.LENGTH;
+
+        private final String name;
+        private final NodeType type;
+        private final long mode;
+        private final long mtime;
+        private final long atime;
+        private final long ctime;
+        private final short mtimeOffset;
+        private final short atimeOffset;
+        private final short ctimeOffset;
+        private final int uid;
+        private final int gid;
+        private final String user;
+        private final String group;
+        private final long inode;
+        private final long device_id;
+        private final long size;
+        private final int links;
+        private final String linktarget;
+        private final byte[] content;
+        private final BlobId subtree;
+
+        public Node(String name,
+                    NodeType type,
+                    long mode,
+                    OffsetDateTime mtime,
+                    OffsetDateTime atime,
+                    OffsetDateTime ctime,
+                    int uid,
+                    int gid,
+                    String user,
+                    String group,
+                    BigInteger inode,
+                    long device_id,
+                    long size,
+                    int links,
+                    String linktarget,
+                    List<String> content,
+                    String subtree) {
+            this(name, type, mode, epochNanos(mtime), epochNanos(atime), epochNanos(ctime), offsetMinutes(mtime),
+                    offsetMinutes(atime), offsetMinutes(ctime), uid, gid, user, group,
+                    inode != null ? inode.longValue() : 0, device_id, size, links, linktarget, pack(content),
+                    subtree != null ? BlobId.parse(subtree) : null);
+        }
+
+        private Node(String name, NodeType type, long mode, long mtime, long atime, long ctime, short mtimeOffset,
+                     short atimeOffset, short ctimeOffset, int uid, int gid, String user, String group, long inode,
+                     long device_id, long size, int links, String linktarget, byte[] content, BlobId subtree) {
+            this.name = name;
+            this.type = type;
+            this.mode = mode;
+            this.mtime = mtime;
+            this.atime = atime;
+            this.ctime = ctime;
+            this.mtimeOffset = mtimeOffset;
+            this.atimeOffset = atimeOffset;
+            this.ctimeOffset = ctimeOffset;
+            this.uid = uid;
+            this.gid = gid;
+            this.user = user != null ? user.intern() : null;
+            this.group = group != null ? group.intern() : null;
+            this.inode = inode;
+            this.device_id = device_id;
+            this.size = size;
+            this.links = links;
+            this.linktarget = linktarget;
+            this.content = content;
+            this.subtree = subtree;
+        }
+
+        @JsonCreator
+        static Node fromJson(@JsonProperty("name") String name,
+                             @JsonProperty("type") NodeType type,
+                             @JsonProperty("mode") long mode,
+                             @JsonProperty("mtime") String mtime,
+                             @JsonProperty("atime") String atime,
+                             @JsonProperty("ctime") String ctime,
+                             @JsonProperty("uid") int uid,
+                             @JsonProperty("gid") int gid,
+                             @JsonProperty("user") String user,
+                             @JsonProperty("group") String group,
+                             @JsonProperty("inode") Number inode,
+                             @JsonProperty("device_id") long device_id,
+                             @JsonProperty("size") long size,
+                             @JsonProperty("links") int links,
+                             @JsonProperty("linktarget") String linktarget,
+                             @JsonProperty("content") List<String> content,
+                             @JsonProperty("subtree") BlobId subtree) {
+            // the inode is an uint64, BigInteger.longValue() keeps the lower 64 bits
+            return new Node(name, type, mode, epochNanos(mtime), epochNanos(atime), epochNanos(ctime),
+                    offsetMinutes(mtime), offsetMinutes(atime), offsetMinutes(ctime), uid, gid, user, group,
+                    inode != null ? inode.longValue() : 0, device_id, size, links, linktarget, pack(content), subtree);
+        }
+
+        @JsonProperty("name")
+        public String name() {
+            return name;
+        }
+
+        @JsonProperty("type")
+        public NodeType type() {
+            return type;
+        }
+
+        @JsonProperty("mode")
+        public long mode() {
+            return mode;
+        }
+
+        @JsonProperty("mtime")
+        public OffsetDateTime mtime() {
+            return toDateTime(mtime, mtimeOffset);
+        }
+
+        @JsonProperty("atime")
+        public OffsetDateTime atime() {
+            return toDateTime(atime, atimeOffset);
+        }
+
+        @JsonProperty("ctime")
+        public OffsetDateTime ctime() {
+            return toDateTime(ctime, ctimeOffset);
+        }
+
+        /** @return the modification time in nanos since the epoch, or {@link #NO_TIME} */
+        public long mtimeNanos() {
+            return mtime;
+        }
+
+        /** @return the access time in nanos since the epoch, or {@link #NO_TIME} */
+        public long atimeNanos() {
+            return atime;
+        }
+
+        /** @return the change time in nanos since the epoch, or {@link #NO_TIME} */
+        public long ctimeNanos() {
+            return ctime;
+        }
+
+        @JsonProperty("uid")
+        public int uid() {
+            return uid;
+        }
+
+        @JsonProperty("gid")
+        public int gid() {
+            return gid;
+        }
+
+        @JsonProperty("user")
+        public String user() {
+            return user;
+        }
+
+        @JsonProperty("group")
+        public String group() {
+            return group;
+        }
+
+        /** @return the inode, an unsigned 64 bit value, 0 if not set */
+        public long inode() {
+            return inode;
+        }
+
+        @JsonProperty("inode")
+        private BigInteger inodeJson() {
+            return new BigInteger(Long.toUnsignedString(inode));
+        }
+
+        @JsonProperty("device_id")
+        public long device_id() {
+            return device_id;
+        }
+
+        @JsonProperty("size")
+        public long size() {
+            return size;
+        }
+
+        @JsonProperty("links")
+        public int links() {
+            return links;
+        }
+
+        @JsonProperty("linktarget")
+        public String linktarget() {
+            return linktarget;
+        }
+
+        /**
+         * @return the IDs of the data blobs of a file, decoded to hex on each access. {@code null} for nodes without
+         *         content.
+         * @see #contentCount()
+         * @see #contentId(int)
+         */
+        @JsonProperty("content")
+        public List<String> content() {
+            if (content == null) {
+                return null;
+            }
+            return new AbstractIds<>() {
+                @Override
+                String id(int index) {
+                    return HexFormat.of().formatHex(content, index * ID_LENGTH, (index + 1) * ID_LENGTH);
+                }
+            };
+        }
+
+        /**
+         * @return the IDs of the data blobs of a file, decoded on each access. Empty for nodes without content.
+         */
+        public List<BlobId> contentIds() {
+            return new AbstractIds<>() {
+                @Override
+                BlobId id(int index) {
+                    return contentId(index);
+                }
+            };
+        }
+
+        /** @return the number of data blobs of a file, 0 for nodes without content */
+        public int contentCount() {
+            return content != null ? content.length / ID_LENGTH : 0;
+        }
+
+        public BlobId contentId(int index) {
+            return BlobId.of(content, index * ID_LENGTH);
+        }
+
+        /** @return the ID of the tree of a directory as hex, {@code null} for other nodes */
+        @JsonProperty("subtree")
+        public String subtree() {
+            return subtree != null ? subtree.toString() : null;
+        }
+
+        /** @return the ID of the tree of a directory, {@code null} for other nodes */
+        public BlobId subtreeId() {
+            return subtree;
+        }
+
+        @Override
+        public String toString() {
+            return "Node[name=" + name + ", type=" + type + ", size=" + size + ", subtree=" + subtree + "]";
+        }
+
+        private abstract class AbstractIds<T> extends AbstractList<T> implements RandomAccess {
+            abstract T id(int index);
+
+            @Override
+            public T get(int index) {
+                if (index < 0 || index >= size()) {
+                    throw new IndexOutOfBoundsException(index);
+                }
+                return id(index);
+            }
+
+            @Override
+            public int size() {
+                return contentCount();
+            }
+        }
+
+        private static byte[] pack(List<String> ids) {
+            if (ids == null) {
+                return null;
+            }
+            byte[] packed = new byte[ids.size() * ID_LENGTH];
+            for (int i = 0; i < ids.size(); i++) {
+                String id = ids.get(i);
+                if (id.length() != ID_LENGTH * 2) {
+                    throw new IllegalArgumentException("Invalid blob ID: " + id);
+                }
+                for (int j = 0; j < ID_LENGTH; j++) {
+                    packed[i * ID_LENGTH + j] = (byte) HexFormat.fromHexDigits(id, j * 2, j * 2 + 2);
+                }
+            }
+            return packed;
+        }
+
+        private static OffsetDateTime toDateTime(long epochNanos, short offsetMinutes) {
+            if (epochNanos == NO_TIME) {
+                return null;
+            }
+            return OffsetDateTime.ofInstant(Instant.ofEpochSecond(0, epochNanos),
+                    ZoneOffset.ofTotalSeconds(offsetMinutes * 60));
+        }
+
+        private static long epochNanos(OffsetDateTime time) {
+            if (time == null) {
+                return NO_TIME;
+            }
+            return epochNanos(time.toEpochSecond(), time.getNano());
+        }
+
+        private static long epochNanos(long epochSecond, long nanoOfSecond) {
+            try {
+                return Math.addExact(Math.multiplyExact(epochSecond, 1_000_000_000L), nanoOfSecond);
+            } catch (ArithmeticException e) {
+                return epochSecond < 0 ? NO_TIME + 1 : Long.MAX_VALUE;
+            }
+        }
+
+        private static short offsetMinutes(OffsetDateTime time) {
+            return time != null ? (short) (time.getOffset().getTotalSeconds() / 60) : 0;
+        }
+
+        /**
+         * Parses a RFC 3339 timestamp as written by restic, e.g. {@code 2024-01-20T15:46:32.123456789+01:00},
+         * without creating an {@link OffsetDateTime}. Other formats fall back to {@link OffsetDateTime#parse}.
+         */
+        private static long epochNanos(String time) {
+            if (time == null) {
+                return NO_TIME;
+            }
+            try {
+                int end = offsetStart(time);
+                if (end >= 19 && time.charAt(4) == '-' && time.charAt(7) == '-' && time.charAt(10) == 'T'
+                        && time.charAt(13) == ':' && time.charAt(16) == ':'
+                        && (end == 19 || time.charAt(19) == '.' && end - 20 <= 9)) {
+                    long nanoOfSecond = 0;
+                    for (int i = 20; i < end; i++) {
+                        nanoOfSecond = nanoOfSecond * 10 + digits(time, i, i + 1);
+                    }
+                    for (int i = Math.max(end - 20, 0); i < 9; i++) {
+                        nanoOfSecond *= 10;
+                    }
+                    long epochDay = LocalDate.of(digits(time, 0, 4), digits(time, 5, 7), digits(time, 8, 10)).toEpochDay();
+                    long epochSecond = epochDay * 86400 + digits(time, 11, 13) * 3600L + digits(time, 14, 16) * 60L
+                            + digits(time, 17, 19) - offsetMinutes(time) * 60L;
+                    return epochNanos(epochSecond, nanoOfSecond);
+                }
+            } catch (DateTimeException | NumberFormatException e) {
+                // fall through
+            }
+            return epochNanos(OffsetDateTime.parse(time));
+        }
+
+        private static short offsetMinutes(String time) {
+            if (time == null) {
+                return 0;
+            }
+            int start = offsetStart(time);
+            if (start > 0 && time.charAt(start) == 'Z') {
+                return 0;
+            }
+            if (start > 0 && time.length() - start == 6 && time.charAt(start + 3) == ':') {
+                try {
+                    int minutes = digits(time, start + 1, start + 3) * 60 + digits(time, start + 4, start + 6);
+                    return (short) (time.charAt(start) == '-' ? -minutes : minutes);
+                } catch (NumberFormatException e) {
+                    // fall through
+                }
+            }
+            return offsetMinutes(OffsetDateTime.parse(time));
+        }
+
+        /** @return the index of {@code Z} or of the sign of the offset, -1 if not found */
+        private static int offsetStart(String time) {
+            int length = time.length();
+            if (length > 0 && time.charAt(length - 1) == 'Z') {
+                return length - 1;
+            }
+            if (length >= 6 && (time.charAt(length - 6) == '+' || time.charAt(length - 6) == '-')) {
+                return length - 6;
+            }
+            return -1;
+        }
+
+        private static int digits(String s, int from, int to) {
+            int value = 0;
+            for (int i = from; i < to; i++) {
+                char c = s.charAt(i);
+                if (c < '0' || c > '9') {
+                    throw new NumberFormatException("Not a digit: " + c);
+                }
+                value = value * 10 + c - '0';
+            }
+            return value;
+        }
+    }
 }
@@ -0,0 +1,160 @@
+package org.adangel.resticbrowser.restore;
+
+import java.io.IOException;
+import java.nio.file.Path;
+import java.security.GeneralSecurityException;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+
+import org.adangel.resticbrowser.Repository;
+import org.adangel.resticbrowser.models.BlobId;
+import org.adangel.resticbrowser.models.Tree;
+
+/**
+ * Describes everything that needs to be done to restore a subtree: the directories, symlinks and files to create
+ * and which blob needs to be written to which file offsets. Each blob appears only once, even if it is used by
+ * many files, so it is read and decrypted only once.
+ *
+ * <p>The names in the trees are validated, so that every entry is created directly in its parent directory and no
+ * two entries of a tree are restored to the same path.
+ */
+final class RestorePlan {
+    record Directory(Path target, Tree.Node node) {}
+
+    record Symlink(Path target, Tree.Node node) {}
+
+    /** {@code contentBytes} is the sum of the plaintext lengths of the content blobs. */
+    record File(Path target, Tree.Node node, long contentBytes) {}
+
+    /** {@code file} is an index into {@link #files()}. */
+    record Target(int file, long offset) {}
+
+    record Blob(BlobId id, Repository.IndexEntry indexEntry, List<Target> targets) {}
+
+    private final List<Directory> directories = new ArrayList<>();
+    private final List<Symlink> symlinks = new ArrayList<>();
+    private final List<File> files = new ArrayList<>();
+    private final Map<BlobId, Blob> blobs = new LinkedHashMap<>();
+    private long totalBytes;
+
+    private RestorePlan() {}
+
+    static RestorePlan create(Repository repository, List<Tree.Node> nodes, Path target) throws IOException {
+        RestorePlan plan = new RestorePlan();
+        try {
+            plan.addNodes(repository, nodes, target);
+        } catch (GeneralSecurityException e) {
+            throw new IOException(e);
+        }
+        return plan;
+    }
+
+    private void addNodes(Repository repository, List<Tree.Node> nodes, Path parent) throws IOException, GeneralSecurityException {
+        // all subtrees of a directory are read together, they are usually stored next to each other
+        Map<BlobId, Tree> subtrees = repository.readTrees(nodes.stream()
+                .filter(node -> node.type() == Tree.NodeType.DIR)
+                .map(Tree.Node::subtreeId)
+                .toList());
+        Set<String> names = new HashSet<>();
+        for (Tree.Node node : nodes) {
+            // a name with a separator of this platform would create the entry in a subdirectory
+            if (!isValidName(node.name()) || !parent.equals(parent.resolve(node.name()).getParent())) {
+                throw new IOException("Invalid file name in tree: " + node.name());
+            }
+            if (!names.add(node.name())) {
+                throw new IOException("Duplicate file name in tree: " + node.name());
+            }
+            Path target = parent.resolve(node.name());
+            switch (node.type()) {
+                case DIR -> {
+                    directories.add(new Directory(target, node));
+                    addNodes(repository, subtrees.get(node.subtreeId()).nodes(), target);
+                }
+                case SYMLINK -> symlinks.add(new Symlink(target, node));
+                case FILE -> addFile(repository, target, node);
+            }
+        }
+    }
+
+    private static boolean isValidName(String name) {
+        return name != null && !name.isEmpty() && !name.equals(".") && !name.equals("..")
+                && name.indexOf('/') == -1 && name.indexOf('\0') == -1;
+    }
+
+    private void addFile(Repository repository, Path target, Tree.Node node) {
+        int fileIndex = files.size();
+        long offset = 0;
+        for (int i = 0; i < node.contentCount(); i++) {
+            BlobId blobId = node.contentId(i);
+            Blob blob = blobs.computeIfAbsent(blobId, id -> new Blob(id, repository.findBlob(id), new ArrayList<>()));
+            blob.targets().add(new Target(fileIndex, offset));
+            offset += blob.indexEntry().plaintextLength();
+        }
+        files.add(new File(target, node, offset));
+        totalBytes += offset;
+    }
+
+    List<Directory> directories() {
+        return directories;
+    }
+
+    List<Symlink> symlinks() {
+        return symlinks;
+    }
+
+    List<File> files() {
+        return files;
+    }
+
+    long totalBytes() {
+        return totalBytes;
+    }
+
+    int blobCount() {
+        return blobs.size();
+    }
+
+    Blob blob(BlobId id) {
+        return blobs.get(id);
+    }
+
+    /**
+     * Groups the blobs by pack file and splits each pack into regions of blobs which are close to each other, so that
+     * the regions of a pack can be restored in parallel. Each region is read with
+     * {@link Repository#readBlobs(java.util.Collection, Repository.BlobConsumer)}.
+     *
+     * @param maxRegionSize the maximum number of bytes a region spans in its pack
+     */
+    List<List<Blob>> packRegions(int maxRegionSize) {
+        Map<String, List<Blob>> byPack = new TreeMap<>();
+        for (Blob blob : blobs.values()) {
+            byPack.computeIfAbsent(blob.indexEntry().packId(), k -> new ArrayList<>()).add(blob);
+        }
+
+        List<List<Blob>> regions = new ArrayList<>();
+        for (List<Blob> packBlobs : byPack.values()) {
+            packBlobs.sort(Comparator.comparingInt(b -> b.indexEntry().offset()));
+            List<Blob> region = new ArrayList<>();
+            int regionStart = 0;
+            for (Blob blob : packBlobs) {
+                Repository.IndexEntry entry = blob.indexEntry();
+                if (!region.isEmpty() && entry.offset() + entry.length() - regionStart > maxRegionSize) {
+                    regions.add(region);
+                    region = new ArrayList<>();
+                }
+                if (region.isEmpty()) {
+                    regionStart = entry.offset();
+                }
+                region.add(blob);
+            }
+            regions.add(region);
+        }
+        return regions;
+    }
+}
@@ -0,0 +1,18 @@
+package org.adangel.resticbrowser.restore;
+
+import java.time.Duration;
+
+public record RestoreProgress(long totalFiles, long totalBytes, long restoredBytes, long totalBlobs, long restoredBlobs,
+                              Duration elapsed) {
+    public double percent() {
+        return totalBytes == 0 ? 100.0 : restoredBytes * 100.0 / totalBytes;
+    }
+
+    /**
+     * @return bytes written per second
+     */
+    public double throughput() {
+        long millis = elapsed.toMillis();
+        return millis == 0 ? 0.0 : restoredBytes * 1000.0 / millis;
+    }
+}
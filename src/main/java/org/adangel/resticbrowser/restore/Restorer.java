@@ -0,0 +1,272 @@
+package org.adangel.resticbrowser.restore;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.LinkOption;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.nio.file.attribute.BasicFileAttributeView;
+import java.nio.file.attribute.FileTime;
+import java.nio.file.attribute.PosixFileAttributeView;
+import java.nio.file.attribute.PosixFilePermission;
+import java.security.GeneralSecurityException;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.EnumSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Consumer;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+import org.adangel.resticbrowser.Repository;
+import org.adangel.resticbrowser.models.BlobId;
+import org.adangel.resticbrowser.models.Tree;
+
+/**
+ * Restores a subtree of a snapshot into a local directory.
+ *
+ * <p>The restore is planned up front: all trees of the subtree are read and the needed blobs are grouped by pack
+ * file and offset. Then the blobs of each region of a pack are read with {@link Repository#readBlobs(
+ * java.util.Collection, Repository.BlobConsumer)}, every blob is decrypted once and written to all file offsets where
+ * it is needed. The regions are processed in parallel, also the regions of the same pack.
+ *
+ * <p>Existing entries in the target directory are replaced, symlinks are never followed: directories and files are
+ * created and written without following links, and the symlinks of the snapshot are only created after all files
+ * have been written.
+ */
+public class Restorer {
+    private static final Logger LOGGER = Logger.getLogger(Restorer.class.getName());
+
+    /** The maximum number of bytes of a pack which are restored by one task. */
+    static final int MAX_REGION_SIZE = 16 * 1024 * 1024;
+
+    private final Repository repository;
+    private final int threads;
+    private final Consumer<RestoreProgress> progressListener;
+
+    public Restorer(Repository repository, int threads, Consumer<RestoreProgress> progressListener) {
+        if (threads <= 0) {
+            throw new IllegalArgumentException("threads must be positive");
+        }
+        this.repository = repository;
+        this.threads = threads;
+        this.progressListener = progressListener;
+    }
+
+    /**
+     * Restores the content of the directory {@code path} of the given snapshot into {@code target}.
+     *
+     * @return the final progress
+     */
+    public RestoreProgress restore(String snapshotId, String path, Path target) throws IOException {
+        long start = System.nanoTime();
+        List<Tree.Node> nodes;
+        try {
+            nodes = repository.listFiles(snapshotId, path);
+        } catch (GeneralSecurityException e) {
+            throw new IOException(e);
+        }
+        RestorePlan plan = RestorePlan.create(repository, nodes, target);
+        LOGGER.fine(() -> "Restore plan: %d files, %d bytes, %d blobs".formatted(plan.files().size(), plan.totalBytes(), plan.blobCount()));
+
+        Files.createDirectories(target);
+        for (RestorePlan.Directory directory : plan.directories()) {
+            createDirectory(directory.target());
+        }
+        List<RestoredFile> files = new ArrayList<>(plan.files().size());
+        for (RestorePlan.File file : plan.files()) {
+            files.add(RestoredFile.create(file));
+        }
+
+        AtomicLong restoredBytes = new AtomicLong();
+        AtomicLong restoredBlobs = new AtomicLong();
+        Runnable reportProgress = () -> progressListener.accept(new RestoreProgress(plan.files().size(),
+                plan.totalBytes(), restoredBytes.get(), plan.blobCount(), restoredBlobs.get(),
+                Duration.ofNanos(System.nanoTime() - start)));
+
+        ScheduledExecutorService reporter = Executors.newSingleThreadScheduledExecutor();
+        ExecutorService workers = Executors.newFixedThreadPool(threads);
+        try {
+            reporter.scheduleAtFixedRate(reportProgress, 1, 1, TimeUnit.SECONDS);
+            List<Future<?>> futures = new ArrayList<>();
+            for (List<RestorePlan.Blob> region : plan.packRegions(MAX_REGION_SIZE)) {
+                futures.add(workers.submit(() -> {
+                    restoreRegion(plan, files, region, restoredBytes, restoredBlobs);
+                    return null;
+                }));
+            }
+            for (Future<?> future : futures) {
+                future.get();
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IOException("Restore has been interrupted", e);
+        } catch (ExecutionException e) {
+            if (e.getCause() instanceof IOException ioException) {
+                throw ioException;
+            }
+            throw new IOException(e.getCause());
+        } finally {
+            workers.shutdownNow();
+            reporter.shutdownNow();
+            closeAll(files);
+        }
+
+        for (RestorePlan.File file : plan.files()) {
+            applyMetadata(file.target(), file.node());
+        }
+        for (RestorePlan.Symlink symlink : plan.symlinks()) {
+            createSymlink(symlink);
+        }
+        // deepest directories first, setting the time of a child modifies the parent
+        for (RestorePlan.Directory directory : plan.directories().reversed()) {
+            applyMetadata(directory.target(), directory.node());
+        }
+        reportProgress.run();
+        return new RestoreProgress(plan.files().size(), plan.totalBytes(), restoredBytes.get(), plan.blobCount(),
+                restoredBlobs.get(), Duration.ofNanos(System.nanoTime() - start));
+    }
+
+    private void restoreRegion(RestorePlan plan, List<RestoredFile> files, List<RestorePlan.Blob> region,
+                               AtomicLong restoredBytes, AtomicLong restoredBlobs) throws IOException {
+        List<BlobId> ids = region.stream().map(RestorePlan.Blob::id).toList();
+        repository.readBlobs(ids, (id, plaintext) -> {
+            for (RestorePlan.Target target : plan.blob(id).targets()) {
+                files.get(target.file()).write(plaintext, target.offset());
+                restoredBytes.addAndGet(plaintext.length);
+            }
+            restoredBlobs.incrementAndGet();
+        });
+    }
+
+    /**
+     * Replaces an existing entry which is not a directory, e.g. a symlink, instead of following it.
+     */
+    private static void createDirectory(Path target) throws IOException {
+        if (Files.isDirectory(target, LinkOption.NOFOLLOW_LINKS)) {
+            return;
+        }
+        Files.deleteIfExists(target);
+        Files.createDirectory(target);
+    }
+
+    private static void createSymlink(RestorePlan.Symlink symlink) {
+        try {
+            Files.deleteIfExists(symlink.target());
+            Files.createSymbolicLink(symlink.target(), Path.of(symlink.node().linktarget()));
+        } catch (UnsupportedOperationException | IOException e) {
+            LOGGER.log(Level.WARNING, "Couldn't create symlink " + symlink.target(), e);
+        }
+    }
+
+    private static void closeAll(List<RestoredFile> files) throws IOException {
+        IOException error = null;
+        for (RestoredFile file : files) {
+            try {
+                file.close();
+            } catch (IOException e) {
+                if (error == null) {
+                    error = e;
+                } else {
+                    error.addSuppressed(e);
+                }
+            }
+        }
+        if (error != null) {
+            throw error;
+        }
+    }
+
+    private static void applyMetadata(Path target, Tree.Node node) throws IOException {
+        PosixFileAttributeView posix = Files.getFileAttributeView(target, PosixFileAttributeView.class, LinkOption.NOFOLLOW_LINKS);
+        if (posix != null) {
+            posix.setPermissions(permissions(node.mode()));
+        }
+        if (node.mtime() != null) {
+            Files.getFileAttributeView(target, BasicFileAttributeView.class, LinkOption.NOFOLLOW_LINKS)
+                    .setTimes(FileTime.from(node.mtime().toInstant()), null, null);
+        }
+    }
+
+    /**
+     * A file which is being restored. It is created up front with its final size, then opened once when the first
+     * blob is written, and closed when all of its blobs have been written.
+     */
+    private static final class RestoredFile {
+        private final Path target;
+        private long remainingBytes;
+        private FileChannel channel;
+
+        private RestoredFile(Path target, long remainingBytes) {
+            this.target = target;
+            this.remainingBytes = remainingBytes;
+        }
+
+        static RestoredFile create(RestorePlan.File file) throws IOException {
+            if (Files.exists(file.target(), LinkOption.NOFOLLOW_LINKS)
+                    && !Files.isRegularFile(file.target(), LinkOption.NOFOLLOW_LINKS)) {
+                Files.delete(file.target());
+            }
+            try (FileChannel channel = FileChannel.open(file.target(), StandardOpenOption.CREATE,
+                    StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING, LinkOption.NOFOLLOW_LINKS)) {
+                if (file.node().size() > 0) {
+                    // like RandomAccessFile.setLength, the file is sparse until it is written
+                    channel.write(ByteBuffer.allocate(1), file.node().size() - 1);
+                }
+            }
+            return new RestoredFile(file.target(), file.contentBytes());
+        }
+
+        void write(byte[] plaintext, long position) throws IOException {
+            FileChannel channel = open();
+            ByteBuffer buffer = ByteBuffer.wrap(plaintext);
+            while (buffer.hasRemaining()) {
+                position += channel.write(buffer, position);
+            }
+            written(plaintext.length);
+        }
+
+        private synchronized FileChannel open() throws IOException {
+            if (channel == null) {
+                channel = FileChannel.open(target, StandardOpenOption.WRITE, LinkOption.NOFOLLOW_LINKS);
+            }
+            return channel;
+        }
+
+        private synchronized void written(long bytes) throws IOException {
+            remainingBytes -= bytes;
+            if (remainingBytes <= 0) {
+                close();
+            }
+        }
+
+        synchronized void close() throws IOException {
+            if (channel != null) {
+                channel.close();
+                channel = null;
+            }
+        }
+    }
+
+    private static Set<PosixFilePermission> permissions(long mode) {
+        Set<PosixFilePermission> permissions = EnumSet.noneOf(PosixFilePermission.class);
+        PosixFilePermission[] values = PosixFilePermission.values();
+        // OWNER_READ is 0400 ... OTHERS_EXECUTE is 0001
+        for (int i = 0; i < values.length; i++) {
+            if ((mode & (1L << (values.length - 1 - i))) != 0) {
+                permissions.add(values[i]);
+            }
+        }
+        return permissions;
+    }
+}
@@ -0,0 +1,358 @@
+package org.adangel.resticbrowser.web;
+
+import java.io.BufferedOutputStream;
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.URLDecoder;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.LinkOption;
+import java.nio.file.Path;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.ArrayDeque;
+import java.util.Deque;
+import java.util.Iterator;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executor;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+import java.util.stream.Stream;
+import java.util.zip.CRC32;
+import java.util.zip.Deflater;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipOutputStream;
+
+import org.apache.commons.compress.archivers.tar.TarArchiveEntry;
+import org.apache.commons.compress.archivers.tar.TarArchiveOutputStream;
+import org.apache.commons.compress.archivers.tar.TarConstants;
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpHandler;
+
+/**
+ * Streams a directory subtree as tar or zip archive, e.g.
+ * <pre>GET /archive/snapshots/{id}/home/johndoe?format=zip</pre>
+ *
+ * <p>The archive is written directly into the response. The contents of the upcoming (small) files are read in
+ * parallel while the earlier entries are written, so that decrypting the blobs doesn't stall the stream.
+ */
+public class ArchiveHandler implements HttpHandler {
+    private static final Logger LOGGER = Logger.getLogger(ArchiveHandler.class.getName());
+
+    /** Number of entries that are looked ahead. */
+    private static final int PREFETCH_ENTRIES = 16;
+    /** Files up to this size are read into memory ahead of time, bigger files are streamed when written. */
+    private static final long PREFETCH_MAX_FILE_SIZE = 2 * 1024 * 1024;
+
+    private final String contextPath;
+    private final Path root;
+    private final Executor prefetchExecutor;
+
+    public ArchiveHandler(String contextPath, Path root, Executor prefetchExecutor) {
+        this.contextPath = contextPath;
+        this.root = root;
+        this.prefetchExecutor = prefetchExecutor;
+    }
+
+    @Override
+    public void handle(HttpExchange exchange) throws IOException {
+        boolean aborted = false;
+        try {
+            if (!exchange.getRequestMethod().equals("GET")) {
+                exchange.getResponseHeaders().set("Allow", "GET");
+                exchange.sendResponseHeaders(405, -1);
+                return;
+            }
+            Format format = Format.fromQuery(exchange.getRequestURI().getRawQuery());
+            if (format == null) {
+                exchange.sendResponseHeaders(400, -1);
+                return;
+            }
+
+            String requestPath = exchange.getRequestURI().getPath().substring(contextPath.length());
+            Path dir = root.resolve(requestPath.replaceAll("^/+|/+$", ""));
+            if (!isInsideSnapshot(dir) || !Files.isDirectory(dir)) {
+                exchange.sendResponseHeaders(404, -1);
+                return;
+            }
+
+            String name = dir.getFileName().toString();
+            exchange.getResponseHeaders().set("Content-Type", format.contentType);
+            exchange.getResponseHeaders().set("Content-Disposition", "attachment; filename=\"" + name + format.extension + "\"");
+            exchange.sendResponseHeaders(200, 0);
+            ArchiveWriter writer = format.newWriter(new BufferedOutputStream(exchange.getResponseBody(), 64 * 1024));
+            try {
+                writeArchive(dir, writer);
+            } catch (IOException | RuntimeException e) {
+                // The status has already been sent, all we can do is to abort the response. Neither the archive is
+                // finished nor the exchange closed: that would end the chunked response regularly and the client
+                // couldn't tell the truncated archive from a complete one. The server drops the connection instead.
+                LOGGER.log(Level.SEVERE, "Error while writing archive for " + dir + ", aborting the response", e);
+                aborted = true;
+                throw e;
+            }
+            writer.close();
+        } finally {
+            if (!aborted) {
+                exchange.close();
+            }
+        }
+    }
+
+    private static boolean isInsideSnapshot(Path dir) {
+        int count = dir.getNameCount();
+        String first = count > 0 ? dir.getName(0).toString() : "";
+        return first.equals("snapshots") && count >= 2 || first.equals("hosts") && count >= 3;
+    }
+
+    private static Path snapshotRoot(Path dir) {
+        return dir.getRoot().resolve(dir.subpath(0, dir.getName(0).toString().equals("snapshots") ? 2 : 3));
+    }
+
+    private void writeArchive(Path dir, ArchiveWriter writer) throws IOException {
+        Path base = dir.getParent();
+        Path snapshotRoot = snapshotRoot(dir);
+        Deque<Entry> window = new ArrayDeque<>();
+        try (Stream<Path> walk = Files.walk(dir)) {
+            Iterator<Path> paths = walk.iterator();
+            fill(window, paths);
+            while (!window.isEmpty()) {
+                Entry entry = window.removeFirst();
+                fill(window, paths);
+
+                String name = base.relativize(entry.path).toString();
+                BasicFileAttributes attributes = entry.attributes;
+                if (attributes.isDirectory()) {
+                    writer.directory(name + "/", attributes);
+                } else if (attributes.isSymbolicLink()) {
+                    writer.symlink(name, attributes, linkTarget(entry.path, snapshotRoot));
+                } else if (attributes.isRegularFile()) {
+                    if (entry.content != null) {
+                        writer.file(name, attributes, join(entry.content));
+                    } else {
+                        try (InputStream in = Files.newInputStream(entry.path)) {
+                            writer.file(name, attributes, in);
+                        }
+                    }
+                }
+            }
+        } finally {
+            window.forEach(entry -> {
+                if (entry.content != null) {
+                    entry.content.cancel(false);
+                }
+            });
+        }
+    }
+
+    private void fill(Deque<Entry> window, Iterator<Path> paths) throws IOException {
+        while (window.size() < PREFETCH_ENTRIES && paths.hasNext()) {
+            Path path = paths.next();
+            BasicFileAttributes attributes = Files.readAttributes(path, BasicFileAttributes.class, LinkOption.NOFOLLOW_LINKS);
+            CompletableFuture<byte[]> content = null;
+            if (attributes.isRegularFile() && attributes.size() <= PREFETCH_MAX_FILE_SIZE) {
+                content = CompletableFuture.supplyAsync(() -> {
+                    try {
+                        return Files.readAllBytes(path);
+                    } catch (IOException e) {
+                        throw new RuntimeException(e);
+                    }
+                }, prefetchExecutor);
+            }
+            window.addLast(new Entry(path, attributes, content));
+        }
+    }
+
+    private static byte[] join(CompletableFuture<byte[]> content) throws IOException {
+        try {
+            return content.get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IOException(e);
+        } catch (ExecutionException e) {
+            throw new IOException(e.getCause());
+        }
+    }
+
+    /**
+     * The filesystem maps absolute link targets into the snapshot, this maps them back to the original target.
+     */
+    private static String linkTarget(Path link, Path snapshotRoot) throws IOException {
+        Path target = Files.readSymbolicLink(link);
+        if (target.isAbsolute() && target.startsWith(snapshotRoot)) {
+            return "/" + snapshotRoot.relativize(target);
+        }
+        return target.toString();
+    }
+
+    private record Entry(Path path, BasicFileAttributes attributes, CompletableFuture<byte[]> content) {}
+
+    private enum Format {
+        TAR("application/x-tar", ".tar") {
+            @Override
+            ArchiveWriter newWriter(OutputStream out) {
+                return new TarWriter(out);
+            }
+        },
+        ZIP("application/zip", ".zip") {
+            @Override
+            ArchiveWriter newWriter(OutputStream out) {
+                return new ZipWriter(out);
+            }
+        };
+
+        final String contentType;
+        final String extension;
+
+        Format(String contentType, String extension) {
+            this.contentType = contentType;
+            this.extension = extension;
+        }
+
+        abstract ArchiveWriter newWriter(OutputStream out);
+
+        static Format fromQuery(String rawQuery) {
+            if (rawQuery == null) {
+                return TAR;
+            }
+            for (String parameter : rawQuery.split("&")) {
+                String[] keyValue = parameter.split("=", 2);
+                if (keyValue[0].equals("format") && keyValue.length == 2) {
+                    String value = URLDecoder.decode(keyValue[1], StandardCharsets.UTF_8);
+                    return switch (value) {
+                        case "tar" -> TAR;
+                        case "zip" -> ZIP;
+                        default -> null;
+                    };
+                }
+            }
+            return TAR;
+        }
+    }
+
+    private interface ArchiveWriter extends Closeable {
+        void directory(String name, BasicFileAttributes attributes) throws IOException;
+
+        void symlink(String name, BasicFileAttributes attributes, String target) throws IOException;
+
+        void file(String name, BasicFileAttributes attributes, byte[] content) throws IOException;
+
+        void file(String name, BasicFileAttributes attributes, InputStream content) throws IOException;
+    }
+
+    private static final class TarWriter implements ArchiveWriter {
+        private final TarArchiveOutputStream out;
+
+        TarWriter(OutputStream out) {
+            this.out = new TarArchiveOutputStream(out, StandardCharsets.UTF_8.name());
+            this.out.setLongFileMode(TarArchiveOutputStream.LONGFILE_POSIX);
+            this.out.setBigNumberMode(TarArchiveOutputStream.BIGNUMBER_POSIX);
+        }
+
+        @Override
+        public void directory(String name, BasicFileAttributes attributes) throws IOException {
+            TarArchiveEntry entry = new TarArchiveEntry(name);
+            entry.setMode(TarArchiveEntry.DEFAULT_DIR_MODE);
+            entry.setModTime(attributes.lastModifiedTime());
+            out.putArchiveEntry(entry);
+            out.closeArchiveEntry();
+        }
+
+        @Override
+        public void symlink(String name, BasicFileAttributes attributes, String target) throws IOException {
+            TarArchiveEntry entry = new TarArchiveEntry(name, TarConstants.LF_SYMLINK);
+            entry.setLinkName(target);
+            entry.setModTime(attributes.lastModifiedTime());
+            out.putArchiveEntry(entry);
+            out.closeArchiveEntry();
+        }
+
+        @Override
+        public void file(String name, BasicFileAttributes attributes, byte[] content) throws IOException {
+            putFileEntry(name, attributes, content.length);
+            out.write(content);
+            out.closeArchiveEntry();
+        }
+
+        @Override
+        public void file(String name, BasicFileAttributes attributes, InputStream content) throws IOException {
+            putFileEntry(name, attributes, attributes.size());
+            content.transferTo(out);
+            out.closeArchiveEntry();
+        }
+
+        private void putFileEntry(String name, BasicFileAttributes attributes, long size) throws IOException {
+            TarArchiveEntry entry = new TarArchiveEntry(name);
+            entry.setModTime(attributes.lastModifiedTime());
+            entry.setSize(size);
+            out.putArchiveEntry(entry);
+        }
+
+        @Override
+        public void close() throws IOException {
+            out.close();
+        }
+    }
+
+    /**
+     * Writes an uncompressed zip. Prefetched files are written as STORED entries. Streamed files can't be STORED,
+     * as the CRC needs to be known up front, so they are DEFLATED without compression.
+     */
+    private static final class ZipWriter implements ArchiveWriter {
+        private final ZipOutputStream out;
+
+        ZipWriter(OutputStream out) {
+            this.out = new ZipOutputStream(out, StandardCharsets.UTF_8);
+            this.out.setLevel(Deflater.NO_COMPRESSION);
+        }
+
+        @Override
+        public void directory(String name, BasicFileAttributes attributes) throws IOException {
+            ZipEntry entry = new ZipEntry(name);
+            entry.setLastModifiedTime(attributes.lastModifiedTime());
+            entry.setMethod(ZipEntry.STORED);
+            entry.setSize(0);
+            entry.setCrc(0);
+            out.putNextEntry(entry);
+            out.closeEntry();
+        }
+
+        @Override
+        public void symlink(String name, BasicFileAttributes attributes, String target) throws IOException {
+            // zip has no portable symlinks, store the link target as content
+            file(name, attributes, target.getBytes(StandardCharsets.UTF_8));
+        }
+
+        @Override
+        public void file(String name, BasicFileAttributes attributes, byte[] content) throws IOException {
+            ZipEntry entry = new ZipEntry(name);
+            entry.setLastModifiedTime(attributes.lastModifiedTime());
+            entry.setMethod(ZipEntry.STORED);
+            entry.setSize(content.length);
+            CRC32 crc = new CRC32();
+            crc.update(content);
+            entry.setCrc(crc.getValue());
+            out.putNextEntry(entry);
+            out.write(content);
+            out.closeEntry();
+        }
+
+        @Override
+        public void file(String name, BasicFileAttributes attributes, InputStream content) throws IOException {
+            ZipEntry entry = new ZipEntry(name);
+            entry.setLastModifiedTime(attributes.lastModifiedTime());
+            entry.setMethod(ZipEntry.DEFLATED);
+            out.putNextEntry(entry);
+            content.transferTo(out);
+            out.closeEntry();
+        }
+
+        @Override
+        public void close() throws IOException {
+            out.close();
+        }
+    }
+}
@@ -0,0 +1,125 @@
+package org.adangel.resticbrowser.web;
+
+import java.io.FilterOutputStream;
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.io.OutputStream;
+import java.net.InetAddress;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+
+import com.sun.net.httpserver.Filter;
+import com.sun.net.httpserver.HttpExchange;
+
+/**
+ * Limits the download bandwidth per client address. All exchanges of the same client share one token bucket,
+ * so opening more connections doesn't increase the available bandwidth.
+ */
+public class BandwidthLimitFilter extends Filter {
+    private final long bytesPerSecond;
+    private final Map<InetAddress, RateLimiter> limiters = new ConcurrentHashMap<>();
+
+    /**
+     * @param bytesPerSecond the allowed bandwidth per client, {@code 0} disables the limit
+     */
+    public BandwidthLimitFilter(long bytesPerSecond) {
+        if (bytesPerSecond < 0) {
+            throw new IllegalArgumentException("bytesPerSecond must not be negative");
+        }
+        this.bytesPerSecond = bytesPerSecond;
+    }
+
+    @Override
+    public void doFilter(HttpExchange exchange, Chain chain) throws IOException {
+        if (bytesPerSecond == 0) {
+            chain.doFilter(exchange);
+            return;
+        }
+
+        InetAddress client = exchange.getRemoteAddress().getAddress();
+        RateLimiter limiter = limiters.compute(client, (address, existing) -> {
+            RateLimiter l = existing != null ? existing : new RateLimiter(bytesPerSecond);
+            l.users++;
+            return l;
+        });
+        try {
+            exchange.setStreams(null, new ThrottledOutputStream(exchange.getResponseBody(), limiter));
+            chain.doFilter(exchange);
+        } finally {
+            limiters.computeIfPresent(client, (address, l) -> --l.users == 0 ? null : l);
+        }
+    }
+
+    @Override
+    public String description() {
+        return "Limits the bandwidth per client";
+    }
+
+    private static final class RateLimiter {
+        private final long bytesPerSecond;
+        private long available;
+        private long lastRefill = System.nanoTime();
+        // guarded by the map's compute methods
+        private int users;
+
+        RateLimiter(long bytesPerSecond) {
+            this.bytesPerSecond = bytesPerSecond;
+            this.available = bytesPerSecond;
+        }
+
+        /**
+         * Takes up to {@code wanted} bytes out of the bucket, waiting until at least one byte is available.
+         */
+        long acquire(long wanted) throws InterruptedException {
+            while (true) {
+                long waitNanos;
+                synchronized (this) {
+                    long now = System.nanoTime();
+                    long refill = (now - lastRefill) * bytesPerSecond / TimeUnit.SECONDS.toNanos(1);
+                    if (refill > 0) {
+                        available = Math.min(bytesPerSecond, available + refill);
+                        lastRefill = now;
+                    }
+                    if (available > 0) {
+                        long granted = Math.min(wanted, available);
+                        available -= granted;
+                        return granted;
+                    }
+                    waitNanos = TimeUnit.SECONDS.toNanos(1) / bytesPerSecond + 1;
+                }
+                TimeUnit.NANOSECONDS.sleep(Math.max(waitNanos, TimeUnit.MILLISECONDS.toNanos(1)));
+            }
+        }
+    }
+
+    private static final class ThrottledOutputStream extends FilterOutputStream {
+        private final RateLimiter limiter;
+
+        ThrottledOutputStream(OutputStream out, RateLimiter limiter) {
+            super(out);
+            this.limiter = limiter;
+        }
+
+        @Override
+        public void write(int b) throws IOException {
+            write(new byte[] { (byte) b }, 0, 1);
+        }
+
+        @Override
+        public void write(byte[] b, int off, int len) throws IOException {
+            while (len > 0) {
+                int granted;
+                try {
+                    granted = (int) limiter.acquire(len);
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    throw new InterruptedIOException();
+                }
+                out.write(b, off, granted);
+                off += granted;
+                len -= granted;
+            }
+        }
+    }
+}
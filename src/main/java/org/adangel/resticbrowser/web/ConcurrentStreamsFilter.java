@@ -0,0 +1,56 @@
+package org.adangel.resticbrowser.web;
+
+import java.io.IOException;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.logging.Logger;
+
+import com.sun.net.httpserver.Filter;
+import com.sun.net.httpserver.HttpExchange;
+
+/**
+ * Limits the number of exchanges that are handled at the same time. Requests that can't get a slot
+ * within the given timeout are rejected with {@code 503 Service Unavailable}.
+ */
+public class ConcurrentStreamsFilter extends Filter {
+    private static final Logger LOGGER = Logger.getLogger(ConcurrentStreamsFilter.class.getName());
+
+    private final Semaphore streams;
+    private final long timeoutMillis;
+
+    public ConcurrentStreamsFilter(int maxConcurrentStreams, long timeoutMillis) {
+        if (maxConcurrentStreams <= 0) {
+            throw new IllegalArgumentException("maxConcurrentStreams must be positive");
+        }
+        this.streams = new Semaphore(maxConcurrentStreams, true);
+        this.timeoutMillis = timeoutMillis;
+    }
+
+    @Override
+    public void doFilter(HttpExchange exchange, Chain chain) throws IOException {
+        boolean acquired;
+        try {
+            acquired = streams.tryAcquire(timeoutMillis, TimeUnit.MILLISECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            acquired = false;
+        }
+        if (!acquired) {
+            LOGGER.warning(() -> "Too many concurrent streams, rejecting " + exchange.getRequestURI());
+            exchange.getResponseHeaders().set("Retry-After", "1");
+            exchange.sendResponseHeaders(503, -1);
+            exchange.close();
+            return;
+        }
+        try {
+            chain.doFilter(exchange);
+        } finally {
+            streams.release();
+        }
+    }
+
+    @Override
+    public String description() {
+        return "Limits the number of concurrent streams";
+    }
+}
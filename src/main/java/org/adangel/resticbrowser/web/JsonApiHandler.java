@@ -0,0 +1,353 @@
+package org.adangel.resticbrowser.web;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.URLDecoder;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.NoSuchFileException;
+import java.security.GeneralSecurityException;
+import java.time.OffsetDateTime;
+import java.time.format.DateTimeParseException;
+import java.util.ArrayList;
+import java.util.Base64;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.NoSuchElementException;
+import java.util.function.Predicate;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+import java.util.regex.Pattern;
+
+import org.adangel.resticbrowser.Repository;
+import org.adangel.resticbrowser.backend.FileType;
+import org.adangel.resticbrowser.models.Snapshot;
+import org.adangel.resticbrowser.models.SnapshotWithId;
+import org.adangel.resticbrowser.models.Tree;
+
+import com.fasterxml.jackson.core.JsonEncoding;
+import com.fasterxml.jackson.core.JsonFactory;
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpHandler;
+
+/**
+ * JSON API for browsing the repository:
+ * <ul>
+ *     <li>{@code GET /api/snapshots?host=..&tag=a,b&path=..&after=..&before=..} lists the snapshots. {@code tag}
+ *     can be repeated, a snapshot matches if it has all the tags of at least one {@code tag} parameter.
+ *     {@code after} and {@code before} are ISO-8601 timestamps.</li>
+ *     <li>{@code GET /api/snapshots/{id}/tree/{path}?limit=..&cursor=..} lists one page of a directory. The
+ *     response contains {@code next_cursor}, which is {@code null} on the last page.</li>
+ * </ul>
+ *
+ * <p>Directory pages are served from the trees the repository has cached. Trees are immutable, so the cursor is
+ * just the index of the next node. A full snapshot ID is read directly, an ID prefix is resolved with the snapshots
+ * of the last listing, which is only refreshed when the prefix isn't found.
+ */
+public class JsonApiHandler implements HttpHandler {
+    private static final Logger LOGGER = Logger.getLogger(JsonApiHandler.class.getName());
+    private static final JsonFactory JSON_FACTORY = new JsonFactory();
+
+    static final int DEFAULT_LIMIT = 1000;
+    static final int MAX_LIMIT = 10000;
+
+    private static final Pattern SNAPSHOT_ID = Pattern.compile("[0-9a-f]{64}");
+
+    private final String contextPath;
+    private final Repository repository;
+    private volatile List<SnapshotWithId> snapshots;
+
+    public JsonApiHandler(String contextPath, Repository repository) {
+        this.contextPath = contextPath;
+        this.repository = repository;
+    }
+
+    @Override
+    public void handle(HttpExchange exchange) throws IOException {
+        try (exchange) {
+            if (!exchange.getRequestMethod().equals("GET")) {
+                exchange.getResponseHeaders().set("Allow", "GET");
+                exchange.sendResponseHeaders(405, -1);
+                return;
+            }
+            String[] segments = exchange.getRequestURI().getPath().substring(contextPath.length())
+                    .replaceAll("^/+", "").split("/", 4);
+            Map<String, List<String>> query = parseQuery(exchange.getRequestURI().getRawQuery());
+            try {
+                if (segments.length == 1 && segments[0].equals("snapshots")) {
+                    listSnapshots(exchange, query);
+                } else if (segments.length >= 3 && segments[0].equals("snapshots") && segments[2].equals("tree")) {
+                    String path = "/" + (segments.length == 4 ? segments[3] : "");
+                    listDirectory(exchange, segments[1], path, query);
+                } else {
+                    sendError(exchange, 404, "Not found");
+                }
+            } catch (BadRequestException e) {
+                sendError(exchange, 400, e.getMessage());
+            } catch (NoSuchElementException | NoSuchFileException e) {
+                sendError(exchange, 404, "Not found");
+            } catch (IOException | RuntimeException e) {
+                // the details stay in the log, they might reveal e.g. paths of the server
+                LOGGER.log(Level.SEVERE, "Error while handling " + exchange.getRequestURI(), e);
+                sendError(exchange, 500, "Internal server error");
+            }
+        }
+    }
+
+    private void listSnapshots(HttpExchange exchange, Map<String, List<String>> query) throws IOException {
+        Predicate<Snapshot> filter = snapshotFilter(query);
+        List<SnapshotWithId> snapshots = refreshSnapshots().stream()
+                .filter(s -> filter.test(s.snapshot()))
+                .toList();
+
+        try (JsonGenerator json = startResponse(exchange)) {
+            json.writeStartArray();
+            for (SnapshotWithId snapshotWithId : snapshots) {
+                writeSnapshot(json, snapshotWithId);
+            }
+            json.writeEndArray();
+        }
+    }
+
+    private static Predicate<Snapshot> snapshotFilter(Map<String, List<String>> query) {
+        Predicate<Snapshot> filter = snapshot -> true;
+        for (String host : query.getOrDefault("host", List.of())) {
+            filter = filter.and(snapshot -> host.equals(snapshot.hostname()));
+        }
+        for (String path : query.getOrDefault("path", List.of())) {
+            filter = filter.and(snapshot -> snapshot.paths() != null && snapshot.paths().contains(path));
+        }
+        List<String> tagLists = query.getOrDefault("tag", List.of());
+        if (!tagLists.isEmpty()) {
+            filter = filter.and(snapshot -> tagLists.stream().anyMatch(tagList -> {
+                List<String> tags = snapshot.tags() != null ? snapshot.tags() : List.of();
+                return tags.containsAll(List.of(tagList.split(",")));
+            }));
+        }
+        for (String after : query.getOrDefault("after", List.of())) {
+            OffsetDateTime time = parseTime(after);
+            filter = filter.and(snapshot -> !snapshot.time().isBefore(time));
+        }
+        for (String before : query.getOrDefault("before", List.of())) {
+            OffsetDateTime time = parseTime(before);
+            filter = filter.and(snapshot -> snapshot.time().isBefore(time));
+        }
+        return filter;
+    }
+
+    private static OffsetDateTime parseTime(String time) {
+        try {
+            return OffsetDateTime.parse(time);
+        } catch (DateTimeParseException e) {
+            throw new BadRequestException("Invalid timestamp: " + time);
+        }
+    }
+
+    private void listDirectory(HttpExchange exchange, String snapshotId, String path, Map<String, List<String>> query) throws IOException {
+        int limit = parseLimit(query);
+        String cursor = first(query, "cursor");
+
+        SnapshotWithId snapshot = findSnapshot(snapshotId);
+        List<Tree.Node> nodes;
+        try {
+            nodes = repository.listFiles(snapshot.snapshot(), path.length() > 1 ? path.replaceAll("/+$", "") : path);
+        } catch (IllegalArgumentException e) {
+            throw new BadRequestException(e.getMessage());
+        } catch (GeneralSecurityException e) {
+            throw new IOException(e);
+        }
+
+        int start = cursor == null ? 0 : decodeCursor(cursor, nodes);
+        int end = Math.min(nodes.size(), start + limit);
+
+        try (JsonGenerator json = startResponse(exchange)) {
+            json.writeStartObject();
+            json.writeStringField("snapshot", snapshot.id());
+            json.writeStringField("path", path);
+            json.writeArrayFieldStart("nodes");
+            for (int i = start; i < end; i++) {
+                writeNode(json, nodes.get(i));
+            }
+            json.writeEndArray();
+            if (end < nodes.size()) {
+                json.writeStringField("next_cursor", encodeCursor(end, nodes.get(end)));
+            } else {
+                json.writeNullField("next_cursor");
+            }
+            json.writeEndObject();
+        }
+    }
+
+    private SnapshotWithId findSnapshot(String idOrPrefix) throws IOException {
+        if (SNAPSHOT_ID.matcher(idOrPrefix).matches()) {
+            try {
+                return new SnapshotWithId(idOrPrefix, repository.readFile(FileType.SNAPSHOT, idOrPrefix, Snapshot.class));
+            } catch (NoSuchFileException e) {
+                throw new NoSuchElementException(idOrPrefix);
+            } catch (GeneralSecurityException e) {
+                throw new IOException(e);
+            }
+        }
+        List<SnapshotWithId> cached = snapshots;
+        List<SnapshotWithId> matches = cached != null ? findByPrefix(cached, idOrPrefix) : List.of();
+        if (matches.isEmpty()) {
+            // the snapshot might be new
+            matches = findByPrefix(refreshSnapshots(), idOrPrefix);
+        }
+        if (matches.isEmpty()) {
+            throw new NoSuchElementException(idOrPrefix);
+        }
+        if (matches.size() > 1) {
+            throw new BadRequestException("Snapshot id " + idOrPrefix + " is ambiguous");
+        }
+        return matches.getFirst();
+    }
+
+    private static List<SnapshotWithId> findByPrefix(List<SnapshotWithId> snapshots, String prefix) {
+        return snapshots.stream().filter(s -> s.id().startsWith(prefix)).toList();
+    }
+
+    private List<SnapshotWithId> refreshSnapshots() throws IOException {
+        List<SnapshotWithId> listed = repository.listSnapshots();
+        snapshots = listed;
+        return listed;
+    }
+
+    private static int parseLimit(Map<String, List<String>> query) {
+        String limit = first(query, "limit");
+        if (limit == null) {
+            return DEFAULT_LIMIT;
+        }
+        try {
+            int value = Integer.parseInt(limit);
+            if (value <= 0 || value > MAX_LIMIT) {
+                throw new BadRequestException("limit must be between 1 and " + MAX_LIMIT);
+            }
+            return value;
+        } catch (NumberFormatException e) {
+            throw new BadRequestException("Invalid limit: " + limit);
+        }
+    }
+
+    private static String encodeCursor(int index, Tree.Node next) {
+        String cursor = index + ":" + next.name();
+        return Base64.getUrlEncoder().withoutPadding().encodeToString(cursor.getBytes(StandardCharsets.UTF_8));
+    }
+
+    private static int decodeCursor(String cursor, List<Tree.Node> nodes) {
+        try {
+            String decoded = new String(Base64.getUrlDecoder().decode(cursor), StandardCharsets.UTF_8);
+            int separator = decoded.indexOf(':');
+            int index = Integer.parseInt(decoded.substring(0, separator));
+            String name = decoded.substring(separator + 1);
+            if (index >= 0 && index < nodes.size() && nodes.get(index).name().equals(name)) {
+                return index;
+            }
+        } catch (IllegalArgumentException | StringIndexOutOfBoundsException e) {
+            // handled below
+        }
+        throw new BadRequestException("Invalid cursor");
+    }
+
+    private static void writeSnapshot(JsonGenerator json, SnapshotWithId snapshotWithId) throws IOException {
+        Snapshot snapshot = snapshotWithId.snapshot();
+        json.writeStartObject();
+        json.writeStringField("id", snapshotWithId.id());
+        json.writeStringField("short_id", snapshotWithId.id().substring(0, 8));
+        json.writeStringField("time", snapshot.time().toString());
+        json.writeStringField("hostname", snapshot.hostname());
+        json.writeStringField("username", snapshot.username());
+        writeStringArray(json, "tags", snapshot.tags());
+        writeStringArray(json, "paths", snapshot.paths());
+        json.writeStringField("tree", snapshot.tree());
+        json.writeStringField("parent", snapshot.parent());
+        json.writeEndObject();
+    }
+
+    private static void writeNode(JsonGenerator json, Tree.Node node) throws IOException {
+        json.writeStartObject();
+        json.writeStringField("name", node.name());
+        json.writeStringField("type", node.type() != null ? node.type().name().toLowerCase() : null);
+        json.writeNumberField("mode", node.mode());
+        json.writeNumberField("size", node.size());
+        json.writeStringField("mtime", node.mtime() != null ? node.mtime().toString() : null);
+        json.writeStringField("atime", node.atime() != null ? node.atime().toString() : null);
+        json.writeStringField("ctime", node.ctime() != null ? node.ctime().toString() : null);
+        json.writeNumberField("uid", node.uid());
+        json.writeNumberField("gid", node.gid());
+        json.writeStringField("user", node.user());
+        json.writeStringField("group", node.group());
+        if (node.inode() != 0) {
+            json.writeFieldName("inode");
+            json.writeNumber(Long.toUnsignedString(node.inode()));
+        }
+        json.writeNumberField("links", node.links());
+        if (node.linktarget() != null) {
+            json.writeStringField("linktarget", node.linktarget());
+        }
+        if (node.subtree() != null) {
+            json.writeStringField("subtree", node.subtree());
+        }
+        if (node.content() != null) {
+            json.writeNumberField("content_blobs", node.contentCount());
+        }
+        json.writeEndObject();
+    }
+
+    private static void writeStringArray(JsonGenerator json, String name, List<String> values) throws IOException {
+        json.writeArrayFieldStart(name);
+        if (values != null) {
+            for (String value : values) {
+                json.writeString(value);
+            }
+        }
+        json.writeEndArray();
+    }
+
+    private static JsonGenerator startResponse(HttpExchange exchange) throws IOException {
+        exchange.getResponseHeaders().set("Content-Type", "application/json; charset=utf-8");
+        exchange.sendResponseHeaders(200, 0);
+        return JSON_FACTORY.createGenerator(exchange.getResponseBody(), JsonEncoding.UTF8);
+    }
+
+    private static void sendError(HttpExchange exchange, int status, String message) throws IOException {
+        if (exchange.getResponseCode() != -1) {
+            // response has already been started
+            return;
+        }
+        exchange.getResponseHeaders().set("Content-Type", "application/json; charset=utf-8");
+        exchange.sendResponseHeaders(status, 0);
+        try (OutputStream out = exchange.getResponseBody();
+             JsonGenerator json = JSON_FACTORY.createGenerator(out, JsonEncoding.UTF8)) {
+            json.writeStartObject();
+            json.writeStringField("error", message);
+            json.writeEndObject();
+        }
+    }
+
+    private static String first(Map<String, List<String>> query, String name) {
+        List<String> values = query.get(name);
+        return values == null || values.isEmpty() ? null : values.getFirst();
+    }
+
+    private static Map<String, List<String>> parseQuery(String rawQuery) {
+        Map<String, List<String>> parameters = new HashMap<>();
+        if (rawQuery == null || rawQuery.isEmpty()) {
+            return parameters;
+        }
+        for (String parameter : rawQuery.split("&")) {
+            String[] keyValue = parameter.split("=", 2);
+            String key = URLDecoder.decode(keyValue[0], StandardCharsets.UTF_8);
+            String value = keyValue.length == 2 ? URLDecoder.decode(keyValue[1], StandardCharsets.UTF_8) : "";
+            parameters.computeIfAbsent(key, k -> new ArrayList<>()).add(value);
+        }
+        return parameters;
+    }
+
+    private static final class BadRequestException extends RuntimeException {
+        BadRequestException(String message) {
+            super(message);
+        }
+    }
+}
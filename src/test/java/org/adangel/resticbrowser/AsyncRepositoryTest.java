@@ -0,0 +1,228 @@
+package org.adangel.resticbrowser;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertInstanceOf;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.io.ByteArrayOutputStream;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Flow;
+import java.util.concurrent.TimeUnit;
+
+import org.adangel.resticbrowser.backend.FileType;
+import org.adangel.resticbrowser.models.BlobId;
+import org.adangel.resticbrowser.models.Snapshot;
+import org.adangel.resticbrowser.models.Tree;
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+class AsyncRepositoryTest {
+    @TempDir
+    static Path tempDir;
+
+    private static Repository repository;
+    private static Tree.Node file;
+    private static byte[] fileContent;
+
+    @BeforeAll
+    static void generateRepository() throws Exception {
+        // files of 5 blobs
+        RepositoryGenerator.Result result = RepositoryGenerator.generate(tempDir, RepositoryGenerator.Options.parse(
+                "dataBlobs=20,blobSize=1000,fileSize=5000,fanOut=2,snapshots=1,indexFiles=1,packSize=4096,compression=false"));
+        repository = new Repository(tempDir, RepositoryGenerator.PASSWORD, RepositoryOptions.defaults());
+        Snapshot snapshot = repository.readFile(FileType.SNAPSHOT, result.snapshotIds().getFirst(), Snapshot.class);
+        file = findFile(repository.readTree(snapshot.tree()));
+        try (InputStream in = repository.readNode(file)) {
+            fileContent = in.readAllBytes();
+        }
+    }
+
+    private static Tree.Node findFile(Tree tree) throws Exception {
+        for (Tree.Node node : tree.nodes()) {
+            if (node.type() == Tree.NodeType.FILE && node.contentCount() > 1) {
+                return node;
+            }
+            if (node.type() == Tree.NodeType.DIR) {
+                Tree.Node found = findFile(repository.readTree(node.subtreeId()));
+                if (found != null) {
+                    return found;
+                }
+            }
+        }
+        return null;
+    }
+
+    @Test
+    void readTreeAndBlob() throws Exception {
+        AsyncRepository async = new AsyncRepository(repository);
+        BlobId blobId = file.contentId(1);
+
+        assertArrayEquals(repository.readContent(blobId), async.readBlobAsync(blobId).get(10, TimeUnit.SECONDS));
+        Map<BlobId, byte[]> blobs = async.readBlobsAsync(file.contentIds()).get(10, TimeUnit.SECONDS);
+        assertEquals(file.contentIds(), List.copyOf(blobs.keySet()));
+
+        Snapshot snapshot = repository.readFile(FileType.SNAPSHOT, repository.listSnapshots().getFirst().id(), Snapshot.class);
+        BlobId treeId = BlobId.parse(snapshot.tree());
+        Tree tree = async.readTreeAsync(treeId).get(10, TimeUnit.SECONDS);
+        assertEquals(repository.readTree(treeId).nodes().size(), tree.nodes().size());
+        assertEquals(List.of(treeId), List.copyOf(async.readTreesAsync(List.of(treeId)).get(10, TimeUnit.SECONDS).keySet()));
+    }
+
+    @Test
+    void missingBlob() {
+        AsyncRepository async = new AsyncRepository(repository);
+        CompletableFuture<byte[]> future = async.readBlobAsync(BlobId.parse("00".repeat(BlobId.LENGTH)));
+
+        ExecutionException e = assertThrows(ExecutionException.class, () -> future.get(10, TimeUnit.SECONDS));
+        assertInstanceOf(IllegalStateException.class, e.getCause());
+    }
+
+    @Test
+    void readWholeNode() throws Exception {
+        AsyncRepository async = new AsyncRepository(repository);
+
+        assertEquals(5000, fileContent.length);
+        assertArrayEquals(fileContent, collect(async.readNodeAsync(file), 1));
+        assertArrayEquals(fileContent, collect(async.readNodeAsync(file), Long.MAX_VALUE));
+    }
+
+    @Test
+    void readRanges() throws Exception {
+        ExecutorService executor = Executors.newFixedThreadPool(2);
+        try {
+            AsyncRepository async = new AsyncRepository(repository, executor);
+            long[][] ranges = {{0, 10}, {990, 20}, {999, 3002}, {1000, 1000}, {4990, 100}, {2500, 0}, {6000, 10}};
+            for (long[] range : ranges) {
+                int from = (int) Math.min(range[0], fileContent.length);
+                int to = (int) Math.min(range[0] + range[1], fileContent.length);
+                assertArrayEquals(Arrays.copyOfRange(fileContent, from, to),
+                        collect(async.readNodeAsync(file, range[0], range[1]), 2),
+                        () -> "range " + Arrays.toString(range));
+            }
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+
+    @Test
+    void cancel() throws Exception {
+        AsyncRepository async = new AsyncRepository(repository);
+        CompletableFuture<List<ByteBuffer>> received = new CompletableFuture<>();
+        List<ByteBuffer> buffers = new ArrayList<>();
+        async.readNodeAsync(file).subscribe(new Flow.Subscriber<>() {
+            private Flow.Subscription subscription;
+
+            @Override
+            public void onSubscribe(Flow.Subscription subscription) {
+                this.subscription = subscription;
+                subscription.request(1);
+            }
+
+            @Override
+            public void onNext(ByteBuffer item) {
+                buffers.add(item);
+                subscription.cancel();
+                received.complete(buffers);
+            }
+
+            @Override
+            public void onError(Throwable throwable) {
+                received.completeExceptionally(throwable);
+            }
+
+            @Override
+            public void onComplete() {
+                received.completeExceptionally(new AssertionError("completed after cancel"));
+            }
+        });
+
+        assertEquals(1, received.get(10, TimeUnit.SECONDS).size());
+        Thread.sleep(100);
+        assertEquals(1, buffers.size());
+    }
+
+    @Test
+    void invalidRequest() {
+        AsyncRepository async = new AsyncRepository(repository);
+        ExecutionException e = assertThrows(ExecutionException.class,
+                () -> subscribe(async.readNodeAsync(file), 0).get(10, TimeUnit.SECONDS));
+        assertInstanceOf(IllegalArgumentException.class, e.getCause());
+    }
+
+    @Test
+    void repo4() throws Exception {
+        Repository repo4 = new Repository(Path.of("src/test/resources/repos/repo4"), "test");
+        AsyncRepository async = new AsyncRepository(repo4);
+        List<Tree.Node> nodes = repo4.listFiles("a9e4ac2f30d86cf98d52648d00e9fe03313e2cc47e5533e7f1e5c35e2e52d364", "/");
+        boolean readFile = false;
+        for (Tree.Node node : nodes) {
+            if (node.type() == Tree.NodeType.FILE) {
+                ByteArrayOutputStream expected = new ByteArrayOutputStream();
+                try (InputStream in = repo4.readNode(node)) {
+                    in.transferTo(expected);
+                }
+                assertArrayEquals(expected.toByteArray(), collect(async.readNodeAsync(node), 1));
+                readFile = true;
+            }
+        }
+        assertTrue(readFile);
+    }
+
+    /**
+     * Subscribes and requests {@code batch} buffers at a time.
+     */
+    private static byte[] collect(Flow.Publisher<ByteBuffer> publisher, long batch) throws Exception {
+        return subscribe(publisher, batch).get(10, TimeUnit.SECONDS);
+    }
+
+    private static CompletableFuture<byte[]> subscribe(Flow.Publisher<ByteBuffer> publisher, long batch) {
+        CompletableFuture<byte[]> result = new CompletableFuture<>();
+        publisher.subscribe(new Flow.Subscriber<>() {
+            private final ByteArrayOutputStream out = new ByteArrayOutputStream();
+            private Flow.Subscription subscription;
+            private long outstanding;
+
+            @Override
+            public void onSubscribe(Flow.Subscription subscription) {
+                this.subscription = subscription;
+                outstanding = batch;
+                subscription.request(batch);
+            }
+
+            @Override
+            public void onNext(ByteBuffer item) {
+                byte[] bytes = new byte[item.remaining()];
+                item.get(bytes);
+                out.writeBytes(bytes);
+                if (batch != Long.MAX_VALUE && --outstanding == 0) {
+                    outstanding = batch;
+                    subscription.request(batch);
+                }
+            }
+
+            @Override
+            public void onError(Throwable throwable) {
+                result.completeExceptionally(throwable);
+            }
+
+            @Override
+            public void onComplete() {
+                result.complete(out.toByteArray());
+            }
+        });
+        return result;
+    }
+}
@@ -0,0 +1,109 @@
+package org.adangel.resticbrowser;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.util.List;
+
+import org.adangel.resticbrowser.metrics.Counter;
+import org.adangel.resticbrowser.metrics.Metrics;
+import org.adangel.resticbrowser.models.BlobId;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+class CompressedTreeCacheTest {
+    @TempDir
+    Path tempDir;
+
+    private static BlobId id(String name) {
+        return BlobId.parse("%064x".formatted(name.hashCode() & 0xffffffffL));
+    }
+
+    private static byte[] json(int i) {
+        return ("{\"nodes\":[{\"name\":\"file-%d\",\"type\":\"file\",\"mode\":420,\"size\":%d}]}".formatted(i, i))
+                .repeat(10).getBytes(StandardCharsets.UTF_8);
+    }
+
+    @Test
+    void roundTrip() throws Exception {
+        CompressedTreeCache cache = new CompressedTreeCache(1024 * 1024);
+        cache.put(id("a"), json(1));
+
+        assertArrayEquals(json(1), cache.get(id("a")));
+        assertNull(cache.get(id("b")));
+        assertTrue(cache.size() < json(1).length);
+    }
+
+    @Test
+    void evictsLeastRecentlyUsed() throws Exception {
+        CompressedTreeCache probe = new CompressedTreeCache(1024 * 1024);
+        probe.put(id("probe"), json(1));
+        CompressedTreeCache cache = new CompressedTreeCache(probe.size() * 2 + probe.size() / 2);
+
+        cache.put(id("a"), json(1));
+        cache.put(id("b"), json(2));
+        cache.get(id("a"));
+        cache.put(id("c"), json(3));
+
+        assertEquals(2, cache.trees());
+        assertArrayEquals(json(1), cache.get(id("a")));
+        assertNull(cache.get(id("b")));
+        assertArrayEquals(json(3), cache.get(id("c")));
+        assertTrue(cache.size() <= probe.size() * 2 + probe.size() / 2);
+    }
+
+    @Test
+    void cachedTreeIsNotCompressedAgain() throws Exception {
+        CompressedTreeCache cache = new CompressedTreeCache(1024 * 1024);
+        cache.put(id("a"), json(1));
+        long size = cache.size();
+        cache.put(id("a"), json(1));
+
+        assertEquals(1, cache.trees());
+        assertEquals(size, cache.size());
+    }
+
+    @Test
+    void onlyEvictedTreesAreCompressed() throws Exception {
+        // fewer trees than fit into the tree cache
+        Repository repository = new Repository(Path.of("src/test/resources/repos/repo2"), "test");
+        repository.listFiles("2a9e949d33e1d696070a75e0be69dc6c1e9e89a2dd44d02a7b971a8d849c2f6c");
+
+        assertEquals(0, repository.getCompressedTreeCacheSize());
+    }
+
+    @Test
+    void disabled() throws Exception {
+        CompressedTreeCache cache = new CompressedTreeCache(0);
+        cache.put(id("a"), json(1));
+
+        assertNull(cache.get(id("a")));
+        assertEquals(0, cache.size());
+    }
+
+    @Test
+    void treesEvictedFromTreeCacheAreNotReadAgain() throws Exception {
+        // more trees than fit into the tree cache
+        RepositoryGenerator.Result result = RepositoryGenerator.generate(tempDir, RepositoryGenerator.Options.parse(
+                "dataBlobs=400,blobSize=100,fileSize=100,fanOut=2,snapshots=1,indexFiles=1,packSize=65536,compression=true"));
+        String snapshotId = result.snapshotIds().getFirst();
+        Counter misses = Metrics.global().counter("restic_tree_cache_misses_total", "Trees read from the repository");
+
+        Repository repository = new Repository(tempDir, RepositoryGenerator.PASSWORD, RepositoryOptions.defaults());
+        List<String> files = repository.listFiles(snapshotId);
+        long missesBefore = misses.get();
+        assertEquals(files, repository.listFiles(snapshotId));
+        assertEquals(missesBefore, misses.get());
+
+        Repository uncached = new Repository(tempDir, RepositoryGenerator.PASSWORD,
+                RepositoryOptions.defaults().withTreeCacheSize(0));
+        uncached.listFiles(snapshotId);
+        missesBefore = misses.get();
+        assertEquals(files, uncached.listFiles(snapshotId));
+        assertTrue(misses.get() - missesBefore > 50);
+    }
+}
@@ -0,0 +1,105 @@
+package org.adangel.resticbrowser;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertLinesMatch;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Comparator;
+import java.util.List;
+import java.util.stream.Stream;
+
+import org.adangel.resticbrowser.backend.FileType;
+import org.adangel.resticbrowser.backend.LocalBackend;
+import org.adangel.resticbrowser.metrics.Counter;
+import org.adangel.resticbrowser.metrics.Metrics;
+import org.adangel.resticbrowser.models.Index;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.junit.jupiter.params.ParameterizedTest;
+import org.junit.jupiter.params.provider.ValueSource;
+
+class IndexRebuildTest {
+    private static final String REPO2_SNAPSHOT = "2a9e949d33e1d696070a75e0be69dc6c1e9e89a2dd44d02a7b971a8d849c2f6c";
+    private static final Counter PACK_HEADERS_READ = Metrics.global().counter("restic_pack_headers_read_total", "");
+
+    @TempDir
+    private Path tempDir;
+
+    @ParameterizedTest
+    @ValueSource(strings = {"repo1", "repo2", "repo3", "repo4"})
+    void rebuiltIndexMatchesIndexFiles(String name) throws Exception {
+        Path path = Path.of("src/test/resources/repos", name);
+        Repository repository = new Repository(path, "test");
+        Repository rebuilt = new Repository(path, "test",
+                RepositoryOptions.defaults().withIndexMode(RepositoryOptions.IndexMode.REBUILD, null));
+
+        int blobs = 0;
+        for (String indexFile : new LocalBackend(path).list(FileType.INDEX)) {
+            for (Index.Pack pack : repository.readFile(FileType.INDEX, indexFile, Index.class).packs()) {
+                for (Index.Pack.Blob blob : pack.blobs()) {
+                    assertEquals(repository.findBlob(blob.id()), rebuilt.findBlob(blob.id()));
+                    blobs++;
+                }
+            }
+        }
+        assertTrue(blobs > 0);
+    }
+
+    @Test
+    void repairMissingIndex() throws Exception {
+        Path repo = copy(Path.of("src/test/resources/repos/repo2"));
+        deleteRecursively(repo.resolve("index"));
+        Files.createDirectory(repo.resolve("index"));
+
+        Repository withoutIndex = new Repository(repo, "test");
+        assertThrows(IllegalStateException.class, () -> withoutIndex.listFiles(REPO2_SNAPSHOT));
+
+        Path rebuiltIndex = tempDir.resolve("rebuilt-index.json");
+        RepositoryOptions options = RepositoryOptions.defaults().withIndexMode(RepositoryOptions.IndexMode.REPAIR, rebuiltIndex);
+        Repository repaired = new Repository(repo, "test", options);
+        List<String> expectedFiles = Files.readAllLines(Path.of("src/test/resources/repos/repo2-2a9e949d.filelist"));
+        assertLinesMatch(expectedFiles, repaired.listFiles(REPO2_SNAPSHOT));
+        assertTrue(Files.isRegularFile(rebuiltIndex));
+
+        // the second time, the headers are not read again
+        long headersRead = PACK_HEADERS_READ.get();
+        Repository reopened = new Repository(repo, "test", options);
+        assertLinesMatch(expectedFiles, reopened.listFiles(REPO2_SNAPSHOT));
+        assertEquals(headersRead, PACK_HEADERS_READ.get());
+    }
+
+    @Test
+    void repairDropsMissingPacks() throws Exception {
+        Path repo = copy(Path.of("src/test/resources/repos/repo2"));
+        Repository repository = new Repository(repo, "test");
+        String treeId = repository.listSnapshots().getFirst().snapshot().tree();
+        String packId = repository.findBlob(treeId).packId();
+        Files.delete(repo.resolve("data").resolve(packId.substring(0, 2)).resolve(packId));
+
+        Repository repaired = new Repository(repo, "test",
+                RepositoryOptions.defaults().withIndexMode(RepositoryOptions.IndexMode.REPAIR, null));
+        assertThrows(IllegalStateException.class, () -> repaired.findBlob(treeId));
+    }
+
+    private Path copy(Path source) throws IOException {
+        Path target = tempDir.resolve(source.getFileName());
+        try (Stream<Path> files = Files.walk(source)) {
+            for (Path file : (Iterable<Path>) files::iterator) {
+                Files.copy(file, target.resolve(source.relativize(file).toString()));
+            }
+        }
+        return target;
+    }
+
+    private static void deleteRecursively(Path directory) throws IOException {
+        try (Stream<Path> files = Files.walk(directory)) {
+            for (Path file : (Iterable<Path>) files.sorted(Comparator.reverseOrder())::iterator) {
+                Files.delete(file);
+            }
+        }
+    }
+}
@@ -0,0 +1,491 @@
+package org.adangel.resticbrowser;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.math.BigInteger;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.security.GeneralSecurityException;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.security.SecureRandom;
+import java.time.OffsetDateTime;
+import java.time.ZoneOffset;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HexFormat;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Random;
+
+import javax.crypto.Cipher;
+import javax.crypto.spec.IvParameterSpec;
+import javax.crypto.spec.SecretKeySpec;
+
+import org.adangel.resticbrowser.models.BlobId;
+import org.adangel.resticbrowser.models.Config;
+import org.adangel.resticbrowser.models.Index;
+import org.adangel.resticbrowser.models.Key;
+import org.adangel.resticbrowser.models.Masterkey;
+import org.adangel.resticbrowser.models.Snapshot;
+import org.adangel.resticbrowser.models.Tree;
+import org.bouncycastle.crypto.engines.AESEngine;
+import org.bouncycastle.crypto.generators.SCrypt;
+import org.bouncycastle.crypto.macs.Poly1305;
+import org.bouncycastle.crypto.params.KeyParameter;
+import org.bouncycastle.crypto.params.ParametersWithIV;
+import org.bouncycastle.util.encoders.Base64;
+
+import com.fasterxml.jackson.annotation.JsonInclude;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.SerializationFeature;
+import com.github.luben.zstd.Zstd;
+
+/**
+ * Writes synthetic, but valid and encrypted restic repositories (format version 2) for scale and performance tests.
+ * <p>
+ * The data blobs are distributed over files of {@link Options#fileSize()} bytes, which are placed in a directory
+ * hierarchy where no directory has more than {@link Options#fanOut()} entries. Each snapshot contains this hierarchy
+ * as {@code /generated/data} and a small file of its own, {@code /generated/snapshot-<n>.txt}. The content is
+ * pseudo random text (compressible) from {@link Options#seed()}, so the blob IDs are reproducible.
+ * <p>
+ * Everything is streamed to disk, only the index entries of the current index file are kept in memory. The key file
+ * uses a low scrypt cost, so that opening the repository is fast. The password is {@value #PASSWORD}.
+ * <p>
+ * To build a large repository locally, e.g. for the benchmarks:
+ * <pre>
+ * mvn test-compile exec:java -Dexec.classpathScope=test -Dexec.mainClass=org.adangel.resticbrowser.RepositoryGenerator \
+ *     -Dexec.args="/tmp/large-repo dataBlobs=10000000,blobSize=1024,fileSize=65536,indexFiles=100"
+ * </pre>
+ */
+public final class RepositoryGenerator {
+    public static final String PASSWORD = "test";
+
+    // restic uses N=32768 by default, which takes about 100 ms per key
+    private static final int SCRYPT_N = 1024;
+    private static final int SCRYPT_R = 8;
+    private static final int SCRYPT_P = 1;
+
+    private static final int MIN_BLOB_SIZE = 20;
+    /** Entries after which an index file is written, regardless of {@link Options#indexFiles()}, like restic does. */
+    static final long MAX_INDEX_BLOBS = 50_000;
+    private static final long DIRECTORY_MODE = 2147484141L; // os.ModeDir | 0755
+    private static final long FILE_MODE = 420L; // 0644
+    private static final OffsetDateTime BASE_TIME = OffsetDateTime.of(2024, 1, 1, 0, 0, 0, 0, ZoneOffset.UTC);
+
+    private static final ObjectMapper MAPPER = new ObjectMapper().findAndRegisterModules()
+            .disable(SerializationFeature.WRITE_DATES_AS_TIMESTAMPS)
+            .setSerializationInclusion(JsonInclude.Include.NON_NULL);
+
+    /**
+     * @param dataBlobs the number of data blobs
+     * @param blobSize the plaintext size of a data blob
+     * @param fileSize the size of each file, split into blobs of {@code blobSize}. The last file might be smaller.
+     * @param fanOut the maximum number of entries per directory
+     * @param compression whether blobs, index files and snapshots are compressed with zstd
+     * @param snapshots the number of snapshots
+     * @param indexFiles the maximum number of index files. A pack is never split across index files, so there might
+     *                   be fewer. Index files have at most {@value #MAX_INDEX_BLOBS} entries (plus the rest of a pack),
+     *                   so a large repository gets more.
+     * @param packSize the size after which a pack file is finished
+     * @param seed for the file contents
+     */
+    public record Options(long dataBlobs, int blobSize, long fileSize, int fanOut, boolean compression, int snapshots,
+                          int indexFiles, int packSize, long seed) {
+        public Options {
+            if (dataBlobs < 1 || fileSize < 1 || fanOut < 2 || snapshots < 1 || indexFiles < 1 || packSize < 1) {
+                throw new IllegalArgumentException("Invalid options: " + this);
+            }
+            // each blob starts with its number, so that no two blobs are the same
+            if (blobSize < MIN_BLOB_SIZE || fileSize % blobSize != 0 && fileSize % blobSize < MIN_BLOB_SIZE) {
+                throw new IllegalArgumentException("Blobs must have at least " + MIN_BLOB_SIZE + " bytes: " + this);
+            }
+        }
+
+        public static Options defaults() {
+            return new Options(1000, 4096, 16384, 32, true, 1, 1, 16 * 1024 * 1024, 42);
+        }
+
+        /**
+         * @param spec comma (or semicolon) separated {@code name=value} pairs with the names of the components, e.g.
+         *             {@code dataBlobs=100000,compression=false}. Missing components keep their default.
+         */
+        public static Options parse(String spec) {
+            Map<String, String> values = new HashMap<>();
+            for (String pair : spec.split("[,;]")) {
+                if (pair.isBlank()) {
+                    continue;
+                }
+                String[] nameAndValue = pair.split("=", 2);
+                if (nameAndValue.length != 2) {
+                    throw new IllegalArgumentException("Expected name=value, but got " + pair);
+                }
+                values.put(nameAndValue[0].trim(), nameAndValue[1].trim());
+            }
+            Options defaults = defaults();
+            Options options = new Options(
+                    Long.parseLong(values.getOrDefault("dataBlobs", String.valueOf(defaults.dataBlobs()))),
+                    Integer.parseInt(values.getOrDefault("blobSize", String.valueOf(defaults.blobSize()))),
+                    Long.parseLong(values.getOrDefault("fileSize", String.valueOf(defaults.fileSize()))),
+                    Integer.parseInt(values.getOrDefault("fanOut", String.valueOf(defaults.fanOut()))),
+                    Boolean.parseBoolean(values.getOrDefault("compression", String.valueOf(defaults.compression()))),
+                    Integer.parseInt(values.getOrDefault("snapshots", String.valueOf(defaults.snapshots()))),
+                    Integer.parseInt(values.getOrDefault("indexFiles", String.valueOf(defaults.indexFiles()))),
+                    Integer.parseInt(values.getOrDefault("packSize", String.valueOf(defaults.packSize()))),
+                    Long.parseLong(values.getOrDefault("seed", String.valueOf(defaults.seed()))));
+            values.keySet().removeAll(List.of("dataBlobs", "blobSize", "fileSize", "fanOut", "compression",
+                    "snapshots", "indexFiles", "packSize", "seed"));
+            if (!values.isEmpty()) {
+                throw new IllegalArgumentException("Unknown options: " + values.keySet());
+            }
+            return options;
+        }
+
+        long blobsPerFile() {
+            return Math.max(1, (fileSize + blobSize - 1) / blobSize);
+        }
+
+        long files() {
+            return (dataBlobs + blobsPerFile() - 1) / blobsPerFile();
+        }
+    }
+
+    /**
+     * @param snapshotIds the snapshots, oldest first
+     */
+    public record Result(Path path, List<String> snapshotIds, long files, long dataBlobs, long treeBlobs, int packs,
+                         int indexFiles) {}
+
+    private final Path path;
+    private final Options options;
+    private final Random contentRandom;
+    private final SecureRandom secureRandom = new SecureRandom();
+    private final SecretKeySpec encryptionKey;
+    private final byte[] macKey = new byte[32]; // r || k, as Poly1305 of bouncycastle wants it
+    private final Cipher cipher;
+    private final Poly1305 poly1305 = new Poly1305(AESEngine.newInstance());
+
+    private final PackWriter dataPacks = new PackWriter(false);
+    private final PackWriter treePacks = new PackWriter(true);
+    private final long blobsPerIndexFile;
+    private final List<Index.Pack> indexPacks = new ArrayList<>();
+    private long indexBlobs;
+    private int packCount;
+    private int indexFileCount;
+    private long treeBlobCount;
+
+    private RepositoryGenerator(Path path, Options options) throws GeneralSecurityException {
+        this.path = path;
+        this.options = options;
+        this.contentRandom = new Random(options.seed());
+        byte[] key = new byte[32];
+        secureRandom.nextBytes(key);
+        encryptionKey = new SecretKeySpec(key, "AES");
+        secureRandom.nextBytes(macKey);
+        cipher = Cipher.getInstance("AES/CTR/NoPadding");
+
+        long expectedBlobs = options.dataBlobs() + countTrees(options.files()) + 2L * options.snapshots();
+        blobsPerIndexFile = Math.min(MAX_INDEX_BLOBS, (expectedBlobs + options.indexFiles() - 1) / options.indexFiles());
+    }
+
+    public static Result generate(Path path, Options options) throws IOException {
+        if (Files.exists(path.resolve("config"))) {
+            throw new IOException("There is already a repository in " + path);
+        }
+        try {
+            return new RepositoryGenerator(path, options).generate();
+        } catch (GeneralSecurityException e) {
+            throw new IOException(e);
+        }
+    }
+
+    /**
+     * Usage: {@code RepositoryGenerator <path> [name=value,...]}, see {@link Options#parse(String)}.
+     */
+    public static void main(String[] args) throws IOException {
+        if (args.length < 1 || args.length > 2) {
+            System.err.println("Usage: RepositoryGenerator <path> [dataBlobs=..,blobSize=..,fileSize=..,fanOut=..,"
+                    + "compression=..,snapshots=..,indexFiles=..,packSize=..,seed=..]");
+            System.exit(1);
+        }
+        Options options = args.length == 2 ? Options.parse(args[1]) : Options.defaults();
+        long start = System.nanoTime();
+        Result result = generate(Path.of(args[0]), options);
+        System.out.printf(Locale.ROOT, "Generated %s in %.1f s: %d snapshots, %d files, %d data blobs, %d trees, %d packs, %d index files%n",
+                result.path(), (System.nanoTime() - start) / 1e9, result.snapshotIds().size(), result.files(),
+                result.dataBlobs(), result.treeBlobs(), result.packs(), result.indexFiles());
+    }
+
+    private Result generate() throws IOException, GeneralSecurityException {
+        for (String directory : List.of("keys", "index", "snapshots", "locks")) {
+            Files.createDirectories(path.resolve(directory));
+        }
+        for (int i = 0; i < 256; i++) {
+            Files.createDirectories(path.resolve("data").resolve("%02x".formatted(i)));
+        }
+        writeKey();
+        byte[] repositoryId = new byte[32];
+        secureRandom.nextBytes(repositoryId);
+        // restic stores the config uncompressed
+        Files.write(path.resolve("config"), encrypt(MAPPER.writeValueAsBytes(
+                new Config(2, HexFormat.of().formatHex(repositoryId), "3da3358b4dc173"))));
+
+        Tree.Node data = directoryNode("data", writeDirectory(0, options.files()));
+        List<String> rootTrees = new ArrayList<>();
+        for (int i = 0; i < options.snapshots(); i++) {
+            byte[] content = "This is snapshot %d%n".formatted(i).getBytes(StandardCharsets.UTF_8);
+            String blobId = dataPacks.add(content);
+            Tree.Node marker = fileNode("snapshot-%d.txt".formatted(i), content.length, List.of(blobId));
+            rootTrees.add(writeTree(List.of(directoryNode("generated", writeTree(List.of(data, marker))))));
+        }
+        dataPacks.finish();
+        treePacks.finish();
+        flushIndex();
+
+        List<String> snapshotIds = new ArrayList<>();
+        String parent = null;
+        for (int i = 0; i < options.snapshots(); i++) {
+            Snapshot snapshot = new Snapshot(BASE_TIME.plusHours(i), "generator", null, List.of("/generated"),
+                    rootTrees.get(i), "generator", 1000, 1000, "restic-browser generator", null, null, parent);
+            parent = writeUnpackedFile("snapshots", MAPPER.writeValueAsBytes(snapshot));
+            snapshotIds.add(parent);
+        }
+        // the marker files of the snapshots are counted, too
+        return new Result(path, snapshotIds, options.files() + options.snapshots(),
+                options.dataBlobs() + options.snapshots(), treeBlobCount, packCount, indexFileCount);
+    }
+
+    private void writeKey() throws IOException, GeneralSecurityException {
+        byte[] salt = new byte[64];
+        secureRandom.nextBytes(salt);
+        byte[] derived = SCrypt.generate(PASSWORD.getBytes(StandardCharsets.UTF_8), salt, SCRYPT_N, SCRYPT_R, SCRYPT_P, 64);
+        byte[] userEncryptionKey = new byte[32];
+        System.arraycopy(derived, 0, userEncryptionKey, 0, 32);
+        // the derived MAC key is k || r, swapped for bouncycastle
+        byte[] userMacKey = new byte[32];
+        System.arraycopy(derived, 48, userMacKey, 0, 16);
+        System.arraycopy(derived, 32, userMacKey, 16, 16);
+
+        byte[] r = new byte[16];
+        byte[] k = new byte[16];
+        System.arraycopy(macKey, 0, r, 0, 16);
+        System.arraycopy(macKey, 16, k, 0, 16);
+        Masterkey masterkey = new Masterkey(Base64.toBase64String(encryptionKey.getEncoded()),
+                new Masterkey.MAC(Base64.toBase64String(k), Base64.toBase64String(r)));
+        byte[] data = encrypt(MAPPER.writeValueAsBytes(masterkey), new SecretKeySpec(userEncryptionKey, "AES"), userMacKey);
+
+        Key key = new Key("generator", "generator", "scrypt", SCRYPT_N, SCRYPT_R, SCRYPT_P, BASE_TIME,
+                Base64.toBase64String(data), Base64.toBase64String(salt));
+        byte[] keyFile = MAPPER.writeValueAsBytes(key);
+        Files.write(path.resolve("keys").resolve(sha256(keyFile)), keyFile);
+    }
+
+    private static long directoryChunk(long files, int fanOut) {
+        long chunk = fanOut;
+        while (chunk * fanOut < files) {
+            chunk *= fanOut;
+        }
+        return chunk;
+    }
+
+    private long countTrees(long files) {
+        if (files <= options.fanOut()) {
+            return 1;
+        }
+        long chunk = directoryChunk(files, options.fanOut());
+        long trees = 1;
+        for (long first = 0; first < files; first += chunk) {
+            trees += countTrees(Math.min(chunk, files - first));
+        }
+        return trees;
+    }
+
+    /**
+     * Writes the files {@code first} to {@code first + count - 1}, directly or in subdirectories.
+     *
+     * @return the tree ID of the directory
+     */
+    private String writeDirectory(long first, long count) throws IOException, GeneralSecurityException {
+        List<Tree.Node> nodes = new ArrayList<>();
+        if (count <= options.fanOut()) {
+            for (long file = first; file < first + count; file++) {
+                nodes.add(writeFile(file));
+            }
+        } else {
+            long chunk = directoryChunk(count, options.fanOut());
+            for (long start = first; start < first + count; start += chunk) {
+                String subtree = writeDirectory(start, Math.min(chunk, first + count - start));
+                nodes.add(directoryNode("dir-%d".formatted(start / chunk), subtree));
+            }
+        }
+        return writeTree(nodes);
+    }
+
+    private Tree.Node writeFile(long file) throws IOException, GeneralSecurityException {
+        long firstBlob = file * options.blobsPerFile();
+        long blobs = Math.min(options.blobsPerFile(), options.dataBlobs() - firstBlob);
+        List<String> content = new ArrayList<>();
+        long size = 0;
+        for (long blob = 0; blob < blobs; blob++) {
+            int length = (int) Math.min(options.blobSize(), options.fileSize() - blob * options.blobSize());
+            byte[] plaintext = new byte[length];
+            contentRandom.nextBytes(plaintext);
+            for (int i = 0; i < length; i++) {
+                // 16 letters, about half of it can be compressed away
+                plaintext[i] = (byte) ('a' + (plaintext[i] & 0x0f));
+            }
+            byte[] number = (firstBlob + blob + "\n").getBytes(StandardCharsets.US_ASCII);
+            System.arraycopy(number, 0, plaintext, 0, number.length);
+            content.add(dataPacks.add(plaintext));
+            size += length;
+        }
+        return fileNode("file-%d".formatted(file), size, content);
+    }
+
+    private String writeTree(List<Tree.Node> nodes) throws IOException, GeneralSecurityException {
+        ByteArrayOutputStream json = new ByteArrayOutputStream();
+        MAPPER.writeValue(json, new Tree(nodes));
+        json.write('\n');
+        treeBlobCount++;
+        return treePacks.add(json.toByteArray());
+    }
+
+    private static Tree.Node directoryNode(String name, String subtree) {
+        return new Tree.Node(name, Tree.NodeType.DIR, DIRECTORY_MODE, BASE_TIME, BASE_TIME, BASE_TIME, 1000, 1000,
+                "generator", "generator", BigInteger.ZERO, 0, 0, 0, null, null, subtree);
+    }
+
+    private static Tree.Node fileNode(String name, long size, List<String> content) {
+        return new Tree.Node(name, Tree.NodeType.FILE, FILE_MODE, BASE_TIME, BASE_TIME, BASE_TIME, 1000, 1000,
+                "generator", "generator", BigInteger.ZERO, 0, size, 1, null, content, null);
+    }
+
+    /**
+     * Writes an index file or a snapshot. With compression, the plaintext is the version byte 2 followed by the
+     * zstd compressed JSON.
+     *
+     * @return the ID of the file
+     */
+    private String writeUnpackedFile(String directory, byte[] json) throws IOException, GeneralSecurityException {
+        byte[] plaintext = json;
+        if (options.compression()) {
+            byte[] compressed = Zstd.compress(json, 3);
+            plaintext = new byte[compressed.length + 1];
+            plaintext[0] = 2;
+            System.arraycopy(compressed, 0, plaintext, 1, compressed.length);
+        }
+        byte[] encrypted = encrypt(plaintext);
+        String id = sha256(encrypted);
+        Files.write(path.resolve(directory).resolve(id), encrypted);
+        return id;
+    }
+
+    private void packWritten(Index.Pack pack) throws IOException, GeneralSecurityException {
+        packCount++;
+        indexPacks.add(pack);
+        indexBlobs += pack.blobs().size();
+        if (indexBlobs >= blobsPerIndexFile) {
+            flushIndex();
+        }
+    }
+
+    private void flushIndex() throws IOException, GeneralSecurityException {
+        if (indexPacks.isEmpty()) {
+            return;
+        }
+        writeUnpackedFile("index", MAPPER.writeValueAsBytes(new Index(null, indexPacks)));
+        indexFileCount++;
+        indexPacks.clear();
+        indexBlobs = 0;
+    }
+
+    private byte[] encrypt(byte[] plaintext) throws GeneralSecurityException {
+        return encrypt(plaintext, encryptionKey, macKey);
+    }
+
+    /**
+     * @return IV || ciphertext || MAC
+     */
+    private byte[] encrypt(byte[] plaintext, SecretKeySpec key, byte[] macKey) throws GeneralSecurityException {
+        byte[] iv = new byte[16];
+        secureRandom.nextBytes(iv);
+        byte[] result = new byte[16 + plaintext.length + 16];
+        System.arraycopy(iv, 0, result, 0, 16);
+        cipher.init(Cipher.ENCRYPT_MODE, key, new IvParameterSpec(iv));
+        cipher.doFinal(plaintext, 0, plaintext.length, result, 16);
+        poly1305.init(new ParametersWithIV(new KeyParameter(macKey), result, 0, 16));
+        poly1305.update(result, 16, plaintext.length);
+        poly1305.doFinal(result, 16 + plaintext.length);
+        return result;
+    }
+
+    private static String sha256(byte[] data) {
+        try {
+            return HexFormat.of().formatHex(MessageDigest.getInstance("SHA-256").digest(data));
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    /**
+     * Collects the blobs of one type. The pack format is: encrypted blobs || encrypted header || header length
+     * (uint32 LE). A header entry is: type (1 byte) || encrypted length (uint32 LE) || [uncompressed length (uint32
+     * LE), for compressed blobs] || blob ID (32 bytes).
+     */
+    private final class PackWriter {
+        private final boolean tree;
+        private final ByteArrayOutputStream pack = new ByteArrayOutputStream();
+        private final ByteArrayOutputStream header = new ByteArrayOutputStream();
+        private final List<Index.Pack.Blob> blobs = new ArrayList<>();
+
+        PackWriter(boolean tree) {
+            this.tree = tree;
+        }
+
+        /**
+         * @return the blob ID
+         */
+        String add(byte[] plaintext) throws IOException, GeneralSecurityException {
+            String id = sha256(plaintext);
+            byte[] encrypted = encrypt(options.compression() ? Zstd.compress(plaintext, 3) : plaintext);
+            int uncompressedLength = options.compression() ? plaintext.length : 0;
+            blobs.add(new Index.Pack.Blob(BlobId.parse(id), tree ? "tree" : "data", pack.size(),
+                    encrypted.length, uncompressedLength));
+
+            int headerType = (tree ? 1 : 0) + (options.compression() ? 2 : 0);
+            ByteBuffer entry = ByteBuffer.allocate(1 + 4 + (options.compression() ? 4 : 0) + 32).order(ByteOrder.LITTLE_ENDIAN);
+            entry.put((byte) headerType).putInt(encrypted.length);
+            if (options.compression()) {
+                entry.putInt(plaintext.length);
+            }
+            entry.put(HexFormat.of().parseHex(id));
+            header.write(entry.array());
+            pack.write(encrypted);
+
+            if (pack.size() >= options.packSize()) {
+                finish();
+            }
+            return id;
+        }
+
+        void finish() throws IOException, GeneralSecurityException {
+            if (blobs.isEmpty()) {
+                return;
+            }
+            byte[] encryptedHeader = encrypt(header.toByteArray());
+            pack.write(encryptedHeader);
+            pack.write(ByteBuffer.allocate(4).order(ByteOrder.LITTLE_ENDIAN).putInt(encryptedHeader.length).array());
+            byte[] packBytes = pack.toByteArray();
+            String packId = sha256(packBytes);
+            Files.write(path.resolve("data").resolve(packId.substring(0, 2)).resolve(packId), packBytes);
+            packWritten(new Index.Pack(packId, List.copyOf(blobs)));
+            pack.reset();
+            header.reset();
+            blobs.clear();
+        }
+    }
+}
@@ -0,0 +1,108 @@
+package org.adangel.resticbrowser;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.security.MessageDigest;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HexFormat;
+import java.util.List;
+import java.util.stream.Stream;
+
+import org.adangel.resticbrowser.models.SnapshotWithId;
+import org.adangel.resticbrowser.models.Tree;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.junit.jupiter.params.ParameterizedTest;
+import org.junit.jupiter.params.provider.ValueSource;
+
+class RepositoryGeneratorTest {
+    @TempDir
+    Path tempDir;
+
+    @ParameterizedTest
+    @ValueSource(booleans = {true, false})
+    void generate(boolean compression) throws Exception {
+        RepositoryGenerator.Options options = RepositoryGenerator.Options.parse(
+                "dataBlobs=500,blobSize=100,fileSize=250,fanOut=4,snapshots=3,indexFiles=3,packSize=8192,compression=" + compression);
+        RepositoryGenerator.Result result = RepositoryGenerator.generate(tempDir, options);
+        assertEquals(3, result.snapshotIds().size());
+        assertEquals(167 + 3, result.files());
+        assertEquals(3, result.indexFiles());
+        try (Stream<Path> indexFiles = Files.list(tempDir.resolve("index"))) {
+            assertEquals(3, indexFiles.count());
+        }
+
+        Repository repository = new Repository(tempDir, RepositoryGenerator.PASSWORD);
+        List<SnapshotWithId> snapshots = repository.listSnapshots().stream()
+                .sorted(Comparator.comparing(snapshot -> snapshot.snapshot().time())).toList();
+        assertEquals(result.snapshotIds(), snapshots.stream().map(SnapshotWithId::id).toList());
+        assertEquals(snapshots.get(1).id(), snapshots.get(2).snapshot().parent());
+
+        List<Tree.Node> files = new ArrayList<>();
+        collectFiles(repository, snapshots.getFirst().snapshot().tree(), files);
+        assertEquals(167 + 1, files.size());
+        MessageDigest sha256 = MessageDigest.getInstance("SHA-256");
+        long blobs = 0;
+        for (Tree.Node file : files) {
+            for (String blobId : file.content()) {
+                assertEquals(blobId, HexFormat.of().formatHex(sha256.digest(repository.readContent(blobId))));
+                assertEquals(compression, repository.findBlob(blobId).isCompressed());
+                blobs++;
+            }
+            try (InputStream in = repository.readNode(file)) {
+                assertEquals(file.size(), in.readAllBytes().length);
+            }
+        }
+        assertEquals(500 + 1, blobs);
+        assertEquals("This is snapshot 0\n", new String(repository.readContent(files.getLast().content().getFirst())));
+    }
+
+    private static void collectFiles(Repository repository, String treeId, List<Tree.Node> files) throws Exception {
+        for (Tree.Node node : repository.readTree(treeId).nodes()) {
+            if (node.type() == Tree.NodeType.DIR) {
+                assertTrue(repository.readTree(node.subtree()).nodes().size() <= 4);
+                collectFiles(repository, node.subtree(), files);
+            } else {
+                files.add(node);
+            }
+        }
+    }
+
+    @Test
+    void indexFilesAreFlushedByEntryCount() throws Exception {
+        RepositoryGenerator.Options options = RepositoryGenerator.Options.parse(
+                "dataBlobs=" + (RepositoryGenerator.MAX_INDEX_BLOBS + 1000) + ",blobSize=20,fileSize=20000,fanOut=100,"
+                        + "snapshots=1,indexFiles=1,packSize=65536,compression=false");
+        RepositoryGenerator.Result result = RepositoryGenerator.generate(tempDir, options);
+        assertEquals(2, result.indexFiles());
+
+        // the blobs of both index files are found
+        Repository repository = new Repository(tempDir, RepositoryGenerator.PASSWORD);
+        String snapshotId = result.snapshotIds().getFirst();
+        List<Tree.Node> files = repository.listFiles(snapshotId, "/generated/data");
+        assertEquals(51, files.size());
+        assertEquals(20, repository.readContent(files.getFirst().content().getFirst()).length);
+        assertEquals(20, repository.readContent(files.getLast().content().getLast()).length);
+        Tree.Node snapshotFile = repository.listFiles(snapshotId, "/generated").getLast();
+        assertEquals("This is snapshot 0\n", new String(repository.readContent(snapshotFile.content().getFirst())));
+    }
+
+    @Test
+    void invalidOptions() {
+        assertThrows(IllegalArgumentException.class, () -> RepositoryGenerator.Options.parse("blobs=1"));
+        assertThrows(IllegalArgumentException.class, () -> RepositoryGenerator.Options.parse("blobSize=100,fileSize=201"));
+    }
+
+    @Test
+    void existingRepository() {
+        assertThrows(IOException.class, () -> RepositoryGenerator.generate(Path.of("src/test/resources/repos/repo1"),
+                RepositoryGenerator.Options.defaults()));
+    }
+}
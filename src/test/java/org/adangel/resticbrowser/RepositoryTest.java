@@ -1,5 +1,6 @@
 package org.adangel.resticbrowser;
 
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
 import static org.junit.jupiter.api.Assertions.assertEquals;
 import static org.junit.jupiter.api.Assertions.assertThrows;
 import static org.junit.jupiter.api.Assertions.assertTrue;
@@ -7,18 +8,27 @@ import static org.junit.jupiter.api.Assertions.assertTrue;
 import java.io.IOException;
 import java.io.InputStream;
 import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
 import java.nio.file.Path;
 import java.security.MessageDigest;
 import java.util.HexFormat;
 import java.util.List;
+import java.util.Map;
 import java.util.logging.LogManager;
 
+import org.adangel.resticbrowser.backend.FileType;
+import org.adangel.resticbrowser.crypto.CryptoBackend;
+import org.adangel.resticbrowser.metrics.Counter;
+import org.adangel.resticbrowser.metrics.Histogram;
+import org.adangel.resticbrowser.metrics.Metrics;
+import org.adangel.resticbrowser.models.BlobId;
 import org.adangel.resticbrowser.models.Index;
 import org.adangel.resticbrowser.models.Snapshot;
 import org.adangel.resticbrowser.models.SnapshotWithId;
 import org.adangel.resticbrowser.models.Tree;
 import org.junit.jupiter.api.BeforeAll;
 import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
 
 class RepositoryTest {
     @BeforeAll
@@ -35,7 +45,7 @@ class RepositoryTest {
     @Test
     void readIndex() throws Exception {
         Repository repository = new Repository(Path.of("src/test/resources/repos/repo1"), "test");
-        Index index = repository.readFile(Path.of("index/cccab80cdb489d6d416e283dd9019d06086c3a82b63fc45714e88dea9073f4a0"), Index.class);
+        Index index = repository.readFile(FileType.INDEX, "cccab80cdb489d6d416e283dd9019d06086c3a82b63fc45714e88dea9073f4a0", Index.class);
         assertEquals(2, index.packs().size());
     }
 
@@ -102,4 +112,163 @@ class RepositoryTest {
             assertEquals("4360fffcd35689d5ae2ca95b28b289bebf15905d3db33f4e918ae814f9140841", digest);
         }
     }
+
+    @Test
+    void readBlobs() throws Exception {
+        Repository repository = new Repository(Path.of("src/test/resources/repos/repo4"), "test");
+        List<Tree.Node> files = repository.listFiles("a9e4ac2f30d86cf98d52648d00e9fe03313e2cc47e5533e7f1e5c35e2e52d364", "/");
+        List<BlobId> content = files.get(0).contentIds().reversed();
+        Map<BlobId, byte[]> blobs = repository.readBlobs(content);
+        assertEquals(content, List.copyOf(blobs.keySet()));
+        for (BlobId id : content) {
+            assertArrayEquals(repository.readContent(id), blobs.get(id));
+        }
+    }
+
+    @Test
+    void readBlobsFromSeveralPacks(@TempDir Path tempDir) throws Exception {
+        // one blob per pack
+        RepositoryGenerator.Result result = RepositoryGenerator.generate(tempDir, RepositoryGenerator.Options.parse(
+                "dataBlobs=4,blobSize=1000,fileSize=4000,fanOut=2,snapshots=1,indexFiles=1,packSize=1024,compression=false"));
+        Repository repository = new Repository(tempDir, RepositoryGenerator.PASSWORD, RepositoryOptions.defaults());
+        Snapshot snapshot = repository.readFile(FileType.SNAPSHOT, result.snapshotIds().getFirst(), Snapshot.class);
+        Tree tree = repository.readTree(snapshot.tree());
+        while (tree.nodes().getFirst().type() == Tree.NodeType.DIR) {
+            tree = repository.readTree(tree.nodes().getFirst().subtreeId());
+        }
+        List<BlobId> content = tree.nodes().getFirst().contentIds();
+        assertEquals(4, content.stream().map(id -> repository.findBlob(id).packId()).distinct().count());
+        Histogram packReadLatency = Metrics.global().histogram("restic_pack_read_seconds",
+                "Latency of reading a (coalesced) range of a pack file, or of a batch of ranges which are read together");
+
+        long readsBefore = packReadLatency.count();
+        Map<BlobId, byte[]> blobs = repository.readBlobs(content);
+        // the four ranges are read in one batch
+        assertEquals(readsBefore + 1, packReadLatency.count());
+        for (BlobId id : content) {
+            assertArrayEquals(repository.readContent(id), blobs.get(id));
+        }
+    }
+
+    @Test
+    void readTrees() throws Exception {
+        Repository repository = new Repository(Path.of("src/test/resources/repos/repo2"), "test");
+        List<Tree.Node> nodes = repository.listFiles("2a9e949d33e1d696070a75e0be69dc6c1e9e89a2dd44d02a7b971a8d849c2f6c", "/home/johndoe/subdir1");
+        List<BlobId> subtrees = nodes.stream().map(Tree.Node::subtreeId).toList();
+        Map<BlobId, Tree> trees = repository.readTrees(subtrees);
+        assertEquals(subtrees, List.copyOf(trees.keySet()));
+        assertEquals(List.of("file1.txt", "file2.txt"), trees.get(subtrees.get(0)).nodes().stream().map(Tree.Node::name).toList());
+    }
+
+    @Test
+    void listFilesOfSnapshot() throws Exception {
+        Repository repository = new Repository(Path.of("src/test/resources/repos/repo2"), "test");
+        SnapshotWithId snapshot = repository.listSnapshots().getFirst();
+        List<String> names = repository.listFiles(snapshot.snapshot(), "/home/johndoe/subdir1").stream().map(Tree.Node::name).toList();
+        assertEquals(repository.listFiles(snapshot.id(), "/home/johndoe/subdir1").stream().map(Tree.Node::name).toList(), names);
+        assertEquals(List.of("a", "b", "c"), names);
+    }
+
+    @Test
+    void keyHint() throws Exception {
+        Path repo1 = Path.of("src/test/resources/repos/repo1");
+        for (String keyHint : List.of("5472afa3", "7f77f236", "00000000")) {
+            for (String password : List.of("test", "password")) {
+                Repository repository = new Repository(repo1, password, RepositoryOptions.defaults().withKeyHint(keyHint));
+                assertTrue(repository.hasMasterKey(), keyHint + "/" + password);
+            }
+            assertThrows(IllegalArgumentException.class,
+                    () -> new Repository(repo1, "wrong", RepositoryOptions.defaults().withKeyHint(keyHint)));
+        }
+    }
+
+    @Test
+    void verifyFirstRead() throws Exception {
+        Repository repository = new Repository(Path.of("src/test/resources/repos/repo1"), "test",
+                new RepositoryOptions(RepositoryOptions.Verification.FIRST_READ, 0.0, false, CryptoBackend.JCA, null,
+                        RepositoryOptions.IndexMode.INDEX_FILES, null, RepositoryOptions.DEFAULT_TREE_CACHE_SIZE));
+        String blobId = "c9d04c9565fc665c80681fb1d829938026871f66e14f501e08531df66938a789";
+        Counter verified = verifiedBlobs("first-read");
+        Counter unverified = unverifiedBlobs("first-read");
+        long verifiedBefore = verified.get();
+        long unverifiedBefore = unverified.get();
+        assertEquals("Test\n", new String(repository.readContent(blobId), StandardCharsets.UTF_8));
+        assertEquals("Test\n", new String(repository.readContent(blobId), StandardCharsets.UTF_8));
+        try (InputStream stream = repository.readContentAsStream(blobId)) {
+            assertEquals("Test\n", new String(stream.readAllBytes(), StandardCharsets.UTF_8));
+        }
+
+        assertEquals(1, verified.get() - verifiedBefore);
+        assertEquals(2, unverified.get() - unverifiedBefore);
+    }
+
+    @Test
+    void verifySampled() throws Exception {
+        Repository repository = new Repository(Path.of("src/test/resources/repos/repo1"), "test",
+                new RepositoryOptions(RepositoryOptions.Verification.SAMPLED, 0.0, false, CryptoBackend.JCA, null,
+                        RepositoryOptions.IndexMode.INDEX_FILES, null, RepositoryOptions.DEFAULT_TREE_CACHE_SIZE));
+        Counter verified = verifiedBlobs("sampled");
+        Counter unverified = unverifiedBlobs("sampled");
+        long verifiedBefore = verified.get();
+        long unverifiedBefore = unverified.get();
+        repository.readContent("c9d04c9565fc665c80681fb1d829938026871f66e14f501e08531df66938a789");
+        assertEquals(0, verified.get() - verifiedBefore);
+        assertEquals(1, unverified.get() - unverifiedBefore);
+    }
+
+    private static Counter verifiedBlobs(String mode) {
+        return Metrics.global().counter("restic_blobs_verified_total", "Blob reads whose MAC was verified", "mode", mode);
+    }
+
+    private static Counter unverifiedBlobs(String mode) {
+        return Metrics.global().counter("restic_blobs_unverified_total", "Blob reads whose MAC wasn't verified", "mode", mode);
+    }
+
+    @Test
+    void verifyTreeIds() throws Exception {
+        Repository repository = new Repository(Path.of("src/test/resources/repos/repo2"), "test",
+                new RepositoryOptions(RepositoryOptions.Verification.ALWAYS, 0.0, true, CryptoBackend.JCA, null,
+                        RepositoryOptions.IndexMode.INDEX_FILES, null, RepositoryOptions.DEFAULT_TREE_CACHE_SIZE));
+        Counter verifiedTreeIds = Metrics.global().counter("restic_tree_ids_verified_total", "Trees whose SHA-256 was checked against their ID");
+        Counter verified = verifiedBlobs("always");
+        long verifiedTreeIdsBefore = verifiedTreeIds.get();
+        long verifiedBefore = verified.get();
+        List<String> files = repository.listFiles("2a9e949d33e1d696070a75e0be69dc6c1e9e89a2dd44d02a7b971a8d849c2f6c");
+        assertEquals(Files.readAllLines(Path.of("src/test/resources/repos/repo2-2a9e949d.filelist")), files.stream().sorted().toList());
+
+        long treeIds = verifiedTreeIds.get() - verifiedTreeIdsBefore;
+        assertTrue(treeIds > 0);
+        assertEquals(treeIds, verified.get() - verifiedBefore);
+    }
+
+    @Test
+    void optionsFromEnv() {
+        assertEquals(RepositoryOptions.defaults(), RepositoryOptions.fromEnv(Map.of("RESTIC_PASSWORD", "test")));
+        assertEquals(new RepositoryOptions(RepositoryOptions.Verification.SAMPLED, 0.25, true, CryptoBackend.BOUNCY_CASTLE, null,
+                RepositoryOptions.IndexMode.INDEX_FILES, null, RepositoryOptions.DEFAULT_TREE_CACHE_SIZE),
+                RepositoryOptions.fromEnv(Map.of(RepositoryOptions.VERIFY, "sampled",
+                        RepositoryOptions.VERIFY_SAMPLE_RATE, "0.25", RepositoryOptions.VERIFY_TREE_IDS, "true",
+                        RepositoryOptions.CRYPTO_BACKEND, "bouncycastle")));
+        assertEquals(RepositoryOptions.Verification.FIRST_READ, RepositoryOptions.fromEnv(Map.of(RepositoryOptions.VERIFY, "first-read")).verification());
+        assertEquals("5472afa3", RepositoryOptions.fromEnv(Map.of(RepositoryOptions.KEY_HINT, "5472afa3")).keyHint());
+        assertEquals(RepositoryOptions.IndexMode.REPAIR, RepositoryOptions.fromEnv(Map.of(RepositoryOptions.INDEX_MODE, "repair")).indexMode());
+        assertEquals(Path.of("/tmp/index.json"), RepositoryOptions.fromEnv(Map.of(RepositoryOptions.REBUILT_INDEX, "/tmp/index.json")).rebuiltIndex());
+        assertEquals(16L * 1024 * 1024, RepositoryOptions.fromEnv(Map.of(RepositoryOptions.TREE_CACHE_SIZE, "16m")).treeCacheSize());
+        assertThrows(IllegalArgumentException.class, () -> RepositoryOptions.fromEnv(Map.of(RepositoryOptions.VERIFY_SAMPLE_RATE, "2")));
+    }
+
+    @Test
+    void cryptoBackends() throws Exception {
+        for (CryptoBackend backend : List.of(CryptoBackend.JCA, CryptoBackend.BOUNCY_CASTLE)) {
+            Repository repository = new Repository(Path.of("src/test/resources/repos/repo4"), "test",
+                    new RepositoryOptions(RepositoryOptions.Verification.ALWAYS, 0.0, false, backend, null,
+                            RepositoryOptions.IndexMode.INDEX_FILES, null, RepositoryOptions.DEFAULT_TREE_CACHE_SIZE));
+            List<Tree.Node> files = repository.listFiles("a9e4ac2f30d86cf98d52648d00e9fe03313e2cc47e5533e7f1e5c35e2e52d364", "/");
+            MessageDigest sha256 = MessageDigest.getInstance("SHA256");
+            for (byte[] blob : repository.readBlobs(files.get(0).contentIds()).values()) {
+                sha256.update(blob);
+            }
+            assertEquals("4360fffcd35689d5ae2ca95b28b289bebf15905d3db33f4e918ae814f9140841", HexFormat.of().formatHex(sha256.digest()), backend.name());
+        }
+    }
 }
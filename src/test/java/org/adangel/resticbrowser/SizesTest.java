@@ -0,0 +1,17 @@
+package org.adangel.resticbrowser;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+import org.junit.jupiter.api.Test;
+
+class SizesTest {
+    @Test
+    void parseSize() {
+        assertEquals(512L * 1024 * 1024, Sizes.parseSize("512m"));
+        assertEquals(2L * 1024 * 1024 * 1024, Sizes.parseSize("2G"));
+        assertEquals(100 * 1024, Sizes.parseSize(" 100 k "));
+        assertEquals(1000, Sizes.parseSize("1000"));
+        assertThrows(NumberFormatException.class, () -> Sizes.parseSize("1t"));
+    }
+}
@@ -0,0 +1,132 @@
+package org.adangel.resticbrowser;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.nio.file.Path;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+
+import org.adangel.resticbrowser.metrics.Counter;
+import org.adangel.resticbrowser.metrics.Metrics;
+import org.adangel.resticbrowser.models.BlobId;
+import org.adangel.resticbrowser.models.SnapshotWithId;
+import org.adangel.resticbrowser.models.Tree;
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+class TreeWarmUpTest {
+    @TempDir
+    static Path tempDir;
+
+    @BeforeAll
+    static void generateRepository() throws Exception {
+        RepositoryGenerator.generate(tempDir, RepositoryGenerator.Options.parse(
+                "dataBlobs=200,blobSize=100,fileSize=100,fanOut=3,snapshots=4,indexFiles=1,packSize=65536,compression=true"));
+    }
+
+    private static Repository open() throws Exception {
+        return new Repository(tempDir, RepositoryGenerator.PASSWORD, RepositoryOptions.defaults());
+    }
+
+    private static TreeWarmUp.Options options(String depth) {
+        return TreeWarmUp.Options.fromEnv(Map.of(TreeWarmUp.Options.WARM_UP, "true", TreeWarmUp.Options.SNAPSHOTS, "2",
+                TreeWarmUp.Options.DEPTH, depth));
+    }
+
+    /** The distinct trees of the first {@code depth} levels of the snapshots. */
+    private static Set<BlobId> trees(Repository repository, List<SnapshotWithId> snapshots, int depth) throws Exception {
+        Set<BlobId> trees = new LinkedHashSet<>();
+        Set<BlobId> level = new LinkedHashSet<>();
+        snapshots.forEach(s -> level.add(BlobId.parse(s.snapshot().tree())));
+        for (int i = 0; i < depth && !level.isEmpty(); i++) {
+            trees.addAll(level);
+            Set<BlobId> next = new LinkedHashSet<>();
+            for (BlobId treeId : level) {
+                for (Tree.Node node : repository.readTree(treeId).nodes()) {
+                    if (node.type() == Tree.NodeType.DIR && !trees.contains(node.subtreeId())) {
+                        next.add(node.subtreeId());
+                    }
+                }
+            }
+            level.clear();
+            level.addAll(next);
+        }
+        return trees;
+    }
+
+    @Test
+    void loadsTopLevelsOfMostRecentSnapshots() throws Exception {
+        Repository repository = open();
+        List<SnapshotWithId> snapshots = repository.listSnapshots();
+        List<SnapshotWithId> newest = snapshots.stream()
+                .sorted((a, b) -> b.snapshot().time().compareTo(a.snapshot().time())).limit(2).toList();
+        Set<BlobId> expected = trees(open(), newest, 2);
+        Counter misses = Metrics.global().counter("restic_tree_cache_misses_total", "Trees read from the repository");
+
+        try (TreeWarmUp warmUp = new TreeWarmUp(repository, options("2"))) {
+            assertEquals(expected.size(), warmUp.start().get(30, TimeUnit.SECONDS));
+        }
+        assertTrue(repository.getCompressedTreeCacheSize() > 0);
+        long missesBefore = misses.get();
+        for (BlobId treeId : expected) {
+            repository.readTree(treeId);
+        }
+        assertEquals(missesBefore, misses.get());
+    }
+
+    @Test
+    void browsedTreesStayInFirstTier() throws Exception {
+        Repository repository = open();
+        BlobId browsed = BlobId.parse(repository.listSnapshots().getFirst().snapshot().tree());
+        repository.readTree(browsed);
+        Counter compressedHits = Metrics.global().counter("restic_tree_cache_compressed_hits_total", "Trees decoded from the compressed tree cache");
+
+        // more trees than fit into the first tier
+        try (TreeWarmUp warmUp = new TreeWarmUp(repository, options("100"))) {
+            assertTrue(warmUp.start().get(30, TimeUnit.SECONDS) > 100);
+        }
+        long compressedHitsBefore = compressedHits.get();
+        repository.readTree(browsed);
+        assertEquals(compressedHitsBefore, compressedHits.get());
+    }
+
+    @Test
+    void disabledByDefault() throws Exception {
+        try (TreeWarmUp warmUp = new TreeWarmUp(open(), TreeWarmUp.Options.fromEnv(Map.of()))) {
+            assertEquals(0, warmUp.start().get(30, TimeUnit.SECONDS));
+        }
+    }
+
+    @Test
+    void hostFilter() throws Exception {
+        TreeWarmUp.Options otherHost = new TreeWarmUp.Options(true, 2, 2, "other-host", null, -1, 1);
+        TreeWarmUp.Options generatorHost = new TreeWarmUp.Options(true, 2, 2, "generator", "/generated", -1, 1);
+
+        try (TreeWarmUp warmUp = new TreeWarmUp(open(), otherHost)) {
+            assertEquals(0, warmUp.start().get(30, TimeUnit.SECONDS));
+        }
+        try (TreeWarmUp warmUp = new TreeWarmUp(open(), generatorHost)) {
+            try (TreeWarmUp unfiltered = new TreeWarmUp(open(), options("2"))) {
+                assertEquals(unfiltered.start().get(30, TimeUnit.SECONDS), warmUp.start().get(30, TimeUnit.SECONDS));
+            }
+        }
+    }
+
+    @Test
+    void stopsAtBudget() throws Exception {
+        Repository repository = open();
+        Set<BlobId> all = trees(open(), repository.listSnapshots(), Integer.MAX_VALUE);
+        TreeWarmUp.Options options = new TreeWarmUp.Options(true, 4, 100, null, null, 1, 1);
+
+        try (TreeWarmUp warmUp = new TreeWarmUp(repository, options)) {
+            long loaded = warmUp.start().get(30, TimeUnit.SECONDS);
+            assertTrue(loaded > 0);
+            assertTrue(loaded < all.size(), () -> loaded + " of " + all.size() + " trees loaded");
+        }
+    }
+}
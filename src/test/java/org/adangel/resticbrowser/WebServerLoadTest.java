@@ -0,0 +1,121 @@
+package org.adangel.resticbrowser;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+import org.junit.jupiter.api.AfterAll;
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.Tag;
+import org.junit.jupiter.api.Test;
+
+/**
+ * Not part of the default test run, as it depends on the timing of the machine, see the {@code excludedGroups} in the
+ * pom.
+ */
+@Tag("load")
+class WebServerLoadTest {
+    private static final Logger LOGGER = Logger.getLogger(WebServerLoadTest.class.getName());
+    private static final Logger PACKAGE_LOGGER = Logger.getLogger("org.adangel.resticbrowser");
+
+    private static final int CLIENTS = 100;
+    private static final String SNAPSHOT = "/snapshots/a9e4ac2f30d86cf98d52648d00e9fe03313e2cc47e5533e7f1e5c35e2e52d364";
+
+    private static WebServer webServer;
+    private static HttpClient client;
+    private static Level previousLevel;
+
+    @BeforeAll
+    static void startServer() throws IOException {
+        // the per-request logging would dominate the measurement
+        previousLevel = PACKAGE_LOGGER.getLevel();
+        PACKAGE_LOGGER.setLevel(Level.WARNING);
+
+        webServer = new WebServer(0, Path.of("src/test/resources/repos/repo4"), "test".toCharArray(),
+                new WebServer.Options(CLIENTS, 60_000, 0, false));
+        webServer.start();
+        client = HttpClient.newBuilder()
+                .version(HttpClient.Version.HTTP_1_1)
+                .executor(Executors.newVirtualThreadPerTaskExecutor())
+                .build();
+    }
+
+    @AfterAll
+    static void stopServer() {
+        webServer.stop();
+        PACKAGE_LOGGER.setLevel(previousLevel);
+    }
+
+    @Test
+    void concurrentClients() throws Exception {
+        // a mix of directory listings and full downloads of the 2 MiB file
+        List<String> paths = new ArrayList<>();
+        for (int i = 0; i < CLIENTS; i++) {
+            paths.add(i % 2 == 0 ? SNAPSHOT + "/" : SNAPSHOT + "/file.raw");
+        }
+
+        CountDownLatch start = new CountDownLatch(1);
+        List<Future<Long>> latencies = new ArrayList<>();
+        try (ExecutorService clients = Executors.newVirtualThreadPerTaskExecutor()) {
+            for (String path : paths) {
+                latencies.add(clients.submit(() -> {
+                    start.await();
+                    return fetch(path);
+                }));
+            }
+            start.countDown();
+        }
+
+        long[] millis = new long[CLIENTS];
+        for (int i = 0; i < CLIENTS; i++) {
+            millis[i] = latencies.get(i).get();
+        }
+        Arrays.sort(millis);
+        // the package logger is at WARNING during the test
+        LOGGER.warning(() -> "%d concurrent clients: p50=%dms p90=%dms p99=%dms max=%dms".formatted(CLIENTS,
+                percentile(millis, 50), percentile(millis, 90), percentile(millis, 99), millis[CLIENTS - 1]));
+        // every client is served within the stream timeout, none has to wait for all others
+        assertTrue(millis[CLIENTS - 1] < 60_000, () -> "max latency " + millis[CLIENTS - 1] + "ms");
+    }
+
+    private static long fetch(String path) throws IOException, InterruptedException {
+        HttpRequest request = HttpRequest.newBuilder(URI.create("http://localhost:" + webServer.getPort() + path))
+                .timeout(Duration.ofMinutes(2))
+                .build();
+        long start = System.nanoTime();
+        HttpResponse<InputStream> response = client.send(request, HttpResponse.BodyHandlers.ofInputStream());
+        long bytes;
+        try (InputStream body = response.body()) {
+            bytes = body.transferTo(OutputStream.nullOutputStream());
+        }
+        long elapsed = Duration.ofNanos(System.nanoTime() - start).toMillis();
+        assertEquals(200, response.statusCode(), path);
+        if (path.endsWith("file.raw")) {
+            assertEquals(2_097_152, bytes);
+        }
+        return elapsed;
+    }
+
+    private static long percentile(long[] sorted, int percentile) {
+        int index = (int) Math.ceil(percentile / 100.0 * sorted.length) - 1;
+        return sorted[Math.max(0, index)];
+    }
+}
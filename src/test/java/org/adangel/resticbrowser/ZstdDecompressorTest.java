@@ -0,0 +1,60 @@
+package org.adangel.resticbrowser;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+
+import org.junit.jupiter.api.Test;
+
+import com.github.luben.zstd.Zstd;
+import com.github.luben.zstd.ZstdOutputStream;
+
+class ZstdDecompressorTest {
+    private static final byte[] DATA = "This is path subdir1/a/file2.txt\n\n".repeat(100).getBytes(StandardCharsets.UTF_8);
+
+    @Test
+    void knownSize() throws IOException {
+        byte[] compressed = withPrefix(Zstd.compress(DATA));
+        assertArrayEquals(DATA, ZstdDecompressor.decompress(compressed, 1, compressed.length - 1, DATA.length));
+        assertThrows(IOException.class, () -> ZstdDecompressor.decompress(compressed, 1, compressed.length - 1, DATA.length - 1));
+    }
+
+    @Test
+    void sizeFromFrameHeader() throws IOException {
+        byte[] compressed = withPrefix(Zstd.compress(DATA));
+        assertArrayEquals(DATA, ZstdDecompressor.decompress(compressed, 1, compressed.length - 1));
+    }
+
+    @Test
+    void unknownSize() throws IOException {
+        // the streaming API doesn't write the content size into the frame header
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        out.write(0);
+        try (ZstdOutputStream zstd = new ZstdOutputStream(out)) {
+            zstd.write(DATA);
+        }
+        byte[] compressed = out.toByteArray();
+        assertArrayEquals(DATA, ZstdDecompressor.decompress(compressed, 1, compressed.length - 1));
+    }
+
+    @Test
+    void directBuffers() throws IOException {
+        byte[] compressed = Zstd.compress(DATA);
+        ByteBuffer source = ByteBuffer.allocateDirect(compressed.length).put(compressed).flip();
+        ByteBuffer target = ByteBuffer.allocateDirect(DATA.length);
+        ZstdDecompressor.decompress(source, target);
+        byte[] result = new byte[DATA.length];
+        target.flip().get(result);
+        assertArrayEquals(DATA, result);
+    }
+
+    private static byte[] withPrefix(byte[] compressed) {
+        byte[] result = new byte[compressed.length + 1];
+        System.arraycopy(compressed, 0, result, 1, compressed.length);
+        return result;
+    }
+}
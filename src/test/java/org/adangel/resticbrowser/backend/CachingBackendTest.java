@@ -0,0 +1,207 @@
+package org.adangel.resticbrowser.backend;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.atomic.AtomicReference;
+
+import org.adangel.resticbrowser.Repository;
+import org.adangel.resticbrowser.RepositoryOptions;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+class CachingBackendTest {
+    private static final Path REPO2 = Path.of("src/test/resources/repos/repo2");
+    private static final String SNAPSHOT = "2a9e949d33e1d696070a75e0be69dc6c1e9e89a2dd44d02a7b971a8d849c2f6c";
+
+    @TempDir
+    private Path cacheDir;
+    private RestServerStub server;
+
+    @BeforeEach
+    void startServer() throws IOException {
+        server = new RestServerStub(REPO2);
+    }
+
+    @AfterEach
+    void stopServer() {
+        server.close();
+    }
+
+    private CachingBackend newBackend(long maxSize) throws IOException {
+        return new CachingBackend(new RestBackend(server.uri()), cacheDir, maxSize);
+    }
+
+    @Test
+    void metadataFilesAreCached() throws IOException {
+        LocalBackend local = new LocalBackend(REPO2);
+        String index = local.list(FileType.INDEX).getFirst();
+        try (CachingBackend backend = newBackend(CachingBackend.DEFAULT_MAX_SIZE)) {
+            int requests = server.requests.get();
+            assertArrayEquals(local.read(FileType.INDEX, index), backend.read(FileType.INDEX, index));
+            assertArrayEquals(local.read(FileType.SNAPSHOT, SNAPSHOT), backend.read(FileType.SNAPSHOT, SNAPSHOT));
+            assertEquals(requests + 2, server.requests.get());
+            assertArrayEquals(local.read(FileType.INDEX, index), backend.read(FileType.INDEX, index));
+            assertEquals(requests + 2, server.requests.get());
+            assertTrue(Files.isRegularFile(cacheDir.resolve("index").resolve(index)));
+        }
+
+        // survives a restart
+        try (CachingBackend backend = newBackend(CachingBackend.DEFAULT_MAX_SIZE)) {
+            int requests = server.requests.get();
+            assertArrayEquals(local.read(FileType.SNAPSHOT, SNAPSHOT), backend.read(FileType.SNAPSHOT, SNAPSHOT));
+            assertEquals(requests, server.requests.get());
+        }
+    }
+
+    @Test
+    void removedFilesAreDropped() throws IOException {
+        Files.createDirectories(cacheDir.resolve("snapshots"));
+        Path removedSnapshot = Files.writeString(cacheDir.resolve("snapshots").resolve("00deadbeef"), "x");
+        Path leftover = Files.writeString(cacheDir.resolve("snapshots").resolve("0123abc.tmp"), "partial");
+        try (CachingBackend backend = newBackend(CachingBackend.DEFAULT_MAX_SIZE)) {
+            assertFalse(Files.exists(leftover));
+            assertEquals(List.of(SNAPSHOT), backend.list(FileType.SNAPSHOT));
+            assertFalse(Files.exists(removedSnapshot));
+            assertEquals(0, backend.size());
+        }
+    }
+
+    @Test
+    void treePacksAreCached() throws Exception {
+        try (CachingBackend backend = newBackend(CachingBackend.DEFAULT_MAX_SIZE)) {
+            Repository repository = new Repository(backend, "test", RepositoryOptions.defaults());
+            List<String> files = repository.listFiles(SNAPSHOT);
+            assertFalse(files.isEmpty());
+            assertTrue(Files.isDirectory(cacheDir.resolve("data")));
+
+            // a second repository with the same cache reads only listings, keys and the config from the server
+            server.paths.clear();
+            Repository secondRepository = new Repository(backend, "test", RepositoryOptions.defaults());
+            assertEquals(files, secondRepository.listFiles(SNAPSHOT));
+            List<String> fetched = server.paths.stream().filter(path -> !path.endsWith("/") && !path.startsWith("/keys/")).toList();
+            assertEquals(List.of(), fetched);
+        }
+    }
+
+    @Test
+    void rangesAreReadFromCachedPack() throws IOException {
+        LocalBackend local = new LocalBackend(REPO2);
+        String pack = local.list(FileType.PACK).getFirst();
+        byte[] expected = Arrays.copyOfRange(local.read(FileType.PACK, pack), 10, 30);
+        try (CachingBackend backend = newBackend(CachingBackend.DEFAULT_MAX_SIZE)) {
+            backend.setCachedPacks(Set.of(pack));
+            assertArrayEquals(expected, backend.readRange(FileType.PACK, pack, 10, 20));
+            assertTrue(Files.isRegularFile(cacheDir.resolve("data").resolve(pack.substring(0, 2)).resolve(pack)));
+
+            int requests = server.requests.get();
+            assertArrayEquals(expected, backend.readRange(FileType.PACK, pack, 10, 20));
+            assertEquals(requests, server.requests.get());
+        }
+    }
+
+    @Test
+    void oversizedPacksAreReadInRanges() throws IOException {
+        LocalBackend local = new LocalBackend(REPO2);
+        String pack = local.list(FileType.PACK).getFirst();
+        byte[] expected = Arrays.copyOfRange(local.read(FileType.PACK, pack), 10, 30);
+        // a quarter of the budget is smaller than the pack
+        try (CachingBackend backend = newBackend(local.size(FileType.PACK, pack) * 2)) {
+            backend.setCachedPacks(Set.of(pack));
+            for (int i = 0; i < 3; i++) {
+                int rangeRequests = server.rangeRequests.get();
+                assertArrayEquals(expected, backend.readRange(FileType.PACK, pack, 10, 20));
+                assertEquals(rangeRequests + 1, server.rangeRequests.get());
+            }
+            assertFalse(Files.exists(cacheDir.resolve("data")));
+        }
+    }
+
+    @Test
+    void cachedPacksChangeWhileRangesAreRead() throws IOException {
+        List<String> packs = new LocalBackend(REPO2).list(FileType.PACK);
+        AtomicReference<CachingBackend> caching = new AtomicReference<>();
+        // the index is reloaded while the uncached ranges are read
+        LocalBackend local = new LocalBackend(REPO2) {
+            @Override
+            public List<byte[]> readRanges(FileType type, List<Range> ranges) throws IOException {
+                caching.get().setCachedPacks(Set.of(packs.getFirst()));
+                return super.readRanges(type, ranges);
+            }
+        };
+        List<Backend.Range> ranges = List.of(new Backend.Range(packs.getFirst(), 0, 20), new Backend.Range(packs.get(1), 0, 20));
+        try (CachingBackend backend = new CachingBackend(local, cacheDir, CachingBackend.DEFAULT_MAX_SIZE)) {
+            caching.set(backend);
+            List<byte[]> result = backend.readRanges(FileType.PACK, ranges);
+
+            assertEquals(2, result.size());
+            for (int i = 0; i < ranges.size(); i++) {
+                assertArrayEquals(new LocalBackend(REPO2).readRange(FileType.PACK, ranges.get(i).name(), 0, 20), result.get(i));
+            }
+        }
+    }
+
+    @Test
+    void leastRecentlyUsedIsEvicted() throws IOException {
+        // five snapshots of 200 bytes each fit into the budget
+        Backend snapshots = new Backend() {
+            @Override
+            public String location() {
+                return "memory";
+            }
+
+            @Override
+            public List<String> list(FileType type) {
+                return List.of("a", "b", "c", "d", "e", "f");
+            }
+
+            @Override
+            public byte[] read(FileType type, String name) {
+                return new byte[200];
+            }
+
+            @Override
+            public byte[] readRange(FileType type, String name, long offset, int length) {
+                return new byte[length];
+            }
+
+            @Override
+            public InputStream openStream(FileType type, String name, long offset, long length) {
+                return InputStream.nullInputStream();
+            }
+        };
+        try (CachingBackend backend = new CachingBackend(snapshots, cacheDir, 1000)) {
+            for (String name : List.of("a", "b", "c", "d", "e", "a", "f")) {
+                backend.read(FileType.SNAPSHOT, name);
+            }
+            assertEquals(1000, backend.size());
+            assertFalse(Files.exists(cacheDir.resolve("snapshots/b")));
+            for (String name : List.of("a", "c", "d", "e", "f")) {
+                assertTrue(Files.exists(cacheDir.resolve("snapshots").resolve(name)), name);
+            }
+        }
+    }
+
+    @Test
+    void wrap() throws IOException {
+        try (RestBackend rest = new RestBackend(server.uri())) {
+            assertSame(rest, CachingBackend.wrap(rest, Map.of(CachingBackend.CACHE_SIZE, "0")));
+            Backend cached = CachingBackend.wrap(rest, Map.of(CachingBackend.CACHE_DIR, cacheDir.toString()));
+            assertTrue(cached instanceof CachingBackend);
+            assertEquals(rest.location(), cached.location());
+        }
+    }
+}
@@ -0,0 +1,150 @@
+package org.adangel.resticbrowser.backend;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.URI;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Base64;
+import java.util.List;
+import java.util.Map;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+
+/**
+ * A read-only stand-in for restic's rest-server, which serves a local repository (e.g. one of the test fixtures)
+ * in-process. It supports the listings of API v1 and v2, range requests and basic authentication.
+ */
+final class RestServerStub implements Closeable {
+    private static final ObjectMapper MAPPER = new ObjectMapper();
+    private static final String API_V2 = "application/vnd.x.restic.rest.v2";
+    private static final Pattern RANGE = Pattern.compile("bytes=(\\d+)-(\\d+)");
+
+    private final LocalBackend repository;
+    private final String authorization;
+    private final HttpServer server;
+    private final ExecutorService executor = Executors.newVirtualThreadPerTaskExecutor();
+    final AtomicInteger requests = new AtomicInteger();
+    final AtomicInteger rangeRequests = new AtomicInteger();
+    final Queue<String> paths = new ConcurrentLinkedQueue<>();
+
+    RestServerStub(Path repository) throws IOException {
+        this(repository, null, null);
+    }
+
+    RestServerStub(Path repository, String user, String password) throws IOException {
+        this.repository = new LocalBackend(repository);
+        this.authorization = user != null
+                ? "Basic " + Base64.getEncoder().encodeToString((user + ":" + password).getBytes(StandardCharsets.UTF_8))
+                : null;
+        server = HttpServer.create(new InetSocketAddress(InetAddress.getLoopbackAddress(), 0), 0);
+        server.createContext("/", this::handle);
+        server.setExecutor(executor);
+        server.start();
+    }
+
+    URI uri() {
+        return URI.create("http://localhost:" + server.getAddress().getPort() + "/");
+    }
+
+    @Override
+    public void close() {
+        server.stop(0);
+        executor.close();
+    }
+
+    private void handle(HttpExchange exchange) throws IOException {
+        try (exchange) {
+            requests.incrementAndGet();
+            paths.add(exchange.getRequestURI().getPath());
+            if (authorization != null && !authorization.equals(exchange.getRequestHeaders().getFirst("Authorization"))) {
+                exchange.sendResponseHeaders(401, -1);
+                return;
+            }
+            if (!"GET".equals(exchange.getRequestMethod()) && !"HEAD".equals(exchange.getRequestMethod())) {
+                exchange.sendResponseHeaders(405, -1);
+                return;
+            }
+
+            String[] segments = exchange.getRequestURI().getPath().substring(1).split("/", -1);
+            FileType type = null;
+            for (FileType t : FileType.values()) {
+                if (t.directory().equals(segments[0])) {
+                    type = t;
+                }
+            }
+            if (type == null || segments.length > 2) {
+                exchange.sendResponseHeaders(404, -1);
+            } else if (type == FileType.CONFIG) {
+                sendFile(exchange, repository.resolve(type, null));
+            } else if (segments.length == 1 || segments[1].isEmpty()) {
+                sendListing(exchange, type);
+            } else {
+                sendFile(exchange, repository.resolve(type, segments[1]));
+            }
+        }
+    }
+
+    private void sendListing(HttpExchange exchange, FileType type) throws IOException {
+        boolean v2 = API_V2.equals(exchange.getRequestHeaders().getFirst("Accept"));
+        List<Object> entries = new ArrayList<>();
+        for (String name : repository.list(type)) {
+            entries.add(v2 ? Map.of("name", name, "size", Files.size(repository.resolve(type, name))) : name);
+        }
+        byte[] body = MAPPER.writeValueAsBytes(entries);
+        exchange.getResponseHeaders().set("Content-Type", v2 ? API_V2 : "application/vnd.x.restic.rest.v1");
+        exchange.sendResponseHeaders(200, body.length);
+        exchange.getResponseBody().write(body);
+    }
+
+    private void sendFile(HttpExchange exchange, Path file) throws IOException {
+        byte[] data;
+        try {
+            data = Files.readAllBytes(file);
+        } catch (NoSuchFileException e) {
+            exchange.sendResponseHeaders(404, -1);
+            return;
+        }
+        if ("HEAD".equals(exchange.getRequestMethod())) {
+            exchange.getResponseHeaders().set("Content-Length", String.valueOf(data.length));
+            exchange.sendResponseHeaders(200, -1);
+            return;
+        }
+        String range = exchange.getRequestHeaders().getFirst("Range");
+        int start = 0;
+        int end = data.length;
+        int status = 200;
+        if (range != null) {
+            rangeRequests.incrementAndGet();
+            Matcher matcher = RANGE.matcher(range);
+            if (!matcher.matches() || Integer.parseInt(matcher.group(1)) >= data.length) {
+                exchange.sendResponseHeaders(416, -1);
+                return;
+            }
+            start = Integer.parseInt(matcher.group(1));
+            end = Math.min(data.length, Integer.parseInt(matcher.group(2)) + 1);
+            status = 206;
+            exchange.getResponseHeaders().set("Content-Range", "bytes %d-%d/%d".formatted(start, end - 1, data.length));
+        }
+        exchange.getResponseHeaders().set("Content-Type", "application/octet-stream");
+        exchange.sendResponseHeaders(status, end - start);
+        try (OutputStream out = exchange.getResponseBody()) {
+            out.write(data, start, end - start);
+        }
+    }
+}
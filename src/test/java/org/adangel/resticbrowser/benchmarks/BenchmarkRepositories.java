@@ -0,0 +1,78 @@
+package org.adangel.resticbrowser.benchmarks;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+
+import org.adangel.resticbrowser.Repository;
+import org.adangel.resticbrowser.RepositoryGenerator;
+import org.adangel.resticbrowser.models.SnapshotWithId;
+import org.adangel.resticbrowser.models.Tree;
+
+/**
+ * The repositories the benchmarks run against. A {@code repository} parameter is either the name of a test fixture
+ * ({@code repo1} to {@code repo4}), {@code generated:<options>} or the path of another repository, e.g. a generated
+ * large one: {@code -Dbenchmark="RepositoryBenchmark -p repository=/tmp/large-repo"}. The password is always
+ * {@value #PASSWORD}.
+ * <p>
+ * {@code generated:dataBlobs=100000;fanOut=64} generates a repository with {@link RepositoryGenerator} into
+ * {@code target/generated-repos} on first use, see {@link RepositoryGenerator.Options#parse(String)}. JMH splits
+ * parameter values at commas, so the options are separated by semicolons.
+ */
+final class BenchmarkRepositories {
+    static final String PASSWORD = "test";
+
+    private static final Path FIXTURES = Path.of("src/test/resources/repos");
+    private static final Path GENERATED = Path.of("target/generated-repos");
+    private static final String GENERATED_PREFIX = "generated:";
+
+    private BenchmarkRepositories() {}
+
+    static Path resolve(String repository) throws IOException {
+        if (repository.startsWith(GENERATED_PREFIX)) {
+            String spec = repository.substring(GENERATED_PREFIX.length());
+            Path generated = GENERATED.resolve(spec.replaceAll("[^A-Za-z0-9=.-]", "_"));
+            if (!Files.exists(generated.resolve("config"))) {
+                RepositoryGenerator.generate(generated, RepositoryGenerator.Options.parse(spec));
+            }
+            return generated;
+        }
+        Path fixture = FIXTURES.resolve(repository);
+        return Files.isDirectory(fixture) ? fixture : Path.of(repository);
+    }
+
+    static Repository open(String repository) throws IOException {
+        return new Repository(resolve(repository), PASSWORD);
+    }
+
+    /** The nodes and tree IDs of the first snapshot, collected in depth first order. */
+    record Snapshot(String id, List<String> treeIds, List<Tree.Node> nodes) {
+        List<Tree.Node> files() {
+            return nodes.stream().filter(node -> node.type() == Tree.NodeType.FILE).toList();
+        }
+
+        List<String> dataBlobIds() {
+            return files().stream().flatMap(node -> node.content().stream()).distinct().toList();
+        }
+    }
+
+    static Snapshot firstSnapshot(Repository repository) throws Exception {
+        SnapshotWithId snapshot = repository.listSnapshots().getFirst();
+        List<String> treeIds = new ArrayList<>();
+        List<Tree.Node> nodes = new ArrayList<>();
+        collect(repository, snapshot.snapshot().tree(), treeIds, nodes);
+        return new Snapshot(snapshot.id(), treeIds, nodes);
+    }
+
+    private static void collect(Repository repository, String treeId, List<String> treeIds, List<Tree.Node> nodes) throws Exception {
+        treeIds.add(treeId);
+        for (Tree.Node node : repository.readTree(treeId).nodes()) {
+            nodes.add(node);
+            if (node.subtree() != null) {
+                collect(repository, node.subtree(), treeIds, nodes);
+            }
+        }
+    }
+}
@@ -0,0 +1,110 @@
+package org.adangel.resticbrowser.benchmarks;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HexFormat;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+import org.adangel.resticbrowser.models.BlobId;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+/**
+ * Index lookups with hex string keys compared to {@link BlobId} keys, for an index of {@code blobs} entries. The
+ * probe keys are separate instances with equal content, as when the ID comes from another tree or request, so the
+ * lookup has to hash and compare the whole key. The setup prints the heap used by the keys.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Fork(value = 1, jvmArgs = "-Xmx2g")
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+public class BlobIdBenchmark {
+    private static final int PROBES = 1024;
+
+    @Param({"string", "blobId"})
+    private String keyType;
+
+    @Param({"1000000"})
+    private int blobs;
+
+    private Map<Object, Integer> index;
+    private final List<Object> probes = new ArrayList<>();
+    private final List<byte[]> probeBytes = new ArrayList<>();
+
+    @Setup
+    public void setup() {
+        Random random = new Random(42);
+        byte[] id = new byte[BlobId.LENGTH];
+        List<String> hexIds = new ArrayList<>(blobs);
+        for (int i = 0; i < blobs; i++) {
+            random.nextBytes(id);
+            hexIds.add(HexFormat.of().formatHex(id));
+        }
+
+        long before = usedHeap();
+        List<Object> keys = new ArrayList<>(blobs);
+        for (String hex : hexIds) {
+            keys.add(key(hex));
+        }
+        long keyBytes = usedHeap() - before - (long) blobs * 4;
+        System.out.printf("%n%s keys: %d bytes per key%n", keyType, keyBytes / blobs);
+
+        index = new HashMap<>();
+        for (int i = 0; i < blobs; i++) {
+            index.put(keys.get(i), i);
+        }
+        for (int i = 0; i < PROBES; i++) {
+            String hex = hexIds.get(random.nextInt(blobs));
+            probes.add(key(hex));
+            probeBytes.add(HexFormat.of().parseHex(hex));
+        }
+    }
+
+    private Object key(String hex) {
+        // a copy, not the interned or cached instance
+        return keyType.equals("string") ? new String(hex.toCharArray()) : BlobId.parse(hex);
+    }
+
+    private static long usedHeap() {
+        for (int i = 0; i < 3; i++) {
+            System.gc();
+        }
+        Runtime runtime = Runtime.getRuntime();
+        return runtime.totalMemory() - runtime.freeMemory();
+    }
+
+    /** {@value #PROBES} lookups per invocation. */
+    @Benchmark
+    public void lookup(Blackhole blackhole) {
+        for (Object probe : probes) {
+            blackhole.consume(index.get(probe));
+        }
+    }
+
+    /**
+     * {@value #PROBES} lookups per invocation of IDs which are decoded first, as the content IDs of a tree node.
+     */
+    @Benchmark
+    public void decodeAndLookup(Blackhole blackhole) {
+        boolean string = keyType.equals("string");
+        for (byte[] id : probeBytes) {
+            Object key = string ? HexFormat.of().formatHex(id) : BlobId.of(id, 0);
+            blackhole.consume(index.get(key));
+        }
+    }
+}
@@ -0,0 +1,80 @@
+package org.adangel.resticbrowser.benchmarks;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import org.adangel.resticbrowser.Repository;
+import org.adangel.resticbrowser.models.Tree;
+import org.openjdk.jmh.annotations.AuxCounters;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Streaming throughput of the file contents of the first snapshot: blob by blob with
+ * {@link Repository#readContentAsStream(String)} and file by file with {@link Repository#readNode(Tree.Node)}, which
+ * chains the blobs of a file. The secondary result {@code :bytes} is the throughput in bytes per second.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Fork(1)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+public class ContentStreamBenchmark {
+    @Param({"repo1", "repo2", "repo3", "repo4"})
+    private String repository;
+
+    private Repository repo;
+    private List<String> dataBlobIds;
+    private List<Tree.Node> files;
+
+    @State(Scope.Thread)
+    @AuxCounters(AuxCounters.Type.OPERATIONS)
+    public static class Bytes {
+        public long bytes;
+
+        @Setup(Level.Iteration)
+        public void reset() {
+            bytes = 0;
+        }
+    }
+
+    @Setup
+    public void setup() throws Exception {
+        repo = BenchmarkRepositories.open(repository);
+        BenchmarkRepositories.Snapshot snapshot = BenchmarkRepositories.firstSnapshot(repo);
+        dataBlobIds = snapshot.dataBlobIds();
+        files = snapshot.files().stream().filter(file -> !file.content().isEmpty()).toList();
+    }
+
+    @Benchmark
+    public void readContentAsStream(Bytes bytes) throws Exception {
+        for (String blobId : dataBlobIds) {
+            try (InputStream in = repo.readContentAsStream(blobId)) {
+                bytes.bytes += in.transferTo(OutputStream.nullOutputStream());
+            }
+        }
+    }
+
+    @Benchmark
+    public void readNode(Bytes bytes) throws IOException {
+        for (Tree.Node file : files) {
+            try (InputStream in = repo.readNode(file)) {
+                bytes.bytes += in.transferTo(OutputStream.nullOutputStream());
+            }
+        }
+    }
+}
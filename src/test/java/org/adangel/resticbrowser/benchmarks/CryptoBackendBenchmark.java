@@ -0,0 +1,101 @@
+package org.adangel.resticbrowser.benchmarks;
+
+import java.nio.ByteBuffer;
+import java.security.GeneralSecurityException;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+import org.adangel.resticbrowser.crypto.CryptoBackend;
+import org.adangel.resticbrowser.crypto.CryptoContext;
+import org.adangel.resticbrowser.crypto.CryptoContextPool;
+import org.bouncycastle.crypto.engines.AESEngine;
+import org.bouncycastle.crypto.macs.Poly1305;
+import org.bouncycastle.crypto.params.KeyParameter;
+import org.bouncycastle.crypto.params.ParametersWithIV;
+import org.openjdk.jmh.annotations.AuxCounters;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Throughput of the {@link CryptoBackend}s per blob size, to choose the backend
+ * ({@code RESTIC_BROWSER_CRYPTO_BACKEND}) for the hardware and JVM at hand. The secondary result
+ * {@code :bytes} is the throughput in bytes per second.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Fork(1)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+public class CryptoBackendBenchmark {
+    @Param({"jca", "bouncycastle"})
+    private String backend;
+
+    @Param({"256", "4096", "65536", "1048576", "8388608"})
+    private int blobSize;
+
+    private CryptoContext context;
+    private ByteBuffer blob;
+    private ByteBuffer plaintext;
+
+    @State(Scope.Thread)
+    @AuxCounters(AuxCounters.Type.OPERATIONS)
+    public static class Bytes {
+        public long bytes;
+
+        @Setup(Level.Iteration)
+        public void reset() {
+            bytes = 0;
+        }
+    }
+
+    @Setup
+    public void setup() throws GeneralSecurityException {
+        Random random = new Random(42);
+        byte[] encryptionKey = new byte[32];
+        random.nextBytes(encryptionKey);
+        byte[] macKey = new byte[32];
+        random.nextBytes(macKey);
+        context = new CryptoContextPool(CryptoBackend.byName(backend), encryptionKey, macKey).acquire();
+
+        byte[] data = new byte[CryptoContext.IV_LENGTH + blobSize + CryptoContext.MAC_LENGTH];
+        random.nextBytes(data);
+        Poly1305 poly1305 = new Poly1305(AESEngine.newInstance());
+        poly1305.init(new ParametersWithIV(new KeyParameter(macKey), data, 0, CryptoContext.IV_LENGTH));
+        poly1305.update(data, CryptoContext.IV_LENGTH, blobSize);
+        poly1305.doFinal(data, CryptoContext.IV_LENGTH + blobSize);
+        blob = ByteBuffer.wrap(data);
+        plaintext = ByteBuffer.allocate(blobSize);
+    }
+
+    @Benchmark
+    public ByteBuffer decrypt(Bytes bytes) throws GeneralSecurityException {
+        blob.rewind();
+        plaintext.clear();
+        if (!context.decrypt(blob, plaintext)) {
+            throw new IllegalStateException("MAC doesn't match");
+        }
+        bytes.bytes += blobSize;
+        return plaintext;
+    }
+
+    /** Only AES-CTR, as with a relaxed verification policy. */
+    @Benchmark
+    public ByteBuffer decryptWithoutMac(Bytes bytes) throws GeneralSecurityException {
+        blob.rewind();
+        plaintext.clear();
+        context.decrypt(blob, plaintext, false);
+        bytes.bytes += blobSize;
+        return plaintext;
+    }
+}
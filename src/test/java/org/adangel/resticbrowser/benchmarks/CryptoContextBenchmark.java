@@ -0,0 +1,142 @@
+package org.adangel.resticbrowser.benchmarks;
+
+import java.nio.ByteBuffer;
+import java.security.GeneralSecurityException;
+import java.util.Arrays;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+import javax.crypto.Cipher;
+import javax.crypto.spec.IvParameterSpec;
+import javax.crypto.spec.SecretKeySpec;
+
+import org.adangel.resticbrowser.crypto.CryptoBackend;
+import org.adangel.resticbrowser.crypto.CryptoContext;
+import org.adangel.resticbrowser.crypto.CryptoContextPool;
+import org.bouncycastle.crypto.engines.AESEngine;
+import org.bouncycastle.crypto.macs.Poly1305;
+import org.bouncycastle.crypto.params.KeyParameter;
+import org.bouncycastle.crypto.params.ParametersWithIV;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Decrypts and authenticates one blob, either by creating the cipher and MAC for the blob (as it was done before)
+ * or with a context from a {@link CryptoContextPool}. The difference is the per blob overhead. The fused variants
+ * run MAC and cipher chunk by chunk in one pass over the blob.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Fork(1)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+public class CryptoContextBenchmark {
+    /** Tree blobs are usually small, data blobs are 512 KiB to 8 MiB. */
+    @Param({"128", "4096", "524288"})
+    private int blobSize;
+
+    private SecretKeySpec encryptionKey;
+    private KeyParameter macKey;
+    private CryptoContextPool pool;
+    private byte[] blob;
+    private ByteBuffer directBlob;
+    private ByteBuffer directPlaintext;
+
+    @Setup
+    public void setup() {
+        Random random = new Random(42);
+        byte[] key = new byte[32];
+        random.nextBytes(key);
+        encryptionKey = new SecretKeySpec(key, "AES");
+        random.nextBytes(key);
+        macKey = new KeyParameter(key);
+        pool = new CryptoContextPool(CryptoBackend.JCA, encryptionKey.getEncoded(), macKey.getKey());
+
+        blob = new byte[CryptoContext.IV_LENGTH + blobSize + CryptoContext.MAC_LENGTH];
+        random.nextBytes(blob);
+        byte[] mac = new byte[CryptoContext.MAC_LENGTH];
+        Poly1305 poly1305 = new Poly1305(AESEngine.newInstance());
+        poly1305.init(new ParametersWithIV(macKey, blob, 0, CryptoContext.IV_LENGTH));
+        poly1305.update(blob, CryptoContext.IV_LENGTH, blobSize);
+        poly1305.doFinal(mac, 0);
+        System.arraycopy(mac, 0, blob, CryptoContext.IV_LENGTH + blobSize, mac.length);
+
+        directBlob = ByteBuffer.allocateDirect(blob.length).put(blob).flip();
+        directPlaintext = ByteBuffer.allocateDirect(blobSize);
+    }
+
+    @Benchmark
+    public byte[] newInstancesPerBlob() throws GeneralSecurityException {
+        IvParameterSpec iv = new IvParameterSpec(blob, 0, CryptoContext.IV_LENGTH);
+        Cipher cipher = Cipher.getInstance("AES/CTR/NoPadding");
+        cipher.init(Cipher.DECRYPT_MODE, encryptionKey, iv);
+        byte[] decrypted = cipher.doFinal(blob, CryptoContext.IV_LENGTH, blobSize);
+
+        Poly1305 mac = new Poly1305(AESEngine.newInstance());
+        mac.init(new ParametersWithIV(macKey, iv.getIV()));
+        mac.update(blob, CryptoContext.IV_LENGTH, blobSize);
+        byte[] calculatedMac = new byte[mac.getMacSize()];
+        mac.doFinal(calculatedMac, 0);
+        byte[] originalMac = Arrays.copyOfRange(blob, blob.length - CryptoContext.MAC_LENGTH, blob.length);
+        if (!Arrays.equals(originalMac, calculatedMac)) {
+            throw new IllegalStateException("MAC doesn't match");
+        }
+        return decrypted;
+    }
+
+    @Benchmark
+    public byte[] pooledContext() throws GeneralSecurityException {
+        CryptoContext context = pool.acquire();
+        try {
+            context.init(blob, 0);
+            byte[] decrypted = new byte[blobSize];
+            context.decryptChunk(blob, CryptoContext.IV_LENGTH, blobSize, decrypted, 0);
+            context.updateMac(blob, CryptoContext.IV_LENGTH, blobSize);
+            if (!context.verifyMac(blob, blob.length - CryptoContext.MAC_LENGTH)) {
+                throw new IllegalStateException("MAC doesn't match");
+            }
+            return decrypted;
+        } finally {
+            pool.release(context);
+        }
+    }
+
+    @Benchmark
+    public byte[] pooledContextFused() throws GeneralSecurityException {
+        CryptoContext context = pool.acquire();
+        try {
+            byte[] decrypted = new byte[blobSize];
+            if (!context.decrypt(ByteBuffer.wrap(blob), ByteBuffer.wrap(decrypted))) {
+                throw new IllegalStateException("MAC doesn't match");
+            }
+            return decrypted;
+        } finally {
+            pool.release(context);
+        }
+    }
+
+    @Benchmark
+    public ByteBuffer pooledContextFusedDirect() throws GeneralSecurityException {
+        CryptoContext context = pool.acquire();
+        try {
+            directBlob.rewind();
+            directPlaintext.clear();
+            if (!context.decrypt(directBlob, directPlaintext)) {
+                throw new IllegalStateException("MAC doesn't match");
+            }
+            return directPlaintext;
+        } finally {
+            pool.release(context);
+        }
+    }
+}
@@ -0,0 +1,81 @@
+package org.adangel.resticbrowser.benchmarks;
+
+import java.io.IOException;
+import java.nio.file.FileVisitResult;
+import java.nio.file.Files;
+import java.nio.file.LinkOption;
+import java.nio.file.Path;
+import java.nio.file.SimpleFileVisitor;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+import org.adangel.resticbrowser.filesystem.ResticFileSystem;
+import org.adangel.resticbrowser.filesystem.ResticFileSystemProvider;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+/**
+ * Path resolution in {@link ResticFileSystem}: every path below {@code /snapshots} and {@code /hosts} is looked
+ * up once per invocation, as a file manager or {@code find} on the fuse mount would do.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Fork(1)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+public class FileSystemBenchmark {
+    @Param({"repo1", "repo2", "repo3", "repo4"})
+    private String repository;
+
+    private ResticFileSystem fileSystem;
+    private final List<String> paths = new ArrayList<>();
+
+    @Setup
+    public void setup() throws IOException {
+        fileSystem = new ResticFileSystemProvider().newFileSystem(BenchmarkRepositories.resolve(repository),
+                Map.of("RESTIC_PASSWORD", BenchmarkRepositories.PASSWORD));
+        Files.walkFileTree(fileSystem.getPath("/"), new SimpleFileVisitor<>() {
+            @Override
+            public FileVisitResult preVisitDirectory(Path dir, BasicFileAttributes attrs) {
+                paths.add(dir.toString());
+                return FileVisitResult.CONTINUE;
+            }
+
+            @Override
+            public FileVisitResult visitFile(Path file, BasicFileAttributes attrs) {
+                paths.add(file.toString());
+                return FileVisitResult.CONTINUE;
+            }
+        });
+    }
+
+    /** Only parsing the path strings. */
+    @Benchmark
+    public void getPath(Blackhole blackhole) {
+        for (String path : paths) {
+            blackhole.consume(fileSystem.getPath(path));
+        }
+    }
+
+    /** Resolves each path to its snapshot and tree node. */
+    @Benchmark
+    public void readAttributes(Blackhole blackhole) throws IOException {
+        for (String path : paths) {
+            blackhole.consume(Files.readAttributes(fileSystem.getPath(path), BasicFileAttributes.class, LinkOption.NOFOLLOW_LINKS));
+        }
+    }
+}
@@ -0,0 +1,107 @@
+package org.adangel.resticbrowser.benchmarks;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import org.adangel.resticbrowser.Repository;
+import org.adangel.resticbrowser.models.Tree;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+
+/**
+ * The hot paths of {@link Repository} for the first snapshot of a repository, see {@link BenchmarkRepositories}.
+ * Each benchmark handles all trees or all data blobs of the snapshot in one invocation. The pack files are in the
+ * page cache after the first iteration, so I/O is not measured.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Fork(1)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+public class RepositoryBenchmark {
+    @Param({"repo1", "repo2", "repo3", "repo4"})
+    private String repository;
+
+    private final ObjectMapper mapper = new ObjectMapper().findAndRegisterModules();
+    private Repository repo;
+    private List<String> treeIds;
+    private List<String> dataBlobIds;
+    private final List<byte[]> treePlaintexts = new ArrayList<>();
+
+    @Setup
+    public void setup() throws Exception {
+        repo = BenchmarkRepositories.open(repository);
+        BenchmarkRepositories.Snapshot snapshot = BenchmarkRepositories.firstSnapshot(repo);
+        treeIds = snapshot.treeIds();
+        dataBlobIds = snapshot.dataBlobIds();
+        for (String treeId : treeIds) {
+            treePlaintexts.add(repo.readContent(treeId));
+        }
+    }
+
+    /** Reads, decrypts and parses all index files and builds the in-memory index. */
+    @Benchmark
+    public Repository loadIndexFiles() throws IOException {
+        repo.loadIndexFiles();
+        return repo;
+    }
+
+    /** Only reads the encrypted data blobs, the baseline for {@link #readContent(Blackhole)}. */
+    @Benchmark
+    public void readPackRange(Blackhole blackhole) throws IOException {
+        for (String blobId : dataBlobIds) {
+            Repository.IndexEntry entry = repo.findBlob(blobId);
+            blackhole.consume(repo.readPackRange(entry.packId(), entry.offset(), entry.length()));
+        }
+    }
+
+    /** Reads the data blobs and decrypts them ({@code decryptBytes}), including decompression. */
+    @Benchmark
+    public void readContent(Blackhole blackhole) throws Exception {
+        for (String blobId : dataBlobIds) {
+            blackhole.consume(repo.readContent(blobId));
+        }
+    }
+
+    /** Through the tree cache. It holds 50 trees, so with larger repositories this also measures misses. */
+    @Benchmark
+    public void readTree(Blackhole blackhole) throws Exception {
+        for (String treeId : treeIds) {
+            blackhole.consume(repo.readTree(treeId));
+        }
+    }
+
+    /** What {@link Repository#readTree(String)} does on a cache miss. */
+    @Benchmark
+    public void readTreeUncached(Blackhole blackhole) throws Exception {
+        for (String treeId : treeIds) {
+            try (InputStream in = repo.readContentAsStream(treeId)) {
+                blackhole.consume(mapper.readValue(in, Tree.class));
+            }
+        }
+    }
+
+    /** Only the Jackson parsing of the decrypted trees. */
+    @Benchmark
+    public void parseTree(Blackhole blackhole) throws IOException {
+        for (byte[] plaintext : treePlaintexts) {
+            blackhole.consume(mapper.readValue(plaintext, Tree.class));
+        }
+    }
+}
@@ -0,0 +1,103 @@
+package org.adangel.resticbrowser.benchmarks;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import org.adangel.resticbrowser.Repository;
+import org.adangel.resticbrowser.ZstdDecompressor;
+import org.adangel.resticbrowser.models.Tree;
+import org.apache.commons.compress.compressors.zstandard.ZstdCompressorInputStream;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+import com.github.luben.zstd.Zstd;
+
+/**
+ * Compares decompressing the blobs of a test repository through {@link ZstdCompressorInputStream} (the old way)
+ * with {@link ZstdDecompressor}. The blobs are compressed with the same level restic uses by default.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Fork(1)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+public class ZstdDecompressionBenchmark {
+    @Param({"repo2", "repo4"})
+    private String repository;
+
+    private Repository repo;
+    private final List<String> blobIds = new ArrayList<>();
+    private final List<byte[]> compressedBlobs = new ArrayList<>();
+    private final List<Integer> uncompressedLengths = new ArrayList<>();
+
+    @Setup
+    public void setup() throws Exception {
+        repo = new Repository(Path.of("src/test/resources/repos", repository), "test");
+        String snapshotId = repo.listSnapshots().getFirst().id();
+        collectBlobs(repo.listFiles(snapshotId, "/"));
+        for (String blobId : blobIds) {
+            byte[] plaintext = repo.readContent(blobId);
+            compressedBlobs.add(Zstd.compress(plaintext, 3));
+            uncompressedLengths.add(plaintext.length);
+        }
+    }
+
+    private void collectBlobs(List<Tree.Node> nodes) throws Exception {
+        for (Tree.Node node : nodes) {
+            if (node.subtree() != null) {
+                blobIds.add(node.subtree());
+                collectBlobs(repo.readTree(node.subtree()).nodes());
+            }
+            if (node.content() != null) {
+                blobIds.addAll(node.content());
+            }
+        }
+    }
+
+    @Benchmark
+    public void stream(Blackhole blackhole) throws IOException {
+        for (byte[] compressed : compressedBlobs) {
+            try (ZstdCompressorInputStream stream = new ZstdCompressorInputStream(new ByteArrayInputStream(compressed))) {
+                blackhole.consume(stream.readAllBytes());
+            }
+        }
+    }
+
+    @Benchmark
+    public void directKnownSize(Blackhole blackhole) throws IOException {
+        for (int i = 0; i < compressedBlobs.size(); i++) {
+            byte[] compressed = compressedBlobs.get(i);
+            blackhole.consume(ZstdDecompressor.decompress(compressed, 0, compressed.length, uncompressedLengths.get(i)));
+        }
+    }
+
+    @Benchmark
+    public void directFrameContentSize(Blackhole blackhole) throws IOException {
+        for (byte[] compressed : compressedBlobs) {
+            blackhole.consume(ZstdDecompressor.decompress(compressed, 0, compressed.length));
+        }
+    }
+
+    /** Reads, decrypts and (if the repository is compressed) decompresses the blobs. */
+    @Benchmark
+    public void readContent(Blackhole blackhole) throws Exception {
+        for (String blobId : blobIds) {
+            blackhole.consume(repo.readContent(blobId));
+        }
+    }
+}
@@ -0,0 +1,113 @@
+package org.adangel.resticbrowser.check;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.stream.Stream;
+
+import org.adangel.resticbrowser.Repository;
+import org.adangel.resticbrowser.models.Tree;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.junit.jupiter.params.ParameterizedTest;
+import org.junit.jupiter.params.provider.ValueSource;
+
+class CheckerTest {
+    private static final String REPO2_SNAPSHOT = "2a9e949d33e1d696070a75e0be69dc6c1e9e89a2dd44d02a7b971a8d849c2f6c";
+
+    @TempDir
+    private Path tempDir;
+
+    @ParameterizedTest
+    @ValueSource(strings = {"repo1", "repo2", "repo3", "repo4"})
+    void fixturesAreOk(String name) throws Exception {
+        Repository repository = new Repository(Path.of("src/test/resources/repos", name), "test");
+        List<CheckProgress> progress = new ArrayList<>();
+        CheckResult result = new Checker(repository, 4, true, progress::add).check();
+
+        assertEquals(List.of(), result.errors());
+        assertTrue(result.ok());
+        assertTrue(result.snapshots() > 0);
+        assertTrue(result.trees() > 0);
+        assertTrue(result.packs() > 0);
+        assertTrue(result.bytesRead() > 0);
+        assertEquals(CheckProgress.Phase.DATA, progress.getLast().phase());
+        assertEquals(100.0, progress.getLast().percent());
+    }
+
+    @Test
+    void sharedTreesAreReadOnce() throws Exception {
+        Repository repository = new Repository(Path.of("src/test/resources/repos/repo2"), "test");
+        CheckResult result = new Checker(repository, 2, false, progress -> {}).check();
+        assertTrue(result.ok());
+        assertEquals(0, result.packs());
+        Set<String> distinctTrees = new HashSet<>();
+        collectTrees(repository, repository.listSnapshots().getFirst().snapshot().tree(), distinctTrees);
+        assertEquals(distinctTrees.size(), result.trees());
+    }
+
+    private static void collectTrees(Repository repository, String treeId, Set<String> trees) throws Exception {
+        trees.add(treeId);
+        for (Tree.Node node : repository.readTree(treeId).nodes()) {
+            if (node.type() == Tree.NodeType.DIR) {
+                collectTrees(repository, node.subtree(), trees);
+            }
+        }
+    }
+
+    @Test
+    void corruptedDataBlob() throws Exception {
+        Path repo = copy(Path.of("src/test/resources/repos/repo2"));
+        Repository repository = new Repository(repo, "test");
+        Tree.Node file = repository.listFiles(REPO2_SNAPSHOT, "/home/johndoe/subdir1/a").getFirst();
+        String blobId = file.content().getFirst();
+        Repository.IndexEntry entry = repository.findBlob(blobId);
+        Path pack = repo.resolve("data").resolve(entry.packId().substring(0, 2)).resolve(entry.packId());
+        try (RandomAccessFile raf = new RandomAccessFile(pack.toFile(), "rw")) {
+            raf.seek(entry.offset() + 20);
+            int b = raf.read();
+            raf.seek(entry.offset() + 20);
+            raf.write(b ^ 0xff);
+        }
+
+        // without reading the data, the damage isn't noticed
+        assertTrue(new Checker(repository, 2, false, progress -> {}).check().ok());
+
+        CheckResult result = new Checker(repository, 2, true, progress -> {}).check();
+        assertFalse(result.ok());
+        assertTrue(result.errors().stream().anyMatch(error -> error.contains("pack " + entry.packId() + ": the SHA-256")), result.errors().toString());
+        assertTrue(result.errors().stream().anyMatch(error -> error.startsWith("blob " + blobId)), result.errors().toString());
+    }
+
+    @Test
+    void missingPack() throws Exception {
+        Path repo = copy(Path.of("src/test/resources/repos/repo2"));
+        Repository repository = new Repository(repo, "test");
+        Tree.Node file = repository.listFiles(REPO2_SNAPSHOT, "/home/johndoe/subdir1/a").getFirst();
+        String packId = repository.findBlob(file.content().getFirst()).packId();
+        Files.delete(repo.resolve("data").resolve(packId.substring(0, 2)).resolve(packId));
+
+        CheckResult result = new Checker(repository, 2, true, progress -> {}).check();
+        assertFalse(result.ok());
+        assertTrue(result.errors().getFirst().startsWith("pack " + packId + " is in the index, but doesn't exist"), result.errors().toString());
+    }
+
+    private Path copy(Path source) throws IOException {
+        Path target = tempDir.resolve(source.getFileName());
+        try (Stream<Path> files = Files.walk(source)) {
+            for (Path file : (Iterable<Path>) files::iterator) {
+                Files.copy(file, target.resolve(source.relativize(file).toString()));
+            }
+        }
+        return target;
+    }
+}
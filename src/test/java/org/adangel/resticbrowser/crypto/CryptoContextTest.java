@@ -0,0 +1,109 @@
+package org.adangel.resticbrowser.crypto;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.security.SecureRandom;
+
+import javax.crypto.Cipher;
+import javax.crypto.spec.IvParameterSpec;
+import javax.crypto.spec.SecretKeySpec;
+
+import org.bouncycastle.crypto.engines.AESEngine;
+import org.bouncycastle.crypto.macs.Poly1305;
+import org.bouncycastle.crypto.params.KeyParameter;
+import org.bouncycastle.crypto.params.ParametersWithIV;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.params.ParameterizedTest;
+import org.junit.jupiter.params.provider.ValueSource;
+
+class CryptoContextTest {
+    private static final SecureRandom RANDOM = new SecureRandom();
+
+    private final SecretKeySpec encryptionKey = new SecretKeySpec(randomBytes(32), "AES");
+    private final KeyParameter macKey = new KeyParameter(randomBytes(32));
+
+    @Test
+    void decryptSeveralBlobsWithOneContext() throws Exception {
+        CryptoContextPool pool = new CryptoContextPool(CryptoBackend.JCA, encryptionKey.getEncoded(), macKey.getKey(), 1);
+        CryptoContext context = pool.acquire();
+        for (String text : new String[] {"first blob", "second, longer blob"}) {
+            byte[] plaintext = text.getBytes(StandardCharsets.UTF_8);
+            byte[] blob = encrypt(plaintext);
+
+            context.init(blob, 0);
+            int length = blob.length - CryptoContext.IV_LENGTH - CryptoContext.MAC_LENGTH;
+            byte[] decrypted = new byte[length];
+            context.decryptChunk(blob, CryptoContext.IV_LENGTH, length, decrypted, 0);
+            context.updateMac(blob, CryptoContext.IV_LENGTH, length);
+
+            assertTrue(context.verifyMac(blob, blob.length - CryptoContext.MAC_LENGTH));
+            assertArrayEquals(plaintext, decrypted);
+        }
+        pool.release(context);
+        assertSame(context, pool.acquire());
+    }
+
+    @Test
+    void modifiedBlob() throws Exception {
+        byte[] blob = encrypt("some data".getBytes(StandardCharsets.UTF_8));
+        blob[CryptoContext.IV_LENGTH] ^= 1;
+
+        CryptoContext context = new CryptoContextPool(CryptoBackend.JCA, encryptionKey.getEncoded(), macKey.getKey()).acquire();
+        context.init(blob, 0);
+        context.updateMac(blob, CryptoContext.IV_LENGTH, blob.length - CryptoContext.IV_LENGTH - CryptoContext.MAC_LENGTH);
+        assertFalse(context.verifyMac(blob, blob.length - CryptoContext.MAC_LENGTH));
+    }
+
+    @ParameterizedTest
+    @ValueSource(strings = {"jca", "bouncycastle"})
+    void decryptInOnePass(String backend) throws Exception {
+        // larger than one chunk
+        byte[] plaintext = randomBytes(20_000);
+        byte[] blob = encrypt(plaintext);
+        CryptoContext context = new CryptoContextPool(CryptoBackend.byName(backend), encryptionKey.getEncoded(), macKey.getKey()).acquire();
+
+        ByteBuffer heap = ByteBuffer.allocate(plaintext.length);
+        assertTrue(context.decrypt(ByteBuffer.wrap(blob), heap));
+        assertArrayEquals(plaintext, heap.array());
+
+        ByteBuffer directBlob = ByteBuffer.allocateDirect(blob.length).put(blob).flip();
+        ByteBuffer direct = ByteBuffer.allocateDirect(plaintext.length);
+        assertTrue(context.decrypt(directBlob, direct));
+        assertEquals(blob.length, directBlob.position());
+        byte[] result = new byte[plaintext.length];
+        direct.flip().get(result);
+        assertArrayEquals(plaintext, result);
+
+        blob[blob.length - 1] ^= 1;
+        assertFalse(context.decrypt(ByteBuffer.wrap(blob), ByteBuffer.allocate(plaintext.length)));
+    }
+
+    private byte[] encrypt(byte[] plaintext) throws Exception {
+        byte[] iv = randomBytes(CryptoContext.IV_LENGTH);
+        Cipher cipher = Cipher.getInstance("AES/CTR/NoPadding");
+        cipher.init(Cipher.ENCRYPT_MODE, encryptionKey, new IvParameterSpec(iv));
+        byte[] ciphertext = cipher.doFinal(plaintext);
+
+        Poly1305 mac = new Poly1305(AESEngine.newInstance());
+        mac.init(new ParametersWithIV(macKey, iv));
+        mac.update(ciphertext, 0, ciphertext.length);
+
+        byte[] blob = new byte[iv.length + ciphertext.length + CryptoContext.MAC_LENGTH];
+        System.arraycopy(iv, 0, blob, 0, iv.length);
+        System.arraycopy(ciphertext, 0, blob, iv.length, ciphertext.length);
+        mac.doFinal(blob, iv.length + ciphertext.length);
+        return blob;
+    }
+
+    private static byte[] randomBytes(int length) {
+        byte[] bytes = new byte[length];
+        RANDOM.nextBytes(bytes);
+        return bytes;
+    }
+}
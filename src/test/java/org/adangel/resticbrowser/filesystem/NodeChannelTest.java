@@ -0,0 +1,188 @@
+package org.adangel.resticbrowser.filesystem;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+import java.io.ByteArrayOutputStream;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.ClosedChannelException;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.Semaphore;
+
+import org.adangel.resticbrowser.AsyncRepository;
+import org.adangel.resticbrowser.Repository;
+import org.adangel.resticbrowser.RepositoryGenerator;
+import org.adangel.resticbrowser.RepositoryOptions;
+import org.adangel.resticbrowser.backend.FileType;
+import org.adangel.resticbrowser.metrics.Counter;
+import org.adangel.resticbrowser.metrics.Metrics;
+import org.adangel.resticbrowser.models.Snapshot;
+import org.adangel.resticbrowser.models.Tree;
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+class NodeChannelTest {
+    private static final int BLOB_SIZE = 1000;
+
+    @TempDir
+    static Path tempDir;
+
+    private static Repository repository;
+    private static AsyncRepository asyncRepository;
+    private static Tree.Node file;
+    private static byte[] content;
+
+    @BeforeAll
+    static void generateRepository() throws Exception {
+        // one file of 30 blobs
+        RepositoryGenerator.Result result = RepositoryGenerator.generate(tempDir, RepositoryGenerator.Options.parse(
+                "dataBlobs=30,blobSize=" + BLOB_SIZE + ",fileSize=30000,fanOut=2,snapshots=1,indexFiles=1,packSize=8192,compression=false"));
+        repository = new Repository(tempDir, RepositoryGenerator.PASSWORD, RepositoryOptions.defaults());
+        asyncRepository = new AsyncRepository(repository);
+        Snapshot snapshot = repository.readFile(FileType.SNAPSHOT, result.snapshotIds().getFirst(), Snapshot.class);
+        Tree tree = repository.readTree(snapshot.tree());
+        while (file == null) {
+            Tree.Node node = tree.nodes().getFirst();
+            if (node.type() == Tree.NodeType.FILE) {
+                file = node;
+            } else {
+                tree = repository.readTree(node.subtreeId());
+            }
+        }
+        try (InputStream in = repository.readNode(file)) {
+            content = in.readAllBytes();
+        }
+    }
+
+    private static NodeChannel newChannel() {
+        return new NodeChannel(repository, asyncRepository, new Semaphore(NodeChannel.READ_AHEAD_BUDGET), file);
+    }
+
+    private static byte[] read(NodeChannel channel, long position, int length) throws Exception {
+        channel.position(position);
+        ByteBuffer buffer = ByteBuffer.allocate(length);
+        while (buffer.hasRemaining() && channel.read(buffer) != -1) {
+            // read until full
+        }
+        return Arrays.copyOf(buffer.array(), buffer.position());
+    }
+
+    @Test
+    void sequentialReadGrowsReadAhead() throws Exception {
+        Counter prefetched = Metrics.global().counter("restic_prefetch_blobs_total", "Content blobs read ahead of sequential reads");
+        long prefetchedBefore = prefetched.get();
+
+        try (NodeChannel channel = newChannel()) {
+            assertEquals(30 * BLOB_SIZE, content.length);
+            assertEquals(content.length, channel.size());
+            ByteArrayOutputStream out = new ByteArrayOutputStream();
+            ByteBuffer buffer = ByteBuffer.allocate(300);
+            int read;
+            while ((read = channel.read(buffer)) != -1) {
+                out.write(buffer.array(), 0, read);
+                buffer.clear();
+                if (channel.position() == 600) {
+                    // still in the first blob
+                    assertEquals(0, channel.readAheadBlobs());
+                }
+            }
+
+            assertArrayEquals(content, out.toByteArray());
+            assertEquals(NodeChannel.MAX_READ_AHEAD, channel.readAheadBlobs());
+            assertEquals(content.length, channel.position());
+        }
+        // all but the first two blobs
+        assertEquals(28, prefetched.get() - prefetchedBefore);
+    }
+
+    @Test
+    void randomReadStopsReadAhead() throws Exception {
+        Counter prefetched = Metrics.global().counter("restic_prefetch_blobs_total", "Content blobs read ahead of sequential reads");
+
+        try (NodeChannel channel = newChannel()) {
+            assertArrayEquals(Arrays.copyOfRange(content, 0, 3500), read(channel, 0, 3500));
+            assertEquals(4, channel.readAheadBlobs());
+
+            long prefetchedBefore = prefetched.get();
+            for (long position : new long[] {29_500, 10, 15_990, 999, 7_000}) {
+                assertArrayEquals(Arrays.copyOfRange(content, (int) position, (int) position + 20), read(channel, position, 20));
+                assertEquals(0, channel.readAheadBlobs());
+            }
+            assertEquals(prefetchedBefore, prefetched.get());
+
+            // sequential again
+            for (int position = 7_020; position < 12_000; position += 500) {
+                assertArrayEquals(Arrays.copyOfRange(content, position, position + 500), read(channel, position, 500));
+            }
+            assertEquals(8, channel.readAheadBlobs());
+        }
+    }
+
+    @Test
+    void readAcrossBlobsAndEnd() throws Exception {
+        try (NodeChannel channel = newChannel()) {
+            assertArrayEquals(Arrays.copyOfRange(content, 999, 3001), read(channel, 999, 2002));
+            assertArrayEquals(Arrays.copyOfRange(content, 29_990, 30_000), read(channel, 29_990, 100));
+            channel.position(content.length + 10);
+            assertEquals(-1, channel.read(ByteBuffer.allocate(10)));
+            assertEquals(content.length + 10, channel.position());
+        }
+    }
+
+    @Test
+    void readAheadBudgetIsShared() throws Exception {
+        // three blobs for both channels
+        Semaphore budget = new Semaphore(3 * BLOB_SIZE);
+        try (NodeChannel first = new NodeChannel(repository, asyncRepository, budget, file);
+             NodeChannel second = new NodeChannel(repository, asyncRepository, budget, file)) {
+            assertArrayEquals(Arrays.copyOfRange(content, 0, 5500), read(first, 0, 5500));
+            // the first channel wants to read ahead 8 blobs, but gets only 3
+            assertEquals(0, budget.availablePermits());
+
+            for (int position = 0; position < 10_000; position += 500) {
+                assertArrayEquals(Arrays.copyOfRange(content, position, position + 500), read(second, position, 500));
+            }
+            assertEquals(0, budget.availablePermits());
+
+            // the blobs read ahead by the first channel are consumed, the budget is passed on
+            assertArrayEquals(Arrays.copyOfRange(content, 5500, 30_000), read(first, 5500, 24_500));
+            assertArrayEquals(Arrays.copyOfRange(content, 10_000, 30_000), read(second, 10_000, 20_000));
+        }
+        assertEquals(3 * BLOB_SIZE, budget.availablePermits());
+    }
+
+    @Test
+    void droppedReadAheadKeepsBudgetUntilDone() throws Exception {
+        // the reads ahead only run when the test lets them
+        List<Runnable> reads = new ArrayList<>();
+        AsyncRepository pausedRepository = new AsyncRepository(repository, reads::add);
+        Semaphore budget = new Semaphore(NodeChannel.READ_AHEAD_BUDGET);
+        try (NodeChannel channel = new NodeChannel(repository, pausedRepository, budget, file)) {
+            assertArrayEquals(Arrays.copyOfRange(content, 0, 1500), read(channel, 0, 1500));
+            assertEquals(1, reads.size());
+            assertEquals(NodeChannel.READ_AHEAD_BUDGET - BLOB_SIZE, budget.availablePermits());
+
+            // the seek drops the read ahead, but it is still in flight
+            assertArrayEquals(Arrays.copyOfRange(content, 20_000, 20_010), read(channel, 20_000, 10));
+            assertEquals(0, channel.readAheadBlobs());
+            assertEquals(NodeChannel.READ_AHEAD_BUDGET - BLOB_SIZE, budget.availablePermits());
+
+            reads.forEach(Runnable::run);
+            assertEquals(NodeChannel.READ_AHEAD_BUDGET, budget.availablePermits());
+        }
+    }
+
+    @Test
+    void closed() throws Exception {
+        NodeChannel channel = newChannel();
+        channel.close();
+
+        assertThrows(ClosedChannelException.class, () -> channel.read(ByteBuffer.allocate(10)));
+    }
+}
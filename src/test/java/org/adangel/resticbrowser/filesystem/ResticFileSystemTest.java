@@ -2,6 +2,8 @@ package org.adangel.resticbrowser.filesystem;
 
 import static org.adangel.resticbrowser.filesystem.ResticTestUtils.openTestRepo;
 import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
 
 import java.io.IOException;
 import java.nio.file.FileSystem;
@@ -13,6 +15,8 @@ import java.nio.file.attribute.BasicFileAttributes;
 import java.util.ArrayList;
 import java.util.List;
 
+import org.adangel.resticbrowser.metrics.Gauge;
+import org.adangel.resticbrowser.metrics.Metrics;
 import org.junit.jupiter.api.Test;
 
 class ResticFileSystemTest {
@@ -46,4 +50,14 @@ class ResticFileSystemTest {
                 "/hosts/adangel/2023-10-29T10:55:03.245143527Z/test.txt ( size = 5)"),
                 entries);
     }
+
+    @Test
+    void gaugesAreRemovedOnClose() throws Exception {
+        FileSystem fileSystem = openTestRepo();
+        Gauge indexBlobs = (Gauge) Metrics.global().get("restic_index_blobs");
+        assertTrue(indexBlobs.get() > 0);
+
+        fileSystem.close();
+        assertNull(Metrics.global().get("restic_index_blobs"));
+    }
 }
@@ -0,0 +1,71 @@
+package org.adangel.resticbrowser.jfr;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.io.InputStream;
+import java.nio.file.Path;
+import java.util.List;
+import java.util.Map;
+import java.util.stream.Collectors;
+
+import org.adangel.resticbrowser.Repository;
+import org.adangel.resticbrowser.models.SnapshotWithId;
+import org.adangel.resticbrowser.models.Tree;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import jdk.jfr.Recording;
+import jdk.jfr.consumer.RecordedEvent;
+import jdk.jfr.consumer.RecordingFile;
+
+class RepositoryEventsTest {
+    @TempDir
+    private Path tempDir;
+
+    @Test
+    void repositoryEvents() throws Exception {
+        Path recordingFile = tempDir.resolve("recording.jfr");
+        Tree.Node file;
+        try (Recording recording = new Recording()) {
+            for (Class<?> event : List.of(IndexLoadEvent.class, SnapshotListEvent.class, TreeLoadEvent.class,
+                    PackReadEvent.class, BlobDecryptEvent.class, BlobDecompressEvent.class)) {
+                recording.enable(event.getName()).withoutThreshold();
+            }
+            recording.start();
+
+            Repository repo = new Repository(Path.of("src/test/resources/repos/repo2"), "test");
+            SnapshotWithId snapshot = repo.listSnapshots().getFirst();
+            repo.readTree(snapshot.snapshot().tree());
+            repo.readTree(snapshot.snapshot().tree());
+            file = repo.listFiles(snapshot.id(), "/home/johndoe/subdir1/a").getFirst();
+            try (InputStream in = repo.readNode(file)) {
+                in.readAllBytes();
+            }
+            repo.readContent(snapshot.snapshot().tree());
+
+            recording.stop();
+            recording.dump(recordingFile);
+        }
+
+        Map<String, List<RecordedEvent>> events = RecordingFile.readAllEvents(recordingFile).stream()
+                .collect(Collectors.groupingBy(e -> e.getEventType().getName()));
+
+        List<RecordedEvent> indexLoads = events.get("org.adangel.resticbrowser.IndexLoad");
+        assertFalse(indexLoads.isEmpty());
+        assertTrue(indexLoads.getFirst().getLong("blobs") > 0);
+        assertEquals(1, events.get("org.adangel.resticbrowser.SnapshotList").getFirst().getInt("snapshots"));
+
+        List<RecordedEvent> treeLoads = events.get("org.adangel.resticbrowser.TreeLoad");
+        assertTrue(treeLoads.stream().anyMatch(e -> e.getBoolean("cacheHit")));
+        assertTrue(treeLoads.stream().anyMatch(e -> !e.getBoolean("cacheHit")));
+
+        String blobId = file.content().getFirst();
+        List<RecordedEvent> decrypts = events.get("org.adangel.resticbrowser.BlobDecrypt");
+        assertTrue(decrypts.stream().anyMatch(e -> blobId.equals(e.getString("blobId"))
+                && e.getString("packId") != null && e.getBoolean("verified")));
+        assertFalse(events.get("org.adangel.resticbrowser.PackRead").isEmpty());
+        assertFalse(events.get("org.adangel.resticbrowser.BlobDecompress").isEmpty());
+    }
+}
@@ -0,0 +1,79 @@
+package org.adangel.resticbrowser.metrics;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.io.StringWriter;
+import java.lang.management.ManagementFactory;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+
+import org.junit.jupiter.api.Test;
+
+class MetricsTest {
+    @Test
+    void counterAndGauge() throws Exception {
+        Metrics metrics = new Metrics();
+        Counter counter = metrics.counter("test_reads_total", "Reads");
+        counter.increment();
+        counter.add(2);
+        assertSame(counter, metrics.counter("test_reads_total", "Reads"));
+        assertEquals(3, counter.get());
+        metrics.gauge("test_size", "Size", () -> 42);
+        assertThrows(IllegalArgumentException.class, () -> metrics.histogram("test_reads_total", "Reads"));
+
+        StringWriter out = new StringWriter();
+        metrics.writePrometheus(out);
+        assertEquals("""
+                # HELP test_reads_total Reads
+                # TYPE test_reads_total counter
+                test_reads_total 3
+                # HELP test_size Size
+                # TYPE test_size gauge
+                test_size 42
+                """, out.toString());
+    }
+
+    @Test
+    void histogram() throws Exception {
+        Metrics metrics = new Metrics();
+        Histogram read = metrics.histogram("test_seconds", "Latency", "op", "read");
+        metrics.histogram("test_seconds", "Latency", "op", "open").record(TimeUnit.SECONDS.toNanos(20));
+        read.record(TimeUnit.MICROSECONDS.toNanos(5));
+        read.record(TimeUnit.MICROSECONDS.toNanos(10));
+        read.record(TimeUnit.MILLISECONDS.toNanos(3));
+        assertEquals(3, read.count());
+        assertArrayEquals(new long[] {2, 0, 0, 0, 1, 0, 0, 0, 0, 0, 0, 0, 0}, read.buckets());
+
+        StringWriter out = new StringWriter();
+        metrics.writePrometheus(out);
+        List<String> lines = out.toString().lines().toList();
+        assertEquals("# TYPE test_seconds histogram", lines.get(1));
+        assertEquals(1, lines.stream().filter(line -> line.startsWith("# HELP")).count());
+        assertTrue(lines.contains("test_seconds_bucket{op=\"read\",le=\"0.00001\"} 2"), out.toString());
+        assertTrue(lines.contains("test_seconds_bucket{op=\"read\",le=\"0.005\"} 3"));
+        assertTrue(lines.contains("test_seconds_bucket{op=\"read\",le=\"+Inf\"} 3"));
+        assertTrue(lines.contains("test_seconds_bucket{op=\"open\",le=\"10.0\"} 0"));
+        assertTrue(lines.contains("test_seconds_sum{op=\"read\"} 0.003015"));
+        assertTrue(lines.contains("test_seconds_count{op=\"open\"} 1"));
+    }
+
+    @Test
+    void jmx() throws Exception {
+        Counter counter = Metrics.global().counter("test_jmx_total", "JMX test");
+        counter.add(5);
+        Metrics.global().histogram("test_jmx_seconds", "JMX test").record(TimeUnit.MICROSECONDS.toNanos(100));
+
+        MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+        ObjectName name = new ObjectName(Metrics.OBJECT_NAME);
+        assertEquals(5L, server.getAttribute(name, "test_jmx_total"));
+        assertEquals(1L, server.getAttribute(name, "test_jmx_seconds_count"));
+        assertEquals(100.0, server.getAttribute(name, "test_jmx_seconds_mean_micros"));
+    }
+}
@@ -0,0 +1,70 @@
+package org.adangel.resticbrowser.models;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HexFormat;
+import java.util.List;
+import java.util.Random;
+
+import org.junit.jupiter.api.Test;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+
+class BlobIdTest {
+    private static final String ID = "c9d04c9565fc665c80681fb1d829938026871f66e14f501e08531df66938a789";
+
+    @Test
+    void parseAndFormat() {
+        BlobId id = BlobId.parse(ID);
+
+        assertEquals(ID, id.toString());
+        assertEquals(id, BlobId.parse(ID.toUpperCase()));
+        assertEquals(id.hashCode(), BlobId.parse(ID).hashCode());
+        assertNotEquals(id, BlobId.parse(ID.replace('c', 'd')));
+    }
+
+    @Test
+    void fromBytes() {
+        byte[] bytes = new byte[3 + BlobId.LENGTH];
+        System.arraycopy(HexFormat.of().parseHex(ID), 0, bytes, 3, BlobId.LENGTH);
+
+        assertEquals(BlobId.parse(ID), BlobId.of(bytes, 3));
+    }
+
+    @Test
+    void invalid() {
+        assertThrows(IllegalArgumentException.class, () -> BlobId.parse(ID.substring(1)));
+        assertThrows(IllegalArgumentException.class, () -> BlobId.parse(ID.replace('c', 'x')));
+    }
+
+    @Test
+    void sameOrderAsHex() {
+        Random random = new Random(42);
+        List<String> hex = new ArrayList<>();
+        byte[] bytes = new byte[BlobId.LENGTH];
+        for (int i = 0; i < 100; i++) {
+            random.nextBytes(bytes);
+            // some IDs with a common prefix
+            bytes[0] = (byte) (i % 2 == 0 ? 0x80 : bytes[0]);
+            hex.add(HexFormat.of().formatHex(bytes));
+        }
+
+        assertEquals(hex.stream().sorted().toList(),
+                hex.stream().map(BlobId::parse).sorted(Comparator.naturalOrder()).map(BlobId::toString).toList());
+    }
+
+    @Test
+    void json() throws Exception {
+        ObjectMapper mapper = new ObjectMapper();
+        Index.Pack.Blob blob = mapper.readValue("""
+                {"id":"%s","type":"data","offset":0,"length":37,"uncompressed_length":0}""".formatted(ID),
+                Index.Pack.Blob.class);
+
+        assertEquals(BlobId.parse(ID), blob.id());
+        assertEquals("\"" + ID + "\"", mapper.writeValueAsString(blob.id()));
+    }
+}
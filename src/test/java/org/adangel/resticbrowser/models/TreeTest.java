@@ -0,0 +1,105 @@
+package org.adangel.resticbrowser.models;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertSame;
+
+import java.io.IOException;
+import java.time.OffsetDateTime;
+import java.util.List;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.params.ParameterizedTest;
+import org.junit.jupiter.params.provider.ValueSource;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.SerializationFeature;
+
+class TreeTest {
+    private static final ObjectMapper MAPPER = new ObjectMapper().findAndRegisterModules()
+            .disable(SerializationFeature.WRITE_DATES_AS_TIMESTAMPS);
+
+    private static final String BLOB_1 = "c9d04c9565fc665c80681fb1d829938026871f66e14f501e08531df66938a789";
+    private static final String BLOB_2 = "00ff00000000000000000000000000000000000000000000000000000000a0b1";
+
+    private static Tree.Node parseNode(String json) throws IOException {
+        return MAPPER.readValue("{\"nodes\":[" + json + "]}", Tree.class).nodes().getFirst();
+    }
+
+    @Test
+    void compactNode() throws IOException {
+        Tree.Node node = parseNode("""
+                {"name":"file1.txt","type":"file","mode":420,"mtime":"2024-01-20T15:46:32.123456789+01:00",
+                 "atime":"2024-01-20T15:46:32.5-05:30","ctime":"2024-01-20T14:46:32Z","uid":1000,"gid":100,
+                 "user":"andreas","group":"users","inode":18446744073709551615,"device_id":2049,"size":6,
+                 "links":1,"content":["%s","%s"]}""".formatted(BLOB_1, BLOB_2));
+
+        assertEquals(OffsetDateTime.parse("2024-01-20T15:46:32.123456789+01:00"), node.mtime());
+        assertEquals(OffsetDateTime.parse("2024-01-20T15:46:32.5-05:30"), node.atime());
+        assertEquals(OffsetDateTime.parse("2024-01-20T14:46:32Z"), node.ctime());
+        assertEquals(1705761992123456789L, node.mtimeNanos());
+        assertEquals(-1L, node.inode());
+        assertEquals("18446744073709551615", Long.toUnsignedString(node.inode()));
+        assertSame("andreas".intern(), node.user());
+        assertEquals(2, node.contentCount());
+        assertEquals(List.of(BLOB_1, BLOB_2), node.content());
+        assertEquals(BlobId.parse(BLOB_2), node.contentId(1));
+        assertEquals(List.of(BlobId.parse(BLOB_1), BlobId.parse(BLOB_2)), node.contentIds());
+        assertNull(node.subtree());
+    }
+
+    @Test
+    void directoryWithoutContentAndTimes() throws IOException {
+        Tree.Node node = parseNode("""
+                {"name":"dir","type":"dir","mode":2147484141,"subtree":"%s"}""".formatted(BLOB_1));
+
+        assertNull(node.content());
+        assertEquals(0, node.contentCount());
+        assertEquals(BLOB_1, node.subtree());
+        assertEquals(BlobId.parse(BLOB_1), node.subtreeId());
+        assertNull(node.mtime());
+        assertEquals(Tree.Node.NO_TIME, node.mtimeNanos());
+        assertEquals(0, node.inode());
+    }
+
+    @Test
+    void emptyFileKeepsEmptyContent() throws IOException {
+        Tree.Node node = parseNode("{\"name\":\"empty\",\"type\":\"file\",\"content\":[]}");
+
+        assertEquals(List.of(), node.content());
+    }
+
+    @ParameterizedTest
+    @ValueSource(strings = {"2024-01-20T15:46:32+01:00", "2024-01-20T15:46:32.1Z", "2024-01-20T15:46:32.000001-08:00",
+            "2024-01-20T15:46+01:00", "2024-01-20T15:46:32.123+01:00:30", "1970-01-01T00:00:00Z",
+            "1969-12-31T23:59:59.999999999Z"})
+    void timestampFormats(String time) throws IOException {
+        Tree.Node node = parseNode("{\"name\":\"f\",\"type\":\"file\",\"mtime\":\"" + time + "\"}");
+
+        OffsetDateTime expected = OffsetDateTime.parse(time);
+        assertEquals(expected.toInstant(), node.mtime().toInstant());
+        assertEquals(expected.toEpochSecond() * 1_000_000_000L + expected.getNano(), node.mtimeNanos());
+    }
+
+    @Test
+    void goZeroTimeIsClamped() throws IOException {
+        Tree.Node node = parseNode("{\"name\":\"f\",\"type\":\"file\",\"mtime\":\"0001-01-01T00:00:00Z\"}");
+
+        assertEquals(Tree.Node.NO_TIME + 1, node.mtimeNanos());
+    }
+
+    @Test
+    void serializationRoundTrip() throws IOException {
+        String json = """
+                {"nodes":[{"name":"file1.txt","type":"file","mode":420,"mtime":"2024-01-20T15:46:32.123456789+01:00",
+                 "uid":1000,"gid":100,"user":"andreas","group":"users","inode":18446744073709551615,"size":6,
+                 "links":1,"content":["%s"]}]}""".formatted(BLOB_1);
+        Tree tree = MAPPER.readValue(json, Tree.class);
+
+        Tree.Node node = MAPPER.readValue(MAPPER.writeValueAsBytes(tree), Tree.class).nodes().getFirst();
+        assertEquals(OffsetDateTime.parse("2024-01-20T15:46:32.123456789+01:00"), node.mtime());
+        assertEquals(-1L, node.inode());
+        assertEquals(List.of(BLOB_1), node.content());
+        assertEquals("users", node.group());
+    }
+}
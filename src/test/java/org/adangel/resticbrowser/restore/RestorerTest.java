@@ -0,0 +1,151 @@
+package org.adangel.resticbrowser.restore;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.security.MessageDigest;
+import java.util.ArrayList;
+import java.util.HexFormat;
+import java.util.List;
+import java.util.stream.Stream;
+
+import org.adangel.resticbrowser.Repository;
+import org.adangel.resticbrowser.models.Tree;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+class RestorerTest {
+    @TempDir
+    private Path target;
+
+    @Test
+    void restoreSnapshot() throws Exception {
+        Repository repository = new Repository(Path.of("src/test/resources/repos/repo2"), "test");
+        List<RestoreProgress> progress = new ArrayList<>();
+        Restorer restorer = new Restorer(repository, 4, progress::add);
+
+        RestoreProgress result = restorer.restore("2a9e949d33e1d696070a75e0be69dc6c1e9e89a2dd44d02a7b971a8d849c2f6c", "/", target);
+
+        List<String> expectedFiles = Files.readAllLines(Path.of("src/test/resources/repos/repo2-2a9e949d.filelist"));
+        List<String> files = new ArrayList<>();
+        try (Stream<Path> stream = Files.walk(target)) {
+            stream.filter(p -> !p.equals(target)).forEach(p -> files.add("/" + target.relativize(p).toString().replace('\\', '/')));
+        }
+        files.sort(null);
+        assertEquals(expectedFiles, files);
+        assertEquals("This is path subdir1/a/file2.txt\n\n", Files.readString(target.resolve("home/johndoe/subdir1/a/file2.txt")));
+
+        assertEquals(15, result.totalFiles());
+        assertEquals(result.totalBytes(), result.restoredBytes());
+        assertFalse(progress.isEmpty());
+        assertEquals(100.0, progress.getLast().percent());
+    }
+
+    @Test
+    void restoreSubPath() throws Exception {
+        Repository repository = new Repository(Path.of("src/test/resources/repos/repo2"), "test");
+        Restorer restorer = new Restorer(repository, 2, progress -> {});
+
+        restorer.restore("2a9e949d33e1d696070a75e0be69dc6c1e9e89a2dd44d02a7b971a8d849c2f6c", "/home/johndoe/subdir2", target);
+
+        try (Stream<Path> stream = Files.list(target)) {
+            assertEquals(List.of("d", "e", "f"), stream.map(p -> p.getFileName().toString()).sorted().toList());
+        }
+        assertEquals("This is path subdir2/f/file3.txt\n", Files.readString(target.resolve("f/file3.txt")));
+    }
+
+    @Test
+    void restoreMultipleBlobs() throws Exception {
+        Repository repository = new Repository(Path.of("src/test/resources/repos/repo4"), "test");
+        Restorer restorer = new Restorer(repository, 4, progress -> {});
+
+        RestoreProgress result = restorer.restore("a9e4ac2f30d86cf98d52648d00e9fe03313e2cc47e5533e7f1e5c35e2e52d364", "/", target);
+
+        assertEquals(2, result.totalBlobs());
+        Path file = target.resolve("file.raw");
+        assertEquals(2_097_152, Files.size(file));
+        assertEquals("4360fffcd35689d5ae2ca95b28b289bebf15905d3db33f4e918ae814f9140841", sha256(file));
+    }
+
+    @Test
+    void packRegions() throws Exception {
+        Repository repository = new Repository(Path.of("src/test/resources/repos/repo4"), "test");
+        RestorePlan plan = RestorePlan.create(repository,
+                repository.listFiles("a9e4ac2f30d86cf98d52648d00e9fe03313e2cc47e5533e7f1e5c35e2e52d364", "/"), target);
+
+        // both blobs of the file are in the same pack, they are split into two regions if they don't fit into one
+        List<List<RestorePlan.Blob>> regions = plan.packRegions(Restorer.MAX_REGION_SIZE);
+        assertEquals(1, regions.size());
+        assertEquals(2, regions.getFirst().size());
+        List<List<RestorePlan.Blob>> smallRegions = plan.packRegions(1024 * 1024);
+        assertEquals(2, smallRegions.size());
+        assertTrue(smallRegions.getFirst().getFirst().indexEntry().offset() < smallRegions.getLast().getFirst().indexEntry().offset());
+    }
+
+    @Test
+    void restoreSymlinks() throws Exception {
+        Repository repository = new Repository(Path.of("src/test/resources/repos/repo3"), "test");
+        Restorer restorer = new Restorer(repository, 1, progress -> {});
+
+        restorer.restore("f9bd1daf0327779444c5dea5228dbb638bd7fcadc1fd120b11cebb75146206a6", "/data", target);
+
+        assertEquals("regular.txt\n", Files.readString(target.resolve("regular.txt")));
+        assertEquals("dir/file.txt\n", Files.readString(target.resolve("dir/file.txt")));
+        assertTrue(Files.isSymbolicLink(target.resolve("symlink2.txt")));
+        assertEquals(Path.of("dir/file.txt"), Files.readSymbolicLink(target.resolve("symlink2.txt")));
+    }
+
+    @Test
+    void invalidNames() throws Exception {
+        Repository repository = new Repository(Path.of("src/test/resources/repos/repo3"), "test");
+        for (String name : new String[] {"", ".", "..", "a/b", "../outside", "/etc"}) {
+            assertThrows(IOException.class, () -> RestorePlan.create(repository, List.of(node(name, Tree.NodeType.FILE)), target),
+                    () -> "name '" + name + "'");
+        }
+        assertThrows(IOException.class, () -> RestorePlan.create(repository,
+                List.of(node("x", Tree.NodeType.FILE), node("x", Tree.NodeType.SYMLINK)), target));
+    }
+
+    @Test
+    void existingSymlinksAreNotFollowed(@TempDir Path outside) throws Exception {
+        Path outsideFile = Files.writeString(outside.resolve("outside.txt"), "outside");
+        Files.createSymbolicLink(target.resolve("regular.txt"), outsideFile);
+        Files.createSymbolicLink(target.resolve("dir"), outside);
+        Repository repository = new Repository(Path.of("src/test/resources/repos/repo3"), "test");
+        Restorer restorer = new Restorer(repository, 1, progress -> {});
+
+        restorer.restore("f9bd1daf0327779444c5dea5228dbb638bd7fcadc1fd120b11cebb75146206a6", "/data", target);
+
+        assertFalse(Files.isSymbolicLink(target.resolve("regular.txt")));
+        assertEquals("regular.txt\n", Files.readString(target.resolve("regular.txt")));
+        assertFalse(Files.isSymbolicLink(target.resolve("dir")));
+        assertEquals("dir/file.txt\n", Files.readString(target.resolve("dir/file.txt")));
+        assertEquals("outside", Files.readString(outsideFile));
+        try (Stream<Path> stream = Files.list(outside)) {
+            assertEquals(List.of(outsideFile), stream.toList());
+        }
+    }
+
+    private static Tree.Node node(String name, Tree.NodeType type) {
+        return new Tree.Node(name, type, 0644, null, null, null, 0, 0, null, null, null, 0, 0, 0,
+                type == Tree.NodeType.SYMLINK ? "target" : null, null, null);
+    }
+
+    private static String sha256(Path file) throws Exception {
+        MessageDigest sha256 = MessageDigest.getInstance("SHA256");
+        try (InputStream in = Files.newInputStream(file)) {
+            byte[] buffer = new byte[8192];
+            int read;
+            while ((read = in.read(buffer)) != -1) {
+                sha256.update(buffer, 0, read);
+            }
+        }
+        return HexFormat.of().formatHex(sha256.digest());
+    }
+}
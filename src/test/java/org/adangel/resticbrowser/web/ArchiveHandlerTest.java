@@ -0,0 +1,169 @@
+package org.adangel.resticbrowser.web;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertLinesMatch;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.RandomAccessFile;
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.zip.ZipEntry;
+import java.util.stream.Stream;
+import java.util.zip.ZipInputStream;
+
+import org.adangel.resticbrowser.Repository;
+import org.adangel.resticbrowser.WebServer;
+import org.adangel.resticbrowser.models.Tree;
+import org.apache.commons.compress.archivers.tar.TarArchiveEntry;
+import org.apache.commons.compress.archivers.tar.TarArchiveInputStream;
+import org.junit.jupiter.api.AfterAll;
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+class ArchiveHandlerTest {
+    private static final String REPO2_SNAPSHOT = "/snapshots/2a9e949d33e1d696070a75e0be69dc6c1e9e89a2dd44d02a7b971a8d849c2f6c";
+    private static final String REPO3_SNAPSHOT = "/snapshots/f9bd1daf0327779444c5dea5228dbb638bd7fcadc1fd120b11cebb75146206a6";
+
+    private static WebServer repo2Server;
+    private static WebServer repo3Server;
+    private static final HttpClient CLIENT = HttpClient.newHttpClient();
+
+    @BeforeAll
+    static void startServers() throws IOException {
+        WebServer.Options options = new WebServer.Options(8, 10_000, 0, false);
+        repo2Server = new WebServer(0, Path.of("src/test/resources/repos/repo2"), "test".toCharArray(), options);
+        repo2Server.start();
+        repo3Server = new WebServer(0, Path.of("src/test/resources/repos/repo3"), "test".toCharArray(), options);
+        repo3Server.start();
+    }
+
+    @AfterAll
+    static void stopServers() {
+        repo2Server.stop();
+        repo3Server.stop();
+    }
+
+    @Test
+    void downloadZip() throws Exception {
+        HttpResponse<InputStream> response = get(repo2Server, "/archive" + REPO2_SNAPSHOT + "/home/johndoe/subdir1?format=zip");
+        assertEquals(200, response.statusCode());
+        assertEquals("application/zip", response.headers().firstValue("Content-Type").orElseThrow());
+
+        Map<String, String> entries = new LinkedHashMap<>();
+        try (ZipInputStream zip = new ZipInputStream(response.body())) {
+            ZipEntry entry;
+            while ((entry = zip.getNextEntry()) != null) {
+                entries.put(entry.getName(), new String(zip.readAllBytes(), StandardCharsets.UTF_8));
+            }
+        }
+        assertLinesMatch(List.of(
+                "subdir1/",
+                "subdir1/a/",
+                "subdir1/a/file1.txt",
+                "subdir1/a/file2.txt",
+                "subdir1/b/",
+                "subdir1/b/file1.txt",
+                "subdir1/b/file2.txt",
+                "subdir1/c/",
+                "subdir1/c/file1.txt",
+                "subdir1/c/file2.txt"), new ArrayList<>(entries.keySet()));
+        assertEquals("This is path subdir1/a/file2.txt\n\n", entries.get("subdir1/a/file2.txt"));
+    }
+
+    @Test
+    void downloadTar() throws Exception {
+        HttpResponse<InputStream> response = get(repo3Server, "/archive" + REPO3_SNAPSHOT + "/data");
+        assertEquals(200, response.statusCode());
+        assertEquals("application/x-tar", response.headers().firstValue("Content-Type").orElseThrow());
+
+        List<String> names = new ArrayList<>();
+        Map<String, String> contents = new LinkedHashMap<>();
+        try (TarArchiveInputStream tar = new TarArchiveInputStream(response.body())) {
+            TarArchiveEntry entry;
+            while ((entry = tar.getNextTarEntry()) != null) {
+                names.add(entry.getName());
+                if (entry.isSymbolicLink()) {
+                    contents.put(entry.getName(), "-> " + entry.getLinkName());
+                } else if (entry.isFile()) {
+                    contents.put(entry.getName(), new String(tar.readAllBytes(), StandardCharsets.UTF_8));
+                }
+            }
+        }
+        assertLinesMatch(List.of(
+                "data/",
+                "data/dir/",
+                "data/dir/file.txt",
+                "data/regular.txt",
+                "data/symlink.txt",
+                "data/symlink2.txt"), names);
+        assertEquals("dir/file.txt\n", contents.get("data/dir/file.txt"));
+        assertEquals("-> regular.txt", contents.get("data/symlink.txt"));
+        assertEquals("-> dir/file.txt", contents.get("data/symlink2.txt"));
+    }
+
+    @Test
+    void notFound() throws Exception {
+        assertEquals(404, get(repo2Server, "/archive/snapshots").statusCode());
+        assertEquals(404, get(repo2Server, "/archive" + REPO2_SNAPSHOT + "/home/johndoe/subdir1/a/file1.txt").statusCode());
+    }
+
+    @Test
+    void unknownFormat() throws Exception {
+        assertEquals(400, get(repo2Server, "/archive" + REPO2_SNAPSHOT + "?format=rar").statusCode());
+    }
+
+    @Test
+    void corruptedBlobAbortsArchive(@TempDir Path tempDir) throws Exception {
+        Path repo = tempDir.resolve("repo2");
+        Path source = Path.of("src/test/resources/repos/repo2");
+        try (Stream<Path> files = Files.walk(source)) {
+            for (Path file : (Iterable<Path>) files::iterator) {
+                Files.copy(file, repo.resolve(source.relativize(file).toString()));
+            }
+        }
+        Repository repository = new Repository(repo, "test");
+        Tree.Node file = repository.listFiles(REPO2_SNAPSHOT.substring("/snapshots/".length()), "/home/johndoe/subdir1/b").getFirst();
+        Repository.IndexEntry entry = repository.findBlob(file.content().getFirst());
+        Path pack = repo.resolve("data").resolve(entry.packId().substring(0, 2)).resolve(entry.packId());
+        try (RandomAccessFile raf = new RandomAccessFile(pack.toFile(), "rw")) {
+            raf.seek(entry.offset() + 20);
+            int b = raf.read();
+            raf.seek(entry.offset() + 20);
+            raf.write(b ^ 0xff);
+        }
+
+        WebServer server = new WebServer(0, repo, "test".toCharArray(), new WebServer.Options(8, 10_000, 0, false));
+        server.start();
+        try {
+            HttpResponse<InputStream> response = get(server, "/archive" + REPO2_SNAPSHOT + "/home/johndoe/subdir1?format=zip");
+            assertEquals(200, response.statusCode());
+            // the response is aborted, the client must not get an archive which looks complete
+            assertThrows(IOException.class, () -> {
+                try (ZipInputStream zip = new ZipInputStream(response.body())) {
+                    while (zip.getNextEntry() != null) {
+                        zip.readAllBytes();
+                    }
+                }
+            });
+        } finally {
+            server.stop();
+        }
+    }
+
+    private static HttpResponse<InputStream> get(WebServer server, String path) throws IOException, InterruptedException {
+        HttpRequest request = HttpRequest.newBuilder(URI.create("http://localhost:" + server.getPort() + path)).build();
+        return CLIENT.send(request, HttpResponse.BodyHandlers.ofInputStream());
+    }
+}
@@ -0,0 +1,111 @@
+package org.adangel.resticbrowser.web;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.io.IOException;
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+
+import org.adangel.resticbrowser.WebServer;
+import org.junit.jupiter.api.AfterAll;
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.Test;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+
+class JsonApiHandlerTest {
+    private static final String SNAPSHOT_ID = "2a9e949d33e1d696070a75e0be69dc6c1e9e89a2dd44d02a7b971a8d849c2f6c";
+    private static final ObjectMapper MAPPER = new ObjectMapper();
+    private static final HttpClient CLIENT = HttpClient.newHttpClient();
+
+    private static WebServer webServer;
+
+    @BeforeAll
+    static void startServer() throws IOException {
+        webServer = new WebServer(0, Path.of("src/test/resources/repos/repo2"), "test".toCharArray(),
+                new WebServer.Options(8, 10_000, 0, false));
+        webServer.start();
+    }
+
+    @AfterAll
+    static void stopServer() {
+        webServer.stop();
+    }
+
+    @Test
+    void listSnapshots() throws Exception {
+        JsonNode snapshots = get("/api/snapshots", 200);
+        assertEquals(1, snapshots.size());
+        assertEquals(SNAPSHOT_ID, snapshots.get(0).get("id").asText());
+        assertEquals("2a9e949d", snapshots.get(0).get("short_id").asText());
+        assertEquals("johndoe", snapshots.get(0).get("hostname").asText());
+        assertEquals("/home/johndoe", snapshots.get(0).get("paths").get(0).asText());
+    }
+
+    @Test
+    void filterSnapshots() throws Exception {
+        assertEquals(1, get("/api/snapshots?host=johndoe", 200).size());
+        assertEquals(0, get("/api/snapshots?host=janedoe", 200).size());
+        assertEquals(1, get("/api/snapshots?path=/home/johndoe", 200).size());
+        assertEquals(0, get("/api/snapshots?tag=important", 200).size());
+        assertEquals(1, get("/api/snapshots?after=2023-11-03T00:00:00Z&before=2023-11-04T00:00:00Z", 200).size());
+        assertEquals(0, get("/api/snapshots?after=2023-11-04T00:00:00Z", 200).size());
+        assertTrue(get("/api/snapshots?after=yesterday", 400).hasNonNull("error"));
+    }
+
+    @Test
+    void listDirectory() throws Exception {
+        JsonNode page = get("/api/snapshots/" + SNAPSHOT_ID + "/tree/home/johndoe/subdir1/a", 200);
+        JsonNode nodes = page.get("nodes");
+        assertEquals(2, nodes.size());
+        assertEquals("file1.txt", nodes.get(0).get("name").asText());
+        assertEquals("file", nodes.get(0).get("type").asText());
+        assertEquals(1, nodes.get(0).get("content_blobs").asInt());
+        assertTrue(page.get("next_cursor").isNull());
+    }
+
+    @Test
+    void paginateDirectory() throws Exception {
+        List<String> names = new ArrayList<>();
+        String path = "/api/snapshots/2a9e949d/tree/home/johndoe/subdir1?limit=1";
+        int pages = 0;
+        JsonNode page;
+        do {
+            page = get(path, 200);
+            page.get("nodes").forEach(node -> {
+                names.add(node.get("name").asText());
+                assertEquals("dir", node.get("type").asText());
+                assertTrue(node.hasNonNull("subtree"));
+            });
+            pages++;
+            path = "/api/snapshots/2a9e949d/tree/home/johndoe/subdir1?limit=1&cursor=" + page.get("next_cursor").asText();
+        } while (!page.get("next_cursor").isNull());
+
+        assertEquals(3, pages);
+        assertEquals(List.of("a", "b", "c"), names);
+    }
+
+    @Test
+    void errors() throws Exception {
+        get("/api/snapshots/" + SNAPSHOT_ID + "/tree/home/johndoe?cursor=invalid", 400);
+        get("/api/snapshots/" + SNAPSHOT_ID + "/tree/home/johndoe?limit=0", 400);
+        get("/api/snapshots/" + SNAPSHOT_ID + "/tree/home/nobody", 404);
+        get("/api/snapshots/ffffffff/tree/", 404);
+        get("/api/snapshots/" + "f".repeat(64) + "/tree/", 404);
+        get("/api/unknown", 404);
+    }
+
+    private static JsonNode get(String path, int expectedStatus) throws IOException, InterruptedException {
+        HttpRequest request = HttpRequest.newBuilder(URI.create("http://localhost:" + webServer.getPort() + path)).build();
+        HttpResponse<String> response = CLIENT.send(request, HttpResponse.BodyHandlers.ofString());
+        assertEquals(expectedStatus, response.statusCode(), response.body());
+        return MAPPER.readTree(response.body());
+    }
+}
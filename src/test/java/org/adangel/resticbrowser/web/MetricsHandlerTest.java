@@ -0,0 +1,46 @@
+package org.adangel.resticbrowser.web;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.nio.file.Path;
+
+import org.adangel.resticbrowser.WebServer;
+import org.junit.jupiter.api.Test;
+
+class MetricsHandlerTest {
+    @Test
+    void metrics() throws Exception {
+        WebServer webServer = new WebServer(0, Path.of("src/test/resources/repos/repo2"), "test".toCharArray(),
+                new WebServer.Options(8, 10_000, 0, false));
+        webServer.start();
+        try {
+            HttpClient client = HttpClient.newHttpClient();
+            String base = "http://localhost:" + webServer.getPort();
+            HttpResponse<String> file = client.send(HttpRequest.newBuilder(URI.create(base
+                    + "/snapshots/2a9e949d33e1d696070a75e0be69dc6c1e9e89a2dd44d02a7b971a8d849c2f6c/home/johndoe/subdir1/a/file2.txt")).build(),
+                    HttpResponse.BodyHandlers.ofString());
+            assertEquals(200, file.statusCode());
+
+            HttpResponse<String> metrics = client.send(HttpRequest.newBuilder(URI.create(base + "/metrics")).build(),
+                    HttpResponse.BodyHandlers.ofString());
+            assertEquals(200, metrics.statusCode());
+            assertTrue(metrics.headers().firstValue("Content-Type").orElseThrow().startsWith("text/plain"));
+            String body = metrics.body();
+            assertTrue(body.contains("# TYPE restic_blob_reads_total counter"), body);
+            assertTrue(body.contains("# TYPE restic_index_blobs gauge"));
+            assertTrue(body.contains("restic_fs_operation_seconds_count{op=\"readAttributes\"}"));
+            assertTrue(body.lines().anyMatch(line -> line.matches("restic_decrypted_bytes_total [1-9][0-9]*")));
+
+            HttpResponse<String> post = client.send(HttpRequest.newBuilder(URI.create(base + "/metrics"))
+                    .POST(HttpRequest.BodyPublishers.noBody()).build(), HttpResponse.BodyHandlers.ofString());
+            assertEquals(405, post.statusCode());
+        } finally {
+            webServer.stop();
+        }
+    }
+}